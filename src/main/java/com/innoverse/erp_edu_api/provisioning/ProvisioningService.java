@@ -20,6 +20,7 @@ public interface ProvisioningService {
     ProvisioningContext buildContext(String schemaName, AcademicLevel level, String assignedBy);
     Optional<DbProvision> assignToSchoolWithAccess(UUID provisionId, UUID schoolId, String assignedBy);
     Optional<DbProvision> unassignFromSchoolWithAccess(UUID provisionId);
+    Optional<DbProvision> claimSpareProvision(UUID schoolId, AcademicLevel level, String assignedBy);
 
 
 }
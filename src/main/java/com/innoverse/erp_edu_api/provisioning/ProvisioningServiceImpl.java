@@ -5,6 +5,7 @@ import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
 import com.innoverse.erp_edu_api.provisioning.services.DistributedTenantCache;
 import com.innoverse.erp_edu_api.provisioning.services.ProvisioningContext;
 import com.innoverse.erp_edu_api.provisioning.services.ProvisioningTrackingService;
+import com.innoverse.erp_edu_api.provisioning.services.SpareSchemaPool;
 import com.innoverse.erp_edu_api.provisioning.services.TenantProvisioningOrchestrationService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -19,6 +20,7 @@ public class ProvisioningServiceImpl implements ProvisioningService {
     private final TenantProvisioningOrchestrationService orchestrationService;
     private final ProvisioningTrackingService trackingService;
     private final DistributedTenantCache tenantCache;
+    private final SpareSchemaPool spareSchemaPool;
 
     @Override
     public List<DbProvision> getByProvisionBySchoolId(UUID schoolId) {
@@ -69,4 +71,9 @@ public class ProvisioningServiceImpl implements ProvisioningService {
     public Optional<DbProvision> unassignFromSchoolWithAccess(UUID provisionId) {
         return this.trackingService.unassignFromSchoolWithAccess(provisionId);
     }
+
+    @Override
+    public Optional<DbProvision> claimSpareProvision(UUID schoolId, AcademicLevel level, String assignedBy) {
+        return this.spareSchemaPool.claim(schoolId, level, assignedBy);
+    }
 }
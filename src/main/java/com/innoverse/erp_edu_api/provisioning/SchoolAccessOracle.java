@@ -0,0 +1,15 @@
+package com.innoverse.erp_edu_api.provisioning;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Answers whether schools may reach their tenant schema. Provided by the schools
+ * module and consulted by the tenant cache on a miss.
+ */
+public interface SchoolAccessOracle {
+    boolean hasAccess(UUID schoolId);
+
+    Map<UUID, Boolean> hasAccess(Collection<UUID> schoolIds);
+}
@@ -15,8 +15,11 @@ import java.util.UUID;
 @AllArgsConstructor
 @Table("db_provisions")
 public class DbProvision {
+    // Shard id of the registry's own cluster, where schemas live unless placed elsewhere
+    public static final String PRIMARY_SHARD = "primary";
+
     public enum Status {
-        PENDING, PROVISIONED, FAILED
+        PENDING, PROVISIONED, FAILED, HIBERNATED, RESTORING
     }
 
     @Id @Column("provision_id") private UUID provisionId;
@@ -31,6 +34,8 @@ public class DbProvision {
     @Column("attempts") private Integer attempts = 0;
     @CreatedDate @Column("created_at") private LocalDateTime createdAt;
     @LastModifiedDate @Column("updated_at") private LocalDateTime updatedAt;
+    @Column("step_log") private String stepLog;
+    @Column("shard_id") private String shardId;
 
 
     public static DbProvision createNew(String dbSchemaName, String educationLevel) {
@@ -40,6 +45,7 @@ public class DbProvision {
         provision.provisionStatus = Status.PENDING.name().toLowerCase();
         provision.assignedEducationLevel = educationLevel;
         provision.attempts = 0;
+        provision.shardId = PRIMARY_SHARD;
         return provision;
     }
 
@@ -130,11 +136,20 @@ public class DbProvision {
         return Status.FAILED.name().equalsIgnoreCase(this.provisionStatus);
     }
 
+    // Archived and dropped; the schema is restored when its school is next seen
+    public boolean isHibernated() {
+        return Status.HIBERNATED.name().equalsIgnoreCase(this.provisionStatus)
+                || Status.RESTORING.name().equalsIgnoreCase(this.provisionStatus);
+    }
+
     public boolean isAssigned() {
         return this.assignedSchoolId != null;
     }
 
     public String getStatusDescription() {
+        if (isHibernated()) {
+            return "HIBERNATED, assigned to school: " + this.assignedSchoolId;
+        }
         if (isAssigned()) {
             return "ASSIGNED to school: " + this.assignedSchoolId;
         }
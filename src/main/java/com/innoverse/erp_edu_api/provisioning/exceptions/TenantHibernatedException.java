@@ -0,0 +1,28 @@
+package com.innoverse.erp_edu_api.provisioning.exceptions;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+import java.io.Serial;
+
+/**
+ * The school's schema is hibernated and its restore has not finished yet.
+ */
+@Getter
+public class TenantHibernatedException extends ProvisioningException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public TenantHibernatedException(String schemaName, long retryAfterSeconds) {
+        super(
+                "HIBERNATION_001",
+                "School data is being restored, retry after " + retryAfterSeconds + " seconds",
+                "Schema " + schemaName + " is hibernated and still being restored",
+                HttpStatus.SERVICE_UNAVAILABLE,
+                null
+        );
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,103 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.cache;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker around the tenant cache's Redis calls. After a run of consecutive
+ * failures it opens and fails calls immediately, so requests fall back to the routing
+ * snapshot instead of each waiting out the Redis timeout. Once the open period has
+ * passed a single trial call is let through to probe for recovery.
+ */
+@Slf4j
+@Component
+public class RedisCircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong openedAt = new AtomicLong();
+
+    public RedisCircuitBreaker(TenantCacheProperties cacheProperties) {
+        this.failureThreshold = cacheProperties.getRedisFailureThreshold();
+        this.openDurationNanos = cacheProperties.getRedisOpenDuration().toNanos();
+    }
+
+    /**
+     * Runs the Redis call through the breaker.
+     *
+     * @throws RedisUnavailableException when the circuit is open or the call fails
+     */
+    public <T> T execute(Supplier<T> call) {
+        if (!allowRequest()) {
+            throw new RedisUnavailableException("Redis circuit is open", null);
+        }
+        try {
+            T result = call.get();
+            onSuccess();
+            return result;
+        } catch (DataAccessException e) {
+            onFailure();
+            throw new RedisUnavailableException("Redis call failed", e);
+        } catch (RuntimeException e) {
+            // Not a connectivity problem, Redis itself answered
+            onSuccess();
+            throw e;
+        }
+    }
+
+    public void run(Runnable call) {
+        execute(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    private boolean allowRequest() {
+        return switch (state.get()) {
+            case CLOSED -> true;
+            case OPEN -> System.nanoTime() - openedAt.get() >= openDurationNanos
+                    && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+            case HALF_OPEN -> false;
+        };
+    }
+
+    private void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state.getAndSet(State.CLOSED) != State.CLOSED) {
+            log.info("Redis reachable again, tenant cache circuit closed");
+        }
+    }
+
+    private void onFailure() {
+        if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openedAt.set(System.nanoTime());
+            if (state.getAndSet(State.OPEN) != State.OPEN) {
+                log.warn("Redis unavailable, tenant cache circuit opened for {}ms",
+                        openDurationNanos / 1_000_000);
+            }
+        }
+    }
+
+    public static class RedisUnavailableException extends RuntimeException {
+        public RedisUnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
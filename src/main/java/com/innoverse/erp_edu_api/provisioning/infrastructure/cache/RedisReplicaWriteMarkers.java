@@ -0,0 +1,55 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.cache;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantReplicaProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.ReplicaRouter;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantAwareDataSource;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Shares the replica router's read-your-writes markers through Redis: a commit on one
+ * node keeps the tenant's reads on the primary on every node for the window. Calls go
+ * through the Redis circuit breaker, so while Redis is down each node goes by the
+ * writes it made itself.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RedisReplicaWriteMarkers implements ReplicaRouter.SharedWriteMarkers {
+    private static final String MARKER_PREFIX = "tenant:replica:write:";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisCircuitBreaker redisBreaker;
+    private final TenantReplicaProperties replicaProperties;
+    private final DataSource dataSource;
+
+    @PostConstruct
+    public void register() throws SQLException {
+        if (!replicaProperties.isEnabled() || !replicaProperties.isSharedWriteMarkers()
+                || !dataSource.isWrapperFor(TenantAwareDataSource.class)) {
+            return;
+        }
+        ReplicaRouter router = dataSource.unwrap(TenantAwareDataSource.class).getReplicaRouter();
+        if (router != null) {
+            router.setSharedWriteMarkers(this);
+            log.info("Sharing replica read-your-writes markers through Redis");
+        }
+    }
+
+    @Override
+    public void mark(String schema, Duration ttl) {
+        redisBreaker.run(() -> redisTemplate.opsForValue().set(MARKER_PREFIX + schema, "1", ttl));
+    }
+
+    @Override
+    public boolean isMarked(String schema) {
+        return Boolean.TRUE.equals(redisBreaker.execute(() -> redisTemplate.hasKey(MARKER_PREFIX + schema)));
+    }
+}
@@ -0,0 +1,38 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.cache;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantCacheProperties;
+import com.innoverse.erp_edu_api.provisioning.services.DistributedTenantCache;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Subscribes to the tenant cache invalidation channel so that updates made on
+ * any node evict the in-process entries held by this one.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TenantCacheInvalidationListener implements MessageListener {
+    private final RedisMessageListenerContainer listenerContainer;
+    private final DistributedTenantCache tenantCache;
+    private final TenantCacheProperties cacheProperties;
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(cacheProperties.getInvalidationChannel()));
+        log.info("Subscribed to tenant cache invalidation channel: {}", cacheProperties.getInvalidationChannel());
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        tenantCache.onInvalidationMessage(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+}
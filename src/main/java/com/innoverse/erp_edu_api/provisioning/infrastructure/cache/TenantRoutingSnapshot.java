@@ -0,0 +1,274 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.cache;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantCacheProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Node-local copy of the school -> schema routing table, persisted to a memory-mapped
+ * file so it survives restarts. The tenant cache writes through to it as it learns
+ * routes and reads from it only while Redis is unreachable, including a cold start
+ * before Redis comes up. The schema and the access decision are confirmed separately,
+ * and each is ignored once older than the configured staleness bound.
+ *
+ * <p>File layout: a 32-byte header (magic, format, slot count, last write time)
+ * followed by fixed 104-byte slots. A slot holds the school ID, the times the schema
+ * and the access decision were last confirmed, an access/deleted flag byte and the
+ * schema name. Updates overwrite the school's slot in place; a removed school's slot
+ * is marked deleted and reused by the next school recorded, so the file only grows
+ * with the number of schools routed at once.
+ */
+@Slf4j
+@Component
+public class TenantRoutingSnapshot {
+    private static final int MAGIC = 0x54525453; // "TRTS"
+    private static final int FORMAT = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 104;
+    private static final int SCHEMA_CONFIRMED_OFFSET = 16;
+    private static final int ACCESS_CONFIRMED_OFFSET = 24;
+    private static final int FLAGS_OFFSET = 32;
+    private static final int SCHEMA_LENGTH_OFFSET = 33;
+    private static final int SCHEMA_OFFSET = 34;
+    private static final int MAX_SCHEMA_BYTES = SLOT_SIZE - SCHEMA_OFFSET;
+    private static final int INITIAL_SLOTS = 1024;
+
+    private static final byte FLAG_ACCESS = 1;
+    private static final byte FLAG_DELETED = 2;
+
+    private final TenantCacheProperties cacheProperties;
+    private final long maxStalenessMillis;
+
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<UUID, Integer> slots = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Guarded by writeLock; null when the snapshot is disabled or could not be opened
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int slotCount;
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    public TenantRoutingSnapshot(TenantCacheProperties cacheProperties) {
+        this.cacheProperties = cacheProperties;
+        this.maxStalenessMillis = cacheProperties.getSnapshotMaxStaleness().toMillis();
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!cacheProperties.isSnapshotEnabled()) {
+            return;
+        }
+        Path path = Path.of(cacheProperties.getSnapshotPath());
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long existingSlots = Math.max(0, (channel.size() - HEADER_SIZE) / SLOT_SIZE);
+            map((int) Math.max(INITIAL_SLOTS, existingSlots));
+
+            if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == FORMAT) {
+                load(buffer.getInt(8));
+            } else {
+                initHeader();
+            }
+            log.info("Tenant routing snapshot opened at {} with {} routes", path, entries.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Tenant routing snapshot unavailable at {}, continuing without it", path, e);
+            closeQuietly();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        writeLock.lock();
+        try {
+            if (buffer != null) {
+                buffer.force();
+            }
+            closeQuietly();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // The school's schema if it was confirmed within the staleness bound, otherwise null
+    public String getSchema(UUID schoolId) {
+        Entry entry = entries.get(schoolId);
+        return entry != null && entry.schemaName() != null && isFresh(entry.schemaConfirmedAt())
+                ? entry.schemaName() : null;
+    }
+
+    // The school's access decision if it was confirmed within the staleness bound, otherwise null
+    public Boolean getAccess(UUID schoolId) {
+        Entry entry = entries.get(schoolId);
+        return entry != null && isFresh(entry.accessConfirmedAt()) ? entry.hasAccess() : null;
+    }
+
+    // A new route grants no access until recordAccess confirms it, so a school is never let in on its route alone
+    public void recordSchema(UUID schoolId, String schemaName) {
+        Entry current = entries.get(schoolId);
+        write(schoolId, current != null
+                ? new Entry(schemaName, System.currentTimeMillis(), current.hasAccess(), current.accessConfirmedAt())
+                : new Entry(schemaName, System.currentTimeMillis(), false, 0));
+    }
+
+    // Denials are only recorded for known schools, so probing unknown IDs cannot grow the file
+    public void recordAccess(UUID schoolId, boolean hasAccess) {
+        Entry current = entries.get(schoolId);
+        if (current == null && !hasAccess) {
+            return;
+        }
+        write(schoolId, current != null
+                ? new Entry(current.schemaName(), current.schemaConfirmedAt(), hasAccess, System.currentTimeMillis())
+                : new Entry(null, 0, hasAccess, System.currentTimeMillis()));
+    }
+
+    public void remove(UUID schoolId) {
+        writeLock.lock();
+        try {
+            if (entries.remove(schoolId) == null) {
+                return;
+            }
+            Integer slot = slots.remove(schoolId);
+            if (buffer != null && slot != null) {
+                buffer.put(slotOffset(slot) + FLAGS_OFFSET, FLAG_DELETED);
+                buffer.putLong(16, System.currentTimeMillis());
+                freeSlots.push(slot);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public SnapshotStats getStats() {
+        writeLock.lock();
+        try {
+            return new SnapshotStats(buffer != null, entries.size(), slotCount, freeSlots.size());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private boolean isFresh(long confirmedAt) {
+        return System.currentTimeMillis() - confirmedAt <= maxStalenessMillis;
+    }
+
+    private void write(UUID schoolId, Entry entry) {
+        writeLock.lock();
+        try {
+            entries.put(schoolId, entry);
+            if (buffer == null) {
+                return;
+            }
+            Integer slot = slots.get(schoolId);
+            if (slot == null) {
+                slot = freeSlots.poll();
+            }
+            if (slot == null) {
+                if (slotCount == capacity) {
+                    map(capacity * 2);
+                }
+                slot = slotCount++;
+                buffer.putInt(8, slotCount);
+            }
+            slots.put(schoolId, slot);
+            writeSlot(slot, schoolId, entry);
+            buffer.putLong(16, System.currentTimeMillis());
+        } catch (IOException e) {
+            log.warn("Could not grow tenant routing snapshot, keeping route in memory only", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void writeSlot(int slot, UUID schoolId, Entry entry) {
+        byte[] schema = entry.schemaName() != null
+                ? entry.schemaName().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int offset = slotOffset(slot);
+        buffer.putLong(offset, schoolId.getMostSignificantBits());
+        buffer.putLong(offset + 8, schoolId.getLeastSignificantBits());
+        if (schema.length > MAX_SCHEMA_BYTES) {
+            log.warn("Schema name too long for routing snapshot, keeping school {} in memory only", schoolId);
+            buffer.put(offset + FLAGS_OFFSET, FLAG_DELETED);
+            return;
+        }
+        buffer.putLong(offset + SCHEMA_CONFIRMED_OFFSET, entry.schemaConfirmedAt());
+        buffer.putLong(offset + ACCESS_CONFIRMED_OFFSET, entry.accessConfirmedAt());
+        buffer.put(offset + FLAGS_OFFSET, entry.hasAccess() ? FLAG_ACCESS : 0);
+        buffer.put(offset + SCHEMA_LENGTH_OFFSET, (byte) schema.length);
+        buffer.put(offset + SCHEMA_OFFSET, schema);
+    }
+
+    private void load(int storedSlots) {
+        slotCount = Math.min(storedSlots, capacity);
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = slotOffset(slot);
+            UUID schoolId = new UUID(buffer.getLong(offset), buffer.getLong(offset + 8));
+            byte flags = buffer.get(offset + FLAGS_OFFSET);
+            int schemaLength = Math.min(buffer.get(offset + SCHEMA_LENGTH_OFFSET) & 0xFF, MAX_SCHEMA_BYTES);
+
+            if ((flags & FLAG_DELETED) != 0) {
+                freeSlots.push(slot);
+                continue;
+            }
+            slots.put(schoolId, slot);
+            byte[] schema = new byte[schemaLength];
+            buffer.get(offset + SCHEMA_OFFSET, schema);
+            entries.put(schoolId, new Entry(schemaLength > 0 ? new String(schema, StandardCharsets.UTF_8) : null,
+                    buffer.getLong(offset + SCHEMA_CONFIRMED_OFFSET), (flags & FLAG_ACCESS) != 0,
+                    buffer.getLong(offset + ACCESS_CONFIRMED_OFFSET)));
+        }
+    }
+
+    private void initHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT);
+        buffer.putInt(8, 0);
+        buffer.putLong(16, System.currentTimeMillis());
+        slotCount = 0;
+        freeSlots.clear();
+    }
+
+    private void map(int slotCapacity) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slotCapacity * SLOT_SIZE);
+        capacity = slotCapacity;
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private void closeQuietly() {
+        buffer = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Error closing tenant routing snapshot: {}", e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private record Entry(String schemaName, long schemaConfirmedAt, boolean hasAccess, long accessConfirmedAt) { }
+
+    public record SnapshotStats(boolean persistent, int routes, int slots, int freeSlots) { }
+}
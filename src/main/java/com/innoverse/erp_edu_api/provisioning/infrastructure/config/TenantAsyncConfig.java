@@ -0,0 +1,78 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
+
+import com.innoverse.erp_edu_api.provisioning.web.resolvers.TenantContextTaskDecorator;
+import org.springframework.boot.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Executors for background tenant work, one per workload so a long bulk migration never
+ * holds up provisioning, restores or cache warm-up. Each is a fixed pool with a small
+ * queue, or none, and turns work away once full instead of blocking the caller. With
+ * {@code spring.threads.virtual.enabled} the pool threads are virtual. Either way the
+ * caller's tenant is propagated. Scheduling is enabled here too, for the spare schema
+ * pool's replenisher and the provisioning queue's workers.
+ */
+@Configuration
+@EnableAsync
+@EnableScheduling
+public class TenantAsyncConfig {
+    // Restores waiting for a free thread; requests for a school not yet queued get a 503 and retry
+    private static final int RESTORE_QUEUE_CAPACITY = 16;
+
+    // The queue worker only claims as many jobs as it has threads, so nothing needs to wait
+    @Bean
+    public TaskExecutor provisioningTaskExecutor(Environment environment,
+                                                 TenantProvisioningQueueProperties properties) {
+        return executor(environment, "provisioning-", properties.getConcurrency(), 0,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Runs the job that coordinates a bulk migration; tenants are migrated on the runner's own pool
+    @Bean
+    public TaskExecutor tenantMigrationTaskExecutor(Environment environment) {
+        return executor(environment, "tenant-migration-", 1, 0, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Bean
+    public TaskExecutor provisionRepairTaskExecutor(Environment environment) {
+        return executor(environment, "provision-repair-", 1, 0, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Bean
+    public TaskExecutor tenantRestoreTaskExecutor(Environment environment, TenantHibernationProperties properties) {
+        return executor(environment, "tenant-restore-", properties.getRestoreConcurrency(), RESTORE_QUEUE_CAPACITY,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // A warm-up asked for while one is running is dropped; the running one covers it
+    @Bean
+    public TaskExecutor tenantCacheWarmUpTaskExecutor(Environment environment) {
+        return executor(environment, "tenant-cache-warm-up-", 1, 0, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    private static ThreadPoolTaskExecutor executor(Environment environment, String threadNamePrefix, int threads,
+                                                   int queueCapacity, RejectedExecutionHandler rejectionPolicy) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        if (Threading.VIRTUAL.isActive(environment)) {
+            executor.setThreadFactory(Thread.ofVirtual().name(threadNamePrefix, 1).factory());
+        }
+        // Core and max alike: a pool only grows past its core size once its queue is full
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(rejectionPolicy);
+        executor.setTaskDecorator(new TenantContextTaskDecorator());
+        executor.initialize();
+        return executor;
+    }
+}
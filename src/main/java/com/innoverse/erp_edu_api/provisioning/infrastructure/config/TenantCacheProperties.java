@@ -0,0 +1,38 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("cache.tenant")
+public class TenantCacheProperties {
+    // In-process (L1) cache sitting in front of Redis
+    private long localMaxSize = 10_000;
+    private Duration localTtl = Duration.ofSeconds(30);
+
+    // Lifetime of "no schema" / "no access" entries for unknown or unprovisioned schools
+    private Duration negativeTtl = Duration.ofSeconds(60);
+
+    // Bulk load of the school -> schema routing table at startup
+    private boolean warmUpEnabled = true;
+    private int warmUpBatchSize = 500;
+    private Duration warmUpLockTtl = Duration.ofMinutes(10);
+
+    // Local routing snapshot used while Redis is unreachable
+    private boolean snapshotEnabled = true;
+    private String snapshotPath = System.getProperty("java.io.tmpdir") + "/erp-edu-api/tenant-routing.snapshot";
+    private Duration snapshotMaxStaleness = Duration.ofHours(6);
+
+    // Circuit breaker around Redis calls
+    private int redisFailureThreshold = 5;
+    private Duration redisOpenDuration = Duration.ofSeconds(10);
+
+    // Redis pub/sub channel used to evict L1 entries on every node
+    private String invalidationChannel = "tenant:cache:invalidation";
+}
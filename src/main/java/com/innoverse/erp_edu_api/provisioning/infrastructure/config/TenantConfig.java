@@ -1,37 +1,219 @@
 package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.ratelimit.TenantRateLimiter;
 import com.innoverse.erp_edu_api.provisioning.services.DistributedTenantCache;
+import com.innoverse.erp_edu_api.provisioning.services.TenantHibernationService;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.ReplicaRouter;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantAdmissionController;
 import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantAwareDataSource;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantMaintenanceGate;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantShardRouter;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantStatementCache;
 import com.innoverse.erp_edu_api.provisioning.web.resolvers.TenantFilter;
 import com.innoverse.erp_edu_api.provisioning.web.resolvers.TenantHeaderResolver;
 import com.innoverse.erp_edu_api.provisioning.web.resolvers.TenantResolver;
 import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Configuration
-public class TenantConfig {
+public class TenantConfig implements DisposableBean {
+    // Built here and closed here: behind the lazy routing proxy Spring cannot infer their close methods
+    private final List<TenantAwareDataSource> tenantDataSources = new CopyOnWriteArrayList<>();
+    private final List<TenantShardRouter> shardRouters = new CopyOnWriteArrayList<>();
+    // The primary and replica pools, which neither the data sources nor the routers own
+    private final List<HikariDataSource> pools = new CopyOnWriteArrayList<>();
 
     @Bean
-    public DataSource dataSource(DataSourceProperties properties, TenantProperties tenantProperties) {
+    public DataSource dataSource(DataSourceProperties properties, TenantProperties tenantProperties,
+                                 TenantPoolProperties poolProperties, TenantReplicaProperties replicaProperties,
+                                 TenantShardProperties shardProperties) {
         HikariDataSource targetDataSource = properties.initializeDataSourceBuilder()
                 .type(HikariDataSource.class)
                 .build();
 
         targetDataSource.setPoolName("TenantAwarePool");
-        targetDataSource.setMaximumPoolSize(50);
+        pools.add(targetDataSource);
+        targetDataSource.setMaximumPoolSize(poolProperties.getMaximumPoolSize());
         targetDataSource.setMinimumIdle(10);
         targetDataSource.setConnectionTimeout(30000);
         targetDataSource.setIdleTimeout(600000);
         targetDataSource.setMaxLifetime(1800000);
         targetDataSource.setLeakDetectionThreshold(2000);
+        configureForSwitchMode(targetDataSource, tenantProperties);
 
-        return new TenantAwareDataSource(targetDataSource, tenantProperties);
+        TenantAdmissionController admissionController = poolProperties.isAdmissionEnabled()
+                ? new TenantAdmissionController(poolProperties, tenantProperties.getDefaultTenant())
+                : null;
+
+        TenantStatementCache statementCache = poolProperties.getStatementCacheSize() > 0
+                ? new TenantStatementCache(poolProperties.getStatementCacheSize())
+                : null;
+
+        TenantShardRouter shardRouter = new TenantShardRouter(targetDataSource,
+                buildClusterPools(properties, tenantProperties, shardProperties),
+                tenantProperties.getDefaultTenant());
+        shardRouters.add(shardRouter);
+
+        if (!replicaProperties.isEnabled()) {
+            TenantAwareDataSource dataSource = new TenantAwareDataSource(targetDataSource, tenantProperties,
+                    admissionController, buildDedicatedPools(properties, tenantProperties, poolProperties));
+            dataSource.setStatementCache(statementCache);
+            dataSource.setShardRouter(shardRouter);
+            dataSource.setShardAdmissionControllers(buildShardAdmission(tenantProperties, poolProperties,
+                    shardProperties));
+            tenantDataSources.add(dataSource);
+            return dataSource;
+        }
+
+        TenantAwareDataSource replica = buildReplicaDataSource(properties, tenantProperties, poolProperties,
+                replicaProperties);
+        replica.setStatementCache(statementCache);
+        ReplicaRouter replicaRouter = new ReplicaRouter(replica, replicaProperties);
+        TenantAwareDataSource primary = new TenantAwareDataSource(targetDataSource, tenantProperties,
+                admissionController, buildDedicatedPools(properties, tenantProperties, poolProperties), replicaRouter);
+        primary.setStatementCache(statementCache);
+        primary.setShardRouter(shardRouter);
+        primary.setShardAdmissionControllers(buildShardAdmission(tenantProperties, poolProperties, shardProperties));
+        tenantDataSources.add(primary);
+
+        // The lazy proxy defers checkout until the first statement, by which point the
+        // transaction's read-only flag is known and selects the replica view
+        LazyConnectionDataSourceProxy routingDataSource = new LazyConnectionDataSourceProxy(primary);
+        routingDataSource.setReadOnlyDataSource(primary.readOnlyView());
+        routingDataSource.setDefaultAutoCommit(true);
+        routingDataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return routingDataSource;
+    }
+
+    private TenantAwareDataSource buildReplicaDataSource(DataSourceProperties properties,
+                                                        TenantProperties tenantProperties,
+                                                        TenantPoolProperties poolProperties,
+                                                        TenantReplicaProperties replicaProperties) {
+        HikariDataSource replicaPool = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(replicaProperties.getUrl())
+                .username(replicaProperties.getUsername() != null
+                        ? replicaProperties.getUsername() : properties.determineUsername())
+                .password(replicaProperties.getPassword() != null
+                        ? replicaProperties.getPassword() : properties.determinePassword())
+                .build();
+
+        replicaPool.setPoolName("TenantAwareReplicaPool");
+        pools.add(replicaPool);
+        replicaPool.setMaximumPoolSize(replicaProperties.getMaximumPoolSize());
+        replicaPool.setMinimumIdle(Math.min(5, replicaProperties.getMaximumPoolSize()));
+        replicaPool.setConnectionTimeout(5000);
+        replicaPool.setIdleTimeout(600000);
+        replicaPool.setMaxLifetime(1800000);
+        replicaPool.setReadOnly(true);
+        configureForSwitchMode(replicaPool, tenantProperties);
+
+        TenantAdmissionController replicaAdmission = poolProperties.isAdmissionEnabled()
+                ? new TenantAdmissionController(poolProperties, tenantProperties.getDefaultTenant(),
+                        replicaProperties.getMaximumPoolSize())
+                : null;
+        TenantAwareDataSource replica = new TenantAwareDataSource(replicaPool, tenantProperties, replicaAdmission,
+                Map.of());
+        tenantDataSources.add(replica);
+        return replica;
+    }
+
+    // One pool per additional cluster; tenants placed there are bound to their schema as on the primary
+    private Map<String, DataSource> buildClusterPools(DataSourceProperties properties,
+                                                     TenantProperties tenantProperties,
+                                                     TenantShardProperties shardProperties) {
+        Map<String, DataSource> clusterPools = new HashMap<>();
+        shardProperties.getClusters().forEach((shardId, cluster) -> {
+            HikariDataSource pool = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .driverClassName(properties.determineDriverClassName())
+                    .url(cluster.getUrl())
+                    .username(cluster.getUsername() != null ? cluster.getUsername() : properties.determineUsername())
+                    .password(cluster.getPassword() != null ? cluster.getPassword() : properties.determinePassword())
+                    .build();
+
+            pool.setPoolName("TenantAwarePool-shard-" + shardId);
+            pool.setMaximumPoolSize(cluster.getMaximumPoolSize());
+            pool.setMinimumIdle(Math.min(5, cluster.getMaximumPoolSize()));
+            pool.setConnectionTimeout(30000);
+            pool.setIdleTimeout(600000);
+            pool.setMaxLifetime(1800000);
+            pool.setLeakDetectionThreshold(2000);
+            configureForSwitchMode(pool, tenantProperties);
+
+            clusterPools.put(shardId, pool);
+        });
+        return clusterPools;
+    }
+
+    // Each cluster admits up to its own pool size; the primary's controller is sized to the primary pool
+    private Map<String, TenantAdmissionController> buildShardAdmission(TenantProperties tenantProperties,
+                                                                       TenantPoolProperties poolProperties,
+                                                                       TenantShardProperties shardProperties) {
+        Map<String, TenantAdmissionController> controllers = new HashMap<>();
+        if (poolProperties.isAdmissionEnabled()) {
+            shardProperties.getClusters().forEach((shardId, cluster) -> controllers.put(shardId,
+                    new TenantAdmissionController(poolProperties, tenantProperties.getDefaultTenant(),
+                            cluster.getMaximumPoolSize())));
+        }
+        return controllers;
+    }
+
+    // Designated large tenants get their own sub-pool and bypass the shared admission layer
+    private Map<String, DataSource> buildDedicatedPools(DataSourceProperties properties,
+                                                       TenantProperties tenantProperties,
+                                                       TenantPoolProperties poolProperties) {
+        Map<String, DataSource> dedicatedPools = new HashMap<>();
+        poolProperties.getDedicatedPools().forEach((schema, size) -> {
+            HikariDataSource pool = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .build();
+
+            pool.setPoolName("TenantAwarePool-" + schema);
+            pool.setMaximumPoolSize(size);
+            pool.setMinimumIdle(Math.min(2, size));
+            pool.setConnectionTimeout(30000);
+            pool.setIdleTimeout(600000);
+            pool.setMaxLifetime(1800000);
+            pool.setLeakDetectionThreshold(2000);
+            configureForSwitchMode(pool, tenantProperties);
+
+            dedicatedPools.put(schema, pool);
+        });
+        return dedicatedPools;
+    }
+
+    // A transaction pooler may run each transaction on a different backend, where a statement the driver
+    // prepared server-side does not exist. prepareThreshold on the JDBC URL still wins over this, for
+    // PgBouncer 1.21+ with max_prepared_statements set, which tracks prepared statements itself.
+    private static void configureForSwitchMode(HikariDataSource pool, TenantProperties tenantProperties) {
+        if (tenantProperties.getSwitchMode() == TenantProperties.SchemaSwitchMode.TRANSACTION) {
+            pool.addDataSourceProperty("prepareThreshold", "0");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        tenantDataSources.forEach(TenantAwareDataSource::close);
+        shardRouters.forEach(TenantShardRouter::close);
+        pools.forEach(HikariDataSource::close);
     }
 
     @Bean
@@ -40,12 +222,29 @@ public class TenantConfig {
     }
 
     @Bean
-    public TenantFilter tenantFilter(TenantResolver tenantResolver) {
-        return new TenantFilter(tenantResolver);
+    public TenantRateLimiter tenantRateLimiter(TenantRateLimitProperties rateLimitProperties,
+                                               TenantProperties tenantProperties,
+                                               RedisTemplate<String, String> redisTemplate) {
+        return new TenantRateLimiter(rateLimitProperties, tenantProperties.getDefaultTenant(), redisTemplate);
+    }
+
+    @Bean
+    public TenantMaintenanceGate tenantMaintenanceGate(TenantMaintenanceProperties maintenanceProperties) {
+        return new TenantMaintenanceGate(maintenanceProperties);
+    }
+
+    @Bean
+    public TenantFilter tenantFilter(TenantResolver tenantResolver, TenantRateLimitProperties rateLimitProperties,
+                                     TenantRateLimiter tenantRateLimiter,
+                                     TenantMaintenanceProperties maintenanceProperties,
+                                     TenantMaintenanceGate maintenanceGate, ObjectMapper objectMapper) {
+        return new TenantFilter(tenantResolver, rateLimitProperties.isEnabled() ? tenantRateLimiter : null,
+                maintenanceProperties.isEnabled() ? maintenanceGate : null, objectMapper);
     }
 
     @Bean
-    public TenantResolver tenantResolver(TenantProperties tenantProperties, DistributedTenantCache cache) {
-        return new TenantHeaderResolver(tenantProperties, cache);
+    public TenantResolver tenantResolver(TenantProperties tenantProperties, DistributedTenantCache cache,
+                                         TenantHibernationService hibernationService) {
+        return new TenantHeaderResolver(tenantProperties, cache, hibernationService);
     }
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "tenant.hibernation")
+@Getter
+@Setter
+public class TenantHibernationProperties {
+    // Off by default: hibernating drops the schema, keeping only its archive file
+    private boolean enabled = false;
+
+    // Schemas of assigned schools with no request for this long are archived and dropped
+    private Duration idleAfter = Duration.ofDays(30);
+    private Duration sweepInterval = Duration.ofHours(1);
+    private int maxPerSweep = 10;
+
+    // A schema whose writes cannot be held within this time is skipped until the next sweep
+    private Duration lockTimeout = Duration.ofSeconds(5);
+
+    // Must be durable, and shared by every node, since any node may restore a schema
+    private String archiveDirectory = "var/tenant-archives";
+
+    // How often each node writes the last request time of its tenants to the registry
+    private Duration accessFlushInterval = Duration.ofMinutes(1);
+
+    // A request for a hibernated school waits this long for the restore before a 503
+    private Duration restoreWait = Duration.ofSeconds(3);
+    private Duration retryAfter = Duration.ofSeconds(5);
+
+    // Restores this node runs at once, on threads of their own
+    private int restoreConcurrency = 2;
+
+    // A restore not finished in this time is taken to have lost its node and may be taken over
+    private Duration restoreTimeout = Duration.ofMinutes(30);
+}
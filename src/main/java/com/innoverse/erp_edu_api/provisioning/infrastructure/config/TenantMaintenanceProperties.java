@@ -0,0 +1,40 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "tenant.maintenance")
+@Getter
+@Setter
+public class TenantMaintenanceProperties {
+    // Bulk migrations close each behind tenant's gate while it is migrated
+    private boolean enabled = true;
+
+    // A new request for a tenant under maintenance waits this long, then gets a 503 with Retry-After
+    private Duration holdTimeout = Duration.ofSeconds(2);
+    private Duration retryAfter = Duration.ofSeconds(5);
+
+    // In-flight requests, and other nodes' open transactions on the schema, are waited for this long
+    private Duration drainTimeout = Duration.ofSeconds(10);
+
+    // Guards on every statement of the migration; a lock timeout rolls the script back and retries it
+    private Duration lockTimeout = Duration.ofSeconds(5);
+    private Duration statementTimeout = Duration.ofMinutes(10);
+    private int lockRetries = 3;
+
+    // Other nodes keep a tenant's gate closed only while its closure key lives in Redis. The
+    // migrating node renews the key; once it lapses, e.g. after that node died, they reopen
+    private Duration closureTtl = Duration.ofSeconds(30);
+    private Duration closureRenewInterval = Duration.ofSeconds(10);
+
+    // How often a node holding requests at a gate another node closed checks the closure key
+    private Duration closureCheckInterval = Duration.ofSeconds(1);
+
+    // Finished maintenance windows kept in memory for reporting
+    private int retainedWindows = 50;
+}
@@ -0,0 +1,23 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "tenant.migration.runner")
+@Getter
+@Setter
+public class TenantMigrationProperties {
+    // Tenants migrated at the same time by a bulk migration job
+    private int concurrency = 4;
+    // Also set as each migration statement's statement_timeout, so the database ends a stuck tenant
+    private Duration tenantTimeout = Duration.ofMinutes(15);
+    private Duration lockTimeout = Duration.ofMinutes(1);
+
+    // Finished jobs kept in memory for progress queries
+    private int retainedJobs = 20;
+}
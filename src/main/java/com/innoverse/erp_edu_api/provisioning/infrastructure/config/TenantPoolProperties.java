@@ -0,0 +1,33 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("multitenancy.pool")
+public class TenantPoolProperties {
+    private int maximumPoolSize = 50;
+
+    // Admission layer in front of the shared pool
+    private boolean admissionEnabled = true;
+    private int maxConnectionsPerTenant = 10;
+    private Duration acquireTimeout = Duration.ofSeconds(10);
+
+    // Fair-share weight per schema, tenants not listed get the default
+    private int defaultWeight = 1;
+    private Map<String, Integer> weights = new HashMap<>();
+
+    // Schema -> size of a dedicated sub-pool for designated large tenants
+    private Map<String, Integer> dedicatedPools = new HashMap<>();
+
+    // Prepared statements kept per physical connection, keyed by schema and SQL; 0 disables the cache
+    private int statementCacheSize = 0;
+}
@@ -15,4 +15,12 @@ public class TenantProperties {
     private String defaultTenant = "public";
     private boolean autoCreateSchema = true;
     private boolean createTenantRoles = true;
+
+    // SESSION: SET search_path per checkout. TRANSACTION: SET LOCAL per transaction, safe behind PgBouncer transaction pooling;
+    // it also turns off server-side prepares (prepareThreshold=0) unless the JDBC URL sets prepareThreshold itself
+    private SchemaSwitchMode switchMode = SchemaSwitchMode.SESSION;
+
+    public enum SchemaSwitchMode {
+        SESSION, TRANSACTION
+    }
 }
@@ -0,0 +1,30 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "tenant.provisioning-queue")
+@Getter
+@Setter
+public class TenantProvisioningQueueProperties {
+    private boolean enabled = true;
+
+    // Jobs this node runs at once; total throughput grows with the number of nodes
+    private int concurrency = 2;
+    private Duration pollInterval = Duration.ofSeconds(2);
+
+    // A job whose lease is not renewed in time is taken to have lost its node and is re-queued
+    private Duration leaseDuration = Duration.ofMinutes(2);
+    private Duration heartbeatInterval = Duration.ofSeconds(30);
+    private Duration reapInterval = Duration.ofMinutes(1);
+
+    // Counted on the provision's attempts; retries back off exponentially up to the maximum
+    private int maxAttempts = 5;
+    private Duration initialBackoff = Duration.ofSeconds(30);
+    private Duration maxBackoff = Duration.ofMinutes(30);
+}
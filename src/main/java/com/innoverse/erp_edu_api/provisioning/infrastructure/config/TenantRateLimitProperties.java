@@ -0,0 +1,33 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("multitenancy.rate-limit")
+public class TenantRateLimitProperties {
+    private boolean enabled = true;
+
+    // Per-tenant token bucket, tenants not listed in limits get the defaults
+    private int requestsPerSecond = 50;
+    private int burst = 100;
+    private Map<String, Integer> limits = new HashMap<>();
+
+    // Requests that resolve to no school (no header, unknown or invalid id) share one bucket at this rate
+    private int unresolvedRequestsPerSecond = 50;
+
+    // Global in-flight cap; tenant routes may only use what is left after the platform reserve
+    private int maxConcurrentRequests = 200;
+    private int platformReserved = 20;
+    private String platformPathPrefix = "/api/platform";
+
+    // Optional budget shared by all nodes through Redis, 0 disables it
+    private int sharedRequestsPerSecond = 0;
+}
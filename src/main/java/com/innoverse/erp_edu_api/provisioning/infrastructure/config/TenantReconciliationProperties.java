@@ -0,0 +1,18 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "tenant.reconciliation")
+@Getter
+@Setter
+public class TenantReconciliationProperties {
+    // Schemas dropped or roles restored per database round trip by a repair job
+    private int batchSize = 50;
+
+    // Finished repair jobs kept in memory for progress queries
+    private int retainedJobs = 20;
+}
@@ -0,0 +1,31 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("multitenancy.replica")
+public class TenantReplicaProperties {
+    private boolean enabled = false;
+
+    // Credentials fall back to spring.datasource when not set
+    private String url;
+    private String username;
+    private String password;
+    private int maximumPoolSize = 20;
+
+    // Reads of a tenant that committed a write within this window stay on the primary
+    private Duration readYourWritesWindow = Duration.ofSeconds(5);
+    // Marks writes in Redis so the window holds on every node; off, it holds for the writing node only
+    private boolean sharedWriteMarkers = true;
+
+    // Replica is bypassed while its replay lag exceeds this
+    private Duration maxLag = Duration.ofSeconds(2);
+    private Duration lagProbeInterval = Duration.ofSeconds(5);
+}
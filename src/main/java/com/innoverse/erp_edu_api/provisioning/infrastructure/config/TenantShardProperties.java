@@ -0,0 +1,45 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("multitenancy.shards")
+public class TenantShardProperties {
+    // Clusters besides the primary (spring.datasource), keyed by shard id. Empty = single cluster
+    private Map<String, Cluster> clusters = new LinkedHashMap<>();
+
+    // Fair-share weight of the primary when placing new schemas; 0 keeps new schemas off it
+    private double primaryWeight = 1.0;
+
+    // How long a move waits for in-flight writes before it gives up on freezing the tenant
+    private Duration moveLockTimeout = Duration.ofSeconds(10);
+    private int moveBatchSize = 1000;
+
+    // How long a moved tenant's source copy is kept; must outlast the local shard cache TTL
+    private Duration retiredRetention = Duration.ofMinutes(10);
+
+    @Getter
+    @Setter
+    public static class Cluster {
+        // Credentials fall back to spring.datasource when not set
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 20;
+
+        // Relative capacity; the least-loaded shard is the one with the fewest schemas per unit of weight
+        private double weight = 1.0;
+
+        // A draining shard keeps serving its tenants but receives no new schemas
+        private boolean acceptingTenants = true;
+    }
+}
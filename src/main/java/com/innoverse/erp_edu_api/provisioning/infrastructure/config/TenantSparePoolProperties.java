@@ -0,0 +1,27 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
+
+import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "tenant.spare-pool")
+@Getter
+@Setter
+public class TenantSparePoolProperties {
+    private boolean enabled = false;
+
+    // Ready, unassigned schemas to keep per academic level
+    private Map<AcademicLevel, Integer> targets = new EnumMap<>(AcademicLevel.class);
+
+    // Refill rate: at most this many spares provisioned per level on each run
+    private int maxCreatedPerRun = 2;
+    private Duration refillInterval = Duration.ofSeconds(30);
+    private Duration lockTtl = Duration.ofMinutes(10);
+}
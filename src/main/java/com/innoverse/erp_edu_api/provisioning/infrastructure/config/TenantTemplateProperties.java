@@ -0,0 +1,15 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "tenant.migration.template")
+@Getter
+@Setter
+public class TenantTemplateProperties {
+    // Provision new tenants by cloning a migrated template schema per academic level
+    private boolean enabled = false;
+}
@@ -0,0 +1,165 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantReplicaProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether a read-only connection may be served by the replica. A tenant is
+ * kept on the primary for a short window after it commits a write, and every tenant
+ * is while the replica is unreachable or lagging past the threshold. Lag is sampled
+ * lazily, at most once per probe interval, by whichever caller finds it stale.
+ *
+ * <p>Writes are marked on this node and, with shared markers set, for every node, so a
+ * read landing on another node than the write honours the window too. Checking the
+ * shared markers costs a round trip per replica read not already held back locally.
+ * While they cannot be reached the window holds for writes made on this node only.
+ */
+@Slf4j
+public class ReplicaRouter {
+    private static final String LAG_QUERY =
+            "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    private final TenantAwareDataSource replica;
+    private final DataSource replicaPool;
+    private final long readYourWritesNanos;
+    private final long maxLagMillis;
+    private final long probeIntervalNanos;
+
+    private final Map<String, Long> lastWriteNanos = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastSharedMarkNanos = new ConcurrentHashMap<>();
+    private volatile SharedWriteMarkers sharedMarkers;
+    private final AtomicLong nextProbeAt = new AtomicLong(System.nanoTime());
+    private volatile long lagMillis;
+    private volatile boolean reachable = true;
+
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder recentWriteFallbacks = new LongAdder();
+    private final LongAdder lagFallbacks = new LongAdder();
+    private final LongAdder errorFallbacks = new LongAdder();
+
+    public ReplicaRouter(TenantAwareDataSource replica, TenantReplicaProperties replicaProperties) {
+        this.replica = replica;
+        this.replicaPool = replica.getTargetDataSource();
+        this.readYourWritesNanos = replicaProperties.getReadYourWritesWindow().toNanos();
+        this.maxLagMillis = replicaProperties.getMaxLag().toMillis();
+        this.probeIntervalNanos = replicaProperties.getLagProbeInterval().toNanos();
+    }
+
+    public void setSharedWriteMarkers(SharedWriteMarkers sharedMarkers) {
+        this.sharedMarkers = sharedMarkers;
+    }
+
+    /**
+     * Returns a replica connection bound to the schema, or null when the read must
+     * go to the primary instead.
+     */
+    Connection tryReplica(String schema) {
+        Long lastWrite = lastWriteNanos.get(schema);
+        if ((lastWrite != null && System.nanoTime() - lastWrite < readYourWritesNanos) || markedElsewhere(schema)) {
+            recentWriteFallbacks.increment();
+            return null;
+        }
+        if (!replicaUsable()) {
+            lagFallbacks.increment();
+            return null;
+        }
+
+        try {
+            Connection connection = replica.getConnection();
+            replicaReads.increment();
+            return connection;
+        } catch (SQLException e) {
+            log.warn("Replica unavailable for schema {}, falling back to primary: {}", schema, e.getMessage());
+            reachable = false;
+            errorFallbacks.increment();
+            return null;
+        }
+    }
+
+    void recordWrite(String schema) {
+        long now = System.nanoTime();
+        lastWriteNanos.put(schema, now);
+
+        // Marked for half a window more than needed, so a write within half a window of the last mark is covered
+        SharedWriteMarkers markers = sharedMarkers;
+        Long lastMark = lastSharedMarkNanos.get(schema);
+        if (markers == null || (lastMark != null && now - lastMark < readYourWritesNanos / 2)) {
+            return;
+        }
+        try {
+            markers.mark(schema, Duration.ofNanos(readYourWritesNanos + readYourWritesNanos / 2));
+            lastSharedMarkNanos.put(schema, now);
+        } catch (RuntimeException e) {
+            log.debug("Could not share the write marker of schema {}: {}", schema, e.getMessage());
+        }
+    }
+
+    private boolean markedElsewhere(String schema) {
+        SharedWriteMarkers markers = sharedMarkers;
+        if (markers == null) {
+            return false;
+        }
+        try {
+            return markers.isMarked(schema);
+        } catch (RuntimeException e) {
+            log.debug("Could not read the shared write marker of schema {}: {}", schema, e.getMessage());
+            return false;
+        }
+    }
+
+    public ReplicaRoutingStats getStats() {
+        return new ReplicaRoutingStats(replicaReads.sum(), recentWriteFallbacks.sum(), lagFallbacks.sum(),
+                errorFallbacks.sum(), lagMillis, reachable);
+    }
+
+    private boolean replicaUsable() {
+        long now = System.nanoTime();
+        long next = nextProbeAt.get();
+        if (now - next >= 0 && nextProbeAt.compareAndSet(next, now + probeIntervalNanos)) {
+            probeLag();
+        }
+        return reachable && lagMillis <= maxLagMillis;
+    }
+
+    private void probeLag() {
+        try (Connection conn = replicaPool.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.setQueryTimeout(1);
+            try (ResultSet rs = stmt.executeQuery(LAG_QUERY)) {
+                lagMillis = rs.next() ? rs.getLong(1) : 0;
+            }
+            reachable = true;
+            if (lagMillis > maxLagMillis) {
+                log.warn("Replica lag {}ms exceeds {}ms, routing reads to primary", lagMillis, maxLagMillis);
+            }
+        } catch (SQLException e) {
+            log.warn("Replica lag probe failed, routing reads to primary: {}", e.getMessage());
+            reachable = false;
+        }
+    }
+
+    /**
+     * Write markers visible to every node. Either method may throw when the store is
+     * unavailable; the router then goes by this node's own markers.
+     */
+    public interface SharedWriteMarkers {
+        void mark(String schema, Duration ttl);
+
+        boolean isMarked(String schema);
+    }
+
+    public record ReplicaRoutingStats(long replicaReads, long recentWriteFallbacks, long lagFallbacks,
+                                      long errorFallbacks, long lagMillis, boolean replicaReachable) { }
+}
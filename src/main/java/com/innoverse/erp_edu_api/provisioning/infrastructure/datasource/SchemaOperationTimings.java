@@ -0,0 +1,70 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and times the schema and tenant role operations of the data source, so the
+ * cost of provisioning and deprovisioning a tenant can be watched over time.
+ */
+public class SchemaOperationTimings {
+    private final Map<Operation, Timer> timers = new EnumMap<>(Operation.class);
+
+    public SchemaOperationTimings() {
+        for (Operation operation : Operation.values()) {
+            timers.put(operation, new Timer());
+        }
+    }
+
+    void time(Operation operation, SqlRunnable work) throws SQLException {
+        Timer timer = timers.get(operation);
+        long start = System.nanoTime();
+        try {
+            work.run();
+        } catch (SQLException | RuntimeException e) {
+            timer.failures.increment();
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            timer.count.increment();
+            timer.totalNanos.add(elapsed);
+            timer.maxNanos.accumulate(elapsed);
+        }
+    }
+
+    public List<OperationStats> getStats() {
+        return Arrays.stream(Operation.values())
+                .map(operation -> timers.get(operation).stats(operation))
+                .toList();
+    }
+
+    private static final class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private OperationStats stats(Operation operation) {
+            long calls = count.sum();
+            double averageMillis = calls > 0 ? totalNanos.sum() / 1_000_000.0 / calls : 0;
+            return new OperationStats(operation, calls, failures.sum(), averageMillis, maxNanos.get() / 1_000_000.0);
+        }
+    }
+
+    public enum Operation {
+        PROVISION, PROVISION_FROM_TEMPLATE, DEPROVISION, ASSIGN, UNASSIGN
+    }
+
+    @FunctionalInterface
+    interface SqlRunnable {
+        void run() throws SQLException;
+    }
+
+    public record OperationStats(Operation operation, long count, long failures, double averageMillis,
+                                 double maxMillis) { }
+}
@@ -0,0 +1,128 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Remembers the search_path each physical connection was last switched to, so a
+ * pooled checkout that lands on a connection already bound to the tenant skips
+ * the SET round trip. Entries are weakly keyed by the physical connection, so
+ * connections evicted from the pool drop out on their own. The map is guarded by a
+ * ReentrantLock rather than a monitor so virtual threads are never pinned on it. SQL
+ * run through a bound connection that may move the search_path, see
+ * {@link #mayChangeSearchPath}, drops the connection's entry.
+ */
+@Slf4j
+public class SchemaSwitchTracker {
+    // SET/RESET search_path, set_config('search_path', ...), RESET ALL and DISCARD ALL
+    private static final Pattern SEARCH_PATH_CHANGE = Pattern.compile(
+            "search_path|\\breset\\s+all\\b|\\bdiscard\\s+all\\b", Pattern.CASE_INSENSITIVE);
+
+    private final Map<Connection, String> currentSchemas = new WeakHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder switchesPerformed = new LongAdder();
+    private final LongAdder switchesSaved = new LongAdder();
+
+    /**
+     * Points the connection at the given schema, issuing SET only when the
+     * underlying physical connection is on a different one. The release callback
+     * runs once the returned connection is closed. The statement cache may be null.
+     */
+    public Connection bind(Connection connection, String schema, TenantStatementCache statementCache,
+                           Runnable onRelease) throws SQLException {
+        Connection physical = physicalConnection(connection);
+
+        if (schema.equals(currentSchema(physical))) {
+            switchesSaved.increment();
+        } else {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("SET search_path TO \"" + schema + "\", public");
+            } catch (SQLException e) {
+                forget(physical);
+                throw e;
+            }
+            switchesPerformed.increment();
+
+            // A SET inside an open transaction is undone on rollback, so only trust committed ones
+            if (connection.getAutoCommit()) {
+                remember(physical, schema);
+            } else {
+                forget(physical);
+            }
+        }
+        return TenantConnectionHandler.wrap(connection, physical, schema, this, statementCache, onRelease);
+    }
+
+    /**
+     * Forgets what is known about a physical connection so the next checkout re-issues SET.
+     */
+    public void forget(Connection physical) {
+        lock.lock();
+        try {
+            currentSchemas.remove(physical);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether running the SQL may leave the session on another search_path. Errs on the
+     * side of yes, since a false match only costs the next checkout one SET.
+     */
+    public static boolean mayChangeSearchPath(String sql) {
+        return sql != null && SEARCH_PATH_CHANGE.matcher(sql).find();
+    }
+
+    public SchemaSwitchStats getStats() {
+        lock.lock();
+        try {
+            return new SchemaSwitchStats(switchesPerformed.sum(), switchesSaved.sum(), currentSchemas.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String currentSchema(Connection physical) {
+        lock.lock();
+        try {
+            return currentSchemas.get(physical);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remember(Connection physical, String schema) {
+        lock.lock();
+        try {
+            currentSchemas.put(physical, schema);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Connection physicalConnection(Connection connection) {
+        try {
+            if (connection.isWrapperFor(Connection.class)) {
+                return connection.unwrap(Connection.class);
+            }
+        } catch (SQLException e) {
+            log.debug("Could not unwrap pooled connection, tracking the proxy instead: {}", e.getMessage());
+        }
+        return connection;
+    }
+
+    public record SchemaSwitchStats(long switchesPerformed, long switchesSaved, int trackedConnections) {
+        public double getSavedRatio() {
+            long total = switchesPerformed + switchesSaved;
+            return total > 0 ? (double) switchesSaved / total * 100 : 0;
+        }
+    }
+}
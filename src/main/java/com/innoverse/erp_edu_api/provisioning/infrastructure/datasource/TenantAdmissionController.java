@@ -0,0 +1,222 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantPoolProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission layer in front of the shared tenant pool. Each tenant may hold at most
+ * {@code maxConnectionsPerTenant} connections, and when the pool is saturated waiters
+ * are served in weighted-fair order (start-time fair queuing on a virtual clock),
+ * so a single busy school cannot starve the others.
+ */
+@Slf4j
+public class TenantAdmissionController {
+    private final int totalPermits;
+    private final int maxPerTenant;
+    private final long acquireTimeoutNanos;
+    private final TenantPoolProperties poolProperties;
+    private final String exemptTenant;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+            Comparator.comparingDouble(Waiter::tag).thenComparingLong(Waiter::sequence));
+    private final Map<String, TenantState> tenants = new ConcurrentHashMap<>();
+
+    // Guarded by lock
+    private int available;
+    private double virtualTime;
+    private long sequence;
+
+    public TenantAdmissionController(TenantPoolProperties poolProperties, String exemptTenant) {
+        this(poolProperties, exemptTenant, poolProperties.getMaximumPoolSize());
+    }
+
+    public TenantAdmissionController(TenantPoolProperties poolProperties, String exemptTenant, int totalPermits) {
+        this.poolProperties = poolProperties;
+        this.totalPermits = totalPermits;
+        this.maxPerTenant = poolProperties.getMaxConnectionsPerTenant();
+        this.acquireTimeoutNanos = poolProperties.getAcquireTimeout().toNanos();
+        this.exemptTenant = exemptTenant;
+        this.available = totalPermits;
+    }
+
+    /**
+     * Blocks until the tenant is admitted or the acquire timeout elapses. The returned
+     * runnable must be called exactly once to hand the permit back.
+     */
+    public Runnable acquire(String tenant) throws SQLException {
+        TenantState state = tenants.computeIfAbsent(tenant, this::newTenantState);
+        long start = System.nanoTime();
+
+        lock.lock();
+        try {
+            // Waiters still queued while permits are free are all capped, so admitting here is fair
+            if (canAdmit(state)) {
+                admit(state);
+                state.recordWait(0);
+                return () -> release(state);
+            }
+
+            Waiter waiter = new Waiter(state, Math.max(virtualTime, state.lastTag) + 1.0 / state.weight,
+                    sequence++, lock.newCondition());
+            state.lastTag = waiter.tag();
+            state.waiting++;
+            waiters.add(waiter);
+
+            long remaining = acquireTimeoutNanos;
+            try {
+                while (!waiter.granted) {
+                    if (remaining <= 0) {
+                        waiters.remove(waiter);
+                        state.timeouts.increment();
+                        throw new SQLTransientConnectionException(
+                                "Tenant '" + tenant + "' could not be admitted to the connection pool within "
+                                        + TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos) + "ms");
+                    }
+                    remaining = waiter.condition().awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (waiter.granted) {
+                    releaseLocked(state);
+                } else {
+                    waiters.remove(waiter);
+                }
+                throw new SQLTransientConnectionException("Interrupted while waiting for tenant admission", e);
+            } finally {
+                state.waiting--;
+            }
+
+            state.recordWait(System.nanoTime() - start);
+            return () -> release(state);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<TenantAdmissionStats> getStats() {
+        return tenants.values().stream()
+                .map(TenantState::snapshot)
+                .sorted(Comparator.comparing(TenantAdmissionStats::tenant))
+                .toList();
+    }
+
+    private void release(TenantState state) {
+        lock.lock();
+        try {
+            releaseLocked(state);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseLocked(TenantState state) {
+        state.inUse--;
+        available++;
+        dispatch();
+    }
+
+    // Grants free permits to waiters in tag order, skipping tenants already at their cap
+    private void dispatch() {
+        List<Waiter> skipped = new ArrayList<>();
+        while (available > 0 && !waiters.isEmpty()) {
+            Waiter next = waiters.poll();
+            if (!canAdmit(next.state())) {
+                skipped.add(next);
+                continue;
+            }
+            admit(next.state());
+            virtualTime = Math.max(virtualTime, next.tag());
+            next.granted = true;
+            next.condition().signal();
+        }
+        waiters.addAll(skipped);
+    }
+
+    private boolean canAdmit(TenantState state) {
+        return available > 0 && (state.exempt || state.inUse < maxPerTenant);
+    }
+
+    private void admit(TenantState state) {
+        available--;
+        state.inUse++;
+    }
+
+    private TenantState newTenantState(String tenant) {
+        int weight = Math.max(1, poolProperties.getWeights().getOrDefault(tenant, poolProperties.getDefaultWeight()));
+        return new TenantState(tenant, weight, tenant.equals(exemptTenant));
+    }
+
+    private static final class Waiter {
+        private final TenantState state;
+        private final double tag;
+        private final long sequence;
+        private final Condition condition;
+        private boolean granted;
+
+        private Waiter(TenantState state, double tag, long sequence, Condition condition) {
+            this.state = state;
+            this.tag = tag;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+
+        TenantState state() { return state; }
+        double tag() { return tag; }
+        long sequence() { return sequence; }
+        Condition condition() { return condition; }
+    }
+
+    private static final class TenantState {
+        private final String tenant;
+        private final int weight;
+        private final boolean exempt;
+
+        // Guarded by the controller lock
+        private int inUse;
+        private int waiting;
+        private double lastTag;
+
+        private final LongAdder acquisitions = new LongAdder();
+        private final LongAdder totalWaitNanos = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private volatile long maxWaitNanos;
+
+        private TenantState(String tenant, int weight, boolean exempt) {
+            this.tenant = tenant;
+            this.weight = weight;
+            this.exempt = exempt;
+        }
+
+        private void recordWait(long waitNanos) {
+            acquisitions.increment();
+            totalWaitNanos.add(waitNanos);
+            if (waitNanos > maxWaitNanos) {
+                maxWaitNanos = waitNanos;
+            }
+        }
+
+        private TenantAdmissionStats snapshot() {
+            long count = acquisitions.sum();
+            double avgWaitMs = count > 0 ? totalWaitNanos.sum() / 1_000_000.0 / count : 0;
+            return new TenantAdmissionStats(tenant, weight, inUse, waiting, count, timeouts.sum(),
+                    avgWaitMs, maxWaitNanos / 1_000_000.0);
+        }
+    }
+
+    public record TenantAdmissionStats(String tenant, int weight, int inUse, int waiting, long acquisitions,
+                                       long timeouts, double avgWaitMs, double maxWaitMs) { }
+}
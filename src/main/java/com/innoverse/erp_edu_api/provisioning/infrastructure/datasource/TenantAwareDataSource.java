@@ -4,43 +4,250 @@ import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantProper
 import com.innoverse.erp_edu_api.provisioning.web.resolvers.TenantContext;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
 import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 public class TenantAwareDataSource extends DelegatingDataSource {
     private final TenantProperties tenantProperties;
+    private final SchemaSwitchTracker schemaSwitchTracker = new SchemaSwitchTracker();
+    private final TenantAdmissionController admissionController;
+    private final Map<String, DataSource> dedicatedPools;
+    private final ReplicaRouter replicaRouter;
+    private final SchemaOperationTimings operationTimings = new SchemaOperationTimings();
+    private TenantStatementCache statementCache;
+    private TenantShardRouter shardRouter;
+    private Map<String, TenantAdmissionController> shardAdmissionControllers = Map.of();
 
     public TenantAwareDataSource(DataSource targetDataSource, TenantProperties tenantProperties) {
+        this(targetDataSource, tenantProperties, null, Map.of());
+    }
+
+    public TenantAwareDataSource(DataSource targetDataSource, TenantProperties tenantProperties,
+                                 TenantAdmissionController admissionController,
+                                 Map<String, DataSource> dedicatedPools) {
+        this(targetDataSource, tenantProperties, admissionController, dedicatedPools, null);
+    }
+
+    public TenantAwareDataSource(DataSource targetDataSource, TenantProperties tenantProperties,
+                                 TenantAdmissionController admissionController,
+                                 Map<String, DataSource> dedicatedPools, ReplicaRouter replicaRouter) {
         super(targetDataSource);
         this.tenantProperties = tenantProperties;
+        this.admissionController = admissionController;
+        this.dedicatedPools = dedicatedPools;
+        this.replicaRouter = replicaRouter;
     }
 
     @Override
     public Connection getConnection() throws SQLException {
-        Connection connection = super.getConnection();
-        setSchemaForConnection(connection);
-        return connection;
+        String schema = currentSchema();
+        registerWriteTracking(schema);
+        return obtainConnection(schema);
+    }
+
+    /**
+     * Read-only variant of this data source: serves connections from the replica when
+     * the router allows it and from the primary otherwise, with the same schema binding.
+     */
+    public DataSource readOnlyView() {
+        return new DelegatingDataSource(this) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return getReadOnlyConnection();
+            }
+        };
+    }
+
+    // The replica mirrors the primary cluster only, so tenants on other shards always read from their own
+    private Connection getReadOnlyConnection() throws SQLException {
+        String schema = currentSchema();
+        Connection replicaConnection = replicaRouter != null && isOnPrimary(schema)
+                ? replicaRouter.tryReplica(schema) : null;
+        return replicaConnection != null ? replicaConnection : obtainConnection(schema);
     }
 
+    private Connection obtainConnection(String schema) throws SQLException {
+        String shard = shardOf(schema);
+        DataSource dedicatedPool = dedicatedPools.get(schema);
+        // Dedicated pools connect to the primary, so a schema placed on another cluster uses that cluster's pool
+        if (dedicatedPool != null && TenantShardRouter.PRIMARY.equals(shard)) {
+            return setSchemaForConnection(dedicatedPool.getConnection(), schema, () -> { });
+        }
+
+        DataSource shardPool = shardRouter != null ? shardRouter.poolForShard(shard) : null;
+        Runnable releasePermit = acquirePermit(shard, schema);
+        try {
+            Connection connection = shardPool != null ? shardPool.getConnection() : super.getConnection();
+            return setSchemaForConnection(connection, schema, releasePermit);
+        } catch (SQLException | RuntimeException e) {
+            releasePermit.run();
+            throw e;
+        }
+    }
+
+    /**
+     * Not supported. Every pool behind this data source, dedicated and per shard alike,
+     * is opened with the configured credentials, so a connection for other credentials
+     * could only come from the primary's driver directly, past shard routing and the
+     * dedicated pools, and might bind a tenant to the wrong cluster.
+     */
     @Override
     public Connection getConnection(String username, String password) throws SQLException {
-        Connection connection = super.getConnection(username, password);
-        setSchemaForConnection(connection);
-        return connection;
+        throw new SQLFeatureNotSupportedException(
+                "Tenant connections use the pools' configured credentials; use getConnection()");
+    }
+
+    /**
+     * Serves prepared statements from the given cache in SESSION switch mode. The
+     * TRANSACTION mode never caches, as a transaction pooler may hand each transaction
+     * a different backend than the one the statement was prepared on.
+     */
+    public void setStatementCache(TenantStatementCache statementCache) {
+        this.statementCache = statementCache;
+    }
+
+    /**
+     * Routes each tenant's connections, and the management operations on its schema,
+     * to the cluster its schema lives on. Without a router everything is on this pool.
+     */
+    public void setShardRouter(TenantShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
     }
 
-    private void setSchemaForConnection(Connection connection) throws SQLException {
+    /**
+     * Admission for the tenants on each additional cluster, sized to that cluster's pool.
+     * Tenants on a shard without one are admitted without limit, as before admission.
+     */
+    public void setShardAdmissionControllers(Map<String, TenantAdmissionController> shardAdmissionControllers) {
+        this.shardAdmissionControllers = Map.copyOf(shardAdmissionControllers);
+    }
+
+    public TenantShardRouter getShardRouter() {
+        return shardRouter;
+    }
+
+    /**
+     * Raw pool of the shard, past the tenant binding; for work that qualifies schema
+     * names itself, such as migrations and tenant moves.
+     */
+    public DataSource getShardDataSource(String shardId) {
+        if (shardRouter != null) {
+            return shardRouter.clusterPool(shardId);
+        }
+        if (!TenantShardRouter.PRIMARY.equals(shardId)) {
+            throw new IllegalArgumentException("Unknown shard: " + shardId);
+        }
+        return getTargetDataSource();
+    }
+
+    // Raw pool of the cluster the schema currently lives on
+    public DataSource getSchemaDataSource(String schema) {
+        return getShardDataSource(shardOf(schema));
+    }
+
+    /**
+     * Closes the dedicated pools built for this data source. The pool it delegates to is
+     * left to its owner. Safe to call more than once.
+     */
+    public void close() {
+        dedicatedPools.forEach((schema, pool) -> closePool(pool));
+    }
+
+    static void closePool(DataSource pool) {
+        if (pool instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.warn("Failed to close pool: {}", e.getMessage());
+            }
+        }
+    }
+
+    public TenantStatementCache.StatementCacheStats getStatementCacheStats() {
+        return statementCache != null ? statementCache.getStats() : null;
+    }
+
+    public SchemaSwitchTracker.SchemaSwitchStats getSchemaSwitchStats() {
+        return schemaSwitchTracker.getStats();
+    }
+
+    // A tenant lives on one shard, so its entry comes from that shard's controller alone
+    public List<TenantAdmissionController.TenantAdmissionStats> getAdmissionStats() {
+        return Stream.concat(Stream.ofNullable(admissionController), shardAdmissionControllers.values().stream())
+                .flatMap(controller -> controller.getStats().stream())
+                .toList();
+    }
+
+    // Null unless reads are routed to a replica
+    public ReplicaRouter getReplicaRouter() {
+        return replicaRouter;
+    }
+
+    public ReplicaRouter.ReplicaRoutingStats getReplicaRoutingStats() {
+        return replicaRouter != null ? replicaRouter.getStats() : null;
+    }
+
+    // A committed read-write transaction opens the tenant's read-your-writes window
+    private void registerWriteTracking(String schema) {
+        if (replicaRouter == null
+                || !TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                replicaRouter.recordWrite(schema);
+            }
+        });
+    }
+
+    private String shardOf(String schema) {
+        return shardRouter != null ? shardRouter.shardFor(schema) : TenantShardRouter.PRIMARY;
+    }
+
+    private boolean isOnPrimary(String schema) {
+        return TenantShardRouter.PRIMARY.equals(shardOf(schema));
+    }
+
+    private String currentSchema() {
         String tenant = TenantContext.get();
-        String schema = (tenant == null || tenant.isBlank()) ?
+        return (tenant == null || tenant.isBlank()) ?
                 tenantProperties.getDefaultTenant() : tenant;
+    }
 
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute("SET search_path TO \"" + schema + "\", public");
+    // Each cluster's permits are sized to its own pool, so one busy shard does not hold back the others
+    private Runnable acquirePermit(String shard, String schema) throws SQLException {
+        TenantAdmissionController controller = TenantShardRouter.PRIMARY.equals(shard)
+                ? admissionController : shardAdmissionControllers.get(shard);
+        return controller != null ? controller.acquire(schema) : () -> { };
+    }
+
+    // Permit release is deferred to connection close; on failure the caller releases it
+    private Connection setSchemaForConnection(Connection connection, String schema, Runnable onRelease)
+            throws SQLException {
+        try {
+            if (tenantProperties.getSwitchMode() == TenantProperties.SchemaSwitchMode.TRANSACTION) {
+                return TransactionScopedConnectionHandler.wrap(connection, schema, onRelease);
+            }
+            return schemaSwitchTracker.bind(connection, schema, statementCache, onRelease);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
         }
     }
 
@@ -67,7 +274,7 @@ public class TenantAwareDataSource extends DelegatingDataSource {
     public boolean schemaExists(String schema) throws SQLException {
         if (schema.equals(tenantProperties.getDefaultTenant())) return true;
 
-        try (Connection conn = super.getConnection();
+        try (Connection conn = adminConnection(schema);
              Statement stmt = conn.createStatement();
              var rs = stmt.executeQuery(
                      "SELECT schema_name FROM information_schema.schemata WHERE schema_name = '" + schema + "'")) {
@@ -80,23 +287,25 @@ public class TenantAwareDataSource extends DelegatingDataSource {
     }
 
     public void createSchema(String schema, String password) throws SQLException {
-        if (schema.equals(tenantProperties.getDefaultTenant()) || schemaExists(schema)) return;
-
-        try (Connection conn = super.getConnection();
-             Statement stmt = conn.createStatement()) {
-
-            // Create schema with secure ownership
-            stmt.execute("CREATE SCHEMA \"" + schema + "\"");
+        if (schema.equals(tenantProperties.getDefaultTenant())) return;
 
-            // Set schema owner to admin role (not the tenant role)
-            stmt.execute("ALTER SCHEMA \"" + schema + "\" OWNER TO " + getAdminRole());
+        operationTimings.time(SchemaOperationTimings.Operation.PROVISION, () -> executeScript(schema,
+                TenantRoleScripts.setup(schema, null, getAdminRole(), password, tenantProperties.isCreateTenantRoles())));
+        log.info("Created secure schema: {}", schema);
+    }
 
-            if (tenantProperties.isCreateTenantRoles()) {
-                createTenantRole(stmt, schema, password);
-            }
+    /**
+     * Creates the schema as a copy of a migrated template schema, with the same ownership
+     * and tenant role as {@link #createSchema(String, String)}. Relies on the
+     * clone_schema function installed by the template schema service.
+     */
+    public void createSchemaFromTemplate(String template, String schema, String password) throws SQLException {
+        if (schema.equals(tenantProperties.getDefaultTenant())) return;
 
-            log.info("Created secure schema: {}", schema);
-        }
+        // Tables already exist after the clone, so the role's grants cover them directly
+        operationTimings.time(SchemaOperationTimings.Operation.PROVISION_FROM_TEMPLATE, () -> executeScript(schema,
+                TenantRoleScripts.setup(schema, template, getAdminRole(), password, tenantProperties.isCreateTenantRoles())));
+        log.info("Created schema {} from template {}", schema, template);
     }
 
     public void dropSchema(String schema) throws SQLException {
@@ -104,85 +313,87 @@ public class TenantAwareDataSource extends DelegatingDataSource {
             throw new SQLException("Cannot drop default tenant schema");
         }
 
-        try (Connection conn = super.getConnection();
-             Statement stmt = conn.createStatement()) {
-
-            // Drop schema first (cascade will handle dependencies)
-            if (schemaExists(schema)) {
-                stmt.execute("DROP SCHEMA \"" + schema + "\" CASCADE");
-                log.info("Dropped schema: {}", schema);
-            }
-
-            // Then drop the tenant role
-            if (tenantProperties.isCreateTenantRoles()) {
-                dropTenantRole(schema);
-            }
-        }
+        operationTimings.time(SchemaOperationTimings.Operation.DEPROVISION, () -> executeScript(schema,
+                TenantRoleScripts.teardown(schema, true, tenantProperties.isCreateTenantRoles())));
+        evictStatements(List.of(schema));
+        log.info("Dropped schema: {}", schema);
     }
 
     public void dropSchemaIfExists(String schema) throws SQLException {
         if (schema.equals(tenantProperties.getDefaultTenant())) return;
 
-        try (Connection conn = super.getConnection();
-             Statement stmt = conn.createStatement()) {
+        operationTimings.time(SchemaOperationTimings.Operation.DEPROVISION, () -> executeScript(schema,
+                TenantRoleScripts.teardown(schema, true, tenantProperties.isCreateTenantRoles())));
+        evictStatements(List.of(schema));
+        log.info("Dropped schema if exists: {}", schema);
+    }
 
-            if (schemaExists(schema)) {
-                stmt.execute("DROP SCHEMA \"" + schema + "\" CASCADE");
-                log.info("Dropped schema if exists: {}", schema);
-            }
+    /**
+     * Drops the schemas and their tenant roles in one round trip. The blocks share the
+     * implicit transaction, so a failure leaves every schema in the batch in place.
+     */
+    public void dropSchemasIfExist(List<String> schemas) throws SQLException {
+        Map<String, List<String>> byShard = schemas.stream()
+                .collect(Collectors.groupingBy(this::shardOf, LinkedHashMap::new, Collectors.toList()));
 
-            if (tenantProperties.isCreateTenantRoles()) {
-                dropTenantRoleIfExists(schema);
-            }
+        // One round trip per cluster
+        for (Map.Entry<String, List<String>> shard : byShard.entrySet()) {
+            dropSchemasOnShard(shard.getKey(), shard.getValue());
         }
     }
 
+    // As dropSchemasIfExist, on the given cluster whatever the shard map says; for copies left on the wrong one
+    public void dropSchemasOnShard(String shardId, List<String> schemas) throws SQLException {
+        List<String> droppable = schemas.stream()
+                .filter(schema -> !schema.equals(tenantProperties.getDefaultTenant()))
+                .toList();
+        if (droppable.isEmpty()) return;
+
+        executeScript(getShardDataSource(shardId), droppable.stream()
+                .map(schema -> TenantRoleScripts.teardown(schema, true, tenantProperties.isCreateTenantRoles()))
+                .collect(Collectors.joining(";\n")));
+        evictStatements(droppable);
+        log.info("Dropped {} schemas on shard {}: {}", droppable.size(), shardId, droppable);
+    }
+
     /**
-     * Update tenant role password when assigned to a school
+     * Recreates missing tenant roles, with their grants, for existing schemas in one
+     * round trip. Roles that still exist only get their password set.
      */
-    public void assignToSchool(String schema, UUID schoolId) throws SQLException {
-        if (!schemaExists(schema)) {
-            throw new SQLException("Schema does not exist: " + schema);
+    public void restoreTenantRoles(Map<String, String> passwordsBySchema) throws SQLException {
+        if (!tenantProperties.isCreateTenantRoles() || passwordsBySchema.isEmpty()) return;
+
+        Map<String, List<Map.Entry<String, String>>> byShard = passwordsBySchema.entrySet().stream()
+                .collect(Collectors.groupingBy(entry -> shardOf(entry.getKey()), LinkedHashMap::new,
+                        Collectors.toList()));
+        for (Map.Entry<String, List<Map.Entry<String, String>>> shard : byShard.entrySet()) {
+            executeScript(getShardDataSource(shard.getKey()), shard.getValue().stream()
+                    .map(entry -> TenantRoleScripts.assign(entry.getKey(), entry.getValue(), true))
+                    .collect(Collectors.joining(";\n")));
         }
+        log.info("Restored tenant roles for {} schemas", passwordsBySchema.size());
+    }
 
-        if (tenantProperties.isCreateTenantRoles()) {
-            try (Connection conn = super.getConnection();
-                 Statement stmt = conn.createStatement()) {
-
-                String tenantRole = schema + "_user";
-                String password = schoolId.toString();
-
-                if (tenantRoleExists(schema)) {
-                    stmt.execute("ALTER ROLE \"" + tenantRole + "\" WITH PASSWORD '" + password + "'");
-                    log.info("Updated password for role {} to school ID: {}", tenantRole, schoolId);
-                } else {
-                    createTenantRole(stmt, schema, password);
-                }
-            }
-        }
+    /**
+     * Update tenant role password when assigned to a school
+     */
+    public void assignToSchool(String schema, UUID schoolId) throws SQLException {
+        operationTimings.time(SchemaOperationTimings.Operation.ASSIGN, () -> executeScript(schema,
+                TenantRoleScripts.assign(schema, schoolId.toString(), tenantProperties.isCreateTenantRoles())));
+        log.info("Updated password for role {} to school ID: {}", TenantRoleScripts.roleName(schema), schoolId);
     }
 
     /**
      * Reset tenant role password to default when unassigned from school
      */
     public void unassignFromSchool(String schema) throws SQLException {
-        if (!schemaExists(schema)) {
-            throw new SQLException("Schema does not exist: " + schema);
-        }
-
-        if (tenantProperties.isCreateTenantRoles()) {
-            try (Connection conn = super.getConnection();
-                 Statement stmt = conn.createStatement()) {
-
-                String tenantRole = schema + "_user";
-                String defaultPassword = "password";
+        operationTimings.time(SchemaOperationTimings.Operation.UNASSIGN, () -> executeScript(schema,
+                TenantRoleScripts.unassign(schema, "password", tenantProperties.isCreateTenantRoles())));
+        log.info("Reset password for role {} to default", TenantRoleScripts.roleName(schema));
+    }
 
-                if (tenantRoleExists(schema)) {
-                    stmt.execute("ALTER ROLE \"" + tenantRole + "\" WITH PASSWORD '" + defaultPassword + "'");
-                    log.info("Reset password for role {} to default", tenantRole);
-                }
-            }
-        }
+    public List<SchemaOperationTimings.OperationStats> getSchemaOperationStats() {
+        return operationTimings.getStats();
     }
 
     /**
@@ -193,7 +404,7 @@ public class TenantAwareDataSource extends DelegatingDataSource {
             return "tenant_roles_disabled";
         }
 
-        try (Connection conn = super.getConnection();
+        try (Connection conn = adminConnection(schema);
              Statement stmt = conn.createStatement();
              var rs = stmt.executeQuery(
                      "SELECT rolpassword FROM pg_authid WHERE rolname = '" + schema + "_user'")) {
@@ -205,54 +416,60 @@ public class TenantAwareDataSource extends DelegatingDataSource {
         }
     }
 
-    private void createTenantRole(Statement stmt, String schema, String password) throws SQLException {
-        String tenantRole = schema + "_user";
+    /**
+     * Creates the schema and its tenant role on the given shard, whatever the shard map
+     * says; used to prepare the target of a tenant move.
+     */
+    public void createSchemaOnShard(String shardId, String schema, String password) throws SQLException {
+        operationTimings.time(SchemaOperationTimings.Operation.PROVISION, () -> executeScript(
+                getShardDataSource(shardId),
+                TenantRoleScripts.setup(schema, null, getAdminRole(), password, tenantProperties.isCreateTenantRoles())));
+        log.info("Created schema {} on shard {}", schema, shardId);
+    }
 
-        try {
-            if (tenantRoleExistsInternal(stmt, tenantRole)) {
-                stmt.execute("ALTER ROLE \"" + tenantRole + "\" WITH PASSWORD '" + password + "'");
-                log.info("Updated password for existing role: {}", tenantRole);
-            } else {
-                stmt.execute("CREATE ROLE \"" + tenantRole + "\" LOGIN PASSWORD '" + password + "' NOSUPERUSER NOCREATEDB NOCREATEROLE NOINHERIT NOREPLICATION");
-                log.info("Created secure tenant role: {} with password: {}", tenantRole, password);
-            }
+    public void dropSchemaOnShard(String shardId, String schema) throws SQLException {
+        if (schema.equals(tenantProperties.getDefaultTenant())) return;
 
-            grantTenantRolePrivileges(stmt, schema, tenantRole);
+        operationTimings.time(SchemaOperationTimings.Operation.DEPROVISION, () -> executeScript(
+                getShardDataSource(shardId),
+                TenantRoleScripts.teardown(schema, true, tenantProperties.isCreateTenantRoles())));
+        evictStatements(List.of(schema));
+        log.info("Dropped schema {} on shard {}", schema, shardId);
+    }
 
-        } catch (SQLException e) {
-            throw new SQLException("Failed to create/update tenant role '" + tenantRole + "': " + e.getMessage(), e);
+    // A schema of the same name created later must not be served the dropped one's statements
+    private void evictStatements(List<String> schemas) {
+        if (statementCache != null) {
+            schemas.forEach(statementCache::evictSchema);
         }
     }
 
-    // SECURITY ENHANCEMENT: Secure privilege granting
-    private void grantTenantRolePrivileges(Statement stmt, String schema, String tenantRole) throws SQLException {
-        // Grant full access to their own schema
-        stmt.execute("GRANT USAGE ON SCHEMA \"" + schema + "\" TO \"" + tenantRole + "\"");
-        stmt.execute("GRANT ALL PRIVILEGES ON ALL TABLES IN SCHEMA \"" + schema + "\" TO \"" + tenantRole + "\"");
-        stmt.execute("GRANT ALL PRIVILEGES ON ALL SEQUENCES IN SCHEMA \"" + schema + "\" TO \"" + tenantRole + "\"");
-        stmt.execute("GRANT ALL PRIVILEGES ON ALL FUNCTIONS IN SCHEMA \"" + schema + "\" TO \"" + tenantRole + "\"");
-
-        // Set default privileges for future objects in their schema
-        stmt.execute("ALTER DEFAULT PRIVILEGES IN SCHEMA \"" + schema + "\" GRANT ALL ON TABLES TO \"" + tenantRole + "\"");
-        stmt.execute("ALTER DEFAULT PRIVILEGES IN SCHEMA \"" + schema + "\" GRANT ALL ON SEQUENCES TO \"" + tenantRole + "\"");
-        stmt.execute("ALTER DEFAULT PRIVILEGES IN SCHEMA \"" + schema + "\" GRANT ALL ON FUNCTIONS TO \"" + tenantRole + "\"");
-
-        // Grant READ-ONLY access to public schema
-        stmt.execute("GRANT USAGE ON SCHEMA public TO \"" + tenantRole + "\"");
-        stmt.execute("GRANT SELECT ON ALL TABLES IN SCHEMA public TO \"" + tenantRole + "\"");
+    // Management connections go to the cluster the schema lives on
+    private Connection adminConnection(String schema) throws SQLException {
+        DataSource shardPool = shardRouter != null ? shardRouter.poolForSchema(schema) : null;
+        return shardPool != null ? shardPool.getConnection() : super.getConnection();
+    }
 
-        // Set default privileges for future objects in public schema (READ-ONLY)
-        stmt.execute("ALTER DEFAULT PRIVILEGES IN SCHEMA public GRANT SELECT ON TABLES TO \"" + tenantRole + "\"");
+    private void executeScript(String schema, String script) throws SQLException {
+        try (Connection conn = adminConnection(schema)) {
+            executeScript(conn, script);
+        }
+    }
 
-        // Explicitly REVOKE write privileges from public schema
-        stmt.execute("REVOKE INSERT, UPDATE, DELETE, TRUNCATE, REFERENCES, TRIGGER ON ALL TABLES IN SCHEMA public FROM \"" + tenantRole + "\"");
-        stmt.execute("ALTER DEFAULT PRIVILEGES IN SCHEMA public REVOKE INSERT, UPDATE, DELETE, TRUNCATE, REFERENCES, TRIGGER ON TABLES FROM \"" + tenantRole + "\"");
+    private void executeScript(DataSource pool, String script) throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            executeScript(conn, script);
+        }
+    }
 
-        // Revoke all privileges on sequences and functions in public schema
-        stmt.execute("REVOKE ALL ON ALL SEQUENCES IN SCHEMA public FROM \"" + tenantRole + "\"");
-        stmt.execute("REVOKE ALL ON ALL FUNCTIONS IN SCHEMA public FROM \"" + tenantRole + "\"");
-        stmt.execute("ALTER DEFAULT PRIVILEGES IN SCHEMA public REVOKE ALL ON SEQUENCES FROM \"" + tenantRole + "\"");
-        stmt.execute("ALTER DEFAULT PRIVILEGES IN SCHEMA public REVOKE ALL ON FUNCTIONS FROM \"" + tenantRole + "\"");
+    // One round trip per operation; warnings raised by the block (e.g. an undroppable role) are logged
+    private void executeScript(Connection conn, String script) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(script);
+            for (SQLWarning warning = stmt.getWarnings(); warning != null; warning = warning.getNextWarning()) {
+                log.warn("Schema operation warning: {}", warning.getMessage());
+            }
+        }
     }
 
     /**
@@ -261,66 +478,19 @@ public class TenantAwareDataSource extends DelegatingDataSource {
     public void dropTenantRole(String schema) throws SQLException {
         if (!tenantProperties.isCreateTenantRoles()) return;
 
-        String tenantRole = schema + "_user";
-
-        try (Connection conn = super.getConnection();
-             Statement stmt = conn.createStatement()) {
-
-            if (tenantRoleExistsInternal(stmt, tenantRole)) {
-                revokeAllRolePrivileges(stmt, schema, tenantRole);
-                stmt.execute("DROP ROLE \"" + tenantRole + "\"");
-                log.info("Dropped tenant role: {}", tenantRole);
-            }
+        try {
+            executeScript(schema, TenantRoleScripts.teardown(schema, false, true));
+            log.info("Dropped tenant role: {}", TenantRoleScripts.roleName(schema));
         } catch (SQLException e) {
-            log.warn("Could not drop role {}: {}", tenantRole, e.getMessage());
+            log.warn("Could not drop role {}: {}", TenantRoleScripts.roleName(schema), e.getMessage());
         }
     }
 
     public void dropTenantRoleIfExists(String schema) throws SQLException {
         if (!tenantProperties.isCreateTenantRoles()) return;
 
-        String tenantRole = schema + "_user";
-
-        try (Connection conn = super.getConnection();
-             Statement stmt = conn.createStatement()) {
-
-            if (tenantRoleExistsInternal(stmt, tenantRole)) {
-                try {
-                    revokeAllRolePrivileges(stmt, schema, tenantRole);
-                    stmt.execute("DROP ROLE IF EXISTS \"" + tenantRole + "\"");
-                    log.info("Dropped tenant role if exists: {}", tenantRole);
-                } catch (SQLException e) {
-                    log.warn("Could not drop role {}: {}", tenantRole, e.getMessage());
-                }
-            }
-        }
-    }
-
-    // SECURITY ENHANCEMENT: Comprehensive privilege revocation
-    private void revokeAllRolePrivileges(Statement stmt, String schema, String tenantRole) {
-        try {
-            // Revoke privileges from the specific schema
-            if (schemaExists(schema)) {
-                stmt.execute("REVOKE ALL PRIVILEGES ON ALL TABLES IN SCHEMA \"" + schema + "\" FROM \"" + tenantRole + "\"");
-                stmt.execute("REVOKE ALL PRIVILEGES ON ALL SEQUENCES IN SCHEMA \"" + schema + "\" FROM \"" + tenantRole + "\"");
-                stmt.execute("REVOKE ALL PRIVILEGES ON ALL FUNCTIONS IN SCHEMA \"" + schema + "\" FROM \"" + tenantRole + "\"");
-                stmt.execute("REVOKE USAGE ON SCHEMA \"" + schema + "\" FROM \"" + tenantRole + "\"");
-
-                // Revoke default privileges
-                stmt.execute("ALTER DEFAULT PRIVILEGES IN SCHEMA \"" + schema + "\" REVOKE ALL ON TABLES FROM \"" + tenantRole + "\"");
-                stmt.execute("ALTER DEFAULT PRIVILEGES IN SCHEMA \"" + schema + "\" REVOKE ALL ON SEQUENCES FROM \"" + tenantRole + "\"");
-                stmt.execute("ALTER DEFAULT PRIVILEGES IN SCHEMA \"" + schema + "\" REVOKE ALL ON FUNCTIONS FROM \"" + tenantRole + "\"");
-            }
-
-            // Revoke privileges from public schema
-            stmt.execute("REVOKE ALL PRIVILEGES ON ALL TABLES IN SCHEMA public FROM \"" + tenantRole + "\"");
-            stmt.execute("REVOKE ALL PRIVILEGES ON ALL SEQUENCES IN SCHEMA public FROM \"" + tenantRole + "\"");
-            stmt.execute("REVOKE ALL PRIVILEGES ON ALL FUNCTIONS IN SCHEMA public FROM \"" + tenantRole + "\"");
-            stmt.execute("REVOKE USAGE ON SCHEMA public FROM \"" + tenantRole + "\"");
-
-        } catch (SQLException e) {
-            log.warn("Could not revoke privileges from role {}: {}", tenantRole, e.getMessage());
-        }
+        executeScript(schema, TenantRoleScripts.teardown(schema, false, true));
+        log.info("Dropped tenant role if exists: {}", TenantRoleScripts.roleName(schema));
     }
 
     private boolean tenantRoleExistsInternal(Statement stmt, String tenantRole) throws SQLException {
@@ -335,7 +505,7 @@ public class TenantAwareDataSource extends DelegatingDataSource {
     public boolean tenantRoleExists(String schema) throws SQLException {
         if (!tenantProperties.isCreateTenantRoles()) return false;
 
-        try (Connection conn = super.getConnection();
+        try (Connection conn = adminConnection(schema);
              Statement stmt = conn.createStatement()) {
             return tenantRoleExistsInternal(stmt, schema + "_user");
         }
@@ -349,7 +519,7 @@ public class TenantAwareDataSource extends DelegatingDataSource {
             return false;
         }
 
-        try (Connection conn = super.getConnection();
+        try (Connection conn = adminConnection(schema);
              Statement stmt = conn.createStatement();
              var rs = stmt.executeQuery(
                      "SELECT rolpassword FROM pg_authid WHERE rolname = '" + schema + "_user'")) {
@@ -414,7 +584,7 @@ public class TenantAwareDataSource extends DelegatingDataSource {
 
         String tenantRole = schema + "_user";
 
-        try (Connection conn = super.getConnection();
+        try (Connection conn = adminConnection(schema);
              Statement stmt = conn.createStatement()) {
 
             if (tenantRoleExistsInternal(stmt, tenantRole)) {
@@ -0,0 +1,175 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connection proxy handed out by {@link TenantAwareDataSource}. Any SQLException
+ * raised by the connection, a direct schema change, or SQL that may change the
+ * search_path behind the tracker's back makes it forget the physical connection's
+ * schema since its session state can no longer be trusted. Plain statements are
+ * proxied too so the SQL they run is seen. The release callback runs exactly once
+ * when the connection is closed.
+ *
+ * <p>When a statement cache is attached, prepareStatement calls are served from it
+ * for the bound schema instead of preparing a new statement on every checkout.
+ */
+class TenantConnectionHandler implements InvocationHandler {
+    private final Connection target;
+    private final Connection physical;
+    private final String schema;
+    private final SchemaSwitchTracker tracker;
+    private final TenantStatementCache statementCache;
+    private final Runnable onRelease;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    // Cached statements bypass the pool's own statement tracking, including its dirty-commit rollback
+    private boolean usedCachedStatements;
+
+    private TenantConnectionHandler(Connection target, Connection physical, String schema,
+                                    SchemaSwitchTracker tracker, TenantStatementCache statementCache,
+                                    Runnable onRelease) {
+        this.target = target;
+        this.physical = physical;
+        this.schema = schema;
+        this.tracker = tracker;
+        // Statements prepared on the pool proxy would be closed at checkin, so caching needs the physical connection
+        this.statementCache = physical != target ? statementCache : null;
+        this.onRelease = onRelease;
+    }
+
+    static Connection wrap(Connection target, Connection physical, String schema, SchemaSwitchTracker tracker,
+                           TenantStatementCache statementCache, Runnable onRelease) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new TenantConnectionHandler(target, physical, schema, tracker, statementCache, onRelease));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "TenantConnection[" + target + "]";
+            case "setSchema":
+                tracker.forget(physical);
+                break;
+            case "createStatement":
+                return wrapStatement((Statement) invokeTarget(method, args));
+            case "prepareCall":
+                forgetIfSessionChange((String) args[0]);
+                break;
+            case "prepareStatement":
+                forgetIfSessionChange((String) args[0]);
+                TenantStatementCache.StatementVariant variant = cacheableVariant(args);
+                if (variant != null) {
+                    return prepareCached((Connection) proxy, (String) args[0], variant);
+                }
+                break;
+            case "close":
+                return close();
+            default:
+                break;
+        }
+        return invokeTarget(method, args);
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getTargetException() instanceof SQLException) {
+                tracker.forget(physical);
+            }
+            throw e.getTargetException();
+        }
+    }
+
+    private void forgetIfSessionChange(String sql) {
+        if (SchemaSwitchTracker.mayChangeSearchPath(sql)) {
+            tracker.forget(physical);
+        }
+    }
+
+    // Sees the SQL passed to execute and addBatch, which a plain statement only gets when it runs
+    private Statement wrapStatement(Statement statement) {
+        return (Statement) Proxy.newProxyInstance(
+                Statement.class.getClassLoader(),
+                new Class<?>[]{Statement.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            if (args != null && args.length > 0 && args[0] instanceof String sql) {
+                                forgetIfSessionChange(sql);
+                            }
+                            break;
+                    }
+                    try {
+                        return method.invoke(statement, args);
+                    } catch (InvocationTargetException e) {
+                        if (e.getTargetException() instanceof SQLException) {
+                            tracker.forget(physical);
+                        }
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    // Only the overloads used for ordinary queries and generated-key inserts are cached
+    private TenantStatementCache.StatementVariant cacheableVariant(Object[] args) {
+        if (statementCache == null) {
+            return null;
+        }
+        if (args.length == 1) {
+            return TenantStatementCache.StatementVariant.plain();
+        }
+        if (args.length == 2 && args[1] instanceof Integer autoGeneratedKeys) {
+            return TenantStatementCache.StatementVariant.generatedKeys(autoGeneratedKeys);
+        }
+        if (args.length == 2 && args[1] instanceof String[] columnNames) {
+            return TenantStatementCache.StatementVariant.keyColumns(columnNames);
+        }
+        return null;
+    }
+
+    private PreparedStatement prepareCached(Connection proxy, String sql,
+                                            TenantStatementCache.StatementVariant variant) throws SQLException {
+        try {
+            PreparedStatement statement = statementCache.prepare(physical, proxy, schema, sql, variant);
+            usedCachedStatements = true;
+            return statement;
+        } catch (SQLException e) {
+            tracker.forget(physical);
+            throw e;
+        }
+    }
+
+    private Object close() throws SQLException {
+        try {
+            if (usedCachedStatements && !target.getAutoCommit()) {
+                target.rollback();
+            }
+            target.close();
+        } finally {
+            if (released.compareAndSet(false, true)) {
+                onRelease.run();
+            }
+        }
+        return null;
+    }
+}
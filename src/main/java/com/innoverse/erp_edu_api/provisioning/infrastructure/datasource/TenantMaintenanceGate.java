@@ -0,0 +1,262 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantMaintenanceProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Per-tenant maintenance gate in front of the request chain. While a tenant's gate is
+ * closed its new requests are held for a short while and then turned away, and the
+ * requests already inside can be waited out, so a migration runs against a quiet
+ * schema. Other tenants only pay for counting their requests in and out.
+ *
+ * <p>A gate closed here stays closed until it is opened here. A gate closed on behalf of
+ * the node running the migration is checked against that node's closure, see
+ * {@link #setPeerClosureCheck}, while requests are held at it, and reopens once the
+ * closure is gone, so a lost "open" message or a dead node never keeps it shut.
+ */
+@Slf4j
+public class TenantMaintenanceGate {
+    private final TenantMaintenanceProperties properties;
+    private final Map<String, GateState> tenants = new ConcurrentHashMap<>();
+    private volatile Predicate<String> peerClosureCheck = tenant -> false;
+
+    public TenantMaintenanceGate(TenantMaintenanceProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Lets a request for the tenant in, holding it while the gate is closed. Returns false
+     * when the gate is still closed after the hold time; the request must then be turned
+     * away. Every admitted request must be matched by one {@link #exit}.
+     */
+    public boolean enter(String tenant) {
+        GateState state = tenants.computeIfAbsent(tenant, GateState::new);
+        state.lock.lock();
+        try {
+            if (state.closedSince != null) {
+                if (!awaitOpen(state)) {
+                    state.rejected++;
+                    return false;
+                }
+                state.held++;
+            }
+            state.inFlight++;
+            return true;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    public void exit(String tenant) {
+        GateState state = tenants.get(tenant);
+        state.lock.lock();
+        try {
+            if (--state.inFlight == 0) {
+                state.changed.signalAll();
+            }
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    // Tells whether another node's closure of the tenant's gate still holds; false when it cannot tell
+    public void setPeerClosureCheck(Predicate<String> peerClosureCheck) {
+        this.peerClosureCheck = peerClosureCheck;
+    }
+
+    /**
+     * Closes the tenant's gate for a migration on this node. Returns the number of
+     * requests still inside, which {@link #drain} waits out.
+     */
+    public int close(String tenant) {
+        return close(tenant, false);
+    }
+
+    // Closes the tenant's gate for a migration on another node, until that node's closure is gone
+    public void closeForPeer(String tenant) {
+        close(tenant, true);
+    }
+
+    private int close(String tenant, boolean peer) {
+        GateState state = tenants.computeIfAbsent(tenant, GateState::new);
+        state.lock.lock();
+        try {
+            if (state.closedSince == null) {
+                state.closedSince = LocalDateTime.now();
+                state.closedAtNanos = System.nanoTime();
+                state.checkedAtNanos = state.closedAtNanos;
+                state.closures++;
+                state.held = 0;
+                state.rejected = 0;
+                state.peer = peer;
+                log.info("Maintenance gate closed for tenant {} with {} requests in flight", tenant, state.inFlight);
+            } else if (!peer) {
+                state.peer = false;
+            }
+            return state.inFlight;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until no request for the tenant is inside, up to the timeout. Returns whether
+     * it drained; the caller decides whether to go ahead regardless.
+     */
+    public boolean drain(String tenant, long timeoutMillis) {
+        GateState state = tenants.computeIfAbsent(tenant, GateState::new);
+        state.lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (state.inFlight > 0) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = state.changed.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    /**
+     * Reopens the tenant's gate and releases the requests held at it. Returns what the
+     * closure cost, or null when the gate was not closed.
+     */
+    public GateWindow open(String tenant) {
+        GateState state = tenants.get(tenant);
+        if (state == null) {
+            return null;
+        }
+        state.lock.lock();
+        try {
+            return state.closedSince != null ? reopen(state) : null;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    public long getRetryAfterSeconds() {
+        return properties.getRetryAfter().toSeconds();
+    }
+
+    public List<ClosedTenant> getClosedTenants() {
+        return tenants.values().stream()
+                .map(GateState::snapshot)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(ClosedTenant::closedSince))
+                .toList();
+    }
+
+    // Guarded by the state's lock
+    private GateWindow reopen(GateState state) {
+        GateWindow window = new GateWindow(state.tenant, state.closedSince,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - state.closedAtNanos), state.held, state.rejected);
+        state.closedSince = null;
+        state.changed.signalAll();
+        log.info("Maintenance gate reopened for tenant {} after {}ms ({} requests held, {} rejected)",
+                state.tenant, window.pauseMillis(), window.requestsHeld(), window.requestsRejected());
+        return window;
+    }
+
+    // Guarded by the state's lock
+    private boolean awaitOpen(GateState state) {
+        long remaining = properties.getHoldTimeout().toNanos();
+        long checkInterval = properties.getClosureCheckInterval().toNanos();
+        try {
+            while (state.closedSince != null) {
+                if (state.peer && System.nanoTime() - state.checkedAtNanos >= checkInterval) {
+                    checkPeerClosure(state);
+                    continue;
+                }
+                if (remaining <= 0) {
+                    return false;
+                }
+                long wait = state.peer ? Math.min(remaining, checkInterval) : remaining;
+                remaining -= wait - state.changed.awaitNanos(wait);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Reopens a gate closed for another node once that node's closure is gone. Called with
+     * the state's lock held, which is let go during the check so it never holds up requests
+     * leaving; a closure that began meanwhile is left alone.
+     */
+    private void checkPeerClosure(GateState state) {
+        long closure = state.closures;
+        state.checkedAtNanos = System.nanoTime();
+        boolean closed;
+        state.lock.unlock();
+        try {
+            closed = peerClosureCheck.test(state.tenant);
+        } catch (RuntimeException e) {
+            log.warn("Could not check the maintenance closure of tenant {}, reopening its gate: {}",
+                    state.tenant, e.getMessage());
+            closed = false;
+        } finally {
+            state.lock.lock();
+        }
+        if (!closed && state.peer && state.closures == closure && state.closedSince != null) {
+            log.warn("Maintenance closure of tenant {} is gone, reopening its gate", state.tenant);
+            reopen(state);
+        }
+    }
+
+    private static final class GateState {
+        private final String tenant;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+
+        // Guarded by lock
+        private int inFlight;
+        private LocalDateTime closedSince;
+        private long closedAtNanos;
+        private long checkedAtNanos;
+        // Closed for a migration on another node; counts closures so a check never reopens a later one
+        private boolean peer;
+        private long closures;
+        private long held;
+        private long rejected;
+
+        private GateState(String tenant) {
+            this.tenant = tenant;
+        }
+
+        private ClosedTenant snapshot() {
+            lock.lock();
+            try {
+                return closedSince != null
+                        ? new ClosedTenant(tenant, closedSince, inFlight, held, rejected)
+                        : null;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public record ClosedTenant(String tenant, LocalDateTime closedSince, int inFlight, long requestsHeld,
+                               long requestsRejected) { }
+
+    public record GateWindow(String tenant, LocalDateTime closedAt, long pauseMillis, long requestsHeld,
+                             long requestsRejected) { }
+}
@@ -0,0 +1,150 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+/**
+ * Builds the schema and tenant role DDL as single anonymous PL/pgSQL blocks, so each
+ * provisioning or deprovisioning step is one round trip that the server runs
+ * atomically, with the schema and role existence checks done in the same block.
+ */
+final class TenantRoleScripts {
+    private static final String OPEN = "DO $tenant$\nBEGIN\n";
+    private static final String CLOSE = "END\n$tenant$";
+
+    private TenantRoleScripts() {
+    }
+
+    /**
+     * Creates the schema (or clones it from the template when one is given), hands it
+     * to the admin role and sets up the tenant role. Does nothing if the schema exists.
+     */
+    static String setup(String schema, String template, String adminRole, String password, boolean withRole) {
+        StringBuilder sql = new StringBuilder(OPEN)
+                .append("IF EXISTS (SELECT 1 FROM pg_namespace WHERE nspname = ").append(literal(schema)).append(") THEN\n")
+                .append("RETURN;\n")
+                .append("END IF;\n");
+        if (template != null) {
+            sql.append("PERFORM public.clone_schema(").append(literal(template)).append(", ")
+                    .append(literal(schema)).append(");\n");
+        } else {
+            sql.append("CREATE SCHEMA ").append(ident(schema)).append(";\n");
+        }
+        // Owned by the admin role, not the tenant role
+        sql.append("ALTER SCHEMA ").append(ident(schema)).append(" OWNER TO ").append(adminRole).append(";\n");
+        if (withRole) {
+            String role = roleName(schema);
+            sql.append("IF EXISTS (SELECT 1 FROM pg_roles WHERE rolname = ").append(literal(role)).append(") THEN\n")
+                    .append(alterPassword(role, password))
+                    .append("ELSE\n")
+                    .append(createRole(role, password))
+                    .append("END IF;\n")
+                    .append(grants(schema, role));
+        }
+        return sql.append(CLOSE).toString();
+    }
+
+    /**
+     * Sets the tenant role's password, creating and granting the role if it is missing.
+     * Fails if the schema does not exist.
+     */
+    static String assign(String schema, String password, boolean withRole) {
+        StringBuilder sql = new StringBuilder(OPEN).append(requireSchema(schema));
+        if (withRole) {
+            String role = roleName(schema);
+            sql.append("IF EXISTS (SELECT 1 FROM pg_roles WHERE rolname = ").append(literal(role)).append(") THEN\n")
+                    .append(alterPassword(role, password))
+                    .append("ELSE\n")
+                    .append(createRole(role, password))
+                    .append(grants(schema, role))
+                    .append("END IF;\n");
+        }
+        return sql.append(CLOSE).toString();
+    }
+
+    /**
+     * Resets the tenant role's password if the role exists. Fails if the schema does not exist.
+     */
+    static String unassign(String schema, String password, boolean withRole) {
+        StringBuilder sql = new StringBuilder(OPEN).append(requireSchema(schema));
+        if (withRole) {
+            String role = roleName(schema);
+            sql.append("IF EXISTS (SELECT 1 FROM pg_roles WHERE rolname = ").append(literal(role)).append(") THEN\n")
+                    .append(alterPassword(role, password))
+                    .append("END IF;\n");
+        }
+        return sql.append(CLOSE).toString();
+    }
+
+    /**
+     * Drops the schema if it exists, then the tenant role if requested. A role that
+     * cannot be dropped only raises a warning, so the schema drop still commits.
+     */
+    static String teardown(String schema, boolean dropSchema, boolean withRole) {
+        StringBuilder sql = new StringBuilder(OPEN);
+        if (dropSchema) {
+            sql.append("IF EXISTS (SELECT 1 FROM pg_namespace WHERE nspname = ").append(literal(schema)).append(") THEN\n")
+                    .append("DROP SCHEMA ").append(ident(schema)).append(" CASCADE;\n")
+                    .append("END IF;\n");
+        }
+        if (withRole) {
+            String role = roleName(schema);
+            // DROP OWNED revokes every grant and default privilege the role holds in this database
+            sql.append("IF EXISTS (SELECT 1 FROM pg_roles WHERE rolname = ").append(literal(role)).append(") THEN\n")
+                    .append("BEGIN\n")
+                    .append("DROP OWNED BY ").append(ident(role)).append(";\n")
+                    .append("DROP ROLE ").append(ident(role)).append(";\n")
+                    .append("EXCEPTION WHEN OTHERS THEN\n")
+                    .append("RAISE WARNING 'Could not drop role %: %', ").append(literal(role)).append(", SQLERRM;\n")
+                    .append("END;\n")
+                    .append("END IF;\n");
+        }
+        return sql.append(CLOSE).toString();
+    }
+
+    static String roleName(String schema) {
+        return schema + "_user";
+    }
+
+    private static String requireSchema(String schema) {
+        return "IF NOT EXISTS (SELECT 1 FROM pg_namespace WHERE nspname = " + literal(schema) + ") THEN\n"
+                + "RAISE EXCEPTION 'Schema does not exist: %', " + literal(schema) + ";\n"
+                + "END IF;\n";
+    }
+
+    private static String alterPassword(String role, String password) {
+        return "ALTER ROLE " + ident(role) + " WITH PASSWORD " + literal(password) + ";\n";
+    }
+
+    private static String createRole(String role, String password) {
+        return "CREATE ROLE " + ident(role) + " LOGIN PASSWORD " + literal(password)
+                + " NOSUPERUSER NOCREATEDB NOCREATEROLE NOINHERIT NOREPLICATION;\n";
+    }
+
+    // Full access to the tenant's own schema, read-only access to public
+    private static String grants(String schema, String role) {
+        String s = ident(schema);
+        String r = ident(role);
+        return "GRANT USAGE ON SCHEMA " + s + " TO " + r + ";\n"
+                + "GRANT ALL PRIVILEGES ON ALL TABLES IN SCHEMA " + s + " TO " + r + ";\n"
+                + "GRANT ALL PRIVILEGES ON ALL SEQUENCES IN SCHEMA " + s + " TO " + r + ";\n"
+                + "GRANT ALL PRIVILEGES ON ALL FUNCTIONS IN SCHEMA " + s + " TO " + r + ";\n"
+                + "ALTER DEFAULT PRIVILEGES IN SCHEMA " + s + " GRANT ALL ON TABLES TO " + r + ";\n"
+                + "ALTER DEFAULT PRIVILEGES IN SCHEMA " + s + " GRANT ALL ON SEQUENCES TO " + r + ";\n"
+                + "ALTER DEFAULT PRIVILEGES IN SCHEMA " + s + " GRANT ALL ON FUNCTIONS TO " + r + ";\n"
+                + "GRANT USAGE ON SCHEMA public TO " + r + ";\n"
+                + "GRANT SELECT ON ALL TABLES IN SCHEMA public TO " + r + ";\n"
+                + "ALTER DEFAULT PRIVILEGES IN SCHEMA public GRANT SELECT ON TABLES TO " + r + ";\n"
+                + "REVOKE INSERT, UPDATE, DELETE, TRUNCATE, REFERENCES, TRIGGER ON ALL TABLES IN SCHEMA public FROM " + r + ";\n"
+                + "ALTER DEFAULT PRIVILEGES IN SCHEMA public REVOKE INSERT, UPDATE, DELETE, TRUNCATE, REFERENCES, TRIGGER ON TABLES FROM " + r + ";\n"
+                + "REVOKE ALL ON ALL SEQUENCES IN SCHEMA public FROM " + r + ";\n"
+                + "REVOKE ALL ON ALL FUNCTIONS IN SCHEMA public FROM " + r + ";\n"
+                + "ALTER DEFAULT PRIVILEGES IN SCHEMA public REVOKE ALL ON SEQUENCES FROM " + r + ";\n"
+                + "ALTER DEFAULT PRIVILEGES IN SCHEMA public REVOKE ALL ON FUNCTIONS FROM " + r + ";\n";
+    }
+
+    private static String ident(String name) {
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String literal(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
@@ -0,0 +1,126 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Maps tenant schemas to the Postgres cluster they live on and holds one pool per
+ * cluster. The schema to shard lookup is supplied later by the tenant cache, since
+ * the cache itself reads the registry through this data source. Lookups made while
+ * one is in progress on the same thread resolve to the primary, where the registry
+ * lives, so a cache miss never recurses. A lookup that fails is an error rather than
+ * a guess, as a schema on another cluster must never be served from the primary.
+ */
+public class TenantShardRouter {
+    public static final String PRIMARY = DbProvision.PRIMARY_SHARD;
+
+    private final DataSource primaryPool;
+    private final Map<String, DataSource> clusterPools;
+    private final String defaultTenant;
+    private final ThreadLocal<Boolean> resolving = new ThreadLocal<>();
+    private final Map<String, LongAdder> connectionsByShard = new ConcurrentHashMap<>();
+    private volatile Function<String, String> shardLookup = schema -> PRIMARY;
+
+    public TenantShardRouter(DataSource primaryPool, Map<String, DataSource> clusterPools, String defaultTenant) {
+        this.primaryPool = primaryPool;
+        this.clusterPools = Map.copyOf(clusterPools);
+        this.defaultTenant = defaultTenant;
+    }
+
+    public void setShardLookup(Function<String, String> shardLookup) {
+        this.shardLookup = shardLookup;
+    }
+
+    public boolean isSharded() {
+        return !clusterPools.isEmpty();
+    }
+
+    public Set<String> getShardIds() {
+        Set<String> ids = new LinkedHashSet<>();
+        ids.add(PRIMARY);
+        ids.addAll(clusterPools.keySet());
+        return ids;
+    }
+
+    public String shardFor(String schema) {
+        if (!isSharded() || schema == null || schema.equals(defaultTenant) || resolving.get() != null) {
+            return PRIMARY;
+        }
+        resolving.set(Boolean.TRUE);
+        try {
+            String shard = shardLookup.apply(schema);
+            return shard != null ? shard : PRIMARY;
+        } catch (RuntimeException e) {
+            // Guessing the primary would run the tenant's statements, or a drop, against the wrong cluster
+            throw new IllegalStateException("Could not resolve the shard of schema " + schema, e);
+        } finally {
+            resolving.remove();
+        }
+    }
+
+    /**
+     * Raw pool of the schema's cluster, or null when the schema lives on the primary.
+     */
+    DataSource poolForSchema(String schema) {
+        return poolForShard(shardFor(schema));
+    }
+
+    // Raw pool of an already resolved shard, or null for the primary
+    DataSource poolForShard(String shard) {
+        if (PRIMARY.equals(shard)) {
+            return null;
+        }
+        DataSource pool = clusterPool(shard);
+        connectionsByShard.computeIfAbsent(shard, id -> new LongAdder()).increment();
+        return pool;
+    }
+
+    public DataSource clusterPool(String shardId) {
+        if (PRIMARY.equals(shardId)) {
+            return primaryPool;
+        }
+        DataSource pool = clusterPools.get(shardId);
+        if (pool == null) {
+            throw new IllegalArgumentException("Unknown shard: " + shardId);
+        }
+        return pool;
+    }
+
+    // The cluster pools are built for the router; the primary pool is left to its owner
+    public void close() {
+        clusterPools.values().forEach(TenantAwareDataSource::closePool);
+    }
+
+    public List<ShardPoolStats> getStats() {
+        List<ShardPoolStats> stats = new ArrayList<>();
+        Map<String, DataSource> pools = new LinkedHashMap<>();
+        pools.put(PRIMARY, primaryPool);
+        pools.putAll(clusterPools);
+        pools.forEach((shard, pool) -> {
+            LongAdder served = connectionsByShard.get(shard);
+            HikariPoolMXBean bean = pool instanceof HikariDataSource hikari ? hikari.getHikariPoolMXBean() : null;
+            stats.add(new ShardPoolStats(shard,
+                    served != null ? served.sum() : 0,
+                    bean != null ? bean.getActiveConnections() : -1,
+                    bean != null ? bean.getIdleConnections() : -1,
+                    bean != null ? bean.getThreadsAwaitingConnection() : -1));
+        });
+        return stats;
+    }
+
+    // Connections served is counted for the non-primary shards only; the primary has its own stats
+    public record ShardPoolStats(String shardId, long connectionsServed, int activeConnections,
+                                 int idleConnections, int threadsAwaiting) { }
+}
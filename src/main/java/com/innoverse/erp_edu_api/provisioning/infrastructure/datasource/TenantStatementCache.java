@@ -0,0 +1,306 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps prepared statements open on each physical connection, keyed by (schema, SQL),
+ * so a hot query stays server-prepared for every tenant the connection serves instead
+ * of being re-planned whenever the search_path changes under it. Statements are
+ * prepared on the physical connection so the pool does not close them at checkin,
+ * and each connection's set is bounded by LRU eviction. The cached statements hold
+ * their connection, so a connection's set is dropped once the pool has closed it or
+ * it is found broken, rather than left for the garbage collector. Statements of a
+ * dropped schema are closed by each connection the next time it is checked out.
+ */
+@Slf4j
+public class TenantStatementCache {
+    private final int maxStatementsPerConnection;
+    private final Map<Connection, ConnectionStatements> connections = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    // Dropped schemas by the drop sequence they were dropped at, until every connection has pruned them
+    private final Map<String, Long> droppedSchemas = new HashMap<>();
+    private long drops;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder connectionsDropped = new LongAdder();
+
+    public TenantStatementCache(int maxStatementsPerConnection) {
+        this.maxStatementsPerConnection = maxStatementsPerConnection;
+    }
+
+    /**
+     * Returns a cached statement for the schema and SQL, preparing one if needed. Closing
+     * the returned statement hands it back to the cache. If the cached statement is
+     * already in use further up the call stack, an uncached one is prepared instead.
+     */
+    PreparedStatement prepare(Connection physical, Connection owner, String schema, String sql,
+                              StatementVariant variant) throws SQLException {
+        ConnectionStatements statements = statementsFor(physical);
+        String key = keyPrefix(schema) + variant.keySuffix() + '\u0000' + sql;
+
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse) {
+            hits.increment();
+        } else {
+            misses.increment();
+            PreparedStatement statement;
+            try {
+                statement = variant.prepare(physical, sql);
+            } catch (SQLException e) {
+                if (isBroken(physical, true)) {
+                    discard(physical);
+                }
+                throw e;
+            }
+            if (cached != null) {
+                // Same statement open twice at once, serve this one uncached
+                return statement;
+            }
+            cached = new CachedStatement(statement);
+            statements.put(key, cached);
+        }
+        cached.inUse = true;
+        return cached.handle(owner);
+    }
+
+    /**
+     * Forgets the statements prepared for a schema that has been dropped. A connection's
+     * set is only touched by the thread holding the connection, so each connection
+     * closes them itself on its next checkout.
+     */
+    public void evictSchema(String schema) {
+        lock.lock();
+        try {
+            droppedSchemas.put(schema, ++drops);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public StatementCacheStats getStats() {
+        lock.lock();
+        try {
+            dropClosedConnections();
+            int cachedStatements = connections.values().stream().mapToInt(Map::size).sum();
+            return new StatementCacheStats(hits.sum(), misses.sum(), evictions.sum(), cachedStatements,
+                    connections.size(), connectionsDropped.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A physical connection is only used by one thread at a time, so only the registry needs the lock
+    private ConnectionStatements statementsFor(Connection physical) {
+        lock.lock();
+        try {
+            ConnectionStatements statements = connections.get(physical);
+            if (statements == null) {
+                // A connection the cache has not seen usually replaces one the pool has retired
+                dropClosedConnections();
+                statements = new ConnectionStatements(drops);
+                connections.put(physical, statements);
+            } else if (statements.prunedThrough < drops) {
+                statements.pruneDropped();
+            }
+            return statements;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void discard(Connection physical) {
+        lock.lock();
+        try {
+            if (connections.remove(physical) != null) {
+                connectionsDropped.increment();
+                log.debug("Dropped cached statements of a broken connection");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Guarded by lock. Its statements went with the connection, so they are not closed again
+    private void dropClosedConnections() {
+        int before = connections.size();
+        connections.keySet().removeIf(connection -> isBroken(connection, false));
+        connectionsDropped.add(before - connections.size());
+
+        // A drop every remaining connection has pruned is no longer needed
+        long prunedByAll = connections.values().stream().mapToLong(statements -> statements.prunedThrough)
+                .min().orElse(drops);
+        droppedSchemas.values().removeIf(droppedAt -> droppedAt <= prunedByAll);
+    }
+
+    private static String keyPrefix(String schema) {
+        return schema + '\u0000';
+    }
+
+    // isClosed only reads the connection's state; the validity check goes to the server
+    private static boolean isBroken(Connection connection, boolean validate) {
+        try {
+            return connection.isClosed() || (validate && !connection.isValid(1));
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private final class ConnectionStatements extends LinkedHashMap<String, CachedStatement> {
+        private long prunedThrough;
+
+        private ConnectionStatements(long prunedThrough) {
+            super(16, 0.75f, true);
+            this.prunedThrough = prunedThrough;
+        }
+
+        // Guarded by lock; closes the statements of the schemas dropped since the last prune
+        private void pruneDropped() {
+            droppedSchemas.forEach((schema, droppedAt) -> {
+                if (droppedAt > prunedThrough) {
+                    String prefix = keyPrefix(schema);
+                    entrySet().removeIf(entry -> {
+                        if (!entry.getKey().startsWith(prefix)) {
+                            return false;
+                        }
+                        entry.getValue().evict();
+                        return true;
+                    });
+                }
+            });
+            prunedThrough = drops;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+            if (size() <= maxStatementsPerConnection) {
+                return false;
+            }
+            evictions.increment();
+            eldest.getValue().evict();
+            return true;
+        }
+    }
+
+    private static final class CachedStatement {
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        private void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        // Logical view handed to the caller; close() resets and returns the statement
+        private PreparedStatement handle(Connection owner) {
+            boolean[] closed = {false};
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "equals" -> proxy == args[0];
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "getConnection" -> owner;
+                        case "isClosed" -> closed[0] || statement.isClosed();
+                        case "close" -> {
+                            if (!closed[0]) {
+                                closed[0] = true;
+                                release();
+                            }
+                            yield null;
+                        }
+                        default -> {
+                            try {
+                                yield method.invoke(statement, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getTargetException();
+                            }
+                        }
+                    });
+        }
+
+        private void release() {
+            inUse = false;
+            if (evicted) {
+                closeQuietly();
+                return;
+            }
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.clearWarnings();
+                statement.setMaxRows(0);
+                statement.setFetchSize(0);
+                statement.setQueryTimeout(0);
+            } catch (SQLException e) {
+                log.debug("Could not reset cached statement, dropping it: {}", e.getMessage());
+                evicted = true;
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                log.debug("Error closing evicted statement: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The prepareStatement overloads that are cached; the key includes the variant so
+     * a statement returning generated keys is never reused for a plain one.
+     */
+    record StatementVariant(String keySuffix, Preparer preparer) {
+        static StatementVariant plain() {
+            return new StatementVariant("", Connection::prepareStatement);
+        }
+
+        static StatementVariant generatedKeys(int autoGeneratedKeys) {
+            return new StatementVariant("k" + autoGeneratedKeys,
+                    (connection, sql) -> connection.prepareStatement(sql, autoGeneratedKeys));
+        }
+
+        static StatementVariant keyColumns(String[] columnNames) {
+            return new StatementVariant("c" + String.join(",", columnNames),
+                    (connection, sql) -> connection.prepareStatement(sql, columnNames));
+        }
+
+        PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+            return preparer.prepare(connection, sql);
+        }
+    }
+
+    @FunctionalInterface
+    interface Preparer {
+        PreparedStatement prepare(Connection connection, String sql) throws SQLException;
+    }
+
+    public record StatementCacheStats(long hits, long misses, long evictions, int cachedStatements,
+                                      int connections, long connectionsDropped) {
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total > 0 ? (double) hits / total * 100 : 0;
+        }
+    }
+}
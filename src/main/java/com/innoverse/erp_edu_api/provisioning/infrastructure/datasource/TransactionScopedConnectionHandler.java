@@ -0,0 +1,166 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connection proxy for the TRANSACTION switch mode, which leaves no session state
+ * behind so the connection can sit behind a transaction-pooling PgBouncer. The schema
+ * is bound with {@code SET LOCAL search_path} at the first statement execution of
+ * every physical transaction and so disappears at commit or rollback.
+ *
+ * <p>Statements issued in auto-commit mode run in an implicit transaction instead:
+ * the physical connection is kept in manual-commit mode, each execution is bound,
+ * run and committed on its own, and the caller still sees auto-commit as enabled.
+ * Results are therefore read fully before the commit; cursor-based fetching with a
+ * fetch size only works inside an explicit transaction.
+ */
+class TransactionScopedConnectionHandler implements InvocationHandler {
+    private final Connection target;
+    private final String setLocalSql;
+    private final Runnable onRelease;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    // What the caller asked for; the physical connection is always in manual-commit mode
+    private boolean logicalAutoCommit;
+    private boolean bound;
+
+    private TransactionScopedConnectionHandler(Connection target, String schema, Runnable onRelease)
+            throws SQLException {
+        this.target = target;
+        this.setLocalSql = "SET LOCAL search_path TO \"" + schema + "\", public";
+        this.onRelease = onRelease;
+        this.logicalAutoCommit = target.getAutoCommit();
+        if (logicalAutoCommit) {
+            target.setAutoCommit(false);
+        }
+    }
+
+    static Connection wrap(Connection target, String schema, Runnable onRelease) throws SQLException {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new TransactionScopedConnectionHandler(target, schema, onRelease));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "TransactionScopedConnection[" + target + "]";
+            case "getAutoCommit":
+                return logicalAutoCommit;
+            case "setAutoCommit":
+                setAutoCommit((Boolean) args[0]);
+                return null;
+            case "commit":
+            case "rollback":
+                bound = false;
+                break;
+            case "close":
+                return close();
+            default:
+                break;
+        }
+
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+        if (result instanceof Statement statement) {
+            return wrapStatement(statement, method.getReturnType(), (Connection) proxy);
+        }
+        return result;
+    }
+
+    // Per JDBC, switching auto-commit mid-transaction commits the work done so far
+    private void setAutoCommit(boolean autoCommit) throws SQLException {
+        if (autoCommit != logicalAutoCommit) {
+            target.commit();
+            bound = false;
+            logicalAutoCommit = autoCommit;
+        }
+    }
+
+    private Statement wrapStatement(Statement statement, Class<?> statementType, Connection connectionProxy) {
+        Class<?> iface = CallableStatement.class.isAssignableFrom(statementType) ? CallableStatement.class
+                : PreparedStatement.class.isAssignableFrom(statementType) ? PreparedStatement.class
+                : Statement.class;
+        return (Statement) Proxy.newProxyInstance(
+                Statement.class.getClassLoader(),
+                new Class<?>[]{iface},
+                (statementProxy, method, args) -> {
+                    if (method.getName().equals("getConnection")) {
+                        return connectionProxy;
+                    }
+                    if (!method.getName().startsWith("execute")) {
+                        return invokeTarget(statement, method, args);
+                    }
+                    return execute(statement, method, args);
+                });
+    }
+
+    private Object execute(Statement statement, Method method, Object[] args) throws Throwable {
+        bind();
+        try {
+            Object result = invokeTarget(statement, method, args);
+            if (logicalAutoCommit) {
+                target.commit();
+                bound = false;
+            }
+            return result;
+        } catch (Throwable e) {
+            if (logicalAutoCommit) {
+                target.rollback();
+                bound = false;
+            }
+            throw e;
+        }
+    }
+
+    private void bind() throws SQLException {
+        if (bound) {
+            return;
+        }
+        try (Statement stmt = target.createStatement()) {
+            stmt.execute(setLocalSql);
+        }
+        bound = true;
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private Object close() throws SQLException {
+        try {
+            if (logicalAutoCommit) {
+                target.rollback();
+            }
+            target.close();
+        } finally {
+            if (released.compareAndSet(false, true)) {
+                onRelease.run();
+            }
+        }
+        return null;
+    }
+}
@@ -2,15 +2,26 @@ package com.innoverse.erp_edu_api.provisioning.infrastructure.jdbc;
 
 import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
 import com.innoverse.erp_edu_api.provisioning.services.DbProvisioningRepository;
+import com.innoverse.erp_edu_api.provisioning.services.ProvisionQuery;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @Slf4j
 @Repository
@@ -18,6 +29,23 @@ import java.util.UUID;
 public class DbProvisionAdapter implements DbProvisioningRepository {
 
     private final DbProvisionJdbcRepository jpaRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    private static final RowMapper<DbProvision> PROVISION_ROW_MAPPER = (rs, rowNum) -> new DbProvision(
+            rs.getObject("provision_id", UUID.class),
+            rs.getString("db_schema_name"),
+            rs.getString("provision_status"),
+            rs.getObject("assigned_school_id", UUID.class),
+            rs.getString("assigned_education_level"),
+            rs.getBoolean("is_accessible"),
+            rs.getString("assigned_by"),
+            toLocalDateTime(rs.getTimestamp("assigned_date")),
+            rs.getString("error_message"),
+            rs.getInt("attempts"),
+            toLocalDateTime(rs.getTimestamp("created_at")),
+            toLocalDateTime(rs.getTimestamp("updated_at")),
+            rs.getString("step_log"),
+            rs.getString("shard_id"));
 
 
     @Override
@@ -62,7 +90,8 @@ public class DbProvisionAdapter implements DbProvisioningRepository {
                 provision.getAttempts(),
                 provision.isAccessible(),
                 provision.getCreatedAt(),
-                provision.getUpdatedAt()
+                provision.getUpdatedAt(),
+                provision.getShardId()
         );
 
         log.info("Saved database provision with ID: {}", provision.getProvisionId());
@@ -106,12 +135,230 @@ public class DbProvisionAdapter implements DbProvisioningRepository {
         return jpaRepository.findByAssignedSchoolId(schoolId);
     }
 
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Optional<DbProvision> claimSpare(String level, UUID schoolId, String assignedBy, String spareMarker) {
+        return jpaRepository.claimSpare(level, schoolId, assignedBy, spareMarker, LocalDateTime.now());
+    }
+
+    @Override
+    @Transactional
+    public boolean returnSpare(UUID provisionId, UUID schoolId, String spareMarker) {
+        return jdbcTemplate.update("""
+            UPDATE db_provisions
+            SET assigned_school_id = NULL, assigned_by = ?, assigned_date = NULL,
+                is_accessible = false, updated_at = now()
+            WHERE provision_id = ? AND assigned_school_id = ?
+        """, spareMarker, provisionId, schoolId) > 0;
+    }
+
+    @Override
+    public long countSpares(String level, String spareMarker) {
+        return jpaRepository.countSpares(level, spareMarker);
+    }
+
+    @Override
+    public List<DbProvision> findRoutableAfter(UUID afterProvisionId, int limit) {
+        return jpaRepository.findRoutablePage(afterProvisionId, limit);
+    }
+
     @Override
     public List<DbProvision> findFailedProvisionsOlderThanDays(int days) {
         LocalDateTime cutoffDate = LocalDateTime.now().minusDays(days);
         return jpaRepository.findFailedProvisionsBefore(cutoffDate);
     }
 
+    @Override
+    @Transactional
+    public boolean recordOutcome(UUID provisionId, String status, String errorMessage, String stepLog) {
+        return jpaRepository.recordOutcome(provisionId, status, errorMessage, stepLog, LocalDateTime.now()) > 0;
+    }
+
+    @Override
+    @Transactional
+    public boolean recordMigrated(UUID provisionId) {
+        return jdbcTemplate.update("""
+            UPDATE db_provisions SET error_message = NULL, updated_at = now()
+            WHERE provision_id = ? AND provision_status = 'provisioned'
+        """, provisionId) > 0;
+    }
+
+    @Override
+    @Transactional
+    public boolean recordOutcomeUnderLease(UUID provisionId, String status, String errorMessage, String stepLog,
+                                           String leaseOwner) {
+        return jpaRepository.recordOutcomeUnderLease(provisionId, status, errorMessage, stepLog, leaseOwner,
+                LocalDateTime.now()) > 0;
+    }
+
+    @Override
+    public List<DbProvision> findAllById(Collection<UUID> provisionIds) {
+        return (List<DbProvision>) jpaRepository.findAllById(provisionIds);
+    }
+
+    // Hibernated schemas, and those being restored or provisioned, may rightly be missing or half-built
+    @Override
+    public List<RegisteredSchema> findRegisteredSchemas() {
+        return jdbcTemplate.query("""
+            SELECT p.provision_id, p.db_schema_name, p.shard_id,
+                   p.provision_status IN ('hibernated', 'restoring')
+                       OR EXISTS (SELECT 1 FROM provisioning_jobs j
+                                  WHERE j.provision_id = p.provision_id AND j.job_state IN ('queued', 'running'))
+                       AS skipped
+            FROM db_provisions p
+            WHERE p.db_schema_name IS NOT NULL
+        """, (rs, rowNum) -> new RegisteredSchema(
+                rs.getObject("provision_id", UUID.class),
+                rs.getString("db_schema_name"),
+                rs.getString("shard_id"),
+                rs.getBoolean("skipped")));
+    }
+
+    // Keyset page in provision id order; the SQL only grows by the filters actually set
+    @Override
+    public void streamPage(ProvisionQuery query, Consumer<DbProvision> consumer) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM db_provisions WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+        if (query.after() != null) {
+            sql.append(" AND provision_id > ?");
+            args.add(query.after());
+        }
+        if (query.status() != null) {
+            sql.append(" AND provision_status = ?");
+            args.add(query.status());
+        }
+        if (query.educationLevel() != null) {
+            sql.append(" AND assigned_education_level = ?");
+            args.add(query.educationLevel());
+        }
+        if (query.assigned() != null) {
+            sql.append(query.assigned() ? " AND assigned_school_id IS NOT NULL" : " AND assigned_school_id IS NULL");
+        }
+        if (query.schoolId() != null) {
+            sql.append(" AND assigned_school_id = ?");
+            args.add(query.schoolId());
+        }
+        sql.append(" ORDER BY provision_id LIMIT ?");
+        args.add(query.limit());
+
+        jdbcTemplate.query(sql.toString(),
+                rs -> {
+                    consumer.accept(PROVISION_ROW_MAPPER.mapRow(rs, rs.getRow()));
+                },
+                args.toArray());
+    }
+
+    @Override
+    public List<ProvisionCount> countByStatusLevelAndAccess() {
+        return jdbcTemplate.query("""
+            SELECT provision_status, assigned_education_level, is_accessible, COUNT(*) AS provisions
+            FROM db_provisions
+            GROUP BY provision_status, assigned_education_level, is_accessible
+        """, (rs, rowNum) -> new ProvisionCount(
+                rs.getString("provision_status"),
+                rs.getString("assigned_education_level"),
+                rs.getBoolean("is_accessible"),
+                rs.getLong("provisions")));
+    }
+
+    @Override
+    public Optional<String> findShardBySchemaName(String schemaName) {
+        return jdbcTemplate.query("SELECT shard_id FROM db_provisions WHERE db_schema_name = ?",
+                (rs, rowNum) -> rs.getString("shard_id"), schemaName).stream().findFirst();
+    }
+
+    @Override
+    public Map<String, Long> countByShard() {
+        Map<String, Long> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT shard_id, COUNT(*) AS provisions FROM db_provisions GROUP BY shard_id",
+                rs -> {
+                    counts.put(rs.getString("shard_id"), rs.getLong("provisions"));
+                });
+        return counts;
+    }
+
+    @Override
+    @Transactional
+    public boolean updateShard(UUID provisionId, String expectedShardId, String shardId) {
+        return jdbcTemplate.update("""
+            UPDATE db_provisions SET shard_id = ?, updated_at = now()
+            WHERE provision_id = ? AND shard_id = ?
+        """, shardId, provisionId, expectedShardId) > 0;
+    }
+
+    @Override
+    @Transactional
+    public void recordAccessTimes(Map<String, LocalDateTime> lastAccessBySchema) {
+        if (lastAccessBySchema.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = lastAccessBySchema.entrySet().stream()
+                .map(entry -> new Object[]{Timestamp.valueOf(entry.getValue()), entry.getKey()})
+                .toList();
+        // GREATEST skips the NULL of a schema that has never been seen
+        jdbcTemplate.batchUpdate("""
+            UPDATE db_provisions SET last_accessed_at = GREATEST(last_accessed_at, ?)
+            WHERE db_schema_name = ?
+        """, args);
+    }
+
+    @Override
+    public List<DbProvision> findIdleSince(LocalDateTime cutoff, int limit) {
+        return jdbcTemplate.query("""
+            SELECT * FROM db_provisions
+            WHERE provision_status = 'provisioned'
+              AND assigned_school_id IS NOT NULL
+              AND COALESCE(last_accessed_at, assigned_date, created_at) < ?
+            ORDER BY COALESCE(last_accessed_at, assigned_date, created_at)
+            LIMIT ?
+        """, PROVISION_ROW_MAPPER, Timestamp.valueOf(cutoff), limit);
+    }
+
+    @Override
+    @Transactional
+    public boolean markHibernated(UUID provisionId, String archivePath) {
+        return jdbcTemplate.update("""
+            UPDATE db_provisions
+            SET provision_status = 'hibernated', hibernated_at = now(), archive_path = ?, updated_at = now()
+            WHERE provision_id = ? AND provision_status = 'provisioned'
+        """, archivePath, provisionId) > 0;
+    }
+
+    // updated_at doubles as the time the restore was taken
+    @Override
+    @Transactional
+    public Optional<String> claimRestore(UUID provisionId, Duration staleAfter, String claim) {
+        return jdbcTemplate.query("""
+            UPDATE db_provisions SET provision_status = 'restoring', restore_claim = ?, updated_at = now()
+            WHERE provision_id = ?
+              AND (provision_status = 'hibernated'
+                   OR (provision_status = 'restoring' AND updated_at < now() - ? * INTERVAL '1 millisecond'))
+            RETURNING archive_path
+        """, (rs, rowNum) -> rs.getString("archive_path"), claim, provisionId, staleAfter.toMillis())
+                .stream().findFirst();
+    }
+
+    @Override
+    @Transactional
+    public boolean markRestored(UUID provisionId, String claim) {
+        return jdbcTemplate.update("""
+            UPDATE db_provisions
+            SET provision_status = 'provisioned', hibernated_at = NULL, archive_path = NULL, restore_claim = NULL,
+                error_message = NULL, last_accessed_at = now(), updated_at = now()
+            WHERE provision_id = ? AND provision_status = 'restoring' AND restore_claim = ?
+        """, provisionId, claim) > 0;
+    }
+
+    @Override
+    @Transactional
+    public boolean releaseRestore(UUID provisionId, String claim, String errorMessage) {
+        return jdbcTemplate.update("""
+            UPDATE db_provisions
+            SET provision_status = 'hibernated', restore_claim = NULL, error_message = ?, updated_at = now()
+            WHERE provision_id = ? AND provision_status = 'restoring' AND restore_claim = ?
+        """, errorMessage, provisionId, claim) > 0;
+    }
+
     @Override
     public boolean existsBySchemaName(String schemaName) {
         return jpaRepository.existsByDbSchemaName(schemaName);
@@ -137,6 +384,10 @@ public class DbProvisionAdapter implements DbProvisioningRepository {
         }
     }
 
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
 //    // Additional helper methods for better performance
 //    public List<DbProvision> findReadyForAssignment() {
 //        return jpaRepository.findByProvisionStatus("provisioned");
@@ -152,4 +403,4 @@ public class DbProvisionAdapter implements DbProvisioningRepository {
 //                .filter(provision -> provision.getAssignedSchoolId() == null)
 //                .findFirst();
 //    }
-}
\ No newline at end of file
+}
@@ -26,6 +26,94 @@ public interface DbProvisionJdbcRepository extends CrudRepository<DbProvision, U
     @Query("SELECT * FROM db_provisions WHERE provision_status = 'failed' AND created_at < :cutoffDate")
     List<DbProvision> findFailedProvisionsBefore(@Param("cutoffDate") LocalDateTime cutoffDate);
 
+    // Keyset page over routable provisions, ordered by the primary key
+    @Query("""
+        SELECT * FROM db_provisions
+        WHERE assigned_school_id IS NOT NULL
+          AND is_accessible = true
+          AND provision_status = 'provisioned'
+          AND provision_id > :afterId
+        ORDER BY provision_id
+        LIMIT :limit
+    """)
+    List<DbProvision> findRoutablePage(@Param("afterId") UUID afterId, @Param("limit") int limit);
+
+    // Hands the oldest ready spare of the level to the school; concurrent claims skip each other's row
+    @Query("""
+        UPDATE db_provisions
+        SET assigned_school_id = :schoolId,
+            assigned_by = :assignedBy,
+            assigned_date = :now,
+            is_accessible = true,
+            updated_at = :now
+        WHERE provision_id = (
+            SELECT provision_id FROM db_provisions
+            WHERE assigned_school_id IS NULL
+              AND provision_status = 'provisioned'
+              AND assigned_by = :spareMarker
+              AND assigned_education_level = :level
+            ORDER BY created_at
+            LIMIT 1
+            FOR UPDATE SKIP LOCKED
+        )
+        RETURNING *
+    """)
+    Optional<DbProvision> claimSpare(@Param("level") String level,
+                                     @Param("schoolId") UUID schoolId,
+                                     @Param("assignedBy") String assignedBy,
+                                     @Param("spareMarker") String spareMarker,
+                                     @Param("now") LocalDateTime now);
+
+    // Spares being provisioned count too, so a slow refill is not started twice
+    @Query("""
+        SELECT COUNT(*) FROM db_provisions
+        WHERE assigned_school_id IS NULL
+          AND assigned_by = :spareMarker
+          AND assigned_education_level = :level
+          AND provision_status IN ('provisioned', 'pending')
+    """)
+    long countSpares(@Param("level") String level, @Param("spareMarker") String spareMarker);
+
+    // Final status of a provisioning run and its step log in one statement; a failure counts as an attempt
+    @Modifying
+    @Query("""
+        UPDATE db_provisions
+        SET provision_status = :status,
+            error_message = :errorMessage,
+            step_log = :stepLog,
+            attempts = attempts + CASE WHEN :status = 'failed' THEN 1 ELSE 0 END,
+            updated_at = :now
+        WHERE provision_id = :provisionId
+    """)
+    int recordOutcome(@Param("provisionId") UUID provisionId,
+                      @Param("status") String status,
+                      @Param("errorMessage") String errorMessage,
+                      @Param("stepLog") String stepLog,
+                      @Param("now") LocalDateTime now);
+
+    // As recordOutcome, but only while the given claim still runs the provision's queued job
+    @Modifying
+    @Query("""
+        UPDATE db_provisions
+        SET provision_status = :status,
+            error_message = :errorMessage,
+            step_log = :stepLog,
+            attempts = attempts + CASE WHEN :status = 'failed' THEN 1 ELSE 0 END,
+            updated_at = :now
+        WHERE provision_id = :provisionId
+          AND EXISTS (SELECT 1 FROM provisioning_jobs j
+                      WHERE j.provision_id = :provisionId
+                        AND j.lease_owner = :leaseOwner
+                        AND j.job_state = 'running'
+                      FOR SHARE)
+    """)
+    int recordOutcomeUnderLease(@Param("provisionId") UUID provisionId,
+                                @Param("status") String status,
+                                @Param("errorMessage") String errorMessage,
+                                @Param("stepLog") String stepLog,
+                                @Param("leaseOwner") String leaseOwner,
+                                @Param("now") LocalDateTime now);
+
     @Query("SELECT COUNT(*) FROM db_provisions WHERE provision_status = :status")
     long countByProvisionStatus(@Param("status") String status);
 
@@ -43,7 +131,8 @@ public interface DbProvisionJdbcRepository extends CrudRepository<DbProvision, U
             attempts,
             is_accessible,
             created_at,
-            updated_at
+            updated_at,
+            shard_id
         ) VALUES (
             :provisionId,
             :dbSchemaName,
@@ -56,7 +145,8 @@ public interface DbProvisionJdbcRepository extends CrudRepository<DbProvision, U
             :attempts,
             :isAccessible,
             :createdAt,
-            :updatedAt
+            :updatedAt,
+            :shardId
         )
     """)
     void customInsert(
@@ -71,6 +161,7 @@ public interface DbProvisionJdbcRepository extends CrudRepository<DbProvision, U
             @Param("attempts") Integer attempts,
             @Param("isAccessible")  boolean isAccessible,
             @Param("createdAt") LocalDateTime createdAt,
-            @Param("updatedAt") LocalDateTime updatedAt
+            @Param("updatedAt") LocalDateTime updatedAt,
+            @Param("shardId") String shardId
     );
 }
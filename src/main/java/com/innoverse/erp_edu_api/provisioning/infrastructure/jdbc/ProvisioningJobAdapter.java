@@ -0,0 +1,152 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.jdbc;
+
+import com.innoverse.erp_edu_api.provisioning.services.ProvisioningJobRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+@Repository
+@RequiredArgsConstructor
+public class ProvisioningJobAdapter implements ProvisioningJobRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public void enqueue(UUID provisionId, String educationLevel, String assignedBy) {
+        jdbcTemplate.update("""
+            INSERT INTO provisioning_jobs (provision_id, education_level, assigned_by)
+            VALUES (?, ?, ?)
+            ON CONFLICT (provision_id) DO UPDATE
+            SET job_state = 'queued', next_attempt_at = now(), lease_owner = NULL, lease_expires_at = NULL,
+                last_error = NULL, updated_at = now()
+            WHERE provisioning_jobs.job_state IN ('done', 'failed')
+        """, provisionId, educationLevel, assignedBy);
+    }
+
+    // SKIP LOCKED lets every node claim at once without waiting on each other's rows
+    @Override
+    @Transactional
+    public List<ProvisioningJob> claim(String owner, int limit, Duration lease) {
+        return jdbcTemplate.query("""
+            UPDATE provisioning_jobs j
+            SET job_state = 'running', lease_owner = ?,
+                lease_expires_at = now() + ? * INTERVAL '1 millisecond', updated_at = now()
+            FROM db_provisions p
+            WHERE p.provision_id = j.provision_id
+              AND j.provision_id IN (
+                  SELECT provision_id FROM provisioning_jobs
+                  WHERE job_state = 'queued' AND next_attempt_at <= now()
+                  ORDER BY next_attempt_at
+                  LIMIT ?
+                  FOR UPDATE SKIP LOCKED)
+            RETURNING j.provision_id, p.db_schema_name, j.education_level, j.assigned_by, p.attempts
+        """, (rs, rowNum) -> new ProvisioningJob(
+                rs.getObject("provision_id", UUID.class),
+                rs.getString("db_schema_name"),
+                rs.getString("education_level"),
+                rs.getString("assigned_by"),
+                rs.getInt("attempts")), owner, lease.toMillis(), limit);
+    }
+
+    @Override
+    @Transactional
+    public boolean renewLease(UUID provisionId, String owner, Duration lease) {
+        return jdbcTemplate.update("""
+            UPDATE provisioning_jobs
+            SET lease_expires_at = now() + ? * INTERVAL '1 millisecond', updated_at = now()
+            WHERE provision_id = ? AND lease_owner = ? AND job_state = 'running'
+        """, lease.toMillis(), provisionId, owner) > 0;
+    }
+
+    @Override
+    @Transactional
+    public boolean complete(UUID provisionId, String owner) {
+        return jdbcTemplate.update("""
+            UPDATE provisioning_jobs
+            SET job_state = 'done', lease_owner = NULL, lease_expires_at = NULL, last_error = NULL, updated_at = now()
+            WHERE provision_id = ? AND lease_owner = ? AND job_state = 'running'
+        """, provisionId, owner) > 0;
+    }
+
+    @Override
+    @Transactional
+    public boolean retryLater(UUID provisionId, String owner, String error, Duration backoff) {
+        return jdbcTemplate.update("""
+            UPDATE provisioning_jobs
+            SET job_state = 'queued', next_attempt_at = now() + ? * INTERVAL '1 millisecond',
+                lease_owner = NULL, lease_expires_at = NULL, last_error = ?, updated_at = now()
+            WHERE provision_id = ? AND lease_owner = ? AND job_state = 'running'
+        """, backoff.toMillis(), error, provisionId, owner) > 0;
+    }
+
+    @Override
+    @Transactional
+    public boolean fail(UUID provisionId, String owner, String error) {
+        return jdbcTemplate.update("""
+            UPDATE provisioning_jobs
+            SET job_state = 'failed', lease_owner = NULL, lease_expires_at = NULL, last_error = ?, updated_at = now()
+            WHERE provision_id = ? AND lease_owner = ? AND job_state = 'running'
+        """, error, provisionId, owner) > 0;
+    }
+
+    // Counts the attempt and settles the job in one statement; backoff doubles per attempt up to the maximum
+    @Override
+    @Transactional
+    public List<ExpiredJob> requeueExpired(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+        return jdbcTemplate.query("""
+            WITH expired AS (
+                SELECT provision_id, lease_owner FROM provisioning_jobs
+                WHERE job_state = 'running' AND lease_expires_at < now()
+                FOR UPDATE SKIP LOCKED
+            ), counted AS (
+                UPDATE db_provisions p
+                SET attempts = p.attempts + 1,
+                    provision_status = CASE WHEN p.attempts + 1 >= ? THEN 'failed' ELSE p.provision_status END,
+                    error_message = CASE WHEN p.attempts + 1 >= ? THEN 'Provisioning lease expired'
+                                         ELSE p.error_message END,
+                    updated_at = now()
+                FROM expired e
+                WHERE p.provision_id = e.provision_id
+                RETURNING p.provision_id, p.attempts
+            )
+            UPDATE provisioning_jobs j
+            SET job_state = CASE WHEN c.attempts >= ? THEN 'failed' ELSE 'queued' END,
+                next_attempt_at = now() + LEAST(? * power(2, c.attempts - 1), ?) * INTERVAL '1 millisecond',
+                lease_owner = NULL, lease_expires_at = NULL,
+                last_error = 'Lease expired', updated_at = now()
+            FROM counted c, expired e
+            WHERE j.provision_id = c.provision_id AND e.provision_id = c.provision_id
+            RETURNING j.provision_id, e.lease_owner, j.job_state, c.attempts
+        """, (rs, rowNum) -> new ExpiredJob(
+                rs.getObject("provision_id", UUID.class),
+                rs.getString("lease_owner"),
+                rs.getString("job_state"),
+                rs.getInt("attempts")),
+                maxAttempts, maxAttempts, maxAttempts, initialBackoff.toMillis(), maxBackoff.toMillis());
+    }
+
+    @Override
+    public Map<String, Long> countByState() {
+        Map<String, Long> counts = new TreeMap<>();
+        jdbcTemplate.query("SELECT job_state, count(*) AS jobs FROM provisioning_jobs GROUP BY job_state",
+                rs -> {
+                    counts.put(rs.getString("job_state"), rs.getLong("jobs"));
+                });
+        return counts;
+    }
+
+    @Override
+    public boolean hasActiveJob(UUID provisionId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("""
+            SELECT EXISTS (SELECT 1 FROM provisioning_jobs
+                           WHERE provision_id = ? AND job_state IN ('queued', 'running'))
+        """, Boolean.class, provisionId));
+    }
+}
@@ -5,26 +5,64 @@ import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantAw
 import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
 import lombok.extern.slf4j.Slf4j;
 import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.callback.Callback;
 import org.flywaydb.core.api.exception.FlywayValidateException;
 import org.springframework.stereotype.Service;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
 public class FlywayMigrationService implements MigrationService {
+    private static final String MIGRATION_LOCK_NAMESPACE = "tenant_migration";
+    static final String HISTORY_TABLE = "flyway_tenant_history";
+    // Label of a pending repeatable script among the pending versions
+    static final String REPEATABLE_PREFIX = "R__";
+
     private final DataSource underlyingDataSource;
+    private final TenantAwareDataSource tenantAwareDataSource;
     private final TenantFlywayProperties props;
 
+    // Location set -> scripts scanned once and shared by every schema's Flyway instance
+    private final Map<String, ResolvedMigrations> resolvedMigrations = new ConcurrentHashMap<>();
+
     public FlywayMigrationService(DataSource dataSource, TenantFlywayProperties props) {
-        this.underlyingDataSource = dataSource instanceof TenantAwareDataSource ?
-                ((TenantAwareDataSource) dataSource).getTargetDataSource() : dataSource;
+        this.tenantAwareDataSource = unwrapTenantAware(dataSource);
+        this.underlyingDataSource = tenantAwareDataSource != null ? tenantAwareDataSource.getTargetDataSource() : dataSource;
         this.props = props;
     }
 
+    private static TenantAwareDataSource unwrapTenantAware(DataSource dataSource) {
+        try {
+            if (dataSource.isWrapperFor(TenantAwareDataSource.class)) {
+                return dataSource.unwrap(TenantAwareDataSource.class);
+            }
+        } catch (SQLException e) {
+            log.warn("Could not unwrap tenant-aware data source, migrating through it: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    // Migrations run on the raw pool of the schema's cluster, past any routing proxy and the tenant binding
+    private DataSource dataSourceFor(String schemaName) {
+        return tenantAwareDataSource != null ? tenantAwareDataSource.getSchemaDataSource(schemaName) : underlyingDataSource;
+    }
+
     @Override
     public void migrate(String tenantId, AcademicLevel level) {
         String[] locations = getMigrationLocations(level);
@@ -32,9 +70,48 @@ public class FlywayMigrationService implements MigrationService {
         migrate(tenantId, locations);
     }
 
+    /**
+     * Migrates the schema. A schema whose history already holds every resolved version
+     * is left alone without a Flyway validate, so re-running a bulk migration costs
+     * one history query per up-to-date tenant.
+     */
     @Override
     public void migrate(String schemaName, String[] paths) {
-        Flyway flyway = createFlywayConfig(schemaName, paths);
+        migrate(dataSourceFor(schemaName), schemaName, paths);
+    }
+
+    /**
+     * Migrates the schema on the given shard rather than the one the shard map names,
+     * e.g. the target of a tenant move before it is switched over.
+     */
+    public void migrateOnShard(String shardId, String schemaName, AcademicLevel level) {
+        migrate(shardDataSource(shardId), schemaName, getMigrationLocations(level));
+    }
+
+    /**
+     * Migrates the schema on the given shard up to the target version only, e.g. to rebuild
+     * the structure an archive was taken from before its rows are loaded back.
+     */
+    public void migrateOnShard(String shardId, String schemaName, AcademicLevel level, String targetVersion) {
+        createFlywayConfig(shardDataSource(shardId), schemaName, getMigrationLocations(level), targetVersion, null)
+                .migrate();
+        log.info("Migrated tenant '{}' on shard {} to version {}", schemaName, shardId, targetVersion);
+    }
+
+    DataSource shardDataSource(String shardId) {
+        return tenantAwareDataSource != null ? tenantAwareDataSource.getShardDataSource(shardId) : underlyingDataSource;
+    }
+
+    private void migrate(DataSource dataSource, String schemaName, String[] paths) {
+        migrate(dataSource, schemaName, paths, null);
+    }
+
+    private void migrate(DataSource dataSource, String schemaName, String[] paths, Callback timeouts) {
+        if (getPendingVersions(dataSource, schemaName, paths).isEmpty()) {
+            log.debug("Schema '{}' is up to date, skipping migration", schemaName);
+            return;
+        }
+        Flyway flyway = createFlywayConfig(dataSource, schemaName, paths, null, timeouts);
 
         try {
             flyway.migrate();
@@ -47,6 +124,67 @@ public class FlywayMigrationService implements MigrationService {
         }
     }
 
+    /**
+     * Migrates the schema while holding a Postgres advisory lock on it, so two nodes
+     * never migrate the same tenant at once. Returns false without migrating when the
+     * lock is held elsewhere, or when the schema is gone by the time the lock is taken,
+     * e.g. archived, as Flyway would otherwise create it empty. Unlike Flyway's own lock
+     * this does not queue the caller. Every script runs under the given lock and
+     * statement timeouts, see {@link #migrateGuarded}.
+     */
+    public boolean migrateExclusively(String schemaName, AcademicLevel level, Duration lockTimeout,
+                                      Duration statementTimeout) throws SQLException {
+        try (MigrationLock lock = tryMigrationLock(schemaName)) {
+            if (lock == null || !lock.schemaExists()) {
+                return false;
+            }
+            migrateGuarded(schemaName, level, lockTimeout, statementTimeout);
+            return true;
+        }
+    }
+
+    /**
+     * Takes the advisory lock {@link #migrateExclusively} uses, for callers that prepare
+     * the tenant before migrating it and for work that must not overlap a migration,
+     * such as archiving the schema. Returns null when the lock is held elsewhere.
+     */
+    public MigrationLock tryMigrationLock(String schemaName) throws SQLException {
+        Connection lockConnection = dataSourceFor(schemaName).getConnection();
+        try {
+            if (!advisoryLock(lockConnection, "pg_try_advisory_lock", schemaName)) {
+                lockConnection.close();
+                return null;
+            }
+            return new MigrationLock(lockConnection, schemaName);
+        } catch (SQLException | RuntimeException e) {
+            lockConnection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Migrates the schema with every statement under the given lock and statement
+     * timeouts, so a script that cannot get its locks fails fast and is rolled back
+     * instead of queueing the tenant's requests behind it.
+     */
+    public void migrateGuarded(String schemaName, AcademicLevel level, Duration lockTimeout,
+                               Duration statementTimeout) {
+        migrate(dataSourceFor(schemaName), schemaName, getMigrationLocations(level),
+                new MigrationTimeouts(lockTimeout, statementTimeout));
+    }
+
+    private static boolean advisoryLock(Connection connection, String function, String schemaName)
+            throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT " + function + "(hashtext(?), hashtext(?))")) {
+            stmt.setString(1, MIGRATION_LOCK_NAMESPACE);
+            stmt.setString(2, schemaName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
     @Override
     public boolean isSchemaUpToDate(String schemaName, AcademicLevel level) {
         String[] locations = getMigrationLocations(level);
@@ -55,29 +193,108 @@ public class FlywayMigrationService implements MigrationService {
 
     @Override
     public boolean isSchemaUpToDate(String schemaName, String[] locations) {
-        try {
-            Flyway flyway = createFlywayConfig(schemaName, locations);
-            flyway.validate();
-            return true;
-        } catch (FlywayValidateException e) {
-            return false;
+        return getPendingVersions(schemaName, locations).isEmpty();
+    }
+
+    public List<String> getPendingVersions(String schemaName, AcademicLevel level) {
+        return getPendingVersions(schemaName, getMigrationLocations(level));
+    }
+
+    /**
+     * Versions defined by the scripts but missing from the schema's history, then the
+     * repeatable scripts that were never run or have changed since, as R__<description>;
+     * read with a single query instead of a full validate. Checksums of applied versioned
+     * scripts are not compared; Flyway still validates them whenever there is something
+     * to migrate.
+     */
+    public List<String> getPendingVersions(String schemaName, String[] locations) {
+        return getPendingVersions(dataSourceFor(schemaName), schemaName, locations);
+    }
+
+    private List<String> getPendingVersions(DataSource dataSource, String schemaName, String[] locations) {
+        SchemaHistory history = SchemaHistory.empty();
+        try (Connection conn = dataSource.getConnection()) {
+            if (historyTableExists(conn, schemaName)) {
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT version, type, description, checksum FROM \"" + schemaName
+                             + "\"." + HISTORY_TABLE + " WHERE success ORDER BY installed_rank")) {
+                    while (rs.next()) {
+                        history.add(rs);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read migration history of schema " + schemaName, e);
+        }
+        ResolvedMigrations resolved = resolve(locations);
+        List<String> pending = new ArrayList<>(pending(resolved.versions(), history.versions()).stream()
+                .map(MigrationVersion::getVersion)
+                .toList());
+        pendingRepeatables(resolved.repeatableChecksums(), history.repeatables())
+                .forEach(description -> pending.add(REPEATABLE_PREFIX + description));
+        return pending;
+    }
+
+    // Resolved versions missing from the applied ones; versions at or below a baseline are never applied
+    static SortedSet<MigrationVersion> pending(SortedSet<MigrationVersion> resolved, List<AppliedVersion> applied) {
+        SortedSet<MigrationVersion> pending = new TreeSet<>(resolved);
+        MigrationVersion baseline = MigrationVersion.EMPTY;
+        for (AppliedVersion version : applied) {
+            pending.remove(version.version());
+            if (version.baseline() && version.version().isNewerThan(baseline)) {
+                baseline = version.version();
+            }
         }
+        MigrationVersion floor = baseline;
+        pending.removeIf(version -> !version.isNewerThan(floor));
+        return pending;
     }
 
-    private Flyway createFlywayConfig(String schemaName, String[] locations) {
+    // Repeatable scripts never run on the schema, or whose last successful run had another checksum
+    static List<String> pendingRepeatables(Map<String, Integer> resolved, Map<String, Integer> applied) {
+        return resolved.entrySet().stream()
+                .filter(script -> !script.getValue().equals(applied.get(script.getKey())))
+                .map(Map.Entry::getKey)
+                .sorted()
+                .toList();
+    }
+
+    private static boolean historyTableExists(Connection conn, String schemaName) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT to_regclass(?)")) {
+            stmt.setString(1, "\"" + schemaName + "\"." + HISTORY_TABLE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getString(1) != null;
+            }
+        }
+    }
+
+    ResolvedMigrations resolve(String[] locations) {
+        return resolvedMigrations.computeIfAbsent(String.join(",", locations), key -> {
+            ResolvedMigrations resolved = ResolvedMigrations.scan(locations);
+            log.info("Resolved {} migration scripts for locations {}", resolved.size(), key);
+            return resolved;
+        });
+    }
+
+    // The timeouts callback, when given, bounds each script's locks and run time
+    private Flyway createFlywayConfig(DataSource dataSource, String schemaName, String[] locations,
+                                      String targetVersion, Callback timeouts) {
         return Flyway.configure()
-                .table("flyway_tenant_history")
-                .dataSource(underlyingDataSource)
+                .table(HISTORY_TABLE)
+                .dataSource(dataSource)
                 .schemas(schemaName) // Set the specific schema for migration
                 .locations(locations)
+                .resourceProvider(resolve(locations))
                 .baselineOnMigrate(true)
                 .cleanDisabled(true)
                 .validateOnMigrate(true)
                 .outOfOrder(true)
+                .target(targetVersion != null ? MigrationVersion.fromVersion(targetVersion) : MigrationVersion.LATEST)
+                .callbacks(timeouts != null ? new Callback[] {timeouts} : new Callback[0])
                 .load();
     }
 
-    private String[] getMigrationLocations(AcademicLevel level) {
+    String[] getMigrationLocations(AcademicLevel level) {
         List<String> locations = new ArrayList<>(props.getCommon());
         switch (level) {
             case PRIMARY -> locations.addAll(props.getPrimary());
@@ -86,4 +303,98 @@ public class FlywayMigrationService implements MigrationService {
         }
         return locations.toArray(String[]::new);
     }
-}
\ No newline at end of file
+
+    /**
+     * A held per-schema migration lock. Closing it releases the lock and its connection.
+     */
+    public static final class MigrationLock implements AutoCloseable {
+        private static final long IDLE_POLL_MILLIS = 100;
+
+        private final Connection connection;
+        private final String schemaName;
+
+        private MigrationLock(Connection connection, String schemaName) {
+            this.connection = connection;
+            this.schemaName = schemaName;
+        }
+
+        // Checked under the lock, since the schema may have been archived since the caller last looked
+        public boolean schemaExists() throws SQLException {
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "SELECT 1 FROM pg_namespace WHERE nspname = ?")) {
+                stmt.setString(1, schemaName);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        }
+
+        /**
+         * Waits until no other session holds a lock on any of the schema's relations, i.e.
+         * no transaction on any node is still working in it. Returns whether it got there
+         * within the timeout.
+         */
+        public boolean awaitIdle(long timeoutMillis) throws SQLException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            try (PreparedStatement stmt = connection.prepareStatement("""
+                    SELECT count(DISTINCT l.pid) FROM pg_locks l
+                    JOIN pg_class c ON c.oid = l.relation
+                    JOIN pg_namespace n ON n.oid = c.relnamespace
+                    WHERE n.nspname = ? AND l.pid <> pg_backend_pid()
+                    """)) {
+                stmt.setString(1, schemaName);
+                while (true) {
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next() && rs.getInt(1) == 0) {
+                            return true;
+                        }
+                    }
+                    if (System.currentTimeMillis() >= deadline) {
+                        return false;
+                    }
+                    try {
+                        Thread.sleep(IDLE_POLL_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                advisoryLock(connection, "pg_advisory_unlock", schemaName);
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    record AppliedVersion(MigrationVersion version, boolean baseline) {
+        static AppliedVersion of(String version, String type) {
+            return new AppliedVersion(MigrationVersion.fromVersion(version), "BASELINE".equals(type));
+        }
+    }
+
+    /**
+     * A schema's successful history rows: the versioned ones, and the checksum of each
+     * repeatable script's latest run by description.
+     */
+    record SchemaHistory(List<AppliedVersion> versions, Map<String, Integer> repeatables) {
+        static SchemaHistory empty() {
+            return new SchemaHistory(new ArrayList<>(), new HashMap<>());
+        }
+
+        // Rows are added in installed_rank order, so a repeatable script's latest run wins
+        void add(ResultSet rs) throws SQLException {
+            String version = rs.getString("version");
+            if (version != null) {
+                versions.add(AppliedVersion.of(version, rs.getString("type")));
+            } else {
+                repeatables.put(rs.getString("description"), rs.getObject("checksum", Integer.class));
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.migration;
+
+import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.api.MigrationVersion;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.stream.Collectors;
+
+/**
+ * Works out which tenants are behind without touching them one by one. Per cluster, one
+ * catalog query finds the schemas, whether each has a history table and how much data
+ * it holds; the histories of all of them are then read with a UNION ALL over their
+ * history tables, a chunk of schemas per statement. Each tenant's history is compared
+ * with the versions, and the repeatable scripts' checksums, resolved for its level's
+ * location set.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MigrationPlanner {
+    // Schemas per UNION ALL statement, keeping statements and their parameter lists bounded
+    private static final int HISTORY_CHUNK_SIZE = 200;
+
+    private final FlywayMigrationService flywayMigrationService;
+
+    public MigrationPlan plan(List<PlanTarget> targets) {
+        long started = System.nanoTime();
+        Map<String, List<PlanTarget>> byShard = targets.stream()
+                .collect(Collectors.groupingBy(PlanTarget::shardId, LinkedHashMap::new, Collectors.toList()));
+
+        List<TenantPlan> behind = new ArrayList<>();
+        List<String> missingSchemas = new ArrayList<>();
+        int upToDate = 0;
+        for (Map.Entry<String, List<PlanTarget>> shard : byShard.entrySet()) {
+            ShardCatalog catalog = readShard(shard.getKey(), shard.getValue());
+            for (PlanTarget target : shard.getValue()) {
+                SchemaFacts facts = catalog.schemas().get(target.schemaName());
+                if (facts == null) {
+                    missingSchemas.add(target.schemaName());
+                    continue;
+                }
+                ResolvedMigrations resolved = flywayMigrationService.resolve(
+                        flywayMigrationService.getMigrationLocations(target.level()));
+                FlywayMigrationService.SchemaHistory history = catalog.histories()
+                        .getOrDefault(target.schemaName(), FlywayMigrationService.SchemaHistory.empty());
+                SortedSet<MigrationVersion> pending =
+                        FlywayMigrationService.pending(resolved.versions(), history.versions());
+                List<String> pendingRepeatables = FlywayMigrationService.pendingRepeatables(
+                        resolved.repeatableChecksums(), history.repeatables());
+                if (pending.isEmpty() && pendingRepeatables.isEmpty()) {
+                    upToDate++;
+                    continue;
+                }
+                List<String> pendingScripts = new ArrayList<>(
+                        pending.stream().map(MigrationVersion::getVersion).toList());
+                pendingRepeatables.forEach(description ->
+                        pendingScripts.add(FlywayMigrationService.REPEATABLE_PREFIX + description));
+                behind.add(new TenantPlan(target.schemaName(), target.level(), target.shardId(),
+                        currentVersion(history.versions()), pendingScripts,
+                        resolved.scriptBytes(pending) + resolved.repeatableBytes(pendingRepeatables),
+                        facts.dataBytes(), facts.hasHistory()));
+            }
+        }
+
+        behind.sort(Comparator.comparing(TenantPlan::schemaName));
+        missingSchemas.sort(Comparator.naturalOrder());
+        MigrationPlan plan = new MigrationPlan(LocalDateTime.now(), targets.size(), upToDate, behind.size(),
+                missingSchemas,
+                behind.stream().mapToLong(tenant -> tenant.pendingVersions().size()).sum(),
+                behind.stream().mapToLong(TenantPlan::pendingScriptBytes).sum(),
+                behind.stream().mapToLong(TenantPlan::dataBytes).sum(),
+                (System.nanoTime() - started) / 1_000_000,
+                behind);
+        log.info("Planned migrations for {} tenants on {} shards in {}ms: {} behind, {} up to date, {} missing",
+                targets.size(), byShard.size(), plan.planningMillis(), behind.size(), upToDate, missingSchemas.size());
+        return plan;
+    }
+
+    private ShardCatalog readShard(String shardId, List<PlanTarget> targets) {
+        List<String> schemas = targets.stream().map(PlanTarget::schemaName).distinct().toList();
+        try (Connection conn = flywayMigrationService.shardDataSource(shardId).getConnection()) {
+            Map<String, SchemaFacts> facts = readSchemaFacts(conn, schemas);
+            List<String> withHistory = facts.entrySet().stream()
+                    .filter(entry -> entry.getValue().hasHistory())
+                    .map(Map.Entry::getKey)
+                    .toList();
+
+            return new ShardCatalog(facts, readHistories(conn, withHistory, HISTORY_CHUNK_SIZE));
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read migration history on shard " + shardId, e);
+        }
+    }
+
+    // Regular tables and materialized views only; indexes and TOAST are counted by pg_total_relation_size
+    private static Map<String, SchemaFacts> readSchemaFacts(Connection conn, List<String> schemas)
+            throws SQLException {
+        Map<String, SchemaFacts> facts = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                SELECT n.nspname,
+                       bool_or(c.relname = ? AND c.relkind IN ('r', 'p')) AS has_history,
+                       COALESCE(sum(pg_total_relation_size(c.oid)) FILTER (WHERE c.relkind IN ('r', 'm')), 0)
+                           AS data_bytes
+                FROM pg_namespace n
+                LEFT JOIN pg_class c ON c.relnamespace = n.oid
+                WHERE n.nspname = ANY(?)
+                GROUP BY n.nspname
+                """)) {
+            stmt.setString(1, FlywayMigrationService.HISTORY_TABLE);
+            stmt.setArray(2, conn.createArrayOf("text", schemas.toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    facts.put(rs.getString("nspname"),
+                            new SchemaFacts(rs.getBoolean("has_history"), rs.getLong("data_bytes")));
+                }
+            }
+        }
+        return facts;
+    }
+
+    // Successful rows of each schema's history table in install order, chunkSize schemas per statement
+    static Map<String, FlywayMigrationService.SchemaHistory> readHistories(
+            Connection conn, List<String> schemas, int chunkSize) throws SQLException {
+        Map<String, FlywayMigrationService.SchemaHistory> histories = new HashMap<>();
+        for (int from = 0; from < schemas.size(); from += chunkSize) {
+            readHistories(conn, schemas.subList(from, Math.min(from + chunkSize, schemas.size())), histories);
+        }
+        return histories;
+    }
+
+    private static void readHistories(Connection conn, List<String> schemas,
+                                      Map<String, FlywayMigrationService.SchemaHistory> histories)
+            throws SQLException {
+        String sql = schemas.stream()
+                .map(schema -> "SELECT ? AS schema_name, installed_rank, version, type, description, checksum FROM "
+                        + SchemaCatalog.ident(schema) + "." + FlywayMigrationService.HISTORY_TABLE + " WHERE success")
+                .collect(Collectors.joining(" UNION ALL ")) + " ORDER BY schema_name, installed_rank";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < schemas.size(); i++) {
+                stmt.setString(i + 1, schemas.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    histories.computeIfAbsent(rs.getString("schema_name"),
+                            schema -> FlywayMigrationService.SchemaHistory.empty()).add(rs);
+                }
+            }
+        }
+    }
+
+    private static String currentVersion(List<FlywayMigrationService.AppliedVersion> applied) {
+        return applied.stream()
+                .map(FlywayMigrationService.AppliedVersion::version)
+                .max(Comparator.naturalOrder())
+                .map(MigrationVersion::getVersion)
+                .orElse(null);
+    }
+
+    private record SchemaFacts(boolean hasHistory, long dataBytes) { }
+
+    private record ShardCatalog(Map<String, SchemaFacts> schemas,
+                                Map<String, FlywayMigrationService.SchemaHistory> histories) { }
+
+    public record PlanTarget(String schemaName, AcademicLevel level, String shardId) { }
+
+    /**
+     * A tenant that is behind. The script bytes and the schema's data size are the work
+     * estimate: the former is what Flyway has to run, the latter what it runs against.
+     */
+    public record TenantPlan(String schemaName, AcademicLevel level, String shardId, String currentVersion,
+                             List<String> pendingVersions, long pendingScriptBytes, long dataBytes,
+                             boolean hasHistory) { }
+
+    public record MigrationPlan(LocalDateTime plannedAt, int tenants, int upToDate, int behind,
+                                List<String> missingSchemas, long pendingScripts, long pendingScriptBytes,
+                                long dataBytesBehind, long planningMillis, List<TenantPlan> tenantsBehind) { }
+}
@@ -0,0 +1,48 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.migration;
+
+import org.flywaydb.core.api.callback.Callback;
+import org.flywaydb.core.api.callback.Context;
+import org.flywaydb.core.api.callback.Event;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+/**
+ * Puts each migration script under lock and statement timeouts. The timeouts are set
+ * with SET LOCAL inside the script's own transaction, so they end with it and never
+ * stay on the pooled connection Flyway borrowed. A script Flyway runs outside a
+ * transaction is not bound by them.
+ */
+class MigrationTimeouts implements Callback {
+    private final String sql;
+
+    MigrationTimeouts(Duration lockTimeout, Duration statementTimeout) {
+        this.sql = "SET LOCAL lock_timeout = " + lockTimeout.toMillis()
+                + "; SET LOCAL statement_timeout = " + statementTimeout.toMillis();
+    }
+
+    @Override
+    public boolean supports(Event event, Context context) {
+        return event == Event.BEFORE_EACH_MIGRATE;
+    }
+
+    @Override
+    public boolean canHandleInTransaction(Event event, Context context) {
+        return true;
+    }
+
+    @Override
+    public void handle(Event event, Context context) {
+        try (Statement stmt = context.getConnection().createStatement()) {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not set migration timeouts", e);
+        }
+    }
+
+    @Override
+    public String getCallbackName() {
+        return "migration-timeouts";
+    }
+}
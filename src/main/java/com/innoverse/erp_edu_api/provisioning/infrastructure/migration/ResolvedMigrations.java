@@ -0,0 +1,222 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.migration;
+
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.ResourceProvider;
+import org.flywaydb.core.api.resource.LoadableResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * The SQL migrations of one location set, scanned and read once and then served to
+ * every Flyway instance from memory, so migrating many schemas does not rescan the
+ * classpath and reread each script per schema. Also knows the set of versions the
+ * scripts define, which the fast pending check compares against a schema's history,
+ * and the size of each versioned script, which the migration planner sums as its
+ * estimate of the work left. Repeatable scripts are known by description, with the
+ * checksum Flyway records for them, so a changed one counts as pending too.
+ */
+class ResolvedMigrations implements ResourceProvider {
+    private static final PathMatchingResourcePatternResolver RESOLVER = new PathMatchingResourcePatternResolver();
+
+    private final List<LoadableResource> resources;
+    private final SortedSet<MigrationVersion> versions;
+    private final Map<MigrationVersion, Integer> scriptBytes;
+    private final Map<String, Integer> repeatableChecksums;
+    private final Map<String, Integer> repeatableBytes;
+
+    private ResolvedMigrations(List<LoadableResource> resources, SortedSet<MigrationVersion> versions,
+                               Map<MigrationVersion, Integer> scriptBytes, Map<String, Integer> repeatableChecksums,
+                               Map<String, Integer> repeatableBytes) {
+        this.resources = resources;
+        this.versions = versions;
+        this.scriptBytes = scriptBytes;
+        this.repeatableChecksums = repeatableChecksums;
+        this.repeatableBytes = repeatableBytes;
+    }
+
+    static ResolvedMigrations scan(String[] locations) {
+        List<LoadableResource> resources = new ArrayList<>();
+        SortedSet<MigrationVersion> versions = new TreeSet<>();
+        Map<MigrationVersion, Integer> scriptBytes = new HashMap<>();
+        Map<String, Integer> repeatableChecksums = new HashMap<>();
+        Map<String, Integer> repeatableBytes = new HashMap<>();
+        try {
+            for (String location : locations) {
+                String basePath = basePath(location);
+                for (Resource resource : RESOLVER.getResources(searchPattern(location))) {
+                    if (!resource.isReadable()) {
+                        continue;
+                    }
+                    String url = resource.getURL().toString();
+                    String relativePath = url.substring(url.indexOf(basePath) + basePath.length() + 1);
+                    String content = resource.getContentAsString(StandardCharsets.UTF_8);
+                    resources.add(new InMemoryResource(url, relativePath, resource.getFilename(), content));
+
+                    MigrationVersion version = versionOf(resource.getFilename());
+                    if (version != null) {
+                        versions.add(version);
+                        scriptBytes.merge(version, content.getBytes(StandardCharsets.UTF_8).length, Integer::sum);
+                    }
+                    String repeatable = repeatableDescriptionOf(resource.getFilename());
+                    if (repeatable != null) {
+                        repeatableChecksums.put(repeatable, checksum(content));
+                        repeatableBytes.put(repeatable, content.getBytes(StandardCharsets.UTF_8).length);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not resolve migrations in " + Arrays.toString(locations), e);
+        }
+        return new ResolvedMigrations(List.copyOf(resources), Collections.unmodifiableSortedSet(versions),
+                Map.copyOf(scriptBytes), Map.copyOf(repeatableChecksums), Map.copyOf(repeatableBytes));
+    }
+
+    SortedSet<MigrationVersion> versions() {
+        return versions;
+    }
+
+    // Checksum of each repeatable script by its description, as Flyway records them in the history
+    Map<String, Integer> repeatableChecksums() {
+        return repeatableChecksums;
+    }
+
+    int size() {
+        return resources.size();
+    }
+
+    long scriptBytes(Collection<MigrationVersion> pending) {
+        return pending.stream().mapToLong(version -> scriptBytes.getOrDefault(version, 0)).sum();
+    }
+
+    long repeatableBytes(Collection<String> pendingRepeatables) {
+        return pendingRepeatables.stream().mapToLong(description -> repeatableBytes.getOrDefault(description, 0)).sum();
+    }
+
+    @Override
+    public LoadableResource getResource(String name) {
+        return resources.stream()
+                .filter(resource -> resource.getRelativePath().equals(name))
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Override
+    public Collection<LoadableResource> getResources(String prefix, String[] suffixes) {
+        return resources.stream()
+                .filter(resource -> resource.getFilename().startsWith(prefix))
+                .filter(resource -> Arrays.stream(suffixes).anyMatch(resource.getFilename()::endsWith))
+                .toList();
+    }
+
+    // Versioned scripts are V<version>__<description>.sql, with _ allowed as a version separator
+    static MigrationVersion versionOf(String filename) {
+        if (filename == null || !filename.startsWith("V")) {
+            return null;
+        }
+        int separator = filename.indexOf("__");
+        if (separator <= 1) {
+            return null;
+        }
+        return MigrationVersion.fromVersion(filename.substring(1, separator).replace('_', '.'));
+    }
+
+    // Repeatable scripts are R__<description>.sql; Flyway records the description with spaces for underscores
+    static String repeatableDescriptionOf(String filename) {
+        if (filename == null || !filename.startsWith("R__") || !filename.endsWith(".sql")) {
+            return null;
+        }
+        return filename.substring(3, filename.length() - ".sql".length()).replace('_', ' ');
+    }
+
+    /**
+     * Flyway's checksum of a script: CRC32 over its lines in UTF-8, without line breaks
+     * and without a leading byte order mark. Were it ever to differ from Flyway's own,
+     * the script would only look pending and be left to Flyway to decide.
+     */
+    static int checksum(String content) {
+        CRC32 crc32 = new CRC32();
+        try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+            String line = reader.readLine();
+            if (line != null && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            while (line != null) {
+                crc32.update(line.getBytes(StandardCharsets.UTF_8));
+                line = reader.readLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return (int) crc32.getValue();
+    }
+
+    private static String searchPattern(String location) {
+        if (location.startsWith("filesystem:")) {
+            return "file:" + location.substring("filesystem:".length()) + "/**/*.sql";
+        }
+        return "classpath*:" + basePath(location) + "/**/*.sql";
+    }
+
+    private static String basePath(String location) {
+        String path = location.startsWith("classpath:") ? location.substring("classpath:".length())
+                : location.startsWith("filesystem:") ? location.substring("filesystem:".length())
+                : location;
+        return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private static final class InMemoryResource extends LoadableResource {
+        private final String absolutePath;
+        private final String relativePath;
+        private final String filename;
+        private final String content;
+
+        private InMemoryResource(String absolutePath, String relativePath, String filename, String content) {
+            this.absolutePath = absolutePath;
+            this.relativePath = relativePath;
+            this.filename = filename;
+            this.content = content;
+        }
+
+        @Override
+        public Reader read() {
+            return new StringReader(content);
+        }
+
+        @Override
+        public String getAbsolutePath() {
+            return absolutePath;
+        }
+
+        @Override
+        public String getAbsolutePathOnDisk() {
+            return absolutePath;
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public String getRelativePath() {
+            return relativePath;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.migration;
+
+import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantHibernationProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.api.MigrationVersion;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archives a tenant schema to a gzip file and drops it, and rebuilds it from the file.
+ * Rows are written as their text form together with each column's type, so a restore
+ * casts them back without any driver-specific copy API. The archive records the
+ * schema's migration version: a restore migrates a fresh schema to that version,
+ * loads the rows, then applies whatever scripts were added while it slept.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SchemaArchiver {
+    private static final String FORMAT = "erp-tenant-archive/1";
+    private static final byte TABLE = 'T';
+    private static final byte ROW = 'R';
+    private static final byte SEQUENCE = 'S';
+    private static final byte END = 'E';
+    private static final int BATCH_SIZE = 1000;
+
+    private final SchemaManagerService schemaManagerService;
+    private final FlywayMigrationService flywayMigrationService;
+    private final TenantHibernationProperties properties;
+
+    /**
+     * Writes the schema to the file while its writes are held, runs the cutover, which must
+     * mark the schema hibernated, and drops the schema in the same transaction. Nothing is
+     * dropped if the archive cannot be written or the cutover fails. Holds the schema's
+     * migration lock throughout, so a migration never runs against, or recreates, a schema
+     * being archived; fails at once if a migration holds it.
+     */
+    public ArchiveResult archive(String schema, String shardId, Path file, Runnable cutover)
+            throws SQLException, IOException {
+        try (FlywayMigrationService.MigrationLock lock = flywayMigrationService.tryMigrationLock(schema)) {
+            if (lock == null) {
+                throw new IllegalStateException("Schema " + schema + " is being migrated");
+            }
+            return archiveLocked(schema, shardId, file, cutover);
+        }
+    }
+
+    private ArchiveResult archiveLocked(String schema, String shardId, Path file, Runnable cutover)
+            throws SQLException, IOException {
+        long started = System.nanoTime();
+        DataSource source = schemaManagerService.getShardDataSource(shardId);
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+
+        boolean switched = false;
+        try (Connection conn = source.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                List<String> tables = SchemaCatalog.listTables(conn, schema);
+                SchemaCatalog.holdWrites(conn, schema, tables, properties.getLockTimeout());
+                String version = currentVersion(conn, schema);
+                // Types outside pg_catalog then come out schema-qualified, so they resolve on restore
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("SET LOCAL search_path = pg_catalog");
+                }
+
+                long rows;
+                try (FileOutputStream fileOut = new FileOutputStream(partial.toFile());
+                     GZIPOutputStream gzip = new GZIPOutputStream(new BufferedOutputStream(fileOut));
+                     DataOutputStream out = new DataOutputStream(gzip)) {
+                    rows = writeArchive(conn, out, schema, version, tables);
+                    out.flush();
+                    gzip.finish();
+                    gzip.flush();
+                    fileOut.getFD().sync();
+                }
+                Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+                cutover.run();
+                switched = true;
+
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("DROP SCHEMA " + SchemaCatalog.ident(schema) + " CASCADE");
+                }
+                conn.commit();
+
+                ArchiveResult result = new ArchiveResult(schema, file.toString(), version, tables.size(), rows,
+                        Files.size(file), (System.nanoTime() - started) / 1_000_000);
+                log.info("Archived schema {} at version {} to {}: {} tables, {} rows, {} bytes",
+                        schema, version, file, tables.size(), rows, result.archiveBytes());
+                return result;
+            } catch (SQLException | IOException | RuntimeException e) {
+                SchemaCatalog.rollbackQuietly(conn);
+                if (!switched) {
+                    Files.deleteIfExists(partial);
+                    Files.deleteIfExists(file);
+                } else {
+                    log.error("Schema {} was archived to {} but could not be dropped", schema, file, e);
+                }
+                throw e;
+            }
+        } finally {
+            if (switched) {
+                // Removes the tenant role, and the schema itself if the drop above failed
+                dropQuietly(shardId, schema);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the schema on the shard from the archive and brings it up to date. A
+     * half-restored schema is dropped again on failure; the archive is never touched.
+     */
+    public RestoreResult restore(String schema, String shardId, AcademicLevel level, String rolePassword,
+                                 Path file) throws SQLException, IOException {
+        long started = System.nanoTime();
+        DataSource target = schemaManagerService.getShardDataSource(shardId);
+
+        try (DataInputStream in = openArchive(file)) {
+            if (!FORMAT.equals(in.readUTF())) {
+                throw new IOException("Not a tenant archive: " + file);
+            }
+            String archivedSchema = in.readUTF();
+            if (!schema.equals(archivedSchema)) {
+                throw new IOException("Archive " + file + " holds schema " + archivedSchema + ", not " + schema);
+            }
+            String version = in.readUTF();
+
+            // Leftovers of an earlier attempt are dropped so the load starts from empty tables
+            schemaManagerService.dropSchemaOnShard(shardId, schema);
+            schemaManagerService.createSchemaOnShard(shardId, schema, rolePassword);
+            try {
+                if (!version.isEmpty()) {
+                    flywayMigrationService.migrateOnShard(shardId, schema, level, version);
+                }
+
+                int tables = 0;
+                long rows = 0;
+                try (Connection conn = target.getConnection()) {
+                    conn.setAutoCommit(false);
+                    try {
+                        // Tables come back in name order, so foreign keys go back on once all rows are in,
+                        // and user triggers stay off so the rows are stored as they were archived
+                        List<String> schemaTables = SchemaCatalog.listTables(conn, schema);
+                        List<SchemaCatalog.ForeignKey> foreignKeys = SchemaCatalog.dropForeignKeys(conn, schema);
+                        SchemaCatalog.setUserTriggers(conn, schema, schemaTables, false);
+                        List<SchemaCatalog.SequenceValue> sequences = new ArrayList<>();
+                        byte section;
+                        while ((section = in.readByte()) != END) {
+                            if (section == TABLE) {
+                                rows += loadTable(conn, in, schema);
+                                tables++;
+                            } else if (section == SEQUENCE) {
+                                sequences.add(new SchemaCatalog.SequenceValue(in.readUTF(), in.readLong()));
+                            } else {
+                                throw new IOException("Corrupt archive " + file + ": unexpected section " + section);
+                            }
+                        }
+                        SchemaCatalog.setUserTriggers(conn, schema, schemaTables, true);
+                        SchemaCatalog.addForeignKeys(conn, schema, foreignKeys);
+                        SchemaCatalog.setSequences(conn, schema, sequences);
+                        conn.commit();
+                    } catch (SQLException | IOException | RuntimeException e) {
+                        SchemaCatalog.rollbackQuietly(conn);
+                        throw e;
+                    }
+                }
+
+                // Scripts added while the schema was archived
+                flywayMigrationService.migrateOnShard(shardId, schema, level);
+
+                RestoreResult result = new RestoreResult(schema, version, tables, rows,
+                        (System.nanoTime() - started) / 1_000_000);
+                log.info("Restored schema {} from {}: {} tables, {} rows in {}ms",
+                        schema, file, tables, rows, result.totalMillis());
+                return result;
+            } catch (SQLException | IOException | RuntimeException e) {
+                dropQuietly(shardId, schema);
+                throw e;
+            }
+        }
+    }
+
+    private long writeArchive(Connection conn, DataOutputStream out, String schema, String version,
+                              List<String> tables) throws SQLException, IOException {
+        out.writeUTF(FORMAT);
+        out.writeUTF(schema);
+        out.writeUTF(version);
+
+        long rows = 0;
+        for (String table : tables) {
+            rows += writeTable(conn, out, schema, table);
+        }
+        for (SchemaCatalog.SequenceValue sequence : SchemaCatalog.listSequences(conn, schema)) {
+            out.writeByte(SEQUENCE);
+            out.writeUTF(sequence.name());
+            out.writeLong(sequence.lastValue());
+        }
+        out.writeByte(END);
+        return rows;
+    }
+
+    private static long writeTable(Connection conn, DataOutputStream out, String schema, String table)
+            throws SQLException, IOException {
+        String qualified = SchemaCatalog.ident(schema) + "." + SchemaCatalog.ident(table);
+        List<SchemaCatalog.Column> columns = SchemaCatalog.insertableColumns(conn, qualified);
+
+        out.writeByte(TABLE);
+        out.writeUTF(table);
+        out.writeInt(columns.size());
+        for (SchemaCatalog.Column column : columns) {
+            out.writeUTF(column.name());
+            out.writeUTF(column.type());
+        }
+
+        long rows = 0;
+        if (!columns.isEmpty()) {
+            String select = columns.stream()
+                    .map(column -> SchemaCatalog.ident(column.name()) + "::text")
+                    .collect(Collectors.joining(", "));
+            try (Statement stmt = conn.createStatement()) {
+                stmt.setFetchSize(BATCH_SIZE);
+                try (ResultSet rs = stmt.executeQuery("SELECT " + select + " FROM " + qualified)) {
+                    while (rs.next()) {
+                        out.writeByte(ROW);
+                        for (int i = 1; i <= columns.size(); i++) {
+                            writeValue(out, rs.getString(i));
+                        }
+                        rows++;
+                    }
+                }
+            }
+        }
+        out.writeByte(END);
+        return rows;
+    }
+
+    private static long loadTable(Connection conn, DataInputStream in, String schema)
+            throws SQLException, IOException {
+        String table = in.readUTF();
+        int columnCount = in.readInt();
+        List<SchemaCatalog.Column> columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            columns.add(new SchemaCatalog.Column(in.readUTF(), in.readUTF()));
+        }
+
+        String qualified = SchemaCatalog.ident(schema) + "." + SchemaCatalog.ident(table);
+        String columnList = columns.stream()
+                .map(column -> SchemaCatalog.ident(column.name()))
+                .collect(Collectors.joining(", "));
+        String values = columns.stream()
+                .map(column -> "?::" + column.type())
+                .collect(Collectors.joining(", "));
+        String insert = columns.isEmpty() ? "INSERT INTO " + qualified + " DEFAULT VALUES"
+                : "INSERT INTO " + qualified + " (" + columnList + ") OVERRIDING SYSTEM VALUE VALUES (" + values + ")";
+
+        long rows = 0;
+        try (PreparedStatement write = conn.prepareStatement(insert)) {
+            int pending = 0;
+            while (in.readByte() == ROW) {
+                for (int i = 1; i <= columnCount; i++) {
+                    write.setString(i, readValue(in));
+                }
+                write.addBatch();
+                rows++;
+                if (++pending == BATCH_SIZE) {
+                    write.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                write.executeBatch();
+            }
+        }
+        return rows;
+    }
+
+    // Highest applied version; out-of-order scripts mean it is not always the last one installed
+    private static String currentVersion(Connection conn, String schema) throws SQLException {
+        try (PreparedStatement exists = conn.prepareStatement("SELECT to_regclass(?)")) {
+            exists.setString(1, SchemaCatalog.ident(schema) + "." + FlywayMigrationService.HISTORY_TABLE);
+            try (ResultSet rs = exists.executeQuery()) {
+                if (!rs.next() || rs.getString(1) == null) {
+                    return "";
+                }
+            }
+        }
+        MigrationVersion current = MigrationVersion.EMPTY;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version FROM " + SchemaCatalog.ident(schema) + "."
+                     + FlywayMigrationService.HISTORY_TABLE + " WHERE success AND version IS NOT NULL")) {
+            while (rs.next()) {
+                MigrationVersion version = MigrationVersion.fromVersion(rs.getString(1));
+                if (version.isNewerThan(current)) {
+                    current = version;
+                }
+            }
+        }
+        return current == MigrationVersion.EMPTY ? "" : current.getVersion();
+    }
+
+    private static void writeValue(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        // writeUTF is capped at 64KB, which a text or bytea value can exceed
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readValue(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static DataInputStream openArchive(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        try {
+            return new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private void dropQuietly(String shardId, String schema) {
+        try {
+            schemaManagerService.dropSchemaOnShard(shardId, schema);
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Could not clean up schema {} on shard {}: {}", schema, shardId, e.getMessage());
+        }
+    }
+
+    public record ArchiveResult(String schemaName, String archivePath, String version, int tables, long rows,
+                                long archiveBytes, long totalMillis) { }
+
+    public record RestoreResult(String schemaName, String version, int tables, long rows, long totalMillis) { }
+}
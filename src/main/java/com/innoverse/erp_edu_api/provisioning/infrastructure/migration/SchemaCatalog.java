@@ -0,0 +1,178 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.migration;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Catalog reads and locking shared by the operations that copy a tenant schema's rows
+ * out of its cluster, i.e. shard moves and hibernation.
+ */
+@Slf4j
+final class SchemaCatalog {
+
+    private SchemaCatalog() {
+    }
+
+    // Plain tables and leaf partitions; partitioned parents hold no rows of their own
+    static List<String> listTables(Connection conn, String schema) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                SELECT c.relname FROM pg_class c
+                JOIN pg_namespace n ON n.oid = c.relnamespace
+                WHERE n.nspname = ? AND c.relkind = 'r' AND c.relname <> ?
+                ORDER BY c.relname
+                """)) {
+            stmt.setString(1, schema);
+            stmt.setString(2, FlywayMigrationService.HISTORY_TABLE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    tables.add(rs.getString(1));
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Columns a copy has to write, with their types as format_type prints them under the
+     * connection's search_path. Generated columns are recomputed by the target.
+     */
+    static List<Column> insertableColumns(Connection conn, String qualifiedTable) throws SQLException {
+        List<Column> columns = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                SELECT attname, format_type(atttypid, atttypmod) AS type FROM pg_attribute
+                WHERE attrelid = ?::regclass AND attnum > 0 AND NOT attisdropped AND attgenerated = ''
+                ORDER BY attnum
+                """)) {
+            stmt.setString(1, qualifiedTable);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    columns.add(new Column(rs.getString("attname"), rs.getString("type")));
+                }
+            }
+        }
+        return columns;
+    }
+
+    // Sequences of the schema that have been used, with their current value
+    static List<SequenceValue> listSequences(Connection conn, String schema) throws SQLException {
+        List<SequenceValue> sequences = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT sequencename, last_value FROM pg_sequences WHERE schemaname = ? AND last_value IS NOT NULL")) {
+            stmt.setString(1, schema);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    sequences.add(new SequenceValue(rs.getString("sequencename"), rs.getLong("last_value")));
+                }
+            }
+        }
+        return sequences;
+    }
+
+    static void setSequences(Connection conn, String schema, List<SequenceValue> sequences) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT setval(?::regclass, ?, true)")) {
+            for (SequenceValue sequence : sequences) {
+                stmt.setString(1, ident(schema) + "." + ident(sequence.name()));
+                stmt.setLong(2, sequence.lastValue());
+                stmt.execute();
+            }
+        }
+    }
+
+    /**
+     * Locks the tables in EXCLUSIVE mode for the rest of the transaction: reads go on,
+     * writes wait. Gives up after the timeout rather than queueing behind long writers.
+     */
+    static void holdWrites(Connection conn, String schema, List<String> tables, Duration lockTimeout)
+            throws SQLException {
+        if (tables.isEmpty()) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SET LOCAL lock_timeout = " + lockTimeout.toMillis());
+            stmt.execute("LOCK TABLE " + tables.stream()
+                    .map(table -> ident(schema) + "." + ident(table))
+                    .collect(Collectors.joining(", ")) + " IN EXCLUSIVE MODE");
+        }
+    }
+
+    /**
+     * Drops the foreign keys of the schema's tables and returns them for
+     * {@link #addForeignKeys}, so rows can be loaded in any order by a role that cannot
+     * switch off constraint checking altogether.
+     */
+    static List<ForeignKey> dropForeignKeys(Connection conn, String schema) throws SQLException {
+        List<ForeignKey> foreignKeys = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                SELECT t.relname, c.conname, pg_get_constraintdef(c.oid) AS definition FROM pg_constraint c
+                JOIN pg_class t ON t.oid = c.conrelid
+                JOIN pg_namespace n ON n.oid = t.relnamespace
+                WHERE n.nspname = ? AND c.contype = 'f'
+                ORDER BY t.relname, c.conname
+                """)) {
+            stmt.setString(1, schema);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    foreignKeys.add(new ForeignKey(rs.getString("relname"), rs.getString("conname"),
+                            rs.getString("definition")));
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            for (ForeignKey foreignKey : foreignKeys) {
+                stmt.execute("ALTER TABLE " + ident(schema) + "." + ident(foreignKey.table())
+                        + " DROP CONSTRAINT " + ident(foreignKey.name()));
+            }
+        }
+        return foreignKeys;
+    }
+
+    // Adding a key back checks every row against it, so a copy that broke one fails here
+    static void addForeignKeys(Connection conn, String schema, List<ForeignKey> foreignKeys) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (ForeignKey foreignKey : foreignKeys) {
+                stmt.execute("ALTER TABLE " + ident(schema) + "." + ident(foreignKey.table())
+                        + " ADD CONSTRAINT " + ident(foreignKey.name()) + " " + foreignKey.definition());
+            }
+        }
+    }
+
+    // User triggers only; the tables' owner may switch these without superuser rights
+    static void setUserTriggers(Connection conn, String schema, List<String> tables, boolean enabled)
+            throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String table : tables) {
+                stmt.execute("ALTER TABLE " + ident(schema) + "." + ident(table)
+                        + (enabled ? " ENABLE" : " DISABLE") + " TRIGGER USER");
+            }
+        }
+    }
+
+    static void rollbackQuietly(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            log.debug("Rollback failed: {}", e.getMessage());
+        }
+    }
+
+    static String ident(String name) {
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+
+    record Column(String name, String type) { }
+
+    record SequenceValue(String name, long lastValue) { }
+
+    // definition is as pg_get_constraintdef prints it, with the referenced table schema-qualified
+    record ForeignKey(String table, String name, String definition) { }
+}
@@ -1,13 +1,23 @@
 package com.innoverse.erp_edu_api.provisioning.infrastructure.migration;
 
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.ReplicaRouter;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.SchemaOperationTimings;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.SchemaSwitchTracker;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantAdmissionController;
 import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantAwareDataSource;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantShardRouter;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantStatementCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
@@ -16,7 +26,11 @@ public class SchemaManagerService {
     private final DataSource dataSource;
 
     private TenantAwareDataSource getTenantAwareDataSource() {
-        return (TenantAwareDataSource) dataSource;
+        try {
+            return dataSource.unwrap(TenantAwareDataSource.class);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Tenant-aware data source is not configured", e);
+        }
     }
 
     public boolean schemaExists(String schema) throws SQLException {
@@ -31,6 +45,10 @@ public class SchemaManagerService {
         getTenantAwareDataSource().createSchema(schema, password);
     }
 
+    public void createSchemaFromTemplate(String template, String schema) throws SQLException {
+        getTenantAwareDataSource().createSchemaFromTemplate(template, schema, "password");
+    }
+
     public void dropSchema(String schema) throws SQLException {
         getTenantAwareDataSource().dropSchema(schema);
     }
@@ -39,6 +57,14 @@ public class SchemaManagerService {
         getTenantAwareDataSource().dropSchemaIfExists(schema);
     }
 
+    public void dropSchemasIfExist(List<String> schemas) throws SQLException {
+        getTenantAwareDataSource().dropSchemasIfExist(schemas);
+    }
+
+    public void restoreTenantRoles(Map<String, String> passwordsBySchema) throws SQLException {
+        getTenantAwareDataSource().restoreTenantRoles(passwordsBySchema);
+    }
+
     public void assignToSchool(String schema, UUID schoolId) throws SQLException {
         getTenantAwareDataSource().assignToSchool(schema, schoolId);
     }
@@ -58,12 +84,81 @@ public class SchemaManagerService {
     public boolean validateTenantCredentials(String schema, String password) throws SQLException {
         return getTenantAwareDataSource().validateTenantCredentials(schema, password);
     }
+
+    public SchemaSwitchTracker.SchemaSwitchStats getSchemaSwitchStats() {
+        return getTenantAwareDataSource().getSchemaSwitchStats();
+    }
+
+    public List<TenantAdmissionController.TenantAdmissionStats> getTenantAdmissionStats() {
+        return getTenantAwareDataSource().getAdmissionStats();
+    }
+
+    public ReplicaRouter.ReplicaRoutingStats getReplicaRoutingStats() {
+        return getTenantAwareDataSource().getReplicaRoutingStats();
+    }
+
+    public TenantStatementCache.StatementCacheStats getStatementCacheStats() {
+        return getTenantAwareDataSource().getStatementCacheStats();
+    }
+
+    public TenantShardRouter getShardRouter() {
+        return getTenantAwareDataSource().getShardRouter();
+    }
+
+    public DataSource getShardDataSource(String shardId) {
+        return getTenantAwareDataSource().getShardDataSource(shardId);
+    }
+
+    public void createSchemaOnShard(String shardId, String schema, String password) throws SQLException {
+        getTenantAwareDataSource().createSchemaOnShard(shardId, schema, password);
+    }
+
+    public void dropSchemaOnShard(String shardId, String schema) throws SQLException {
+        getTenantAwareDataSource().dropSchemaOnShard(shardId, schema);
+    }
+
+    public void dropSchemasOnShard(String shardId, List<String> schemas) throws SQLException {
+        getTenantAwareDataSource().dropSchemasOnShard(shardId, schemas);
+    }
+
+    /**
+     * Schemas in the shard's own catalog, with whether their tenant role exists there.
+     * Copies retired by a tenant move are left out; they are kept until their retention
+     * runs out, see {@link SchemaShardMover#listRetired}.
+     */
+    public List<CatalogSchema> listCatalogSchemas(String shardId) throws SQLException {
+        List<CatalogSchema> schemas = new ArrayList<>();
+        try (Connection conn = getShardDataSource(shardId).getConnection();
+             PreparedStatement stmt = conn.prepareStatement("""
+                     SELECT n.nspname, r.rolname IS NOT NULL AS role_exists
+                     FROM pg_namespace n
+                     LEFT JOIN pg_roles r ON r.rolname = n.nspname || '_user'
+                     WHERE n.nspname NOT IN ('information_schema', 'public')
+                       AND n.nspname NOT LIKE 'pg\\_%'
+                       AND COALESCE(obj_description(n.oid, 'pg_namespace'), '') NOT LIKE ?
+                     ORDER BY n.nspname
+                     """)) {
+            stmt.setString(1, SchemaShardMover.RETIRED_NOTE + "%");
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    schemas.add(new CatalogSchema(rs.getString("nspname"), rs.getBoolean("role_exists")));
+                }
+            }
+        }
+        return schemas;
+    }
+
+    public List<SchemaOperationTimings.OperationStats> getSchemaOperationStats() {
+        return getTenantAwareDataSource().getSchemaOperationStats();
+    }
+
     public List<String> getAllTenantSchemas() throws SQLException {
         try (var conn = dataSource.getConnection();
              var stmt = conn.createStatement();
              var rs = stmt.executeQuery(
                      "SELECT schema_name FROM information_schema.schemata " +
                              "WHERE schema_name NOT IN ('information_schema', 'pg_catalog', 'pg_toast', 'public') " +
+                             "AND schema_name NOT LIKE '" + TemplateSchemaService.TEMPLATE_SCHEMA_PATTERN + "' " +
                              "ORDER BY schema_name")) {
 
             List<String> schemas = new ArrayList<>();
@@ -94,4 +189,6 @@ public class SchemaManagerService {
             return rs.next() ? rs.getInt(1) : 0;
         }
     }
-}
\ No newline at end of file
+
+    public record CatalogSchema(String schemaName, boolean roleExists) { }
+}
@@ -0,0 +1,251 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.migration;
+
+import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantShardProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Moves a tenant schema from one cluster to another. The target is created and
+ * migrated while the tenant keeps working on the source. Its tables are then locked
+ * in EXCLUSIVE mode, which lets reads through on every node but holds writes, while
+ * the rows are copied and the shard map is switched. In the same transaction the
+ * source copy is retired: every write to it fails from then on, including the writes
+ * that waited on the lock, so none lands in a stale copy. Those writes are not retried
+ * here; they fail back to the caller. The retired copy stays readable for nodes that
+ * still route the tenant to the source until the shard change reaches them, and is
+ * dropped later, see {@link #dropRetired}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SchemaShardMover {
+    // Schema comment of a retired source copy: retired:<epoch millis>:<target shard>
+    static final String RETIRED_NOTE = "retired:";
+    private static final String FENCE_FUNCTION = "__moved_write_fence";
+
+    private final SchemaManagerService schemaManagerService;
+    private final FlywayMigrationService flywayMigrationService;
+    private final TenantShardProperties shardProperties;
+
+    /**
+     * Copies the schema to the target shard and runs the cutover, which must repoint the
+     * shard map, while writes are held. Nothing changes on the source if the copy or the
+     * cutover fails. If retiring the source fails after the cutover, the revert points the
+     * shard map back at the source, which is writable again, and the target copy goes.
+     * Holds the schema's migration lock throughout, so neither a migration nor a repair
+     * works on the schema mid-move; fails at once if it is held.
+     */
+    public MoveResult move(String schema, String sourceShard, String targetShard, AcademicLevel level,
+                           String rolePassword, Runnable cutover, Runnable revert) throws SQLException {
+        try (FlywayMigrationService.MigrationLock lock = flywayMigrationService.tryMigrationLock(schema)) {
+            if (lock == null) {
+                throw new IllegalStateException("Schema " + schema + " is being migrated or repaired");
+            }
+            return moveLocked(schema, sourceShard, targetShard, level, rolePassword, cutover, revert);
+        }
+    }
+
+    private MoveResult moveLocked(String schema, String sourceShard, String targetShard, AcademicLevel level,
+                                  String rolePassword, Runnable cutover, Runnable revert)
+            throws SQLException {
+        long started = System.nanoTime();
+        DataSource source = schemaManagerService.getShardDataSource(sourceShard);
+        DataSource target = schemaManagerService.getShardDataSource(targetShard);
+
+        // Leftovers of an earlier attempt are dropped so the copy starts from empty tables
+        schemaManagerService.dropSchemaOnShard(targetShard, schema);
+        schemaManagerService.createSchemaOnShard(targetShard, schema, rolePassword);
+
+        boolean switched = false;
+        try {
+            flywayMigrationService.migrateOnShard(targetShard, schema, level);
+
+            try (Connection src = source.getConnection();
+                 Connection dst = target.getConnection()) {
+                src.setAutoCommit(false);
+                dst.setAutoCommit(false);
+                try {
+                    List<String> tables = SchemaCatalog.listTables(src, schema);
+                    long frozenAt = System.nanoTime();
+                    SchemaCatalog.holdWrites(src, schema, tables, shardProperties.getMoveLockTimeout());
+
+                    // Tables are copied in name order, so foreign keys go back on once all rows are in,
+                    // and user triggers stay off so the copied rows are stored as they are
+                    List<SchemaCatalog.ForeignKey> foreignKeys = SchemaCatalog.dropForeignKeys(dst, schema);
+                    SchemaCatalog.setUserTriggers(dst, schema, tables, false);
+                    long rows = 0;
+                    for (String table : tables) {
+                        rows += copyTable(src, dst, schema, table);
+                    }
+                    SchemaCatalog.setUserTriggers(dst, schema, tables, true);
+                    SchemaCatalog.addForeignKeys(dst, schema, foreignKeys);
+                    SchemaCatalog.setSequences(dst, schema, SchemaCatalog.listSequences(src, schema));
+                    dst.commit();
+
+                    // Not visible until the commit below, which is also when the held writes go on
+                    retire(src, schema, tables, targetShard);
+                    cutover.run();
+                    switched = true;
+                    src.commit();
+
+                    long frozenMillis = (System.nanoTime() - frozenAt) / 1_000_000;
+                    MoveResult result = new MoveResult(schema, sourceShard, targetShard, tables.size(), rows,
+                            frozenMillis, (System.nanoTime() - started) / 1_000_000);
+                    log.info("Moved schema {} from {} to {}: {} tables, {} rows, writes held for {}ms",
+                            schema, sourceShard, targetShard, tables.size(), rows, frozenMillis);
+                    return result;
+                } catch (SQLException | RuntimeException e) {
+                    SchemaCatalog.rollbackQuietly(dst);
+                    SchemaCatalog.rollbackQuietly(src);
+                    if (switched) {
+                        // The rollback left the source writable, so it has to be the copy that is read
+                        switched = !revertQuietly(schema, sourceShard, targetShard, revert, e);
+                    }
+                    throw e;
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (!switched) {
+                dropQuietly(targetShard, schema);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Schemas on the shard whose tenant has moved away, with when they were retired.
+     * Whether the tenant still lives elsewhere is for the caller to check before
+     * dropping one.
+     */
+    public List<RetiredSchema> listRetired(String shardId) throws SQLException {
+        List<RetiredSchema> retired = new ArrayList<>();
+        try (Connection conn = schemaManagerService.getShardDataSource(shardId).getConnection();
+             PreparedStatement stmt = conn.prepareStatement("""
+                     SELECT nspname, obj_description(oid, 'pg_namespace') AS note FROM pg_namespace
+                     WHERE obj_description(oid, 'pg_namespace') LIKE ?
+                     """)) {
+            stmt.setString(1, RETIRED_NOTE + "%");
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String[] note = rs.getString("note").split(":", 3);
+                    retired.add(new RetiredSchema(rs.getString("nspname"), shardId,
+                            Instant.ofEpochMilli(Long.parseLong(note[1])), note[2]));
+                }
+            }
+        }
+        return retired;
+    }
+
+    // Drops the retired copy and the tenant role that went with it on that cluster
+    public void dropRetired(RetiredSchema retired) throws SQLException {
+        schemaManagerService.dropSchemaOnShard(retired.shardId(), retired.schemaName());
+        log.info("Dropped retired copy of schema {} on shard {}, moved to {} at {}", retired.schemaName(),
+                retired.shardId(), retired.movedTo(), retired.retiredAt());
+    }
+
+    /**
+     * Makes every write to the source tables fail from the commit on, and marks the
+     * schema as retired. Statement triggers also fire for the tables' owner, and a write
+     * queued on the move's lock sees them once it gets the lock.
+     */
+    private static void retire(Connection src, String schema, List<String> tables, String targetShard)
+            throws SQLException {
+        String fence = SchemaCatalog.ident(schema) + "." + SchemaCatalog.ident(FENCE_FUNCTION);
+        try (Statement stmt = src.createStatement()) {
+            stmt.execute("CREATE OR REPLACE FUNCTION " + fence + "() RETURNS trigger LANGUAGE plpgsql AS $$ BEGIN "
+                    + "RAISE EXCEPTION 'Schema % has moved to shard %, retry the request', "
+                    + quote(schema) + ", " + quote(targetShard) + " USING ERRCODE = 'read_only_sql_transaction'; "
+                    + "END $$");
+            for (String table : tables) {
+                stmt.execute("CREATE TRIGGER " + SchemaCatalog.ident(FENCE_FUNCTION)
+                        + " BEFORE INSERT OR UPDATE OR DELETE OR TRUNCATE ON " + SchemaCatalog.ident(schema) + "."
+                        + SchemaCatalog.ident(table) + " FOR EACH STATEMENT EXECUTE FUNCTION " + fence + "()");
+            }
+            stmt.execute("COMMENT ON SCHEMA " + SchemaCatalog.ident(schema) + " IS "
+                    + quote(RETIRED_NOTE + System.currentTimeMillis() + ":" + targetShard));
+        }
+    }
+
+    private static String quote(String literal) {
+        return "'" + literal.replace("'", "''") + "'";
+    }
+
+    private long copyTable(Connection src, Connection dst, String schema, String table) throws SQLException {
+        String qualified = SchemaCatalog.ident(schema) + "." + SchemaCatalog.ident(table);
+        List<String> columns = SchemaCatalog.insertableColumns(src, qualified).stream()
+                .map(SchemaCatalog.Column::name)
+                .toList();
+        if (columns.isEmpty()) {
+            return 0;
+        }
+        String columnList = columns.stream().map(SchemaCatalog::ident).collect(Collectors.joining(", "));
+        String placeholders = String.join(", ", Collections.nCopies(columns.size(), "?"));
+        int batchSize = Math.max(1, shardProperties.getMoveBatchSize());
+
+        long rows = 0;
+        try (Statement read = src.createStatement();
+             PreparedStatement write = dst.prepareStatement("INSERT INTO " + qualified + " (" + columnList
+                     + ") OVERRIDING SYSTEM VALUE VALUES (" + placeholders + ")")) {
+            read.setFetchSize(batchSize);
+            try (ResultSet rs = read.executeQuery("SELECT " + columnList + " FROM " + qualified)) {
+                int pending = 0;
+                while (rs.next()) {
+                    for (int i = 1; i <= columns.size(); i++) {
+                        write.setObject(i, rs.getObject(i));
+                    }
+                    write.addBatch();
+                    rows++;
+                    if (++pending == batchSize) {
+                        write.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    write.executeBatch();
+                }
+            }
+        }
+        return rows;
+    }
+
+    private boolean revertQuietly(String schema, String sourceShard, String targetShard, Runnable revert,
+                                  Exception cause) {
+        try {
+            revert.run();
+            log.warn("Schema {} could not be retired on {}, switched back from {}", schema, sourceShard,
+                    targetShard, cause);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Schema {} switched to {} but its source copy on {} could not be retired, nor the switch "
+                    + "undone: {}", schema, targetShard, sourceShard, e.getMessage(), cause);
+            return false;
+        }
+    }
+
+    private void dropQuietly(String shardId, String schema) {
+        try {
+            schemaManagerService.dropSchemaOnShard(shardId, schema);
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Could not clean up schema {} on shard {}: {}", schema, shardId, e.getMessage());
+        }
+    }
+
+    public record MoveResult(String schemaName, String sourceShard, String targetShard, int tables, long rows,
+                             long writesHeldMillis, long totalMillis) { }
+
+    public record RetiredSchema(String schemaName, String shardId, Instant retiredAt, String movedTo) { }
+}
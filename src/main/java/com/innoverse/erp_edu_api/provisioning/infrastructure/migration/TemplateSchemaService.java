@@ -0,0 +1,106 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.migration;
+
+import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps one fully migrated template schema per academic level and creates tenant
+ * schemas by cloning it server-side, so provisioning no longer replays the whole
+ * migration chain. Templates are brought up to date on first use after startup or
+ * after a bulk migration; the caller still runs Flyway on the clone to apply
+ * anything the template was missing.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TemplateSchemaService {
+    public static final String TEMPLATE_SCHEMA_PREFIX = "_template_";
+    // LIKE pattern for every template schema, so listings can leave them out
+    static final String TEMPLATE_SCHEMA_PATTERN = "\\_template\\_%";
+    private static final String CLONE_FUNCTION_SCRIPT = "db/template/clone_schema.sql";
+
+    private final DataSource dataSource;
+    private final SchemaManagerService schemaManagerService;
+    private final FlywayMigrationService flywayMigrationService;
+
+    private final Set<AcademicLevel> currentTemplates = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile boolean cloneFunctionInstalled;
+
+    public static String templateSchemaName(AcademicLevel level) {
+        return TEMPLATE_SCHEMA_PREFIX + level.name().toLowerCase();
+    }
+
+    public static boolean isTemplateSchema(String schemaName) {
+        return schemaName != null && schemaName.startsWith(TEMPLATE_SCHEMA_PREFIX);
+    }
+
+    public void createFromTemplate(String schemaName, AcademicLevel level) throws SQLException {
+        String template = ensureTemplate(level);
+        long start = System.nanoTime();
+        schemaManagerService.createSchemaFromTemplate(template, schemaName);
+        log.info("Cloned {} into {} in {}ms", template, schemaName, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Creates and migrates the level's template if this node has not done so since
+     * startup or the last {@link #markTemplatesStale()}.
+     */
+    public String ensureTemplate(AcademicLevel level) throws SQLException {
+        String template = templateSchemaName(level);
+        if (currentTemplates.contains(level)) {
+            return template;
+        }
+        refreshLock.lock();
+        try {
+            if (!currentTemplates.contains(level)) {
+                installCloneFunction();
+                try (Connection conn = dataSource.getConnection();
+                     Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE SCHEMA IF NOT EXISTS \"" + template + "\"");
+                }
+                flywayMigrationService.migrate(template, level);
+                currentTemplates.add(level);
+                log.info("Template schema {} is up to date", template);
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+        return template;
+    }
+
+    // New migrations were applied, so re-migrate each template before its next clone
+    public void markTemplatesStale() {
+        currentTemplates.clear();
+    }
+
+    private void installCloneFunction() throws SQLException {
+        if (cloneFunctionInstalled) {
+            return;
+        }
+        String script;
+        try {
+            script = new ClassPathResource(CLONE_FUNCTION_SCRIPT).getContentAsString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Could not read " + CLONE_FUNCTION_SCRIPT, e);
+        }
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(script);
+        }
+        cloneFunctionInstalled = true;
+    }
+}
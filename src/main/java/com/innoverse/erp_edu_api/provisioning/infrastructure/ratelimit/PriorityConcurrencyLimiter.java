@@ -0,0 +1,40 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.ratelimit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps requests in flight on this node. Platform requests may use the whole
+ * capacity, tenant requests stop short of the reserve so platform operations
+ * keep working while schools saturate the API.
+ */
+class PriorityConcurrencyLimiter {
+    private final int maxConcurrent;
+    private final int tenantLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    PriorityConcurrencyLimiter(int maxConcurrent, int platformReserved) {
+        this.maxConcurrent = maxConcurrent;
+        this.tenantLimit = Math.max(1, maxConcurrent - platformReserved);
+    }
+
+    boolean tryAcquire(boolean platform) {
+        int limit = platform ? maxConcurrent : tenantLimit;
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+}
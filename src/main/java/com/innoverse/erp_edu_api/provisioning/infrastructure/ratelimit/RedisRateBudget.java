@@ -0,0 +1,45 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+
+/**
+ * Per-tenant budget shared across nodes, counted in one-second Redis windows.
+ * Fails open: if Redis is unreachable the local buckets remain the only limit.
+ */
+@Slf4j
+class RedisRateBudget {
+    private static final String KEY_PREFIX = "ratelimit:tenant:";
+    private static final Duration WINDOW_TTL = Duration.ofSeconds(2);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final int requestsPerSecond;
+
+    RedisRateBudget(RedisTemplate<String, String> redisTemplate, int requestsPerSecond) {
+        this.redisTemplate = redisTemplate;
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    /**
+     * @return 0 when admitted, otherwise the milliseconds until the next window opens
+     */
+    long tryConsume(String tenant) {
+        long nowMillis = System.currentTimeMillis();
+        long window = nowMillis / 1000;
+        String key = KEY_PREFIX + tenant + ":" + window;
+        try {
+            Long count = redisTemplate.opsForValue().increment(key);
+            if (count != null && count == 1) {
+                redisTemplate.expire(key, WINDOW_TTL);
+            }
+            if (count != null && count > requestsPerSecond) {
+                return (window + 1) * 1000 - nowMillis;
+            }
+        } catch (Exception e) {
+            log.debug("Shared rate budget unavailable for tenant {}: {}", tenant, e.getMessage());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,127 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.ratelimit;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantRateLimitProperties;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission check run by TenantFilter before a request reaches any controller: the
+ * node-wide concurrency cap, the tenant's token bucket, then the optional shared Redis
+ * budget. A token is only spent once a concurrency slot is held, and handed back when
+ * the shared budget turns the request away. Requests for the default tenant, which is
+ * what an unknown or invalid school ID resolves to, share one bucket of their own.
+ */
+public class TenantRateLimiter {
+    private static final long CONCURRENCY_RETRY_AFTER_SECONDS = 1;
+
+    private final TenantRateLimitProperties properties;
+    private final String defaultTenant;
+    private final PriorityConcurrencyLimiter concurrencyLimiter;
+    private final RedisRateBudget sharedBudget;
+    private final Map<String, TenantLimitState> tenants = new ConcurrentHashMap<>();
+    private final LongAdder concurrencyRejections = new LongAdder();
+
+    public TenantRateLimiter(TenantRateLimitProperties properties, String defaultTenant,
+                             RedisTemplate<String, String> redisTemplate) {
+        this.properties = properties;
+        this.defaultTenant = defaultTenant;
+        this.concurrencyLimiter = new PriorityConcurrencyLimiter(
+                properties.getMaxConcurrentRequests(), properties.getPlatformReserved());
+        this.sharedBudget = properties.getSharedRequestsPerSecond() > 0
+                ? new RedisRateBudget(redisTemplate, properties.getSharedRequestsPerSecond())
+                : null;
+    }
+
+    public boolean isPlatformRequest(String path) {
+        return path != null && path.startsWith(properties.getPlatformPathPrefix());
+    }
+
+    /**
+     * Admits or rejects a request. An admitted decision holds a concurrency slot
+     * that must be handed back with {@link #release()}.
+     */
+    public Decision tryAcquire(String tenant, boolean platform) {
+        TenantLimitState state = tenants.computeIfAbsent(tenant, this::newTenantState);
+
+        if (!concurrencyLimiter.tryAcquire(platform)) {
+            concurrencyRejections.increment();
+            state.rejected.increment();
+            return Decision.rejected(CONCURRENCY_RETRY_AFTER_SECONDS);
+        }
+
+        long waitNanos = state.bucket.tryConsume();
+        if (waitNanos > 0) {
+            return reject(state, toRetryAfterSeconds(TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+        }
+        if (sharedBudget != null) {
+            long waitMillis = sharedBudget.tryConsume(tenant);
+            if (waitMillis > 0) {
+                state.bucket.refund();
+                return reject(state, toRetryAfterSeconds(waitMillis));
+            }
+        }
+        state.admitted.increment();
+        return Decision.ADMITTED;
+    }
+
+    // Turned away after taking a concurrency slot, which is handed straight back
+    private Decision reject(TenantLimitState state, long retryAfterSeconds) {
+        concurrencyLimiter.release();
+        state.rejected.increment();
+        return Decision.rejected(retryAfterSeconds);
+    }
+
+    public void release() {
+        concurrencyLimiter.release();
+    }
+
+    public RateLimitStats getStats() {
+        List<TenantRateLimitStats> tenantStats = tenants.entrySet().stream()
+                .map(e -> new TenantRateLimitStats(e.getKey(), e.getValue().requestsPerSecond,
+                        e.getValue().admitted.sum(), e.getValue().rejected.sum()))
+                .sorted(Comparator.comparing(TenantRateLimitStats::tenant))
+                .toList();
+        return new RateLimitStats(concurrencyLimiter.inFlight(), concurrencyRejections.sum(), tenantStats);
+    }
+
+    private TenantLimitState newTenantState(String tenant) {
+        int requestsPerSecond = properties.getLimits().getOrDefault(tenant, defaultTenant.equals(tenant)
+                ? properties.getUnresolvedRequestsPerSecond() : properties.getRequestsPerSecond());
+        int burst = Math.max(properties.getBurst() * requestsPerSecond / Math.max(1, properties.getRequestsPerSecond()), 1);
+        return new TenantLimitState(requestsPerSecond, new TokenBucket(requestsPerSecond, burst));
+    }
+
+    private static long toRetryAfterSeconds(long waitMillis) {
+        return Math.max(1, (waitMillis + 999) / 1000);
+    }
+
+    private static final class TenantLimitState {
+        private final int requestsPerSecond;
+        private final TokenBucket bucket;
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        private TenantLimitState(int requestsPerSecond, TokenBucket bucket) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.bucket = bucket;
+        }
+    }
+
+    public record Decision(boolean admitted, long retryAfterSeconds) {
+        static final Decision ADMITTED = new Decision(true, 0);
+
+        static Decision rejected(long retryAfterSeconds) {
+            return new Decision(false, retryAfterSeconds);
+        }
+    }
+
+    public record TenantRateLimitStats(String tenant, int requestsPerSecond, long admitted, long rejected) { }
+
+    public record RateLimitStats(int inFlight, long concurrencyRejections, List<TenantRateLimitStats> tenants) { }
+}
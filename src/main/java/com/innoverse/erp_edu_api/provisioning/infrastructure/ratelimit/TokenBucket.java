@@ -0,0 +1,52 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket in its GCRA form: the whole state is the theoretical
+ * arrival time of the next request, advanced with a single CAS per admission.
+ */
+class TokenBucket {
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicLong theoreticalArrival;
+
+    TokenBucket(int requestsPerSecond, int burst) {
+        this(requestsPerSecond, burst, System::nanoTime);
+    }
+
+    // The clock is only swapped in tests, to step across refill boundaries exactly
+    TokenBucket(int requestsPerSecond, int burst, LongSupplier nanoClock) {
+        this.emissionIntervalNanos = 1_000_000_000L / Math.max(1, requestsPerSecond);
+        this.burstToleranceNanos = emissionIntervalNanos * Math.max(1, burst);
+        this.nanoClock = nanoClock;
+        this.theoreticalArrival = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Takes one token if available.
+     *
+     * @return 0 when admitted, otherwise the nanoseconds until a token frees up
+     */
+    long tryConsume() {
+        while (true) {
+            long now = nanoClock.getAsLong();
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + emissionIntervalNanos;
+            long excess = next - now - burstToleranceNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // Hands back a token taken by tryConsume for a request that was turned away after all
+    void refund() {
+        theoreticalArrival.addAndGet(-emissionIntervalNanos);
+    }
+}
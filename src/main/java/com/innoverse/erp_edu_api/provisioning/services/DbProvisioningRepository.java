@@ -2,10 +2,16 @@ package com.innoverse.erp_edu_api.provisioning.services;
 
 
 import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.UUID;
 
 public interface DbProvisioningRepository {
@@ -19,6 +25,27 @@ public interface DbProvisioningRepository {
     @Transactional
     boolean delete(UUID provisionId);
 
+    @Transactional
+    boolean recordOutcome(UUID provisionId, String status, String errorMessage, String stepLog);
+
+    // Only touches a provision that is still provisioned
+    @Transactional
+    boolean recordMigrated(UUID provisionId);
+
+    @Transactional
+    boolean recordOutcomeUnderLease(UUID provisionId, String status, String errorMessage, String stepLog,
+                                    String leaseOwner);
+
+    // Commits on its own, so the claim is settled before the caller touches the spare's role
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    Optional<DbProvision> claimSpare(String level, UUID schoolId, String assignedBy, String spareMarker);
+
+    // Puts a claimed spare back in the pool, only if it is still assigned to the school
+    @Transactional
+    boolean returnSpare(UUID provisionId, UUID schoolId, String spareMarker);
+
+    long countSpares(String level, String spareMarker);
+
     Optional<DbProvision> findById(UUID provisionId);
 
     Optional<DbProvision> findBySchemaName(String schemaName);
@@ -31,9 +58,67 @@ public interface DbProvisioningRepository {
 
     List<DbProvision> findFailedProvisionsOlderThanDays(int days);
 
+    List<DbProvision> findRoutableAfter(UUID afterProvisionId, int limit);
+
     boolean existsBySchemaName(String schemaName);
 
     boolean existsById(UUID provisionId);
 
     long countByStatus(String status);
+
+    List<DbProvision> findAllById(Collection<UUID> provisionIds);
+
+    // Every provision's schema and shard, for comparing each shard's catalog with the registry
+    List<RegisteredSchema> findRegisteredSchemas();
+
+    // Feeds each provision of the page to the consumer as it is read, without collecting them
+    void streamPage(ProvisionQuery query, Consumer<DbProvision> consumer);
+
+    List<ProvisionCount> countByStatusLevelAndAccess();
+
+    Optional<String> findShardBySchemaName(String schemaName);
+
+    // Provisions per shard id, for placement; shards without provisions are absent
+    Map<String, Long> countByShard();
+
+    // Repoints the provision only if it is still on the expected shard
+    @Transactional
+    boolean updateShard(UUID provisionId, String expectedShardId, String shardId);
+
+    // Newest access time per schema name; an older time never overwrites a newer one
+    @Transactional
+    void recordAccessTimes(Map<String, LocalDateTime> lastAccessBySchema);
+
+    // Assigned, provisioned schemas not used since the cutoff, least recently used first
+    List<DbProvision> findIdleSince(LocalDateTime cutoff, int limit);
+
+    // Only a provisioned schema can be hibernated
+    @Transactional
+    boolean markHibernated(UUID provisionId, String archivePath);
+
+    /**
+     * Takes the restore of a hibernated schema, or of one whose restore has not finished
+     * within the stale time, under the given claim, and returns its archive path. Empty
+     * when another node holds the restore or the schema is not hibernated.
+     */
+    @Transactional
+    Optional<String> claimRestore(UUID provisionId, Duration staleAfter, String claim);
+
+    // False when the restore has since been taken over under another claim
+    @Transactional
+    boolean markRestored(UUID provisionId, String claim);
+
+    // Hands a failed restore back so the next request for the school tries again
+    @Transactional
+    boolean releaseRestore(UUID provisionId, String claim, String errorMessage);
+
+    record ProvisionCount(String status, String educationLevel, boolean accessible, long count) { }
+
+    /**
+     * One row per schema name known to the catalog, the registry or both, with whether
+     * the schema and its tenant role exist. The provision id is null for a schema the
+     * registry does not know.
+     */
+    // Skipped provisions are archived, being restored, or have a job in the provisioning queue
+    record RegisteredSchema(UUID provisionId, String schemaName, String shardId, boolean skipped) { }
 }
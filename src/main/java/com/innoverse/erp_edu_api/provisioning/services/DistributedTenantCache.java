@@ -1,56 +1,367 @@
 package com.innoverse.erp_edu_api.provisioning.services;
 
-import com.innoverse.erp_edu_api.provisioning.SchoolAccessCheckEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.innoverse.erp_edu_api.provisioning.SchoolAccessOracle;
 import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
-import lombok.RequiredArgsConstructor;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.cache.RedisCircuitBreaker;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.cache.RedisCircuitBreaker.RedisUnavailableException;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.cache.TenantRoutingSnapshot;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantCacheProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantMaintenanceGate;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * School -> schema routing and access cache: per-node L1, Redis as the shared tier,
+ * the registry as the source of truth. While the Redis circuit is open, misses are
+ * served from the node's routing snapshot before falling back to the registry. The
+ * schema -> shard map the data source routes on is cached the same way. Whether a
+ * schema is hibernated is kept in L1 only and read from the registry on a miss. The
+ * invalidation channel also carries the opening and closing of tenant maintenance gates,
+ * each closure backed by a Redis key the migrating node renews; a gate other nodes closed
+ * reopens once its key is gone.
+ */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class DistributedTenantCache {
     private final RedisTemplate<String, String> redisTemplate;
     private final ProvisioningTrackingService trackingService;
-    private final ApplicationEventPublisher eventPublisher;
+    private final SchoolAccessOracle accessOracle;
+    private final TenantCacheProperties cacheProperties;
+    private final RedisCircuitBreaker redisBreaker;
+    private final TenantRoutingSnapshot routingSnapshot;
+    private final TenantMaintenanceGate maintenanceGate;
+
+    // L1: per-node caches, kept coherent through the invalidation channel
+    private final Cache<UUID, String> localSchemaCache;
+    private final Cache<UUID, Boolean> localAccessCache;
+    private final Cache<String, String> localShardCache;
+    private final Cache<String, Boolean> localHibernationCache;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // Single-flight: concurrent misses for one school share a single load
+    private final Map<UUID, CompletableFuture<String>> schemaLoads = new ConcurrentHashMap<>();
+    private final Map<UUID, CompletableFuture<Boolean>> accessLoads = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> shardLoads = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Boolean>> hibernationLoads = new ConcurrentHashMap<>();
+
+    // Told the schema whenever another node hibernates or restores it
+    private final List<Consumer<String>> hibernationListeners = new CopyOnWriteArrayList<>();
 
     private static final String SCHEMA_CACHE_PREFIX = "tenant:schema:";
     private static final String ACCESS_CACHE_PREFIX = "tenant:access:";
+    private static final String SHARD_CACHE_PREFIX = "tenant:shard:";
+    private static final String MAINTENANCE_KEY_PREFIX = "tenant:maintenance:";
+    // Invalidation messages for a schema's shard carry this before the schema name
+    private static final String SHARD_MESSAGE_PREFIX = "shard:";
+    private static final String HIBERNATION_MESSAGE_PREFIX = "hibernation:";
+    private static final String MAINTENANCE_CLOSE_PREFIX = "maintenance:close:";
+    private static final String MAINTENANCE_OPEN_PREFIX = "maintenance:open:";
     private static final long ACCESS_CACHE_TTL = 1 ; // day minutes
     private static final long SCHEMA_CACHE_TTL = 356; // 1 year
 
+    // Cached in place of a schema name when the school has no provision
+    private static final String NO_SCHEMA = "-";
+    // SET EX unless the key holds a mapping: sets it when absent or the negative sentinel ARGV[2]
+    private static final byte[] SET_UNLESS_MAPPED_SCRIPT = ("local current = redis.call('get', KEYS[1]) "
+            + "if current == false or current == ARGV[2] then "
+            + "redis.call('set', KEYS[1], ARGV[1], 'EX', ARGV[3]) return 1 end return 0")
+            .getBytes(StandardCharsets.UTF_8);
+
+    public DistributedTenantCache(RedisTemplate<String, String> redisTemplate,
+                                  ProvisioningTrackingService trackingService,
+                                  SchoolAccessOracle accessOracle,
+                                  TenantCacheProperties cacheProperties,
+                                  RedisCircuitBreaker redisBreaker,
+                                  TenantRoutingSnapshot routingSnapshot,
+                                  TenantMaintenanceGate maintenanceGate) {
+        this.redisTemplate = redisTemplate;
+        this.trackingService = trackingService;
+        this.accessOracle = accessOracle;
+        this.cacheProperties = cacheProperties;
+        this.redisBreaker = redisBreaker;
+        this.routingSnapshot = routingSnapshot;
+        this.maintenanceGate = maintenanceGate;
+        maintenanceGate.setPeerClosureCheck(this::isMaintenanceClosed);
+        this.localSchemaCache = Caffeine.newBuilder()
+                .maximumSize(cacheProperties.getLocalMaxSize())
+                .expireAfter(Expiry.<UUID, String>writing((schoolId, schema) ->
+                        NO_SCHEMA.equals(schema) ? shorter(cacheProperties.getNegativeTtl()) : cacheProperties.getLocalTtl()))
+                .build();
+        this.localAccessCache = Caffeine.newBuilder()
+                .maximumSize(cacheProperties.getLocalMaxSize())
+                .expireAfter(Expiry.<UUID, Boolean>writing((schoolId, access) ->
+                        access ? cacheProperties.getLocalTtl() : shorter(cacheProperties.getNegativeTtl())))
+                .build();
+        this.localShardCache = Caffeine.newBuilder()
+                .maximumSize(cacheProperties.getLocalMaxSize())
+                .expireAfterWrite(cacheProperties.getLocalTtl())
+                .build();
+        this.localHibernationCache = Caffeine.newBuilder()
+                .maximumSize(cacheProperties.getLocalMaxSize())
+                .expireAfterWrite(cacheProperties.getLocalTtl())
+                .build();
+    }
+
     public String getSchemaForSchool(UUID schoolId) {
         if (!hasAccess(schoolId)) {
             throw new RuntimeException("School not accessible");
         }
+        String schemaName = localSchemaCache.getIfPresent(schoolId);
+        if (schemaName == null) {
+            schemaName = singleFlight(schemaLoads, schoolId, () -> loadSchema(schoolId));
+        }
+        return NO_SCHEMA.equals(schemaName) ? null : schemaName;
+    }
+
+    public boolean hasAccess(UUID schoolId) {
+        Boolean localAccess = localAccessCache.getIfPresent(schoolId);
+        if (localAccess != null) {
+            return localAccess;
+        }
+
+        try {
+            return singleFlight(accessLoads, schoolId, () -> loadAccess(schoolId));
+        } catch (RuntimeException e) {
+            // Deny without caching so the next request retries the lookup
+            log.error("Error checking access for school: {}", schoolId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Shard the schema lives on. Schemas the registry does not know, such as templates,
+     * are on the primary; that answer is not cached, so a schema placed on another shard
+     * right after is routed there from its first connection.
+     */
+    public String getShardForSchema(String schemaName) {
+        String shard = localShardCache.getIfPresent(schemaName);
+        if (shard != null) {
+            return shard;
+        }
+        return singleFlight(shardLoads, schemaName, () -> loadShard(schemaName));
+    }
+
+    private String loadShard(String schemaName) {
+        String cacheKey = SHARD_CACHE_PREFIX + schemaName;
+        String shard;
+        try {
+            shard = redisBreaker.execute(() -> redisTemplate.opsForValue().get(cacheKey));
+        } catch (RedisUnavailableException e) {
+            shard = null;
+        }
+
+        if (shard == null) {
+            shard = trackingService.getShardForSchema(schemaName).orElse(null);
+            if (shard == null) {
+                return DbProvision.PRIMARY_SHARD;
+            }
+            String loaded = shard;
+            writeRedis(() -> redisTemplate.opsForValue().set(cacheKey, loaded, SCHEMA_CACHE_TTL, TimeUnit.DAYS));
+        }
+        localShardCache.put(schemaName, shard);
+        return shard;
+    }
+
+    /**
+     * Records the shard of a schema this node is provisioning, on this node only. The
+     * registry row may not be committed yet, and the rest of the run must already be
+     * routed to the chosen shard.
+     */
+    public void cacheShardLocally(String schemaName, String shardId) {
+        localShardCache.put(schemaName, shardId);
+    }
+
+    // Called once a moved schema is switched over; other nodes drop their entry on the broadcast
+    public void updateShardCache(String schemaName, String shardId) {
+        writeRedis(() -> redisTemplate.opsForValue().set(SHARD_CACHE_PREFIX + schemaName, shardId, SCHEMA_CACHE_TTL,
+                TimeUnit.DAYS));
+        localShardCache.put(schemaName, shardId);
+        publish(SHARD_MESSAGE_PREFIX + schemaName);
+    }
+
+    /**
+     * Whether the schema is archived, or being restored, rather than live. Asked on every
+     * tenant request, so the registry is read at most once per schema per L1 lifetime.
+     */
+    public boolean isHibernated(String schemaName) {
+        Boolean hibernated = localHibernationCache.getIfPresent(schemaName);
+        if (hibernated != null) {
+            return hibernated;
+        }
+        return singleFlight(hibernationLoads, schemaName, () -> {
+            boolean loaded = trackingService.isSchemaHibernated(schemaName);
+            localHibernationCache.put(schemaName, loaded);
+            return loaded;
+        });
+    }
+
+    // Called when a schema is hibernated or restored; other nodes drop their entry on the broadcast
+    public void updateHibernationCache(String schemaName, boolean hibernated) {
+        localHibernationCache.put(schemaName, hibernated);
+        publish(HIBERNATION_MESSAGE_PREFIX + schemaName);
+    }
+
+    // Records what this node read from the registry itself, without telling the other nodes
+    public void cacheHibernationLocally(String schemaName, boolean hibernated) {
+        localHibernationCache.put(schemaName, hibernated);
+    }
+
+    public void onHibernationChanged(Consumer<String> listener) {
+        hibernationListeners.add(listener);
+    }
+
+    /**
+     * Closes the schema's gate on the other nodes for as long as the closure is renewed
+     * within the ttl; this node's gate is handled by the caller. The message closes them
+     * at once, the key keeps them closed.
+     */
+    public void closeMaintenance(String schemaName, Duration ttl) {
+        writeRedis(() -> redisTemplate.opsForValue().set(MAINTENANCE_KEY_PREFIX + schemaName, nodeId, ttl));
+        publish(MAINTENANCE_CLOSE_PREFIX + schemaName);
+    }
+
+    // Only extends a live closure, so a renewal racing openMaintenance cannot bring it back
+    public void renewMaintenance(String schemaName, Duration ttl) {
+        writeRedis(() -> redisTemplate.opsForValue().setIfPresent(MAINTENANCE_KEY_PREFIX + schemaName, nodeId, ttl));
+    }
+
+    // Other nodes that miss the message reopen once they see the key gone
+    public void openMaintenance(String schemaName) {
+        writeRedis(() -> redisTemplate.delete(MAINTENANCE_KEY_PREFIX + schemaName));
+        publish(MAINTENANCE_OPEN_PREFIX + schemaName);
+    }
+
+    // Unknown while Redis is unavailable, which counts as open: requests are not held on a guess
+    public boolean isMaintenanceClosed(String schemaName) {
+        try {
+            return Boolean.TRUE.equals(redisBreaker.execute(
+                    () -> redisTemplate.hasKey(MAINTENANCE_KEY_PREFIX + schemaName)));
+        } catch (RedisUnavailableException e) {
+            log.debug("Cannot check maintenance closure of {}, Redis unavailable: {}", schemaName, e.getMessage());
+            return false;
+        }
+    }
+
+    private String loadSchema(UUID schoolId) {
         String cacheKey = SCHEMA_CACHE_PREFIX + schoolId;
-        String schemaName = redisTemplate.opsForValue().get(cacheKey);
+        String schemaName;
+        try {
+            schemaName = redisBreaker.execute(() -> redisTemplate.opsForValue().get(cacheKey));
+        } catch (RedisUnavailableException e) {
+            String routed = routingSnapshot.getSchema(schoolId);
+            if (routed != null) {
+                localSchemaCache.put(schoolId, routed);
+                return routed;
+            }
+            schemaName = null;
+        }
 
         if (schemaName == null) {
-            schemaName = loadSchemaFromDatabase(schoolId);
-            if (schemaName != null) {
-                redisTemplate.opsForValue().set(cacheKey, schemaName, SCHEMA_CACHE_TTL, TimeUnit.DAYS);
+            String loaded = loadSchemaFromDatabase(schoolId);
+            if (loaded != null) {
+                writeRedis(() -> redisTemplate.opsForValue().set(cacheKey, loaded, SCHEMA_CACHE_TTL, TimeUnit.DAYS));
+                schemaName = loaded;
+            } else {
+                log.debug("No provision for school {}, caching negative result", schoolId);
+                writeRedis(() -> redisTemplate.opsForValue().set(cacheKey, NO_SCHEMA, cacheProperties.getNegativeTtl()));
+                schemaName = NO_SCHEMA;
             }
         }
+        if (!NO_SCHEMA.equals(schemaName)) {
+            routingSnapshot.recordSchema(schoolId, schemaName);
+        }
+        localSchemaCache.put(schoolId, schemaName);
         return schemaName;
     }
 
-    public boolean hasAccess(UUID schoolId) {
+    private boolean loadAccess(UUID schoolId) {
         String cacheKey = ACCESS_CACHE_PREFIX + schoolId;
-        String hasAccessStr = redisTemplate.opsForValue().get(cacheKey);
+        String hasAccessStr;
+        try {
+            hasAccessStr = redisBreaker.execute(() -> redisTemplate.opsForValue().get(cacheKey));
+        } catch (RedisUnavailableException e) {
+            Boolean routed = routingSnapshot.getAccess(schoolId);
+            if (routed != null) {
+                localAccessCache.put(schoolId, routed);
+                return routed;
+            }
+            hasAccessStr = null;
+        }
 
+        boolean hasAccess;
         if (hasAccessStr == null) {
-            boolean hasAccess = checkSchoolAccess(schoolId);
-            redisTemplate.opsForValue().set(cacheKey, String.valueOf(hasAccess), ACCESS_CACHE_TTL, TimeUnit.DAYS);
-            return hasAccess;
+            hasAccess = checkSchoolAccess(schoolId);
+            if (hasAccess) {
+                writeRedis(() -> redisTemplate.opsForValue().set(cacheKey, String.valueOf(true), ACCESS_CACHE_TTL, TimeUnit.DAYS));
+            } else {
+                writeRedis(() -> redisTemplate.opsForValue().set(cacheKey, String.valueOf(false), cacheProperties.getNegativeTtl()));
+            }
+        } else {
+            hasAccess = Boolean.parseBoolean(hasAccessStr);
         }
+        routingSnapshot.recordAccess(schoolId, hasAccess);
+        localAccessCache.put(schoolId, hasAccess);
+        return hasAccess;
+    }
 
-        return Boolean.parseBoolean(hasAccessStr);
+    // Redis writes are best effort: the value is already in L1 and the snapshot
+    private void writeRedis(Runnable write) {
+        try {
+            redisBreaker.run(write);
+        } catch (RedisUnavailableException e) {
+            log.debug("Skipping tenant cache write, Redis unavailable: {}", e.getMessage());
+        }
+    }
+
+    // The first caller runs the loader; the rest wait on its result instead of repeating the lookup
+    private <K, T> T singleFlight(Map<K, CompletableFuture<T>> loads, K key, Supplier<T> loader) {
+        CompletableFuture<T> load = new CompletableFuture<>();
+        CompletableFuture<T> existing = loads.putIfAbsent(key, load);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            T value = loader.get();
+            load.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    // A negative L1 entry never outlives the same entry in Redis
+    private Duration shorter(Duration negativeTtl) {
+        return negativeTtl.compareTo(cacheProperties.getLocalTtl()) < 0 ? negativeTtl : cacheProperties.getLocalTtl();
     }
 
     private String loadSchemaFromDatabase(UUID schoolId) {
@@ -64,30 +375,142 @@ public class DistributedTenantCache {
     public void updateSchemaCache(UUID schoolId, String schemaName) {
         String cacheKey = SCHEMA_CACHE_PREFIX + schoolId;
         if (schemaName == null) {
-            redisTemplate.delete(cacheKey);
+            writeRedis(() -> redisTemplate.delete(cacheKey));
+            localSchemaCache.invalidate(schoolId);
+            routingSnapshot.remove(schoolId);
         } else {
-            redisTemplate.opsForValue().set(cacheKey, schemaName, SCHEMA_CACHE_TTL, TimeUnit.SECONDS);
+            writeRedis(() -> redisTemplate.opsForValue().set(cacheKey, schemaName, SCHEMA_CACHE_TTL, TimeUnit.SECONDS));
+            localSchemaCache.put(schoolId, schemaName);
+            routingSnapshot.recordSchema(schoolId, schemaName);
         }
+        publishInvalidation(schoolId);
     }
 
     public void updateAccessCache(UUID schoolId, boolean hasAccess) {
         String cacheKey = ACCESS_CACHE_PREFIX + schoolId;
-        redisTemplate.opsForValue().set(cacheKey, String.valueOf(hasAccess), ACCESS_CACHE_TTL, TimeUnit.SECONDS);
+        writeRedis(() -> redisTemplate.opsForValue().set(cacheKey, String.valueOf(hasAccess), ACCESS_CACHE_TTL, TimeUnit.SECONDS));
+        localAccessCache.put(schoolId, hasAccess);
+        routingSnapshot.recordAccess(schoolId, hasAccess);
+        publishInvalidation(schoolId);
+    }
+
+    /**
+     * Bulk-loads routable schools (schema plus granted access) into L1 and, when asked,
+     * into Redis in one pipeline. A school's schema replaces a missing entry or a
+     * negative "-" one, never a mapping written concurrently by live traffic or another
+     * warming node; access is only set where absent.
+     */
+    public void warmUp(Map<UUID, String> schemasBySchool, boolean fillRedis) {
+        if (schemasBySchool.isEmpty()) {
+            return;
+        }
+        if (fillRedis) {
+            RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+            byte[] schemaTtl = serializer.serialize(String.valueOf(TimeUnit.DAYS.toSeconds(SCHEMA_CACHE_TTL)));
+            Expiration accessTtl = Expiration.seconds(TimeUnit.DAYS.toSeconds(ACCESS_CACHE_TTL));
+            byte[] noSchema = serializer.serialize(NO_SCHEMA);
+            byte[] granted = serializer.serialize(String.valueOf(true));
+
+            writeRedis(() -> redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                schemasBySchool.forEach((schoolId, schemaName) -> {
+                    connection.scriptingCommands().eval(SET_UNLESS_MAPPED_SCRIPT, ReturnType.INTEGER, 1,
+                            serializer.serialize(SCHEMA_CACHE_PREFIX + schoolId), serializer.serialize(schemaName),
+                            noSchema, schemaTtl);
+                    connection.stringCommands().set(serializer.serialize(ACCESS_CACHE_PREFIX + schoolId),
+                            granted, accessTtl, RedisStringCommands.SetOption.ifAbsent());
+                });
+                return null;
+            }));
+        }
+
+        schemasBySchool.forEach((schoolId, schemaName) -> {
+            localSchemaCache.asMap().merge(schoolId, schemaName,
+                    (current, warmed) -> NO_SCHEMA.equals(current) ? warmed : current);
+            localAccessCache.asMap().putIfAbsent(schoolId, true);
+            routingSnapshot.recordSchema(schoolId, schemaName);
+            routingSnapshot.recordAccess(schoolId, true);
+        });
     }
 
     public void invalidateCaches(UUID schoolId) {
-        redisTemplate.delete(ACCESS_CACHE_PREFIX + schoolId);
-        redisTemplate.delete(SCHEMA_CACHE_PREFIX + schoolId);
+        writeRedis(() -> redisTemplate.delete(List.of(ACCESS_CACHE_PREFIX + schoolId, SCHEMA_CACHE_PREFIX + schoolId)));
+        evictLocal(schoolId);
+        routingSnapshot.remove(schoolId);
+        publishInvalidation(schoolId);
     }
 
-    public boolean checkSchoolAccess(UUID schoolId) {
-        SchoolAccessCheckEvent event = new SchoolAccessCheckEvent(schoolId);
-        eventPublisher.publishEvent(event);
+    /**
+     * Drops the L1 entries for a school on this node only. Redis is left untouched.
+     */
+    public void evictLocal(UUID schoolId) {
+        localSchemaCache.invalidate(schoolId);
+        localAccessCache.invalidate(schoolId);
+    }
+
+    /**
+     * Handles a message from the invalidation channel. Messages published by this
+     * node are skipped since the local entries were already updated in place.
+     */
+    public void onInvalidationMessage(String message) {
+        int separator = message.indexOf(':');
+        if (separator < 0) {
+            log.warn("Ignoring malformed tenant cache invalidation message: {}", message);
+            return;
+        }
+        if (nodeId.equals(message.substring(0, separator))) {
+            return;
+        }
+        String target = message.substring(separator + 1);
+        if (target.startsWith(SHARD_MESSAGE_PREFIX)) {
+            localShardCache.invalidate(target.substring(SHARD_MESSAGE_PREFIX.length()));
+            return;
+        }
+        if (target.startsWith(HIBERNATION_MESSAGE_PREFIX)) {
+            String schemaName = target.substring(HIBERNATION_MESSAGE_PREFIX.length());
+            localHibernationCache.invalidate(schemaName);
+            hibernationListeners.forEach(listener -> listener.accept(schemaName));
+            return;
+        }
+        if (target.startsWith(MAINTENANCE_CLOSE_PREFIX)) {
+            maintenanceGate.closeForPeer(target.substring(MAINTENANCE_CLOSE_PREFIX.length()));
+            return;
+        }
+        if (target.startsWith(MAINTENANCE_OPEN_PREFIX)) {
+            maintenanceGate.open(target.substring(MAINTENANCE_OPEN_PREFIX.length()));
+            return;
+        }
         try {
-            return event.getAccessFuture().get(5, TimeUnit.SECONDS); // 5-second timeout
+            evictLocal(UUID.fromString(message.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring tenant cache invalidation for invalid school ID: {}", message);
+        }
+    }
+
+    private void publishInvalidation(UUID schoolId) {
+        publish(schoolId.toString());
+    }
+
+    private void publish(String target) {
+        try {
+            redisBreaker.run(() -> redisTemplate.convertAndSend(cacheProperties.getInvalidationChannel(), nodeId + ":" + target));
         } catch (Exception e) {
-            log.error("Timeout or error waiting for school access check response for school: {}", schoolId, e);
-            return false; // Default to false on error
+            // Other nodes fall back to the L1 TTL if the broadcast is lost
+            log.warn("Failed to publish tenant cache invalidation for: {}", target, e);
         }
     }
-}
\ No newline at end of file
+
+    public RoutingFallbackStats getFallbackStats() {
+        return new RoutingFallbackStats(redisBreaker.getState(), routingSnapshot.getStats());
+    }
+
+    /**
+     * Asks the schools module directly, bypassing both cache levels. Concurrent
+     * misses are batched into a single status query by the oracle.
+     */
+    public boolean checkSchoolAccess(UUID schoolId) {
+        return accessOracle.hasAccess(schoolId);
+    }
+
+    public record RoutingFallbackStats(RedisCircuitBreaker.State redisCircuit,
+                                       TenantRoutingSnapshot.SnapshotStats snapshot) { }
+}
@@ -0,0 +1,23 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import java.util.UUID;
+
+/**
+ * Filter and keyset position for listing provisions. Rows come in provision id order,
+ * starting after the given id; null filters match everything.
+ */
+public record ProvisionQuery(String status, String educationLevel, Boolean assigned, UUID schoolId,
+                             UUID after, int limit) {
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    public ProvisionQuery {
+        status = status == null || status.isBlank() ? null : status.trim().toLowerCase();
+        educationLevel = educationLevel == null || educationLevel.isBlank() ? null : educationLevel.trim().toUpperCase();
+        limit = limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+    }
+
+    public ProvisionQuery withLimit(int limit) {
+        return new ProvisionQuery(status, educationLevel, assigned, schoolId, after, limit);
+    }
+}
@@ -0,0 +1,133 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantShardRouter;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.SchemaManagerService;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.TemplateSchemaService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares each shard's schema catalog with the provision registry and the tenant
+ * roles on that shard: one catalog query per shard, one registry query, and one to
+ * load the provisions that need attention. A schema on a shard the registry does not
+ * place it on is an orphan there, whether or not the tenant lives elsewhere.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProvisionReconciler {
+    private final DbProvisioningRepository repository;
+    private final SchemaManagerService schemaManagerService;
+    private final TenantProperties tenantProperties;
+
+    @Transactional(readOnly = true)
+    public ReconciliationReport reconcile() {
+        Map<String, DbProvisioningRepository.RegisteredSchema> registry = repository.findRegisteredSchemas().stream()
+                .filter(registered -> !TemplateSchemaService.isTemplateSchema(registered.schemaName()))
+                .collect(Collectors.toMap(DbProvisioningRepository.RegisteredSchema::schemaName,
+                        Function.identity(), (first, second) -> first));
+
+        int checkedSchemas = 0;
+        List<OrphanedSchema> orphanedSchemas = new ArrayList<>();
+        Set<UUID> missingSchemaIds = new HashSet<>();
+        Set<UUID> missingRoleIds = new HashSet<>();
+        for (String shardId : shardIds()) {
+            Map<String, Boolean> roleExists = catalog(shardId);
+            for (String schema : roleExists.keySet()) {
+                DbProvisioningRepository.RegisteredSchema registered = registry.get(schema);
+                // A skipped provision's schema may be mid-restore or mid-provisioning on any shard
+                if (registered == null || (!registered.skipped() && !shardId.equals(registered.shardId()))) {
+                    orphanedSchemas.add(new OrphanedSchema(shardId, schema));
+                }
+            }
+            for (DbProvisioningRepository.RegisteredSchema registered : registry.values()) {
+                if (registered.skipped() || !shardId.equals(registered.shardId())) {
+                    continue;
+                }
+                Boolean role = roleExists.get(registered.schemaName());
+                if (role == null) {
+                    missingSchemaIds.add(registered.provisionId());
+                } else if (tenantProperties.isCreateTenantRoles() && !role) {
+                    missingRoleIds.add(registered.provisionId());
+                }
+            }
+            checkedSchemas += roleExists.size();
+        }
+        checkedSchemas += missingSchemaIds.size();
+
+        Set<UUID> affectedIds = new HashSet<>(missingSchemaIds);
+        affectedIds.addAll(missingRoleIds);
+        Map<UUID, DbProvision> provisions = affectedIds.isEmpty() ? Map.of()
+                : repository.findAllById(affectedIds).stream()
+                        .collect(Collectors.toMap(DbProvision::getProvisionId, Function.identity()));
+
+        ReconciliationReport report = new ReconciliationReport(checkedSchemas, orphanedSchemas,
+                select(provisions, missingSchemaIds), select(provisions, missingRoleIds), LocalDateTime.now());
+        log.info("Reconciled {} schemas: {} orphaned, {} provisions missing their schema, {} missing their role",
+                report.checkedSchemas(), orphanedSchemas.size(), report.missingSchemas().size(),
+                report.missingRoles().size());
+        return report;
+    }
+
+    private Set<String> shardIds() {
+        TenantShardRouter router = schemaManagerService.getShardRouter();
+        return router != null ? router.getShardIds() : Set.of(TenantShardRouter.PRIMARY);
+    }
+
+    // Tenant schemas in the shard's catalog, each with whether its role exists there
+    private Map<String, Boolean> catalog(String shardId) {
+        try {
+            Map<String, Boolean> roleExists = new LinkedHashMap<>();
+            for (SchemaManagerService.CatalogSchema schema : schemaManagerService.listCatalogSchemas(shardId)) {
+                if (!TemplateSchemaService.isTemplateSchema(schema.schemaName())) {
+                    roleExists.put(schema.schemaName(), schema.roleExists());
+                }
+            }
+            return roleExists;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read the schema catalog of shard " + shardId, e);
+        }
+    }
+
+    private static List<DbProvision> select(Map<UUID, DbProvision> provisions, Set<UUID> ids) {
+        return ids.stream()
+                .map(provisions::get)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(DbProvision::getDbSchemaName))
+                .toList();
+    }
+
+    /**
+     * Orphaned schemas exist in a shard's catalog without a provision placed there.
+     * Missing schemas and missing roles are provisions whose schema, or whose tenant
+     * role, is gone from their shard.
+     */
+    public record ReconciliationReport(int checkedSchemas, List<OrphanedSchema> orphanedSchemas,
+                                       List<DbProvision> missingSchemas, List<DbProvision> missingRoles,
+                                       LocalDateTime checkedAt) {
+        public List<DbProvision> getInconsistentProvisions() {
+            return Stream.concat(missingSchemas.stream(), missingRoles.stream()).toList();
+        }
+    }
+
+    public record OrphanedSchema(String shardId, String schemaName) { }
+}
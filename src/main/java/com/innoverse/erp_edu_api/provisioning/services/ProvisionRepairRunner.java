@@ -0,0 +1,299 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantReconciliationProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.FlywayMigrationService;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.SchemaManagerService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Repairs what a reconciliation finds as a background job: orphaned schemas are
+ * dropped and missing tenant roles restored in batches of one round trip each, and
+ * provisions whose schema is gone are re-provisioned one at a time. A failed batch is
+ * retried item by item so one bad schema does not hold back the rest.
+ *
+ * <p>The report is a snapshot, so nothing is dropped or re-provisioned on its word
+ * alone. Each schema's migration lock, which queued provisioning runs, migrations and
+ * archiving also take, is held while the registry is read again and the repair runs;
+ * a schema whose lock is busy, or whose registry entry has changed, is skipped.
+ */
+@Slf4j
+@Component
+public class ProvisionRepairRunner {
+    private final ProvisionReconciler reconciler;
+    private final SchemaManagerService schemaManagerService;
+    private final FlywayMigrationService flywayMigrationService;
+    private final DbProvisioningRepository repository;
+    private final ProvisioningJobRepository jobRepository;
+    private final TenantProvisioningOrchestrationService orchestrationService;
+    private final TenantReconciliationProperties properties;
+    private final TaskExecutor taskExecutor;
+
+    private final Map<UUID, RepairJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicReference<RepairJob> runningJob = new AtomicReference<>();
+
+    public ProvisionRepairRunner(ProvisionReconciler reconciler,
+                                 SchemaManagerService schemaManagerService,
+                                 FlywayMigrationService flywayMigrationService,
+                                 DbProvisioningRepository repository,
+                                 ProvisioningJobRepository jobRepository,
+                                 TenantProvisioningOrchestrationService orchestrationService,
+                                 TenantReconciliationProperties properties,
+                                 @Qualifier("provisionRepairTaskExecutor") TaskExecutor taskExecutor) {
+        this.reconciler = reconciler;
+        this.schemaManagerService = schemaManagerService;
+        this.flywayMigrationService = flywayMigrationService;
+        this.repository = repository;
+        this.jobRepository = jobRepository;
+        this.orchestrationService = orchestrationService;
+        this.properties = properties;
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Starts a repair job in the background, or returns the job already running on this node.
+     */
+    public RepairJobStatus start() {
+        RepairJob job = new RepairJob(UUID.randomUUID());
+        while (!runningJob.compareAndSet(null, job)) {
+            RepairJob current = runningJob.get();
+            if (current != null) {
+                return current.status();
+            }
+        }
+
+        jobs.put(job.id, job);
+        pruneFinishedJobs();
+        try {
+            taskExecutor.execute(() -> run(job));
+        } catch (RuntimeException e) {
+            job.finish(TenantMigrationRunner.JobState.FAILED);
+            runningJob.set(null);
+            throw e;
+        }
+        return job.status();
+    }
+
+    public Optional<RepairJobStatus> getJob(UUID jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(RepairJob::status);
+    }
+
+    public List<RepairJobStatus> getJobs() {
+        return jobs.values().stream()
+                .map(RepairJob::status)
+                .sorted(Comparator.comparing(RepairJobStatus::startedAt).reversed())
+                .toList();
+    }
+
+    private void run(RepairJob job) {
+        try {
+            ProvisionReconciler.ReconciliationReport report = reconciler.reconcile();
+            job.start(report.orphanedSchemas().size() + report.missingRoles().size() + report.missingSchemas().size());
+            log.info("Repair job {} started for {} items", job.id, job.total);
+
+            inBatches(job, RepairAction.DROP_ORPHANED_SCHEMA, report.orphanedSchemas(),
+                    ProvisionReconciler.OrphanedSchema::schemaName, this::dropOrphans);
+            inBatches(job, RepairAction.RESTORE_ROLE, report.missingRoles(), DbProvision::getDbSchemaName,
+                    batch -> {
+                        schemaManagerService.restoreTenantRoles(rolePasswords(batch));
+                        return batch.size();
+                    });
+
+            for (DbProvision provision : report.missingSchemas()) {
+                try {
+                    if (recover(provision)) {
+                        job.repaired.incrementAndGet();
+                    } else {
+                        job.skipped.incrementAndGet();
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    job.fail(provision.getDbSchemaName(), RepairAction.RECOVER_PROVISION, e.getMessage());
+                }
+            }
+
+            job.finish(TenantMigrationRunner.JobState.COMPLETED);
+            log.info("Repair job {} completed. {}", job.id, job.status());
+        } catch (RuntimeException e) {
+            job.finish(TenantMigrationRunner.JobState.FAILED);
+            log.error("Repair job {} failed", job.id, e);
+        } finally {
+            runningJob.set(null);
+        }
+    }
+
+    // Drops the schemas that are still orphans on their shard, with their locks held, one batch per shard
+    private int dropOrphans(List<ProvisionReconciler.OrphanedSchema> schemas) throws SQLException {
+        List<FlywayMigrationService.MigrationLock> locks = new ArrayList<>();
+        try {
+            Map<String, List<String>> orphansByShard = new LinkedHashMap<>();
+            for (ProvisionReconciler.OrphanedSchema orphan : schemas) {
+                String schema = orphan.schemaName();
+                FlywayMigrationService.MigrationLock lock = flywayMigrationService.tryMigrationLock(schema);
+                if (lock == null) {
+                    log.info("Skipping orphaned schema {}: it is being provisioned, migrated or archived", schema);
+                    continue;
+                }
+                locks.add(lock);
+                if (repository.findShardBySchemaName(schema).filter(orphan.shardId()::equals).isPresent()) {
+                    log.info("Skipping orphaned schema {}: it has been registered on shard {} since the "
+                            + "reconciliation", schema, orphan.shardId());
+                    continue;
+                }
+                orphansByShard.computeIfAbsent(orphan.shardId(), shard -> new ArrayList<>()).add(schema);
+            }
+            int dropped = 0;
+            for (Map.Entry<String, List<String>> shard : orphansByShard.entrySet()) {
+                schemaManagerService.dropSchemasOnShard(shard.getKey(), shard.getValue());
+                dropped += shard.getValue().size();
+            }
+            return dropped;
+        } finally {
+            for (FlywayMigrationService.MigrationLock lock : locks) {
+                lock.close();
+            }
+        }
+    }
+
+    /**
+     * Re-provisions the provision if, with its schema's lock held, it is unchanged, its
+     * schema is still missing and the queue has no job for it. Returns false if skipped.
+     */
+    private boolean recover(DbProvision reported) throws SQLException {
+        String schema = reported.getDbSchemaName();
+        try (FlywayMigrationService.MigrationLock lock = flywayMigrationService.tryMigrationLock(schema)) {
+            if (lock == null) {
+                log.info("Skipping recovery of {}: its schema is being provisioned, migrated or archived", schema);
+                return false;
+            }
+            DbProvision provision = repository.findById(reported.getProvisionId()).orElse(null);
+            if (provision == null || !provision.getProvisionStatus().equals(reported.getProvisionStatus())
+                    || !provision.getShardId().equals(reported.getShardId())
+                    || lock.schemaExists() || jobRepository.hasActiveJob(provision.getProvisionId())) {
+                log.info("Skipping recovery of {}: it has changed since the reconciliation", schema);
+                return false;
+            }
+            orchestrationService.recoverOrphanedProvision(provision);
+            return true;
+        }
+    }
+
+    private <T> void inBatches(RepairJob job, RepairAction action, List<T> targets, Function<T, String> name,
+                               SqlBatch<T> repair) {
+        int batchSize = Math.max(1, properties.getBatchSize());
+        for (int from = 0; from < targets.size(); from += batchSize) {
+            List<T> batch = targets.subList(from, Math.min(from + batchSize, targets.size()));
+            try {
+                count(job, batch.size(), repair.apply(batch));
+            } catch (SQLException | RuntimeException e) {
+                if (batch.size() == 1) {
+                    job.fail(name.apply(batch.get(0)), action, e.getMessage());
+                    continue;
+                }
+                log.warn("Repair batch of {} failed ({}), retrying one by one: {}", batch.size(), action, e.getMessage());
+                for (T target : batch) {
+                    try {
+                        count(job, 1, repair.apply(List.of(target)));
+                    } catch (SQLException | RuntimeException itemError) {
+                        job.fail(name.apply(target), action, itemError.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void count(RepairJob job, int attempted, int repaired) {
+        job.repaired.addAndGet(repaired);
+        job.skipped.addAndGet(attempted - repaired);
+    }
+
+    // Assigned schemas keep the school id as their password, as on assignment
+    private static Map<String, String> rolePasswords(List<DbProvision> provisions) {
+        Map<String, String> passwords = new LinkedHashMap<>();
+        for (DbProvision provision : provisions) {
+            UUID schoolId = provision.getAssignedSchoolId();
+            passwords.put(provision.getDbSchemaName(), schoolId != null ? schoolId.toString() : "password");
+        }
+        return passwords;
+    }
+
+    private void pruneFinishedJobs() {
+        List<RepairJob> finished = jobs.values().stream()
+                .filter(job -> job.state != TenantMigrationRunner.JobState.RUNNING)
+                .sorted(Comparator.comparing((RepairJob job) -> job.startedAt))
+                .toList();
+        int excess = finished.size() - properties.getRetainedJobs();
+        for (int i = 0; i < excess; i++) {
+            jobs.remove(finished.get(i).id);
+        }
+    }
+
+    // Repairs the batch and returns how many of it were repaired; the rest were skipped
+    @FunctionalInterface
+    private interface SqlBatch<T> {
+        int apply(List<T> batch) throws SQLException;
+    }
+
+    private static final class RepairJob {
+        private final UUID id;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final AtomicInteger repaired = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final Queue<RepairFailure> failures = new ConcurrentLinkedQueue<>();
+        private volatile TenantMigrationRunner.JobState state = TenantMigrationRunner.JobState.RUNNING;
+        private volatile int total;
+        private volatile LocalDateTime finishedAt;
+
+        private RepairJob(UUID id) {
+            this.id = id;
+        }
+
+        void start(int total) {
+            this.total = total;
+        }
+
+        void fail(String schemaName, RepairAction action, String reason) {
+            log.error("Repair {} failed for {}: {}", action, schemaName, reason);
+            failures.add(new RepairFailure(schemaName, action, reason, LocalDateTime.now()));
+        }
+
+        void finish(TenantMigrationRunner.JobState finalState) {
+            finishedAt = LocalDateTime.now();
+            state = finalState;
+        }
+
+        RepairJobStatus status() {
+            return new RepairJobStatus(id, state, total, repaired.get(), skipped.get(), failures.size(), startedAt,
+                    finishedAt, List.copyOf(failures));
+        }
+    }
+
+    public enum RepairAction {
+        DROP_ORPHANED_SCHEMA, RESTORE_ROLE, RECOVER_PROVISION
+    }
+
+    public record RepairFailure(String schemaName, RepairAction action, String reason, LocalDateTime failedAt) { }
+
+    // Skipped items were found busy or changed when their repair came up, and are left alone
+    public record RepairJobStatus(UUID jobId, TenantMigrationRunner.JobState state, int total, int repaired,
+                                  int skipped, int failed, LocalDateTime startedAt, LocalDateTime finishedAt,
+                                  List<RepairFailure> failures) { }
+}
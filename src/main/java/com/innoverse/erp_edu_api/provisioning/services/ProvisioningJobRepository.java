@@ -0,0 +1,53 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The durable provisioning queue, one job per provision. Lease times are taken from
+ * the database clock so nodes with drifting clocks still agree on who holds a job.
+ */
+public interface ProvisioningJobRepository {
+
+    // Queues the provision, or re-queues it if it already has a finished job
+    @Transactional
+    void enqueue(UUID provisionId, String educationLevel, String assignedBy);
+
+    // Leases up to limit due jobs to the owner, skipping jobs other nodes are claiming
+    @Transactional
+    List<ProvisioningJob> claim(String owner, int limit, Duration lease);
+
+    // Extends the lease; false if the owner no longer holds the job
+    @Transactional
+    boolean renewLease(UUID provisionId, String owner, Duration lease);
+
+    @Transactional
+    boolean complete(UUID provisionId, String owner);
+
+    @Transactional
+    boolean retryLater(UUID provisionId, String owner, String error, Duration backoff);
+
+    @Transactional
+    boolean fail(UUID provisionId, String owner, String error);
+
+    /**
+     * Re-queues jobs whose lease ran out, counting the lost run as an attempt on the
+     * provision. Jobs out of attempts fail along with their provision.
+     */
+    @Transactional
+    List<ExpiredJob> requeueExpired(int maxAttempts, Duration initialBackoff, Duration maxBackoff);
+
+    Map<String, Long> countByState();
+
+    // Queued or running, i.e. the queue will provision it or is doing so
+    boolean hasActiveJob(UUID provisionId);
+
+    record ProvisioningJob(UUID provisionId, String schemaName, String educationLevel, String assignedBy,
+                           int attempts) { }
+
+    record ExpiredJob(UUID provisionId, String previousOwner, String state, int attempts) { }
+}
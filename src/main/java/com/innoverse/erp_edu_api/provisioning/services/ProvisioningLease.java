@@ -0,0 +1,77 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import com.innoverse.erp_edu_api.provisioning.exceptions.ProvisioningException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * A node's claim on one provisioning job. The owner is unique to the claim, so a run
+ * whose lease was lost can never act for a later claim of the same job, even on the
+ * same node. A lease that could not be renewed counts as lost once it would have run
+ * out, whether or not another node has taken the job yet.
+ */
+@Slf4j
+public final class ProvisioningLease {
+    private final UUID provisionId;
+    private final String owner;
+    private final ProvisioningJobRepository jobRepository;
+    private final Duration duration;
+
+    private volatile long renewedAtNanos = System.nanoTime();
+    private volatile boolean lost;
+
+    ProvisioningLease(UUID provisionId, String owner, ProvisioningJobRepository jobRepository, Duration duration) {
+        this.provisionId = provisionId;
+        this.owner = owner;
+        this.jobRepository = jobRepository;
+        this.duration = duration;
+    }
+
+    public String owner() {
+        return owner;
+    }
+
+    public boolean isHeld() {
+        return !lost && System.nanoTime() - renewedAtNanos < duration.toNanos();
+    }
+
+    /**
+     * Extends the lease and returns whether it is still held. A failed renewal keeps the
+     * lease only for the time it had left.
+     */
+    boolean renew() {
+        if (lost) {
+            return false;
+        }
+        try {
+            if (jobRepository.renewLease(provisionId, owner, duration)) {
+                renewedAtNanos = System.nanoTime();
+                return true;
+            }
+            lost = true;
+            return false;
+        } catch (RuntimeException e) {
+            log.warn("Failed to renew lease on provisioning job {}: {}", provisionId, e.getMessage());
+            return isHeld();
+        }
+    }
+
+    /**
+     * Renews the lease before a step that must not run while another node runs the same
+     * job, e.g. dropping and creating the schema, and aborts the run if it is gone.
+     */
+    public void verify(String step) {
+        if (!renew()) {
+            throw new ProvisioningException(
+                    "PROVISION",
+                    "Provisioning job was taken over by another node",
+                    "Lease on provisioning job " + provisionId + " lost before step '" + step + "'",
+                    HttpStatus.CONFLICT,
+                    null
+            );
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Follows provisioning runs step by step in memory and tells subscribers about every
+ * step, so progress can be watched live. Only the outcome is written to the registry:
+ * the final status, error and step log, in one update when the run ends. Finished
+ * runs stay queryable for a while after. Each subscriber is fed from its own bounded
+ * queue on its own thread, so a slow client never holds up a provisioning run; when
+ * its queue is full, further snapshots for it are dropped.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProvisioningProgressTracker {
+    private static final int RETAINED_FINISHED_RUNS = 200;
+    private static final int SUBSCRIBER_QUEUE_CAPACITY = 256;
+
+    private final ProvisioningTrackingService trackingService;
+
+    private final Map<UUID, Progress> active = new ConcurrentHashMap<>();
+    private final Deque<ProgressSnapshot> finished = new ConcurrentLinkedDeque<>();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Starts following a run. A run under a provisioning job's lease passes its owner,
+     * and its outcome is only written while that owner still holds the job.
+     */
+    public Progress start(DbProvision provision, String leaseOwner) {
+        Progress progress = new Progress(provision, leaseOwner);
+        active.put(progress.provisionId, progress);
+        publish(progress.snapshot());
+        return progress;
+    }
+
+    public List<ProgressSnapshot> getActive() {
+        return active.values().stream()
+                .map(Progress::snapshot)
+                .sorted(Comparator.comparing(ProgressSnapshot::startedAt))
+                .toList();
+    }
+
+    public Optional<ProgressSnapshot> getProgress(UUID provisionId) {
+        Progress progress = active.get(provisionId);
+        if (progress != null) {
+            return Optional.of(progress.snapshot());
+        }
+        return finished.stream()
+                .filter(snapshot -> snapshot.provisionId().equals(provisionId))
+                .findFirst();
+    }
+
+    /**
+     * Registers a listener for every progress change, starting with the runs in flight,
+     * and returns the call that removes it. The listener is called on its own thread; one
+     * that throws is removed, e.g. when its client has gone away.
+     */
+    public Runnable subscribe(Consumer<ProgressSnapshot> listener) {
+        Subscriber subscriber = new Subscriber(listener);
+        getActive().forEach(subscriber::offer);
+        subscribers.add(subscriber);
+        subscriber.start();
+        return () -> unsubscribe(subscriber);
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            subscriber.stop();
+        }
+    }
+
+    // Only queues the snapshot, so it never blocks the provisioning thread
+    private void publish(ProgressSnapshot snapshot) {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(snapshot);
+        }
+    }
+
+    private void retire(Progress progress, ProgressSnapshot snapshot) {
+        active.remove(progress.provisionId);
+        finished.addFirst(snapshot);
+        while (finished.size() > RETAINED_FINISHED_RUNS) {
+            finished.pollLast();
+        }
+    }
+
+    /**
+     * One provisioning run. Each {@link #step(String)} ends the running step and starts
+     * the next; {@link #succeed(String)}, {@link #fail(String)} or {@link #abandon(String)}
+     * ends the run and writes its outcome.
+     */
+    public final class Progress {
+        private static final String RUNNING = "running";
+
+        private final UUID provisionId;
+        private final String schemaName;
+        private final String initialStatus;
+        private final String leaseOwner;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        // Guards the step fields below
+        private final ReentrantLock lock = new ReentrantLock();
+        private final List<StepTiming> steps = new ArrayList<>();
+        private String currentStep;
+        private long currentStepStartNanos;
+        private LocalDateTime currentStepStartedAt;
+
+        private Progress(DbProvision provision, String leaseOwner) {
+            this.provisionId = provision.getProvisionId();
+            this.schemaName = provision.getDbSchemaName();
+            this.initialStatus = provision.getProvisionStatus();
+            this.leaseOwner = leaseOwner;
+        }
+
+        public void step(String name) {
+            ProgressSnapshot snapshot;
+            lock.lock();
+            try {
+                endCurrentStep();
+                currentStep = name;
+                currentStepStartNanos = System.nanoTime();
+                currentStepStartedAt = LocalDateTime.now();
+                snapshot = snapshot(RUNNING, null, null);
+            } finally {
+                lock.unlock();
+            }
+            publish(snapshot);
+        }
+
+        public void succeed(String message) {
+            finish(DbProvision.Status.PROVISIONED.name().toLowerCase(), message, null);
+        }
+
+        public void fail(String errorMessage) {
+            finish(DbProvision.Status.FAILED.name().toLowerCase(), errorMessage, errorMessage);
+        }
+
+        // Ends the run with the error recorded but the status it started with, e.g. a rolled-back migration
+        public void abandon(String errorMessage) {
+            finish(initialStatus, errorMessage, errorMessage);
+        }
+
+        private void finish(String status, String message, String errorMessage) {
+            ProgressSnapshot snapshot;
+            lock.lock();
+            try {
+                endCurrentStep();
+                snapshot = snapshot(status, message, LocalDateTime.now());
+            } finally {
+                lock.unlock();
+            }
+            try {
+                trackingService.recordProvisioningOutcome(provisionId, status, errorMessage, stepLog(snapshot),
+                        leaseOwner);
+            } finally {
+                retire(this, snapshot);
+                publish(snapshot);
+            }
+        }
+
+        private void endCurrentStep() {
+            if (currentStep != null) {
+                long durationMillis = Duration.ofNanos(System.nanoTime() - currentStepStartNanos).toMillis();
+                steps.add(new StepTiming(currentStep, currentStepStartedAt, durationMillis));
+                currentStep = null;
+            }
+        }
+
+        private ProgressSnapshot snapshot() {
+            lock.lock();
+            try {
+                return snapshot(RUNNING, null, null);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private ProgressSnapshot snapshot(String status, String message, LocalDateTime finishedAt) {
+            return new ProgressSnapshot(provisionId, schemaName, status, currentStep, List.copyOf(steps), message,
+                    startedAt, finishedAt);
+        }
+    }
+
+    /**
+     * One listener with its queue and the thread that drains it.
+     */
+    private final class Subscriber implements Runnable {
+        private final Consumer<ProgressSnapshot> listener;
+        private final BlockingQueue<ProgressSnapshot> queue = new ArrayBlockingQueue<>(SUBSCRIBER_QUEUE_CAPACITY);
+        private final AtomicLong dropped = new AtomicLong();
+        private final Thread thread;
+
+        private Subscriber(Consumer<ProgressSnapshot> listener) {
+            this.listener = listener;
+            this.thread = Thread.ofVirtual().name("provisioning-progress-listener").unstarted(this);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void stop() {
+            thread.interrupt();
+        }
+
+        private void offer(ProgressSnapshot snapshot) {
+            if (!queue.offer(snapshot) && dropped.incrementAndGet() % SUBSCRIBER_QUEUE_CAPACITY == 1) {
+                log.debug("Provisioning progress listener falling behind, {} snapshots dropped", dropped.get());
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    listener.accept(queue.take());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.debug("Dropping provisioning progress listener: {}", e.getMessage());
+                subscribers.remove(this);
+            }
+        }
+    }
+
+    // One line per step, then the outcome, e.g. "Creating schema: 85 ms"
+    private static String stepLog(ProgressSnapshot snapshot) {
+        return Stream.concat(
+                        snapshot.steps().stream().map(step -> step.name() + ": " + step.durationMillis() + " ms"),
+                        Stream.of(snapshot.status() + (snapshot.message() != null ? ": " + snapshot.message() : "")))
+                .collect(Collectors.joining("\n"));
+    }
+
+    public record StepTiming(String name, LocalDateTime startedAt, long durationMillis) { }
+
+    public record ProgressSnapshot(UUID provisionId, String schemaName, String status, String currentStep,
+                                   List<StepTiming> steps, String message, LocalDateTime startedAt,
+                                   LocalDateTime finishedAt) { }
+}
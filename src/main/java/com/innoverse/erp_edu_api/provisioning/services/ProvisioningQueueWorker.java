@@ -0,0 +1,184 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantProvisioningQueueProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the durable provisioning queue on this node. Every node polls for due jobs and
+ * leases what it has capacity for, so throughput grows with the number of nodes. A
+ * running job's lease is renewed by heartbeat; when a node dies its leases run out and
+ * any node re-queues the job with backoff, counting the lost run as an attempt. Failed
+ * runs are retried the same way until the provision runs out of attempts.
+ *
+ * <p>Heartbeats run on the worker's own thread, never queued behind other scheduled
+ * work. A run checks its lease before each step and records its outcome only while it
+ * still holds it, so a run whose lease was lost stops and leaves the job to its new owner.
+ */
+@Slf4j
+@Component
+public class ProvisioningQueueWorker {
+    private final ProvisioningJobRepository jobRepository;
+    private final TenantProvisioningOrchestrationService orchestrationService;
+    private final TenantProvisioningQueueProperties properties;
+    private final TaskExecutor taskExecutor;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<UUID, ProvisioningLease> inFlight = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("provisioning-queue-heartbeat").daemon().factory());
+
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder leasesLost = new LongAdder();
+    private final LongAdder leasesRequeued = new LongAdder();
+
+    public ProvisioningQueueWorker(ProvisioningJobRepository jobRepository,
+                                   TenantProvisioningOrchestrationService orchestrationService,
+                                   TenantProvisioningQueueProperties properties,
+                                   @Qualifier("provisioningTaskExecutor") TaskExecutor taskExecutor) {
+        this.jobRepository = jobRepository;
+        this.orchestrationService = orchestrationService;
+        this.properties = properties;
+        this.taskExecutor = taskExecutor;
+    }
+
+    @PostConstruct
+    public void startHeartbeats() {
+        long interval = properties.getHeartbeatInterval().toMillis();
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${tenant.provisioning-queue.poll-interval:2s}")
+    public void poll() {
+        int capacity = properties.getConcurrency() - inFlight.size();
+        if (!properties.isEnabled() || capacity <= 0) {
+            return;
+        }
+
+        // Unique to this claim, so a later claim of the same job is never taken for this one
+        String owner = nodeId + ":" + UUID.randomUUID();
+        List<ProvisioningJobRepository.ProvisioningJob> jobs;
+        try {
+            jobs = jobRepository.claim(owner, capacity, properties.getLeaseDuration());
+        } catch (RuntimeException e) {
+            log.warn("Failed to claim provisioning jobs: {}", e.getMessage());
+            return;
+        }
+
+        for (ProvisioningJobRepository.ProvisioningJob job : jobs) {
+            claimed.increment();
+            ProvisioningLease lease = new ProvisioningLease(job.provisionId(), owner, jobRepository,
+                    properties.getLeaseDuration());
+            inFlight.put(job.provisionId(), lease);
+            try {
+                taskExecutor.execute(() -> run(job, lease));
+            } catch (RuntimeException e) {
+                // Not started, so hand the job straight back instead of waiting for the lease to run out
+                inFlight.remove(job.provisionId());
+                jobRepository.retryLater(job.provisionId(), owner, "Worker rejected job: " + e.getMessage(),
+                        Duration.ZERO);
+            }
+        }
+    }
+
+    private void heartbeat() {
+        inFlight.forEach((provisionId, lease) -> {
+            boolean wasHeld = lease.isHeld();
+            if (!lease.renew() && wasHeld) {
+                // The run notices at its next step and stops; its outcome is no longer recorded
+                leasesLost.increment();
+                log.warn("Lost the lease on provisioning job {}", provisionId);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${tenant.provisioning-queue.reap-interval:1m}")
+    public void requeueExpiredLeases() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            List<ProvisioningJobRepository.ExpiredJob> expired = jobRepository.requeueExpired(
+                    properties.getMaxAttempts(), properties.getInitialBackoff(), properties.getMaxBackoff());
+            for (ProvisioningJobRepository.ExpiredJob job : expired) {
+                leasesRequeued.increment();
+                log.warn("Provisioning job {} lease held by {} expired after attempt {}, now {}",
+                        job.provisionId(), job.previousOwner(), job.attempts(), job.state());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to re-queue expired provisioning jobs: {}", e.getMessage());
+        }
+    }
+
+    public QueueStats getStats() {
+        return new QueueStats(nodeId, properties.isEnabled(), properties.getConcurrency(), inFlight.size(),
+                claimed.sum(), succeeded.sum(), retried.sum(), failed.sum(), leasesLost.sum(),
+                leasesRequeued.sum(), jobRepository.countByState());
+    }
+
+    private void run(ProvisioningJobRepository.ProvisioningJob job, ProvisioningLease lease) {
+        try {
+            orchestrationService.runQueuedProvisioning(job, lease);
+            if (jobRepository.complete(job.provisionId(), lease.owner())) {
+                succeeded.increment();
+            } else {
+                log.warn("Provisioning job {} finished after its lease was lost", job.provisionId());
+            }
+        } catch (RuntimeException e) {
+            if (!lease.isHeld()) {
+                log.warn("Abandoned provisioning job {} after losing its lease: {}", job.provisionId(),
+                        e.getMessage());
+                return;
+            }
+            // The failed run has already been counted on the provision
+            int attempts = job.attempts() + 1;
+            String error = e.getMessage();
+            if (attempts >= properties.getMaxAttempts()) {
+                jobRepository.fail(job.provisionId(), lease.owner(), error);
+                failed.increment();
+                log.error("Provisioning job {} failed after {} attempts", job.provisionId(), attempts, e);
+            } else {
+                Duration backoff = backoff(attempts);
+                jobRepository.retryLater(job.provisionId(), lease.owner(), error, backoff);
+                retried.increment();
+                log.warn("Provisioning job {} failed on attempt {}, retrying in {}: {}",
+                        job.provisionId(), attempts, backoff, error);
+            }
+        } finally {
+            inFlight.remove(job.provisionId(), lease);
+        }
+    }
+
+    // Same curve as for expired leases: doubled per attempt, capped at the maximum
+    private Duration backoff(int attempts) {
+        Duration backoff = properties.getInitialBackoff().multipliedBy(1L << Math.min(attempts - 1, 20));
+        return backoff.compareTo(properties.getMaxBackoff()) > 0 ? properties.getMaxBackoff() : backoff;
+    }
+
+    public record QueueStats(String nodeId, boolean enabled, int concurrency, int inFlight, long claimed,
+                             long succeeded, long retried, long failed, long leasesLost, long leasesRequeued,
+                             Map<String, Long> jobsByState) { }
+}
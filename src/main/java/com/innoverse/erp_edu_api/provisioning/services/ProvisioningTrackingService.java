@@ -8,12 +8,14 @@ import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.SchemaMan
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -21,6 +23,8 @@ import java.util.UUID;
 public class ProvisioningTrackingService{
     private final SchemaManagerService schemaManagerService;
     private final DbProvisioningRepository repository;
+    private final ProvisionReconciler reconciler;
+    private final TenantShardPlacement shardPlacement;
 
     @Transactional(readOnly = true)
     public List<DbProvision> getAllProvisions() {
@@ -51,6 +55,11 @@ public class ProvisioningTrackingService{
         return repository.findByStatus(status);
     }
 
+    @Transactional(readOnly = true)
+    public List<DbProvision> getRoutableProvisionsAfter(UUID afterProvisionId, int limit) {
+        return repository.findRoutableAfter(afterProvisionId, limit);
+    }
+
     @Transactional(readOnly = true)
     public List<DbProvision> getFailedProvisionsOlderThanDays(int days) {
         return repository.findFailedProvisionsOlderThanDays(days);
@@ -151,6 +160,16 @@ public class ProvisioningTrackingService{
                 .orElse(false);
     }
 
+    @Transactional(readOnly = true)
+    public void streamProvisions(ProvisionQuery query, Consumer<DbProvision> consumer) {
+        repository.streamPage(query, consumer);
+    }
+
+    @Transactional(readOnly = true)
+    public List<DbProvisioningRepository.ProvisionCount> getProvisionCounts() {
+        return repository.countByStatusLevelAndAccess();
+    }
+
     @Transactional(readOnly = true)
     public long getProvisionCountByStatus(String status) {
         return repository.countByStatus(status);
@@ -178,10 +197,22 @@ public class ProvisioningTrackingService{
 
         DbProvision provision = DbProvision.createNew(ctx.schemaName(), ctx.level().name());
         provision.setAssignedBy(ctx.assignedBy());
+        provision.setShardId(shardPlacement.chooseShard(ctx.schemaName()));
         return repository.save(provision);
     }
 
 
+    // Read while a tenant connection is being opened, so it must not join that connection's transaction
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Optional<String> getShardForSchema(String schemaName) {
+        return repository.findShardBySchemaName(schemaName);
+    }
+
+    @Transactional(readOnly = true)
+    public boolean isSchemaHibernated(String schemaName) {
+        return repository.findBySchemaName(schemaName).map(DbProvision::isHibernated).orElse(false);
+    }
+
     @Transactional
     public Optional<DbProvision> updateProvisionStatus(UUID provisionId, String status, String message) {
         return repository.findById(provisionId).map(provision -> {
@@ -190,6 +221,34 @@ public class ProvisioningTrackingService{
         });
     }
 
+    /**
+     * Records that a provisioned schema was migrated, clearing any earlier error. Returns
+     * false, changing nothing, when the provision has left 'provisioned' meanwhile.
+     */
+    @Transactional
+    public boolean recordMigrated(UUID provisionId) {
+        return repository.recordMigrated(provisionId);
+    }
+
+    /**
+     * Persists the outcome of a provisioning run, its status, error and step log, in a
+     * single update without reading the row first. With a lease owner the update only
+     * applies while that owner still holds the provision's queued job.
+     */
+    @Transactional
+    public void recordProvisioningOutcome(UUID provisionId, String status, String errorMessage, String stepLog,
+                                          String leaseOwner) {
+        if (leaseOwner != null) {
+            if (!repository.recordOutcomeUnderLease(provisionId, status, errorMessage, stepLog, leaseOwner)) {
+                log.warn("Outcome of provision {} not recorded, its job lease is no longer held", provisionId);
+            }
+            return;
+        }
+        if (!repository.recordOutcome(provisionId, status, errorMessage, stepLog)) {
+            log.warn("Provision with ID {} not found when recording its outcome", provisionId);
+        }
+    }
+
     @Transactional
     public boolean deleteProvision(UUID provisionId) {
         return repository.findById(provisionId).map(provision -> {
@@ -270,11 +329,8 @@ public class ProvisioningTrackingService{
     public boolean isProvisionConsistent(UUID provisionId) {
         return repository.findById(provisionId).map(provision -> {
             try {
-                boolean schemaExists = schemaManagerService.schemaExists(provision.getDbSchemaName());
-                boolean provisionExists = repository.existsById(provisionId);
-
-                // Consistency check: both should exist or both should not exist
-                return schemaExists == provisionExists;
+                // The provision was just found, so it is consistent when its schema exists too
+                return schemaManagerService.schemaExists(provision.getDbSchemaName());
             } catch (SQLException e) {
                 log.warn("Failed to check schema existence for consistency: {}", provision.getDbSchemaName(), e);
                 return false;
@@ -284,9 +340,7 @@ public class ProvisioningTrackingService{
 
     @Transactional(readOnly = true)
     public List<DbProvision> findInconsistentProvisions() {
-        return repository.findAll().stream()
-                .filter(provision -> !isProvisionConsistent(provision.getProvisionId()))
-                .toList();
+        return reconciler.reconcile().getInconsistentProvisions();
     }
 
     @Transactional
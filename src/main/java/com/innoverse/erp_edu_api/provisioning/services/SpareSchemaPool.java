@@ -0,0 +1,160 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
+import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantSparePoolProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.SchemaManagerService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a number of provisioned but unassigned schemas ready per academic level, so
+ * registering a school only claims one instead of provisioning inline. A scheduled
+ * replenisher tops the pool up at a bounded rate, with a Redis lock so only one node
+ * refills at a time. Spares are recognised by their assigned_by marker.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SpareSchemaPool {
+    public static final String SPARE_MARKER = "spare-pool";
+    private static final String LOCK_KEY = "tenant:spare-pool:lock";
+    private static final DefaultRedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final DbProvisioningRepository repository;
+    private final TenantProvisioningOrchestrationService orchestrationService;
+    private final SchemaManagerService schemaManagerService;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final TenantSparePoolProperties properties;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder creationFailures = new LongAdder();
+    private final LongAdder claims = new LongAdder();
+    private final LongAdder claimMisses = new LongAdder();
+
+    /**
+     * Assigns a ready spare of the level to the school and rotates its role password.
+     * Returns empty when the pool is disabled or has no ready spare for the level. The
+     * claim commits before the rotation, which runs DDL on its own connection and so
+     * cannot be rolled back with it; if the rotation fails the spare goes back to the
+     * pool and empty is returned, leaving the caller to provision inline.
+     */
+    public Optional<DbProvision> claim(UUID schoolId, AcademicLevel level, String assignedBy) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+
+        Optional<DbProvision> claimed = repository.claimSpare(level.name(), schoolId, assignedBy, SPARE_MARKER);
+        if (claimed.isEmpty()) {
+            claimMisses.increment();
+            log.info("No spare {} schema ready for school {}, provisioning inline", level, schoolId);
+            return Optional.empty();
+        }
+
+        String schemaName = claimed.get().getDbSchemaName();
+        try {
+            schemaManagerService.assignToSchool(schemaName, schoolId);
+        } catch (SQLException | RuntimeException e) {
+            log.error("Failed to rotate tenant role password for spare schema {}, returning it to the pool",
+                    schemaName, e);
+            returnSpare(claimed.get(), schoolId);
+            claimMisses.increment();
+            return Optional.empty();
+        }
+        claims.increment();
+        log.info("Claimed spare schema {} for school {}", schemaName, schoolId);
+        return claimed;
+    }
+
+    @Scheduled(fixedDelayString = "${tenant.spare-pool.refill-interval:30s}",
+            initialDelayString = "${tenant.spare-pool.refill-interval:30s}")
+    public void replenish() {
+        if (!properties.isEnabled() || properties.getTargets().isEmpty()) {
+            return;
+        }
+        String lockOwner = UUID.randomUUID().toString();
+        try {
+            Boolean locked = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, lockOwner, properties.getLockTtl());
+            if (!Boolean.TRUE.equals(locked)) {
+                log.debug("Spare pool refill running on another node, skipping");
+                return;
+            }
+            try {
+                properties.getTargets().forEach(this::replenish);
+            } finally {
+                redisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(LOCK_KEY), lockOwner);
+            }
+        } catch (RuntimeException e) {
+            log.error("Spare pool refill failed", e);
+        }
+    }
+
+    public SparePoolStats getStats() {
+        Map<AcademicLevel, LevelStats> levels = new EnumMap<>(AcademicLevel.class);
+        properties.getTargets().forEach((level, target) ->
+                levels.put(level, new LevelStats(target, repository.countSpares(level.name(), SPARE_MARKER))));
+        return new SparePoolStats(properties.isEnabled(), levels, created.sum(), creationFailures.sum(),
+                claims.sum(), claimMisses.sum());
+    }
+
+    private void replenish(AcademicLevel level, int target) {
+        long ready = repository.countSpares(level.name(), SPARE_MARKER);
+        long toCreate = Math.min(target - ready, properties.getMaxCreatedPerRun());
+        for (int i = 0; i < toCreate; i++) {
+            String schemaName = spareSchemaName(level);
+            try {
+                orchestrationService.orchestrateProvisioning(new ProvisioningContext(schemaName, level, SPARE_MARKER));
+                created.increment();
+                log.info("Provisioned spare schema {} ({} of {} ready)", schemaName, ready + i + 1, target);
+            } catch (RuntimeException e) {
+                // Leave the rest for the next run rather than hammering a failing database
+                creationFailures.increment();
+                log.warn("Failed to provision spare schema {}: {}", schemaName, e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // Every claim rotates the password before the school uses it, so a spare whose reset failed is still safe to offer
+    private void returnSpare(DbProvision spare, UUID schoolId) {
+        String schemaName = spare.getDbSchemaName();
+        try {
+            schemaManagerService.unassignFromSchool(schemaName);
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Failed to reset tenant role password for returned spare schema {}: {}", schemaName,
+                    e.getMessage());
+        }
+        if (!repository.returnSpare(spare.getProvisionId(), schoolId, SPARE_MARKER)) {
+            log.warn("Spare schema {} was reassigned before it could be returned to the pool", schemaName);
+        }
+    }
+
+    private static String spareSchemaName(AcademicLevel level) {
+        String uniqueSuffix = UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+        return "spare_" + level.name().toLowerCase() + "_" + uniqueSuffix;
+    }
+
+    public record LevelStats(int target, long ready) { }
+
+    public record SparePoolStats(boolean enabled, Map<AcademicLevel, LevelStats> levels, long created,
+                                 long creationFailures, long claims, long claimMisses) {
+        public double getClaimHitRatio() {
+            long total = claims + claimMisses;
+            return total > 0 ? (double) claims / total * 100 : 0;
+        }
+    }
+}
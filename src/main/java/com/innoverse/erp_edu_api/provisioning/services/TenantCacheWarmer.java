@@ -0,0 +1,166 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import com.innoverse.erp_edu_api.provisioning.SchoolAccessOracle;
+import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantCacheProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streams every routable provision into the tenant cache so the first request of
+ * each school does not pay a cold Redis miss plus a registry lookup. Runs once the
+ * application is ready and on demand after a Redis failover or flush. Every node fills
+ * its own L1; a Redis lock lets only one node at a time fill Redis, and a node that
+ * does not get it, or cannot reach Redis, warms its L1 alone.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TenantCacheWarmer {
+    private static final String LOCK_KEY = "tenant:cache:warmup:lock";
+    private static final DefaultRedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+    private static final UUID FIRST_PAGE = new UUID(0L, 0L);
+
+    private final ProvisioningTrackingService trackingService;
+    private final SchoolAccessOracle accessOracle;
+    private final DistributedTenantCache tenantCache;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final TenantCacheProperties cacheProperties;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile WarmUpProgress progress = WarmUpProgress.idle();
+
+    @Async("tenantCacheWarmUpTaskExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpOnStartup() {
+        if (cacheProperties.isWarmUpEnabled()) {
+            warmUp();
+        }
+    }
+
+    // Manual trigger, e.g. after a Redis failover or flush
+    @Async("tenantCacheWarmUpTaskExecutor")
+    public void warmUpInBackground() {
+        warmUp();
+    }
+
+    /**
+     * Runs a warm-up on the calling thread unless one is already running on this node.
+     */
+    public WarmUpProgress warmUp() {
+        if (!running.compareAndSet(false, true)) {
+            return progress;
+        }
+        String lockOwner = UUID.randomUUID().toString();
+        boolean fillRedis = tryLock(lockOwner);
+        try {
+            return runWarmUp(fillRedis);
+        } catch (Exception e) {
+            log.error("Tenant cache warm-up failed", e);
+            progress = progress.withState(WarmUpState.FAILED);
+            return progress;
+        } finally {
+            if (fillRedis) {
+                releaseLock(lockOwner);
+            }
+            running.set(false);
+        }
+    }
+
+    private boolean tryLock(String lockOwner) {
+        try {
+            boolean locked = Boolean.TRUE.equals(redisTemplate.opsForValue()
+                    .setIfAbsent(LOCK_KEY, lockOwner, cacheProperties.getWarmUpLockTtl()));
+            if (!locked) {
+                log.info("Another node is filling Redis, warming the local cache only");
+            }
+            return locked;
+        } catch (RuntimeException e) {
+            log.warn("Could not take the warm-up lock, warming the local cache only: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void releaseLock(String lockOwner) {
+        try {
+            redisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(LOCK_KEY), lockOwner);
+        } catch (RuntimeException e) {
+            log.warn("Could not release the warm-up lock, it expires on its own: {}", e.getMessage());
+        }
+    }
+
+    public WarmUpProgress getProgress() {
+        return progress;
+    }
+
+    private WarmUpProgress runWarmUp(boolean fillRedis) {
+        log.info("Starting tenant cache warm-up{}", fillRedis ? "" : " of the local cache");
+        progress = WarmUpProgress.started(fillRedis);
+        long scanned = 0;
+        long warmed = 0;
+        UUID after = FIRST_PAGE;
+
+        while (true) {
+            List<DbProvision> page = trackingService.getRoutableProvisionsAfter(after, cacheProperties.getWarmUpBatchSize());
+            if (page.isEmpty()) {
+                break;
+            }
+            after = page.get(page.size() - 1).getProvisionId();
+            scanned += page.size();
+
+            Map<UUID, String> schemasBySchool = new HashMap<>();
+            page.forEach(provision -> schemasBySchool.put(provision.getAssignedSchoolId(), provision.getDbSchemaName()));
+            Map<UUID, Boolean> access = accessOracle.hasAccess(schemasBySchool.keySet());
+            schemasBySchool.keySet().removeIf(schoolId -> !Boolean.TRUE.equals(access.get(schoolId)));
+
+            tenantCache.warmUp(schemasBySchool, fillRedis);
+            warmed += schemasBySchool.size();
+            progress = progress.advance(scanned, warmed);
+            log.debug("Tenant cache warm-up progress: {} scanned, {} warmed", scanned, warmed);
+        }
+
+        progress = progress.withState(WarmUpState.COMPLETED);
+        log.info("Tenant cache warm-up completed: {} provisions scanned, {} schools warmed", scanned, warmed);
+        return progress;
+    }
+
+    public enum WarmUpState {
+        IDLE, RUNNING, COMPLETED, FAILED
+    }
+
+    // Redis filled is false when another node held the lock, or Redis was unreachable, and only L1 was warmed
+    public record WarmUpProgress(WarmUpState state, long provisionsScanned, long schoolsWarmed, boolean redisFilled,
+                                 LocalDateTime startedAt, LocalDateTime finishedAt) {
+        static WarmUpProgress idle() {
+            return new WarmUpProgress(WarmUpState.IDLE, 0, 0, false, null, null);
+        }
+
+        static WarmUpProgress started(boolean redisFilled) {
+            return new WarmUpProgress(WarmUpState.RUNNING, 0, 0, redisFilled, LocalDateTime.now(), null);
+        }
+
+        WarmUpProgress advance(long scanned, long warmed) {
+            return new WarmUpProgress(state, scanned, warmed, redisFilled, startedAt, null);
+        }
+
+        WarmUpProgress withState(WarmUpState newState) {
+            return new WarmUpProgress(newState, provisionsScanned, schoolsWarmed, redisFilled, startedAt,
+                    LocalDateTime.now());
+        }
+    }
+}
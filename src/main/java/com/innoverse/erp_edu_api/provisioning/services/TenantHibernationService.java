@@ -0,0 +1,333 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
+import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
+import com.innoverse.erp_edu_api.provisioning.exceptions.ProvisionNotFoundException;
+import com.innoverse.erp_edu_api.provisioning.exceptions.ProvisioningException;
+import com.innoverse.erp_edu_api.provisioning.exceptions.TenantHibernatedException;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantHibernationProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.SchemaArchiver;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hibernates the schemas of schools that have gone quiet and wakes them on their next
+ * request. Each node notes when it last served every tenant and writes that to the
+ * registry periodically; the sweep archives the least recently used schemas past the idle
+ * time. A request for a hibernated school starts the restore on the restore executor and
+ * waits for it briefly; if it is not done by then, the request is turned away with a 503
+ * and Retry-After while the restore carries on. One node restores a schema at a time,
+ * taken through the registry under a claim unique to the attempt; the others wait for its
+ * broadcast without holding a thread, and a request that times out checks the registry
+ * once in case the broadcast was missed. A restore that runs past the stale time can be
+ * taken over, after which the slow attempt can neither finish nor release it and leaves
+ * the archive to the new holder.
+ */
+@Slf4j
+@Service
+public class TenantHibernationService {
+    private static final String ARCHIVE_SUFFIX = ".archive.gz";
+
+    private final DbProvisioningRepository repository;
+    private final ProvisioningTrackingService trackingService;
+    private final DistributedTenantCache tenantCache;
+    private final SchemaArchiver archiver;
+    private final TenantHibernationProperties properties;
+    private final TaskExecutor taskExecutor;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // Schema -> epoch millis of the latest request this node served for it, not yet in the registry
+    private final Map<String, Long> lastAccess = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Void>> restores = new ConcurrentHashMap<>();
+    private final Set<UUID> hibernating = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hibernated = new LongAdder();
+    private final LongAdder restored = new LongAdder();
+    private final LongAdder restoreFailures = new LongAdder();
+    private final LongAdder requestsHeld = new LongAdder();
+    private final LongAdder requestsRejected = new LongAdder();
+
+    public TenantHibernationService(DbProvisioningRepository repository,
+                                    ProvisioningTrackingService trackingService,
+                                    DistributedTenantCache tenantCache,
+                                    SchemaArchiver archiver,
+                                    TenantHibernationProperties properties,
+                                    @Qualifier("tenantRestoreTaskExecutor") TaskExecutor taskExecutor) {
+        this.repository = repository;
+        this.trackingService = trackingService;
+        this.tenantCache = tenantCache;
+        this.archiver = archiver;
+        this.properties = properties;
+        this.taskExecutor = taskExecutor;
+        tenantCache.onHibernationChanged(this::hibernationChangedElsewhere);
+    }
+
+    // Only the sweep reads access times, so they are not kept while it is off
+    public void recordAccess(String schemaName) {
+        if (properties.isEnabled()) {
+            lastAccess.put(schemaName, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Returns once the schema is live. A hibernated schema's restore is started, or joined,
+     * and waited on for the configured time; after that the request is turned away. This
+     * holds with hibernation disabled too, for schemas archived while it was on.
+     */
+    public void ensureAwake(String schemaName) {
+        if (!tenantCache.isHibernated(schemaName)) {
+            return;
+        }
+
+        CompletableFuture<Void> restore = new CompletableFuture<>();
+        CompletableFuture<Void> existing = restores.putIfAbsent(schemaName, restore);
+        if (existing != null) {
+            restore = existing;
+        } else {
+            startRestore(schemaName, restore);
+        }
+
+        try {
+            restore.get(properties.getRestoreWait().toMillis(), TimeUnit.MILLISECONDS);
+            requestsHeld.increment();
+        } catch (TimeoutException e) {
+            if (restoredElsewhere(schemaName)) {
+                requestsHeld.increment();
+                return;
+            }
+            requestsRejected.increment();
+            throw new TenantHibernatedException(schemaName, properties.getRetryAfter().toSeconds());
+        } catch (ExecutionException e) {
+            requestsRejected.increment();
+            throw new TenantHibernatedException(schemaName, properties.getRetryAfter().toSeconds());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            requestsRejected.increment();
+            throw new TenantHibernatedException(schemaName, properties.getRetryAfter().toSeconds());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tenant.hibernation.access-flush-interval:1m}")
+    public void flushAccessTimes() {
+        if (!properties.isEnabled() || lastAccess.isEmpty()) {
+            return;
+        }
+        Map<String, LocalDateTime> batch = new HashMap<>();
+        lastAccess.forEach((schema, millis) -> {
+            // A newer access recorded meanwhile stays for the next flush
+            if (lastAccess.remove(schema, millis)) {
+                batch.put(schema, LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()));
+            }
+        });
+        try {
+            repository.recordAccessTimes(batch);
+        } catch (RuntimeException e) {
+            log.warn("Failed to record tenant access times, keeping them for the next flush: {}", e.getMessage());
+            batch.forEach((schema, accessedAt) -> lastAccess.merge(schema,
+                    accessedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), Math::max));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tenant.hibernation.sweep-interval:1h}",
+            initialDelayString = "${tenant.hibernation.sweep-interval:1h}")
+    public void hibernateIdleSchemas() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        flushAccessTimes();
+
+        List<DbProvision> idle;
+        try {
+            idle = repository.findIdleSince(LocalDateTime.now().minus(properties.getIdleAfter()),
+                    properties.getMaxPerSweep());
+        } catch (RuntimeException e) {
+            log.warn("Failed to list idle tenant schemas: {}", e.getMessage());
+            return;
+        }
+        for (DbProvision provision : idle) {
+            try {
+                hibernate(provision);
+            } catch (RuntimeException e) {
+                // Usually a schema written to while it was being locked; it is picked up again next sweep
+                log.warn("Skipped hibernating schema {}: {}", provision.getDbSchemaName(), e.getMessage());
+            }
+        }
+    }
+
+    public SchemaArchiver.ArchiveResult hibernate(UUID provisionId) {
+        DbProvision provision = trackingService.getProvisionById(provisionId)
+                .orElseThrow(() -> new ProvisionNotFoundException(provisionId));
+        return hibernate(provision);
+    }
+
+    private SchemaArchiver.ArchiveResult hibernate(DbProvision provision) {
+        UUID provisionId = provision.getProvisionId();
+        String schema = provision.getDbSchemaName();
+        if (!provision.isProvisioned() || !provision.isAssigned()) {
+            throw conflict("Only provisioned schemas assigned to a school can be hibernated; schema " + schema
+                    + " is " + provision.getStatusDescription());
+        }
+        if (!hibernating.add(provisionId)) {
+            throw conflict("Schema " + schema + " is already being hibernated on this node");
+        }
+
+        Path file = Path.of(properties.getArchiveDirectory())
+                .resolve(schema + "-" + System.currentTimeMillis() + ARCHIVE_SUFFIX)
+                .toAbsolutePath();
+        try {
+            SchemaArchiver.ArchiveResult result = archiver.archive(schema, provision.getShardId(), file, () -> {
+                if (!repository.markHibernated(provisionId, file.toString())) {
+                    throw new IllegalStateException("Provision " + provisionId + " is no longer provisioned");
+                }
+                tenantCache.updateHibernationCache(schema, true);
+            });
+            hibernated.increment();
+            return result;
+        } catch (SQLException | IOException | RuntimeException e) {
+            throw new ProvisioningException(
+                    "PROVISION",
+                    "Failed to hibernate schema " + schema,
+                    "Error archiving schema '" + schema + "' to " + file + ": " + e.getMessage(),
+                    e
+            );
+        } finally {
+            hibernating.remove(provisionId);
+        }
+    }
+
+    private void startRestore(String schemaName, CompletableFuture<Void> restore) {
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    if (restore(schemaName)) {
+                        restores.remove(schemaName, restore);
+                        restore.complete(null);
+                    } else {
+                        // Completed by the other node's broadcast; dropped if that never comes
+                        restore.orTimeout(properties.getRestoreTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                                .whenComplete((result, error) -> restores.remove(schemaName, restore));
+                    }
+                } catch (RuntimeException e) {
+                    restoreFailures.increment();
+                    log.error("Failed to restore hibernated schema {}", schemaName, e);
+                    restores.remove(schemaName, restore);
+                    restore.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Not started; the next request for the school tries again
+            restores.remove(schemaName, restore);
+            restore.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Restores the schema and returns true once it is live, or returns false at once when
+     * another node holds the restore.
+     */
+    private boolean restore(String schemaName) {
+        DbProvision provision = trackingService.getProvisionBySchemaName(schemaName)
+                .orElseThrow(() -> new IllegalStateException("No provision for schema " + schemaName));
+        UUID provisionId = provision.getProvisionId();
+
+        String claim = nodeId + ":" + UUID.randomUUID();
+        String archivePath = repository.claimRestore(provisionId, properties.getRestoreTimeout(), claim)
+                .orElse(null);
+        if (archivePath == null) {
+            // The other node may already be done, its broadcast sent before this restore started
+            return restoredElsewhere(schemaName);
+        }
+
+        Path file = Path.of(archivePath);
+        try {
+            UUID schoolId = provision.getAssignedSchoolId();
+            archiver.restore(schemaName, provision.getShardId(),
+                    AcademicLevel.valueOf(provision.getAssignedEducationLevel()),
+                    schoolId != null ? schoolId.toString() : "password", file);
+        } catch (SQLException | IOException | RuntimeException e) {
+            if (!repository.releaseRestore(provisionId, claim, "Restore failed: " + e.getMessage())) {
+                log.warn("Failed restore of schema {} had already been taken over by another node", schemaName);
+            }
+            throw new ProvisioningException(
+                    "PROVISION",
+                    "Failed to restore schema " + schemaName,
+                    "Error restoring schema '" + schemaName + "' from " + file + ": " + e.getMessage(),
+                    e
+            );
+        }
+
+        if (!repository.markRestored(provisionId, claim)) {
+            // The new holder restores from the same archive, so it is left in place
+            log.warn("Restore of schema {} was taken over by another node before it finished", schemaName);
+            return false;
+        }
+        tenantCache.updateHibernationCache(schemaName, false);
+        restored.increment();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete archive {} of restored schema {}: {}", file, schemaName, e.getMessage());
+        }
+        return true;
+    }
+
+    // Another node hibernated or restored the schema; a restore waiting on it finishes if it is now live
+    private void hibernationChangedElsewhere(String schemaName) {
+        CompletableFuture<Void> restore = restores.get(schemaName);
+        if (restore != null && !tenantCache.isHibernated(schemaName) && restores.remove(schemaName, restore)) {
+            restore.complete(null);
+        }
+    }
+
+    // Reads the registry directly, for when another node's broadcast may have been missed
+    private boolean restoredElsewhere(String schemaName) {
+        if (trackingService.isSchemaHibernated(schemaName)) {
+            return false;
+        }
+        tenantCache.cacheHibernationLocally(schemaName, false);
+        CompletableFuture<Void> restore = restores.get(schemaName);
+        if (restore != null && restores.remove(schemaName, restore)) {
+            restore.complete(null);
+        }
+        return true;
+    }
+
+    public HibernationStats getStats() {
+        return new HibernationStats(properties.isEnabled(), repository.countByStatus("hibernated"),
+                repository.countByStatus("restoring"), restores.size(), hibernated.sum(), restored.sum(),
+                restoreFailures.sum(), requestsHeld.sum(), requestsRejected.sum(), lastAccess.size());
+    }
+
+    private static ProvisioningException conflict(String message) {
+        return new ProvisioningException("PROVISION", message, message, HttpStatus.CONFLICT, null);
+    }
+
+    public record HibernationStats(boolean enabled, long hibernatedSchemas, long restoringSchemas,
+                                   int restoresOnThisNode, long hibernatedByThisNode, long restoredByThisNode,
+                                   long restoreFailures, long requestsHeld, long requestsRejected,
+                                   int pendingAccessUpdates) { }
+}
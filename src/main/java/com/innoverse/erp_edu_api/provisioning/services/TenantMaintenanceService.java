@@ -0,0 +1,187 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantMaintenanceProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantMaintenanceGate;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.FlywayMigrationService;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Migrates a live tenant behind its maintenance gate. With the tenant's migration lock
+ * held, the gate is closed on every node, this node's in-flight requests and every
+ * node's open transactions on the schema are waited out, and the scripts run under
+ * lock and statement timeouts. A script that cannot get its locks is rolled back and
+ * retried while the gate stays closed. The gate reopens however the migration ends,
+ * and the pause each tenant saw is kept for reporting. The closure other nodes see is
+ * renewed on its own thread for as long as the migration runs, however long that is.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TenantMaintenanceService {
+    // Postgres lock_not_available, raised when lock_timeout expires
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+    private static final long LOCK_RETRY_BACKOFF_MILLIS = 500;
+
+    private final FlywayMigrationService flywayMigrationService;
+    private final TenantMaintenanceGate maintenanceGate;
+    private final DistributedTenantCache tenantCache;
+    private final TenantMaintenanceProperties properties;
+
+    private final Deque<MaintenanceWindow> recentWindows = new ConcurrentLinkedDeque<>();
+    private final ScheduledExecutorService closureRenewals = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("tenant-maintenance-renewal").daemon().factory());
+
+    @PreDestroy
+    public void shutdown() {
+        closureRenewals.shutdownNow();
+    }
+
+    /**
+     * Migrates the schema behind its gate. Returns null without migrating when another
+     * node holds the schema's migration lock or the schema is gone, e.g. archived, and
+     * without closing the gate when the schema has nothing pending.
+     */
+    public MaintenanceWindow migrate(String schemaName, AcademicLevel level) throws SQLException {
+        try (FlywayMigrationService.MigrationLock lock = flywayMigrationService.tryMigrationLock(schemaName)) {
+            if (lock == null || !lock.schemaExists()) {
+                return null;
+            }
+            // Checked under the lock, since another node may have just migrated the schema
+            List<String> pending = flywayMigrationService.getPendingVersions(schemaName, level);
+            if (pending.isEmpty()) {
+                return new MaintenanceWindow(schemaName, LocalDateTime.now(), List.of(), 0, true, true, 0, 0, 0, 0,
+                        0, null);
+            }
+            return migrateBehindGate(lock, schemaName, level, pending);
+        }
+    }
+
+    private MaintenanceWindow migrateBehindGate(FlywayMigrationService.MigrationLock lock, String schemaName,
+                                                AcademicLevel level, List<String> pending) throws SQLException {
+        LocalDateTime closedAt = LocalDateTime.now();
+        int inFlight = maintenanceGate.close(schemaName);
+        tenantCache.closeMaintenance(schemaName, properties.getClosureTtl());
+        long renewInterval = properties.getClosureRenewInterval().toMillis();
+        ScheduledFuture<?> renewal = closureRenewals.scheduleWithFixedDelay(
+                () -> tenantCache.renewMaintenance(schemaName, properties.getClosureTtl()),
+                renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+
+        boolean drained = false;
+        boolean idle = false;
+        long drainMillis = 0;
+        long migrateMillis = 0;
+        AtomicInteger attempts = new AtomicInteger();
+        String error = null;
+        MaintenanceWindow window;
+        try {
+            long drainStarted = System.currentTimeMillis();
+            drained = maintenanceGate.drain(schemaName, properties.getDrainTimeout().toMillis());
+            long remaining = properties.getDrainTimeout().toMillis() - (System.currentTimeMillis() - drainStarted);
+            // Requests on other nodes are only visible through the locks their transactions hold
+            idle = lock.awaitIdle(Math.max(0, remaining));
+            drainMillis = System.currentTimeMillis() - drainStarted;
+            if (!drained || !idle) {
+                log.warn("Schema {} not quiet after {}ms (local requests drained: {}, no open transactions: {}), "
+                        + "migrating under lock timeouts", schemaName, drainMillis, drained, idle);
+            }
+
+            long migrateStarted = System.currentTimeMillis();
+            try {
+                migrateWithRetries(schemaName, level, attempts);
+            } finally {
+                migrateMillis = System.currentTimeMillis() - migrateStarted;
+            }
+        } catch (SQLException | RuntimeException e) {
+            error = e.getMessage();
+            throw e;
+        } finally {
+            renewal.cancel(false);
+            TenantMaintenanceGate.GateWindow gateWindow = maintenanceGate.open(schemaName);
+            tenantCache.openMaintenance(schemaName);
+            window = new MaintenanceWindow(schemaName, closedAt, pending, inFlight, drained, idle,
+                    drainMillis, migrateMillis, attempts.get(), gateWindow != null ? gateWindow.pauseMillis() : 0,
+                    gateWindow != null ? gateWindow.requestsRejected() : 0, error);
+            record(window);
+            if (error == null) {
+                log.info("Migrated schema {} online: {} versions, paused {}ms ({}ms draining, {}ms migrating, "
+                        + "{} attempts)", schemaName, pending.size(), window.pauseMillis(), drainMillis,
+                        migrateMillis, attempts.get());
+            }
+        }
+        return window;
+    }
+
+    // A lock timeout leaves the schema on its previous version, so the migration is simply run again
+    private void migrateWithRetries(String schemaName, AcademicLevel level, AtomicInteger attempts) {
+        while (true) {
+            attempts.incrementAndGet();
+            try {
+                flywayMigrationService.migrateGuarded(schemaName, level, properties.getLockTimeout(),
+                        properties.getStatementTimeout());
+                return;
+            } catch (RuntimeException e) {
+                if (!isLockTimeout(e) || attempts.get() > properties.getLockRetries()) {
+                    throw e;
+                }
+                log.warn("Migration of {} timed out waiting for a lock, retrying ({}/{})", schemaName, attempts.get(),
+                        properties.getLockRetries());
+                try {
+                    Thread.sleep(LOCK_RETRY_BACKOFF_MILLIS * attempts.get());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static boolean isLockTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && LOCK_NOT_AVAILABLE.equals(sqlException.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void record(MaintenanceWindow window) {
+        recentWindows.addFirst(window);
+        while (recentWindows.size() > properties.getRetainedWindows()) {
+            recentWindows.pollLast();
+        }
+    }
+
+    public MaintenanceStats getStats() {
+        List<MaintenanceWindow> windows = List.copyOf(recentWindows);
+        return new MaintenanceStats(properties.isEnabled(), maintenanceGate.getClosedTenants(),
+                windows.stream().mapToLong(MaintenanceWindow::pauseMillis).max().orElse(0),
+                windows);
+    }
+
+    /**
+     * One tenant's migration behind its gate. The pause is how long the gate was closed on
+     * this node; drainMillis and migrateMillis are its two parts.
+     */
+    public record MaintenanceWindow(String schemaName, LocalDateTime closedAt, List<String> versions,
+                                    int inFlightAtClose, boolean drained, boolean schemaIdle, long drainMillis,
+                                    long migrateMillis, int attempts, long pauseMillis, long requestsRejected,
+                                    String error) { }
+
+    public record MaintenanceStats(boolean enabled, List<TenantMaintenanceGate.ClosedTenant> closedTenants,
+                                   long maxRecentPauseMillis, List<MaintenanceWindow> recentWindows) { }
+}
@@ -0,0 +1,391 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
+import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
+import com.innoverse.erp_edu_api.provisioning.exceptions.MigrationFailedException;
+import com.innoverse.erp_edu_api.provisioning.exceptions.SchemaNotFoundException;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantMaintenanceProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantMigrationProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.FlywayMigrationService;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.MigrationPlanner;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.SchemaManagerService;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.TemplateSchemaService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Runs bulk tenant migrations as background jobs. Tenants are migrated in parallel up
+ * to the configured concurrency, each with its own timeout and its own short registry
+ * transaction for the status update, and under a per-schema advisory lock so another
+ * node running the same job skips tenants it is already migrating. The timeout is
+ * enforced by the database through the statement and lock timeouts of the migration's
+ * statements, since interrupting a thread does not stop JDBC, and a tenant's slot is
+ * only freed once its worker has returned. One job runs per node at a time; progress
+ * and per-tenant failures are kept in memory. A job plans first and only migrates the
+ * tenants that are behind, or whose schema is missing so the failure is recorded; the
+ * rest count as up to date without being touched. With maintenance enabled each tenant
+ * is migrated behind its gate, see {@link TenantMaintenanceService}, and the longest
+ * pause is reported with the job.
+ */
+@Slf4j
+@Component
+public class TenantMigrationRunner {
+    private final ProvisioningTrackingService trackingService;
+    private final SchemaManagerService schemaManagerService;
+    private final FlywayMigrationService flywayMigrationService;
+    private final TemplateSchemaService templateSchemaService;
+    private final MigrationPlanner migrationPlanner;
+    private final TenantMaintenanceService maintenanceService;
+    private final TenantMigrationProperties properties;
+    private final TenantMaintenanceProperties maintenanceProperties;
+    private final TaskExecutor taskExecutor;
+
+    private final Map<UUID, MigrationJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicReference<MigrationJob> runningJob = new AtomicReference<>();
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("tenant-migration-watchdog").daemon().factory());
+
+    public TenantMigrationRunner(ProvisioningTrackingService trackingService,
+                                 SchemaManagerService schemaManagerService,
+                                 FlywayMigrationService flywayMigrationService,
+                                 TemplateSchemaService templateSchemaService,
+                                 MigrationPlanner migrationPlanner,
+                                 TenantMaintenanceService maintenanceService,
+                                 TenantMigrationProperties properties,
+                                 TenantMaintenanceProperties maintenanceProperties,
+                                 @Qualifier("tenantMigrationTaskExecutor") TaskExecutor taskExecutor) {
+        this.trackingService = trackingService;
+        this.schemaManagerService = schemaManagerService;
+        this.flywayMigrationService = flywayMigrationService;
+        this.templateSchemaService = templateSchemaService;
+        this.migrationPlanner = migrationPlanner;
+        this.maintenanceService = maintenanceService;
+        this.properties = properties;
+        this.maintenanceProperties = maintenanceProperties;
+        this.taskExecutor = taskExecutor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * Starts migrating every provisioned tenant in the background, or returns the job
+     * already running on this node.
+     */
+    public MigrationJobStatus startAll() {
+        MigrationJob job = new MigrationJob(UUID.randomUUID());
+        while (!runningJob.compareAndSet(null, job)) {
+            MigrationJob current = runningJob.get();
+            if (current != null) {
+                return current.status();
+            }
+        }
+
+        jobs.put(job.id, job);
+        pruneFinishedJobs();
+        try {
+            taskExecutor.execute(() -> run(job));
+        } catch (RuntimeException e) {
+            job.finish(JobState.FAILED);
+            runningJob.set(null);
+            throw e;
+        }
+        return job.status();
+    }
+
+    public Optional<MigrationJobStatus> getJob(UUID jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(MigrationJob::status);
+    }
+
+    public List<MigrationJobStatus> getJobs() {
+        return jobs.values().stream()
+                .map(MigrationJob::status)
+                .sorted(Comparator.comparing(MigrationJobStatus::startedAt).reversed())
+                .toList();
+    }
+
+    public MigrationPlanner.MigrationPlan plan() {
+        return plan(getProvisionedTenants());
+    }
+
+    private MigrationPlanner.MigrationPlan plan(List<DbProvision> provisions) {
+        // Tenants without a level cannot be resolved; the job records them as failures instead
+        return migrationPlanner.plan(provisions.stream()
+                .filter(provision -> provision.getAssignedEducationLevel() != null)
+                .map(provision -> new MigrationPlanner.PlanTarget(provision.getDbSchemaName(),
+                        AcademicLevel.valueOf(provision.getAssignedEducationLevel()), provision.getShardId()))
+                .toList());
+    }
+
+    private List<DbProvision> getProvisionedTenants() {
+        return trackingService.getProvisionsByStatus("provisioned").stream()
+                .filter(provision -> provision.getDbSchemaName() != null)
+                .toList();
+    }
+
+    private List<DbProvision> selectBehind(MigrationJob job, List<DbProvision> provisions) {
+        MigrationPlanner.MigrationPlan plan;
+        try {
+            plan = plan(provisions);
+        } catch (RuntimeException e) {
+            log.warn("Migration job {} could not plan, migrating every tenant: {}", job.id, e.getMessage());
+            return provisions;
+        }
+        Set<String> selected = plan.tenantsBehind().stream()
+                .map(MigrationPlanner.TenantPlan::schemaName)
+                .collect(Collectors.toSet());
+        selected.addAll(plan.missingSchemas());
+        job.upToDate(plan.upToDate());
+        return provisions.stream()
+                .filter(provision -> provision.getAssignedEducationLevel() == null
+                        || selected.contains(provision.getDbSchemaName()))
+                .toList();
+    }
+
+    private void run(MigrationJob job) {
+        int concurrency = Math.max(1, properties.getConcurrency());
+        Semaphore slots = new Semaphore(concurrency);
+        // A slot is held until its worker returns, so the pool never needs more threads than slots
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency,
+                Thread.ofPlatform().name("tenant-migration-", 0).factory());
+        try {
+            List<DbProvision> provisioned = getProvisionedTenants();
+            List<DbProvision> provisions = selectBehind(job, provisioned);
+            job.start(provisioned.size());
+            templateSchemaService.markTemplatesStale();
+            log.info("Migration job {} started for {} of {} tenants, concurrency {}", job.id, provisions.size(),
+                    provisioned.size(), concurrency);
+
+            for (DbProvision provision : provisions) {
+                slots.acquire();
+                TenantRun tenantRun = new TenantRun(job, provision, slots);
+                try {
+                    tenantRun.start(workers);
+                } catch (RuntimeException e) {
+                    slots.release();
+                    throw e;
+                }
+            }
+            // Every slot is back once each tenant's worker has returned
+            slots.acquire(concurrency);
+            job.finish(JobState.COMPLETED);
+            log.info("Migration job {} completed. {}", job.id, job.status());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.finish(JobState.FAILED);
+            log.warn("Migration job {} interrupted", job.id);
+        } catch (RuntimeException e) {
+            job.finish(JobState.FAILED);
+            log.error("Migration job {} failed", job.id, e);
+        } finally {
+            workers.shutdown();
+            runningJob.set(null);
+        }
+    }
+
+    private TenantOutcome migrateTenant(MigrationJob job, DbProvision provision) throws Exception {
+        String schemaName = provision.getDbSchemaName();
+        if (provision.getAssignedEducationLevel() == null) {
+            throw new MigrationFailedException(schemaName, "No education level recorded for provision");
+        }
+        AcademicLevel level = AcademicLevel.valueOf(provision.getAssignedEducationLevel());
+
+        if (!schemaManagerService.schemaExists(schemaName)) {
+            throw new SchemaNotFoundException(schemaName);
+        }
+        if (maintenanceProperties.isEnabled()) {
+            TenantMaintenanceService.MaintenanceWindow window = maintenanceService.migrate(schemaName, level);
+            if (window == null) {
+                log.info("Schema {} is being migrated by another node or is gone, skipping", schemaName);
+                return TenantOutcome.SKIPPED;
+            }
+            job.recordPause(window.pauseMillis());
+        } else if (!flywayMigrationService.migrateExclusively(schemaName, level, properties.getLockTimeout(),
+                properties.getTenantTimeout())) {
+            log.info("Schema {} is being migrated by another node or is gone, skipping", schemaName);
+            return TenantOutcome.SKIPPED;
+        }
+        return TenantOutcome.SUCCEEDED;
+    }
+
+    private void pruneFinishedJobs() {
+        List<MigrationJob> finished = jobs.values().stream()
+                .filter(job -> job.state != JobState.RUNNING)
+                .sorted(Comparator.comparing((MigrationJob job) -> job.startedAt))
+                .toList();
+        int excess = finished.size() - properties.getRetainedJobs();
+        for (int i = 0; i < excess; i++) {
+            jobs.remove(finished.get(i).id);
+        }
+    }
+
+    /**
+     * One tenant's migration. It is settled only when its worker returns, which is also
+     * when its slot is freed. The watchdog only marks it timed out and interrupts it, which
+     * ends backoff waits; the database ends a running statement. A tenant that finishes
+     * after its timeout counts as timed out and its status is left alone.
+     */
+    private final class TenantRun implements Runnable {
+        private final MigrationJob job;
+        private final DbProvision provision;
+        private final Semaphore slots;
+        private final AtomicBoolean timedOut = new AtomicBoolean();
+        private volatile Future<?> future;
+        private volatile ScheduledFuture<?> timeout;
+
+        private TenantRun(MigrationJob job, DbProvision provision, Semaphore slots) {
+            this.job = job;
+            this.provision = provision;
+            this.slots = slots;
+        }
+
+        private void start(ExecutorService workers) {
+            future = workers.submit(this);
+        }
+
+        @Override
+        public void run() {
+            String schemaName = provision.getDbSchemaName();
+            // Timed from here rather than from submission, so a run is never cancelled before it starts
+            timeout = watchdog.schedule(this::timeOut, properties.getTenantTimeout().toMillis(),
+                    TimeUnit.MILLISECONDS);
+            try {
+                TenantOutcome outcome = migrateTenant(job, provision);
+                if (timedOut.get()) {
+                    log.warn("Migration of {} finished after its timeout ({})", schemaName, outcome);
+                    job.record(schemaName, TenantOutcome.TIMED_OUT, "Finished after the timeout of "
+                            + properties.getTenantTimeout());
+                    return;
+                }
+                // A failed script is rolled back, so the tenant stays provisioned on its previous version.
+                // The schema may have been hibernated since, which this must not overwrite
+                if (outcome == TenantOutcome.SUCCEEDED && !trackingService.recordMigrated(provision.getProvisionId())) {
+                    log.info("Schema {} was migrated but is no longer provisioned, status left as it is",
+                            schemaName);
+                }
+                job.record(schemaName, outcome, null);
+            } catch (Exception e) {
+                if (timedOut.get()) {
+                    log.warn("Migration of {} stopped after timing out: {}", schemaName, e.getMessage());
+                    job.record(schemaName, TenantOutcome.TIMED_OUT, "Timed out after "
+                            + properties.getTenantTimeout() + ": " + e.getMessage());
+                } else {
+                    log.error("Migration failed for: {}", schemaName, e);
+                    job.record(schemaName, TenantOutcome.FAILED, e.getMessage());
+                }
+            } finally {
+                timeout.cancel(false);
+                slots.release();
+            }
+        }
+
+        private void timeOut() {
+            Future<?> running = future;
+            if (timedOut.compareAndSet(false, true) && running != null && !running.isDone()) {
+                log.warn("Migration of {} timed out, interrupting it", provision.getDbSchemaName());
+                running.cancel(true);
+            }
+        }
+    }
+
+    private static final class MigrationJob {
+        private final UUID id;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicInteger timedOut = new AtomicInteger();
+        private volatile int upToDate;
+        private final AtomicLong maxPauseMillis = new AtomicLong();
+        private final Queue<TenantMigrationFailure> failures = new ConcurrentLinkedQueue<>();
+        private volatile JobState state = JobState.RUNNING;
+        private volatile int total;
+        private volatile LocalDateTime finishedAt;
+
+        private MigrationJob(UUID id) {
+            this.id = id;
+        }
+
+        void start(int total) {
+            this.total = total;
+        }
+
+        void upToDate(int upToDate) {
+            this.upToDate = upToDate;
+        }
+
+        void recordPause(long pauseMillis) {
+            maxPauseMillis.accumulateAndGet(pauseMillis, Math::max);
+        }
+
+        void record(String schemaName, TenantOutcome outcome, String reason) {
+            switch (outcome) {
+                case SUCCEEDED -> succeeded.incrementAndGet();
+                case SKIPPED -> skipped.incrementAndGet();
+                case FAILED -> failed.incrementAndGet();
+                case TIMED_OUT -> timedOut.incrementAndGet();
+            }
+            if (outcome == TenantOutcome.FAILED || outcome == TenantOutcome.TIMED_OUT) {
+                failures.add(new TenantMigrationFailure(schemaName, outcome, reason, LocalDateTime.now()));
+            }
+        }
+
+        void finish(JobState finalState) {
+            finishedAt = LocalDateTime.now();
+            state = finalState;
+        }
+
+        MigrationJobStatus status() {
+            return new MigrationJobStatus(id, state, total, upToDate, succeeded.get(), failed.get(), skipped.get(),
+                    timedOut.get(), maxPauseMillis.get(), startedAt, finishedAt, List.copyOf(failures));
+        }
+    }
+
+    public enum JobState {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    public enum TenantOutcome {
+        SUCCEEDED, SKIPPED, FAILED, TIMED_OUT
+    }
+
+    public record TenantMigrationFailure(String schemaName, TenantOutcome outcome, String reason,
+                                         LocalDateTime failedAt) { }
+
+    public record MigrationJobStatus(UUID jobId, JobState state, int total, int upToDate, int succeeded,
+                                     int failed, int skipped, int timedOut, long maxPauseMillis,
+                                     LocalDateTime startedAt, LocalDateTime finishedAt,
+                                     List<TenantMigrationFailure> failures) {
+        public int getCompleted() {
+            return upToDate + succeeded + failed + skipped + timedOut;
+        }
+    }
+}
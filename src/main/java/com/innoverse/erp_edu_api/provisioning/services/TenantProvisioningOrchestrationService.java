@@ -4,18 +4,24 @@ import com.innoverse.erp_edu_api.provisioning.web.dto.SchemaDto;
 import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
 import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
 import com.innoverse.erp_edu_api.provisioning.exceptions.*;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantMaintenanceProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantTemplateProperties;
 import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.FlywayMigrationService;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.MigrationPlanner;
 import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.SchemaManagerService;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.TemplateSchemaService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -24,6 +30,15 @@ public class TenantProvisioningOrchestrationService {
     private final ProvisioningTrackingService trackingService;
     private final SchemaManagerService schemaManagerService;
     private final FlywayMigrationService flywayMigrationService;
+    private final TenantMigrationRunner migrationRunner;
+    private final TenantMaintenanceService maintenanceService;
+    private final TenantMaintenanceProperties maintenanceProperties;
+    private final TemplateSchemaService templateSchemaService;
+    private final TenantTemplateProperties templateProperties;
+    private final ProvisionReconciler reconciler;
+    private final ProvisioningProgressTracker progressTracker;
+    private final ProvisioningJobRepository jobRepository;
+    private final DistributedTenantCache tenantCache;
 
     @Transactional
     public DbProvision orchestrateProvisioning(ProvisioningContext ctx) {
@@ -43,27 +58,72 @@ public class TenantProvisioningOrchestrationService {
         DbProvision provision = trackingService.createProvision(ctx);
 
         try {
-            executeProvisioning(provision, ctx);
+            executeProvisioning(provision, ctx, null);
             return provision;
         } catch (Exception e) {
-            handleProvisioningFailure(provision, e);
+            // The failure and its step log are already recorded
             throw new MigrationFailedException(ctx.schemaName(), "Provisioning failed", e);
         }
     }
 
-    @Async("provisioningTaskExecutor")
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public void asyncProvisionTenant(UUID provisionId, ProvisioningContext ctx) {
-        log.info("Starting async provisioning for ID: {}", provisionId);
+    /**
+     * Registers the provision and queues it for the provisioning workers, which may run
+     * it on any node; see {@link ProvisioningQueueWorker}. The job is committed with the
+     * provision, so it survives a restart of the node that accepted it.
+     */
+    @Transactional
+    public DbProvision enqueueProvisioning(ProvisioningContext ctx) {
+        log.info("Queueing provisioning for schema: {}", ctx.schemaName());
 
-        DbProvision provision = trackingService.getProvisionById(provisionId)
-                .orElseThrow(() -> new ProvisionNotFoundException(provisionId));
+        if (trackingService.doesSchemaTrulyExist(ctx.schemaName())) {
+            throw new SchemaAlreadyExistsException(ctx.schemaName());
+        }
 
-        try {
-            executeProvisioning(provision, ctx);
-        } catch (Exception e) {
-            handleProvisioningFailure(provision, e);
-            log.error("Async provisioning failed for provision ID: {}", provisionId, e);
+        if (trackingService.isSchemaOrphaned(ctx.schemaName())) {
+            log.warn("Orphaned schema detected: {}, cleaning up before provisioning", ctx.schemaName());
+            cleanupOrphanedSchema(ctx.schemaName());
+        }
+
+        DbProvision provision = trackingService.createProvision(ctx);
+        jobRepository.enqueue(provision.getProvisionId(), ctx.level().name(), ctx.assignedBy());
+        return provision;
+    }
+
+    /**
+     * Runs a job claimed from the provisioning queue. A provision that is already
+     * provisioned is left alone; anything an earlier attempt left behind is dropped
+     * when the schema is created again. The lease is checked before each step, and the
+     * outcome is recorded only while it is held. The schema's migration lock is held
+     * throughout, so a repair never drops or re-provisions it meanwhile; if the lock is
+     * busy the run fails and the job is retried.
+     */
+    public void runQueuedProvisioning(ProvisioningJobRepository.ProvisioningJob job, ProvisioningLease lease) {
+        DbProvision provision = getProvisionOrThrow(job.provisionId());
+        if (provision.isProvisioned()) {
+            log.info("Provision {} is already provisioned, nothing to run", job.provisionId());
+            return;
+        }
+
+        ProvisioningContext ctx = new ProvisioningContext(provision.getDbSchemaName(),
+                AcademicLevel.valueOf(job.educationLevel()), job.assignedBy());
+        try (FlywayMigrationService.MigrationLock lock = flywayMigrationService.tryMigrationLock(ctx.schemaName())) {
+            if (lock == null) {
+                throw new ProvisioningException(
+                        "PROVISION",
+                        "Schema is busy, provisioning will be retried",
+                        "Migration lock on schema '" + ctx.schemaName() + "' is held elsewhere",
+                        HttpStatus.CONFLICT,
+                        null
+                );
+            }
+            executeProvisioning(provision, ctx, lease);
+        } catch (SQLException e) {
+            throw new ProvisioningException(
+                    "PROVISION",
+                    "Failed to lock schema for provisioning",
+                    "Error taking the migration lock on schema '" + ctx.schemaName() + "': " + e.getMessage(),
+                    e
+            );
         }
     }
 
@@ -81,27 +141,46 @@ public class TenantProvisioningOrchestrationService {
         }
     }
 
-    @Transactional
-    public void migrateAllTenants() {
+    @Transactional(readOnly = true)
+    public List<String> getPendingMigrations(String schemaName) {
+        DbProvision provision = trackingService.getProvisionBySchemaName(schemaName)
+                .orElseThrow(() -> new SchemaNotFoundException(schemaName));
+        return flywayMigrationService.getPendingVersions(schemaName,
+                AcademicLevel.valueOf(provision.getAssignedEducationLevel()));
+    }
+
+    /**
+     * Starts a background job migrating every provisioned tenant; see {@link TenantMigrationRunner}.
+     */
+    public TenantMigrationRunner.MigrationJobStatus migrateAllTenants() {
         log.info("Migrating all tenants");
+        return migrationRunner.startAll();
+    }
 
-        List<DbProvision> provisions = trackingService.getProvisionsByStatus("provisioned");
-        MigrationResult result = new MigrationResult();
-
-        for (DbProvision provision : provisions) {
-            if (provision.getDbSchemaName() != null) {
-                try {
-                    AcademicLevel level = AcademicLevel.valueOf(provision.getAssignedEducationLevel());
-                    executeMigration(provision, level);
-                    result.incrementSuccess();
-                } catch (Exception e) {
-                    log.error("Migration failed for: {}", provision.getDbSchemaName(), e);
-                    result.incrementFailure();
-                }
-            }
-        }
+    public TenantMigrationRunner.MigrationJobStatus getMigrationJob(UUID jobId) {
+        return migrationRunner.getJob(jobId)
+                .orElseThrow(() -> new ProvisioningException(
+                        "PROVISION",
+                        "Migration job not found with ID: " + jobId,
+                        "No migration job with ID " + jobId + " is known to this node",
+                        HttpStatus.NOT_FOUND,
+                        null
+                ));
+    }
 
-        log.info("Migration completed. {}", result);
+    public List<TenantMigrationRunner.MigrationJobStatus> getMigrationJobs() {
+        return migrationRunner.getJobs();
+    }
+
+    public TenantMaintenanceService.MaintenanceStats getMaintenanceStats() {
+        return maintenanceService.getStats();
+    }
+
+    /**
+     * Which provisioned tenants are behind and by how much, read in one pass per shard.
+     */
+    public MigrationPlanner.MigrationPlan getMigrationPlan() {
+        return migrationRunner.plan();
     }
 
     @Transactional
@@ -120,7 +199,7 @@ public class TenantProvisioningOrchestrationService {
             // For non-orphaned provisions, drop the existing schema and recreate from scratch
             dropSchemaForRetry(provision.getDbSchemaName());
             trackingService.updateProvisionStatus(provisionId, "pending", "Retrying provisioning");
-            executeProvisioning(provision, ctx);
+            executeProvisioning(provision, ctx, null);
         }
     }
 
@@ -168,7 +247,7 @@ public class TenantProvisioningOrchestrationService {
             dropSchemaForRetry(provision.getDbSchemaName());
 
             // Execute the provisioning process to recreate the schema
-            executeProvisioning(provision, ctx);
+            executeProvisioning(provision, ctx, null);
 
             log.info("Successfully recovered orphaned provision: {}", provision.getProvisionId());
 
@@ -187,44 +266,40 @@ public class TenantProvisioningOrchestrationService {
         }
     }
 
-    @Transactional
     public List<DbProvision> findOrphanedProvisions() {
-        return trackingService.getAllProvisions().stream()
-                .filter(provision -> trackingService.isProvisionOrphaned(provision.getProvisionId()))
-                .toList();
+        return reconciler.reconcile().missingSchemas();
     }
 
-    @Transactional
-    public List<String> findOrphanedSchemas() {
-        try {
-            // Get all schemas from database
-            List<String> allSchemas = schemaManagerService.getAllTenantSchemas();
+    public List<ProvisionReconciler.OrphanedSchema> findOrphanedSchemas() {
+        return reconciler.reconcile().orphanedSchemas();
+    }
 
-            return allSchemas.stream()
-                    .filter(trackingService::isSchemaOrphaned)
-                    .toList();
-        } catch (SQLException e) {
-            throw new ProvisioningException(
-                    "PROVISION",
-                    "Failed to find orphaned schemas",
-                    "Database error while finding orphaned schemas: " + e.getMessage(),
-                    e
-            );
-        }
+    /**
+     * Re-provisions a provision whose schema is gone, marking it failed if that does not work.
+     */
+    public void recoverOrphanedProvision(DbProvision provision) {
+        ProvisioningContext ctx = new ProvisioningContext(
+                provision.getDbSchemaName(),
+                AcademicLevel.valueOf(provision.getAssignedEducationLevel()),
+                provision.getAssignedBy() != null ? provision.getAssignedBy() : "system-recovery"
+        );
+        recoverOrphanedProvision(provision, ctx);
     }
 
     @Transactional
     public void cleanupAllOrphanedSchemas() {
-        List<String> orphanedSchemas = findOrphanedSchemas();
+        List<ProvisionReconciler.OrphanedSchema> orphanedSchemas = findOrphanedSchemas();
         log.info("Found {} orphaned schemas to cleanup", orphanedSchemas.size());
 
         int cleanedCount = 0;
-        for (String schema : orphanedSchemas) {
+        for (ProvisionReconciler.OrphanedSchema orphan : orphanedSchemas) {
             try {
-                cleanupOrphanedSchema(schema);
+                // Dropped on the shard it was found on, which need not be the one the registry names
+                schemaManagerService.dropSchemaOnShard(orphan.shardId(), orphan.schemaName());
                 cleanedCount++;
             } catch (Exception e) {
-                log.error("Failed to cleanup orphaned schema {}: {}", schema, e.getMessage());
+                log.error("Failed to cleanup orphaned schema {} on shard {}: {}", orphan.schemaName(),
+                        orphan.shardId(), e.getMessage());
             }
         }
         log.info("Cleaned up {} orphaned schemas", cleanedCount);
@@ -238,13 +313,7 @@ public class TenantProvisioningOrchestrationService {
         int recoveredCount = 0;
         for (DbProvision provision : orphanedProvisions) {
             try {
-                // Create a context for recovery
-                ProvisioningContext ctx = new ProvisioningContext(
-                        provision.getDbSchemaName(),
-                        AcademicLevel.valueOf(provision.getAssignedEducationLevel()),
-                        provision.getAssignedBy() != null ? provision.getAssignedBy() : "system-recovery"
-                );
-                recoverOrphanedProvision(provision, ctx);
+                recoverOrphanedProvision(provision);
                 recoveredCount++;
             } catch (Exception e) {
                 log.error("Failed to recover orphaned provision {}: {}", provision.getProvisionId(), e.getMessage());
@@ -273,10 +342,9 @@ public class TenantProvisioningOrchestrationService {
     }
 
     @Transactional(readOnly = true)
-    public List<SchemaDto> getAllTenantSchemas() {
-        return trackingService.getAllProvisions().stream()
-                .map(p -> new SchemaDto(p.getProvisionId(), p.getDbSchemaName(), p.isAssigned(), p.getAssignedSchoolId(), p.getAssignedDate(), p.getAssignedBy()))
-                .toList();
+    public void streamTenantSchemas(ProvisionQuery query, Consumer<SchemaDto> consumer) {
+        trackingService.streamProvisions(query, p -> consumer.accept(
+                new SchemaDto(p.getProvisionId(), p.getDbSchemaName(), p.isAssigned(), p.getAssignedSchoolId(), p.getAssignedDate(), p.getAssignedBy())));
     }
 
     @Transactional
@@ -309,33 +377,54 @@ public class TenantProvisioningOrchestrationService {
 
     @Transactional(readOnly = true)
     public ProvisioningStats getProvisioningStats() {
-        List<DbProvision> allProvisions = trackingService.getAllProvisions();
+        // Grouped in SQL; only one row per status, level and accessibility comes back
+        List<DbProvisioningRepository.ProvisionCount> counts = trackingService.getProvisionCounts();
+        Map<String, Long> byEducationLevel = new TreeMap<>();
+        counts.forEach(count -> byEducationLevel.merge(
+                count.educationLevel() != null ? count.educationLevel() : "UNASSIGNED", count.count(), Long::sum));
         return new ProvisioningStats(
-                allProvisions.size(),
-                countByStatus(allProvisions, "provisioned"),
-                countByStatus(allProvisions, "pending"),
-                countByStatus(allProvisions, "failed")
+                counts.stream().mapToLong(DbProvisioningRepository.ProvisionCount::count).sum(),
+                countByStatus(counts, "provisioned"),
+                countByStatus(counts, "pending"),
+                countByStatus(counts, "failed"),
+                counts.stream().filter(DbProvisioningRepository.ProvisionCount::accessible)
+                        .mapToLong(DbProvisioningRepository.ProvisionCount::count).sum(),
+                byEducationLevel,
+                counts
         );
     }
 
     // Private helper methods
-    private void executeProvisioning(DbProvision provision, ProvisioningContext ctx) {
+    // Steps are tracked in memory; only the outcome and step log are written, once
+    // A queued run holds a lease: another node may take the job over, so each step is run only while it is held
+    private void executeProvisioning(DbProvision provision, ProvisioningContext ctx, ProvisioningLease lease) {
+        // The registry row may still be uncommitted, so route this run to the placed shard directly
+        tenantCache.cacheShardLocally(provision.getDbSchemaName(), provision.getShardId());
+
+        ProvisioningProgressTracker.Progress progress = progressTracker.start(provision,
+                lease != null ? lease.owner() : null);
         try {
-            updateStatus(provision, "pending", "Starting schema creation");
-            createSchemaSafely(ctx.schemaName());
-            updateStatus(provision, "pending", "Schema created");
+            progress.step("Creating schema");
+            if (lease != null) {
+                lease.verify("Creating schema");
+            }
+            createSchemaSafely(ctx, provision.getShardId());
 
-            updateStatus(provision, "pending", "Starting migrations");
+            progress.step("Running migrations");
+            if (lease != null) {
+                lease.verify("Running migrations");
+            }
             flywayMigrationService.migrate(ctx.schemaName(), ctx.level());
-            updateStatus(provision, "pending", "Migrations completed");
 
-            updateStatus(provision, "pending", "Validating schema");
+            progress.step("Validating schema");
             validateSchema(ctx.schemaName());
-            updateStatus(provision, "provisioned", "Provisioning successful");
 
+            progress.succeed("Provisioning successful");
+            provision.markAsProvisioned();
             log.info("Successfully provisioned schema: {}", ctx.schemaName());
         } catch (Exception e) {
-            updateStatus(provision, "failed", "Execution failed: " + e.getMessage());
+            progress.fail("Execution failed: " + e.getMessage());
+            provision.markAsFailed("Execution failed: " + e.getMessage());
             throw new ProvisioningException(
                     "PROVISION",
                     "Provisioning execution failed",
@@ -346,16 +435,28 @@ public class TenantProvisioningOrchestrationService {
     }
 
     private void executeMigration(DbProvision provision, AcademicLevel level) throws SQLException {
-        updateStatus(provision, "pending", "Starting migration");
-
         if (!schemaManagerService.schemaExists(provision.getDbSchemaName())) {
             throw new SchemaNotFoundException(provision.getDbSchemaName());
         }
 
+        ProvisioningProgressTracker.Progress progress = progressTracker.start(provision, null);
         try {
-            flywayMigrationService.migrate(provision.getDbSchemaName(), level);
-            updateStatus(provision, "provisioned", "Migration completed");
+            progress.step("Running migrations");
+            // A live tenant is migrated behind its maintenance gate rather than under its requests
+            if (provision.isProvisioned() && maintenanceProperties.isEnabled()) {
+                TenantMaintenanceService.MaintenanceWindow window =
+                        maintenanceService.migrate(provision.getDbSchemaName(), level);
+                if (window == null) {
+                    throw new IllegalStateException("Schema is being migrated by another node or no longer exists");
+                }
+                progress.succeed("Migration completed, tenant paused " + window.pauseMillis() + "ms");
+            } else {
+                flywayMigrationService.migrate(provision.getDbSchemaName(), level);
+                progress.succeed("Migration completed");
+            }
         } catch (Exception e) {
+            // A failed script is rolled back, so the schema keeps serving its previous version
+            progress.abandon("Migration failed: " + e.getMessage());
             throw new MigrationFailedException(provision.getDbSchemaName(), "Migration execution failed", e);
         }
     }
@@ -368,7 +469,8 @@ public class TenantProvisioningOrchestrationService {
         trackingService.deleteProvision(provision.getProvisionId());
     }
 
-    private void createSchemaSafely(String schemaName) {
+    private void createSchemaSafely(ProvisioningContext ctx, String shardId) {
+        String schemaName = ctx.schemaName();
         try {
             // Double-check that schema doesn't exist before creating
             if (schemaManagerService.schemaExists(schemaName)) {
@@ -377,7 +479,13 @@ public class TenantProvisioningOrchestrationService {
                 schemaManagerService.dropSchema(schemaName);
             }
 
-            schemaManagerService.createSchema(schemaName);
+            // Cloning leaves only migrations newer than the template for Flyway to apply.
+            // Templates live on the primary, so schemas placed on other shards are built by Flyway alone
+            if (templateProperties.isEnabled() && DbProvision.PRIMARY_SHARD.equals(shardId)) {
+                templateSchemaService.createFromTemplate(schemaName, ctx.level());
+            } else {
+                schemaManagerService.createSchema(schemaName);
+            }
             log.info("Successfully created schema: {}", schemaName);
 
         } catch (SQLException e) {
@@ -409,18 +517,6 @@ public class TenantProvisioningOrchestrationService {
         }
     }
 
-    private void updateStatus(DbProvision provision, String status, String message) {
-        trackingService.updateProvisionStatus(provision.getProvisionId(), status, message);
-    }
-
-    private void handleProvisioningFailure(DbProvision provision, Exception e) {
-        trackingService.updateProvisionStatus(
-                provision.getProvisionId(),
-                "failed",
-                "Provisioning failed: " + e.getMessage()
-        );
-    }
-
     private DbProvision getProvisionOrThrow(UUID provisionId) {
         return trackingService.getProvisionById(provisionId)
                 .orElseThrow(() -> new ProvisionNotFoundException(provisionId));
@@ -432,29 +528,19 @@ public class TenantProvisioningOrchestrationService {
 //        }
     }
 
-    private long countByStatus(List<DbProvision> provisions, String status) {
-        return provisions.stream()
-                .filter(p -> status.equalsIgnoreCase(p.getProvisionStatus()))
-                .count();
+    private long countByStatus(List<DbProvisioningRepository.ProvisionCount> counts, String status) {
+        return counts.stream()
+                .filter(count -> status.equalsIgnoreCase(count.status()))
+                .mapToLong(DbProvisioningRepository.ProvisionCount::count)
+                .sum();
     }
 
     // Records
-    public record ProvisioningStats(long total, long provisioned, long pending, long failed) {
+    public record ProvisioningStats(long total, long provisioned, long pending, long failed, long accessible,
+                                    Map<String, Long> byEducationLevel,
+                                    List<DbProvisioningRepository.ProvisionCount> breakdown) {
         public double getSuccessRate() {
             return total > 0 ? (double) provisioned / total * 100 : 0;
         }
     }
-
-    private static class MigrationResult {
-        private int success = 0;
-        private int failure = 0;
-
-        void incrementSuccess() { success++; }
-        void incrementFailure() { failure++; }
-
-        @Override
-        public String toString() {
-            return String.format("Success: %d, Failures: %d", success, failure);
-        }
-    }
 }
\ No newline at end of file
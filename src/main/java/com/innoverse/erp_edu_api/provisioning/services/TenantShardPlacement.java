@@ -0,0 +1,61 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantPoolProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantShardProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Places new tenant schemas on the least-loaded shard: the one accepting tenants with
+ * the fewest schemas per unit of weight, counted from the registry's shard map. Ties
+ * go to the primary, then to clusters in configuration order. Schemas with a dedicated
+ * pool always go on the primary, the only cluster those pools connect to.
+ */
+@Component
+@RequiredArgsConstructor
+public class TenantShardPlacement {
+    private final DbProvisioningRepository repository;
+    private final TenantShardProperties properties;
+    private final TenantPoolProperties poolProperties;
+
+    public String chooseShard(String schemaName) {
+        if (properties.getClusters().isEmpty() || hasDedicatedPool(schemaName)) {
+            return DbProvision.PRIMARY_SHARD;
+        }
+
+        String chosen = DbProvision.PRIMARY_SHARD;
+        double lowestLoad = Double.MAX_VALUE;
+        for (ShardLoad shard : getShardLoads()) {
+            if (!shard.acceptingTenants() || shard.weight() <= 0) {
+                continue;
+            }
+            double load = shard.schemas() / shard.weight();
+            if (load < lowestLoad) {
+                chosen = shard.shardId();
+                lowestLoad = load;
+            }
+        }
+        return chosen;
+    }
+
+    public boolean hasDedicatedPool(String schemaName) {
+        return poolProperties.getDedicatedPools().containsKey(schemaName);
+    }
+
+    public List<ShardLoad> getShardLoads() {
+        Map<String, Long> counts = repository.countByShard();
+        List<ShardLoad> loads = new ArrayList<>();
+        loads.add(new ShardLoad(DbProvision.PRIMARY_SHARD, counts.getOrDefault(DbProvision.PRIMARY_SHARD, 0L),
+                properties.getPrimaryWeight(), properties.getPrimaryWeight() > 0));
+        properties.getClusters().forEach((shardId, cluster) -> loads.add(new ShardLoad(shardId,
+                counts.getOrDefault(shardId, 0L), cluster.getWeight(), cluster.isAcceptingTenants())));
+        return loads;
+    }
+
+    public record ShardLoad(String shardId, long schemas, double weight, boolean acceptingTenants) { }
+}
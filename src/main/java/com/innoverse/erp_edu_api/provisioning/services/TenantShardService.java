@@ -0,0 +1,162 @@
+package com.innoverse.erp_edu_api.provisioning.services;
+
+import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
+import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
+import com.innoverse.erp_edu_api.provisioning.exceptions.ProvisionNotFoundException;
+import com.innoverse.erp_edu_api.provisioning.exceptions.ProvisioningException;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantShardProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantShardRouter;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.FlywayMigrationService;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.SchemaManagerService;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.SchemaShardMover;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connects the data source's shard routing to the tenant cache, and moves tenants
+ * between shards. See {@link SchemaShardMover} for how a move keeps the tenant
+ * readable throughout and holds its writes only while the rows are copied. The source
+ * copies moves leave behind are dropped once they are past their retention and the
+ * registry places the tenant on another shard.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TenantShardService {
+    private final ProvisioningTrackingService trackingService;
+    private final DbProvisioningRepository repository;
+    private final DistributedTenantCache tenantCache;
+    private final SchemaManagerService schemaManagerService;
+    private final FlywayMigrationService flywayMigrationService;
+    private final SchemaShardMover shardMover;
+    private final TenantShardPlacement shardPlacement;
+    private final TenantShardProperties shardProperties;
+
+    private final Set<UUID> movesInProgress = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void registerShardLookup() {
+        TenantShardRouter router = schemaManagerService.getShardRouter();
+        if (router != null && router.isSharded()) {
+            router.setShardLookup(tenantCache::getShardForSchema);
+            log.info("Routing tenant connections across shards: {}", router.getShardIds());
+        }
+    }
+
+    public SchemaShardMover.MoveResult move(UUID provisionId, String targetShard) {
+        DbProvision provision = trackingService.getProvisionById(provisionId)
+                .orElseThrow(() -> new ProvisionNotFoundException(provisionId));
+        String schema = provision.getDbSchemaName();
+        String sourceShard = provision.getShardId();
+        validateMove(provision, targetShard);
+
+        if (!movesInProgress.add(provisionId)) {
+            throw conflict("A move of schema " + schema + " is already running on this node");
+        }
+        try {
+            UUID schoolId = provision.getAssignedSchoolId();
+            return shardMover.move(schema, sourceShard, targetShard,
+                    AcademicLevel.valueOf(provision.getAssignedEducationLevel()),
+                    schoolId != null ? schoolId.toString() : "password",
+                    () -> {
+                        if (!repository.updateShard(provisionId, sourceShard, targetShard)) {
+                            throw new IllegalStateException("Provision " + provisionId + " is no longer on shard "
+                                    + sourceShard);
+                        }
+                        tenantCache.updateShardCache(schema, targetShard);
+                    },
+                    () -> {
+                        if (!repository.updateShard(provisionId, targetShard, sourceShard)) {
+                            throw new IllegalStateException("Provision " + provisionId + " is no longer on shard "
+                                    + targetShard);
+                        }
+                        tenantCache.updateShardCache(schema, sourceShard);
+                    });
+        } catch (SQLException | RuntimeException e) {
+            throw new ProvisioningException(
+                    "PROVISION",
+                    "Failed to move schema " + schema + " to shard " + targetShard,
+                    "Error moving schema '" + schema + "' from " + sourceShard + " to " + targetShard + ": "
+                            + e.getMessage(),
+                    e
+            );
+        } finally {
+            movesInProgress.remove(provisionId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${multitenancy.shards.retired-sweep-interval:5m}",
+            initialDelayString = "${multitenancy.shards.retired-sweep-interval:5m}")
+    public void dropRetiredSchemas() {
+        TenantShardRouter router = schemaManagerService.getShardRouter();
+        if (router == null || !router.isSharded()) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(shardProperties.getRetiredRetention());
+        for (String shardId : router.getShardIds()) {
+            try {
+                for (SchemaShardMover.RetiredSchema retired : shardMover.listRetired(shardId)) {
+                    // A tenant moved back here since has a fresh, unmarked schema, but check the registry anyway
+                    boolean livesHere = trackingService.getShardForSchema(retired.schemaName())
+                            .map(shardId::equals)
+                            .orElse(false);
+                    if (retired.retiredAt().isBefore(cutoff) && !livesHere) {
+                        shardMover.dropRetired(retired);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                log.warn("Failed to drop retired schemas on shard {}: {}", shardId, e.getMessage());
+            }
+        }
+    }
+
+    public List<TenantShardPlacement.ShardLoad> getShardLoads() {
+        return shardPlacement.getShardLoads();
+    }
+
+    public List<TenantShardRouter.ShardPoolStats> getShardPoolStats() {
+        TenantShardRouter router = schemaManagerService.getShardRouter();
+        return router != null ? router.getStats() : List.of();
+    }
+
+    // The copy expects identical structure on both sides, so the source must be fully migrated
+    private void validateMove(DbProvision provision, String targetShard) {
+        TenantShardRouter router = schemaManagerService.getShardRouter();
+        if (router == null || !router.getShardIds().contains(targetShard)) {
+            throw new ProvisioningException("PROVISION", "Unknown shard: " + targetShard,
+                    "No cluster is configured for shard '" + targetShard + "'", HttpStatus.BAD_REQUEST, null);
+        }
+        if (targetShard.equals(provision.getShardId())) {
+            throw conflict("Schema " + provision.getDbSchemaName() + " is already on shard " + targetShard);
+        }
+        if (shardPlacement.hasDedicatedPool(provision.getDbSchemaName())
+                && !TenantShardRouter.PRIMARY.equals(targetShard)) {
+            throw conflict("Schema " + provision.getDbSchemaName() + " has a dedicated pool on the primary "
+                    + "and cannot be moved to shard " + targetShard);
+        }
+        if (!provision.isProvisioned()) {
+            throw conflict("Only provisioned schemas can be moved; status is " + provision.getProvisionStatus());
+        }
+        List<String> pending = flywayMigrationService.getPendingVersions(provision.getDbSchemaName(),
+                AcademicLevel.valueOf(provision.getAssignedEducationLevel()));
+        if (!pending.isEmpty()) {
+            throw conflict("Schema " + provision.getDbSchemaName() + " has pending migrations " + pending
+                    + "; migrate it before moving");
+        }
+    }
+
+    private static ProvisioningException conflict(String message) {
+        return new ProvisioningException("PROVISION", message, message, HttpStatus.CONFLICT, null);
+    }
+}
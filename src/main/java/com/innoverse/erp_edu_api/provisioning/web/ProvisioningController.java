@@ -4,20 +4,57 @@ import com.innoverse.erp_edu_api.provisioning.web.dto.SchemaDto;
 import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
 import com.innoverse.erp_edu_api.provisioning.domain.DbProvision;
 import com.innoverse.erp_edu_api.provisioning.exceptions.*;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.ReplicaRouter;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.SchemaOperationTimings;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.SchemaSwitchTracker;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantAdmissionController;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantShardRouter;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantStatementCache;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.MigrationPlanner;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.SchemaArchiver;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.SchemaManagerService;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.migration.SchemaShardMover;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.ratelimit.TenantRateLimiter;
+import com.innoverse.erp_edu_api.provisioning.services.DbProvisioningRepository;
+import com.innoverse.erp_edu_api.provisioning.services.DistributedTenantCache;
+import com.innoverse.erp_edu_api.provisioning.services.ProvisionQuery;
+import com.innoverse.erp_edu_api.provisioning.services.ProvisionReconciler;
+import com.innoverse.erp_edu_api.provisioning.services.ProvisionRepairRunner;
 import com.innoverse.erp_edu_api.provisioning.services.ProvisioningContext;
+import com.innoverse.erp_edu_api.provisioning.services.ProvisioningProgressTracker;
+import com.innoverse.erp_edu_api.provisioning.services.ProvisioningQueueWorker;
 import com.innoverse.erp_edu_api.provisioning.services.ProvisioningTrackingService;
+import com.innoverse.erp_edu_api.provisioning.services.SpareSchemaPool;
+import com.innoverse.erp_edu_api.provisioning.services.TenantCacheWarmer;
+import com.innoverse.erp_edu_api.provisioning.services.TenantHibernationService;
+import com.innoverse.erp_edu_api.provisioning.services.TenantMaintenanceService;
+import com.innoverse.erp_edu_api.provisioning.services.TenantMigrationRunner;
 import com.innoverse.erp_edu_api.provisioning.services.TenantProvisioningOrchestrationService;
+import com.innoverse.erp_edu_api.provisioning.services.TenantShardPlacement;
+import com.innoverse.erp_edu_api.provisioning.services.TenantShardService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Map;
+import java.time.Duration;
 import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Slf4j
 @RestController
@@ -25,9 +62,22 @@ import java.util.UUID;
 @RequiredArgsConstructor
 @Tag(name = "Provisions", description = "API for managing provisions")
 public class ProvisioningController {
+    private static final Duration PROGRESS_STREAM_TIMEOUT = Duration.ofMinutes(30);
 
     private final TenantProvisioningOrchestrationService orchestrationService;
     private final ProvisioningTrackingService trackingService;
+    private final SchemaManagerService schemaManagerService;
+    private final TenantRateLimiter tenantRateLimiter;
+    private final TenantCacheWarmer tenantCacheWarmer;
+    private final DistributedTenantCache tenantCache;
+    private final SpareSchemaPool spareSchemaPool;
+    private final ProvisionReconciler provisionReconciler;
+    private final ProvisionRepairRunner provisionRepairRunner;
+    private final ProvisioningProgressTracker progressTracker;
+    private final ProvisioningQueueWorker provisioningQueueWorker;
+    private final TenantShardService tenantShardService;
+    private final TenantHibernationService hibernationService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/provisions")
     public ResponseEntity<ProvisionResponse> createProvision(
@@ -62,39 +112,56 @@ public class ProvisioningController {
         }
     }
 
-//    @PostMapping("/provisions/async")
-//    public ResponseEntity<ProvisionResponse> createProvisionAsync(
-//            @Valid @RequestBody CreateProvisionRequest request) {
-//        try {
-//            log.info("Creating async provision with prefix: {}", request.getPrefix());
-//
-//            ProvisioningContext ctx = new ProvisioningContext(
-//                    request.getPrefix().trim(),
-//                    request.getLevel(),
-//                    request.getAssignedBy().trim()
-//            );
-//
-//            DbProvision provision = trackingService.createProvision(ctx);
-//
-//            orchestrationService.asyncProvisionTenant(provision.getProvisionId(), ctx);
-//
-//            return ResponseEntity.accepted()
-//                    .body(new ProvisionResponse(
-//                            provision.getProvisionId(),
-//                            provision.getDbSchemaName(),
-//                            "Async provisioning started successfully"
-//                    ));
-//        } catch (SchemaAlreadyExistsException e) {
-//            throw e;
-//        } catch (Exception e) {
-//            throw new ProvisioningException(
-//                    "PROVISION",
-//                    "Failed to create async provision",
-//                    "Unexpected error during async provision creation: " + e.getMessage(),
-//                    e
-//            );
-//        }
-//    }
+    // Queued on the durable provisioning queue; any node's workers may run it
+    @PostMapping("/provisions/async")
+    public ResponseEntity<ProvisionResponse> createProvisionAsync(
+            @Valid @RequestBody CreateProvisionRequest request) {
+        try {
+            log.info("Creating async provision with prefix: {}", request.getPrefix());
+
+            ProvisioningContext ctx = new ProvisioningContext(
+                    request.getPrefix().trim(),
+                    request.getLevel(),
+                    request.getAssignedBy().trim()
+            );
+
+            DbProvision provision = orchestrationService.enqueueProvisioning(ctx);
+
+            return ResponseEntity.accepted()
+                    .body(new ProvisionResponse(
+                            provision.getProvisionId(),
+                            provision.getDbSchemaName(),
+                            "Provisioning queued successfully"
+                    ));
+        } catch (SchemaAlreadyExistsException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ProvisioningException(
+                    "PROVISION",
+                    "Failed to create async provision",
+                    "Unexpected error during async provision creation: " + e.getMessage(),
+                    e
+            );
+        }
+    }
+
+    // Copies the schema to the target cluster and switches it over; writes are held only during the copy
+    @PostMapping("/provisions/{provisionId}/shard-moves")
+    public ResponseEntity<SchemaShardMover.MoveResult> moveProvisionToShard(
+            @PathVariable UUID provisionId,
+            @RequestParam String targetShard) {
+        log.info("Moving provision {} to shard {}", provisionId, targetShard);
+
+        return ResponseEntity.ok(tenantShardService.move(provisionId, targetShard));
+    }
+
+    // Archives the schema and drops it now rather than waiting for the idle sweep
+    @PostMapping("/provisions/{provisionId}/hibernate")
+    public ResponseEntity<SchemaArchiver.ArchiveResult> hibernateProvision(@PathVariable UUID provisionId) {
+        log.info("Hibernating provision {}", provisionId);
+
+        return ResponseEntity.ok(hibernationService.hibernate(provisionId));
+    }
 
     @PostMapping("/provisions/{provisionId}/retry")
     public ResponseEntity<ApiResponse> retryProvisioning(
@@ -149,18 +216,26 @@ public class ProvisioningController {
         }
     }
 
+    @GetMapping("/migrations/schemas/{schemaName}/pending")
+    public ResponseEntity<List<String>> getPendingMigrations(@PathVariable String schemaName) {
+        log.info("Fetching pending migrations for schema: {}", schemaName);
+
+        return ResponseEntity.ok(orchestrationService.getPendingMigrations(schemaName));
+    }
+
+    @GetMapping("/migrations/plan")
+    public ResponseEntity<MigrationPlanner.MigrationPlan> getMigrationPlan() {
+        log.info("Planning pending tenant migrations");
+
+        return ResponseEntity.ok(orchestrationService.getMigrationPlan());
+    }
+
     @PostMapping(value = "/migrations/all", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<ApiResponse> migrateAllTenants() {
+    public ResponseEntity<TenantMigrationRunner.MigrationJobStatus> migrateAllTenants() {
         try {
             log.info("Migrating all tenants");
 
-            orchestrationService.migrateAllTenants();
-
-            return ResponseEntity.accepted()
-                    .body(new ApiResponse(
-                            "SUCCESS",
-                            "Bulk migration started for all tenants"
-                    ));
+            return ResponseEntity.accepted().body(orchestrationService.migrateAllTenants());
         } catch (Exception e) {
             log.error("Migration failed: {}", e.getMessage(), e);
             throw new ProvisioningException(
@@ -172,31 +247,71 @@ public class ProvisioningController {
         }
     }
 
+    @GetMapping("/migrations/jobs")
+    public ResponseEntity<List<TenantMigrationRunner.MigrationJobStatus>> getMigrationJobs() {
+        log.info("Fetching migration jobs");
+
+        return ResponseEntity.ok(orchestrationService.getMigrationJobs());
+    }
+
+    @GetMapping("/migrations/jobs/{jobId}")
+    public ResponseEntity<TenantMigrationRunner.MigrationJobStatus> getMigrationJob(@PathVariable UUID jobId) {
+        log.info("Fetching migration job: {}", jobId);
+
+        return ResponseEntity.ok(orchestrationService.getMigrationJob(jobId));
+    }
+
     @GetMapping("/provisions")
-    public ResponseEntity<List<DbProvision>> getAllProvisions(
+    public ResponseEntity<StreamingResponseBody> getAllProvisions(
             @RequestParam(required = false) String status,
-            @RequestParam(required = false) UUID schoolId) {
-        try {
-            log.info("Fetching provisions with status: {}, schoolId: {}", status, schoolId);
-            status = status.trim().toLowerCase();
-            List<DbProvision> provisions;
-            if (!status.isBlank()) {
-                provisions = trackingService.getProvisionsByStatus(status);
-            } else {
-                provisions = trackingService.getAllProvisions();
-            }
+            @RequestParam(required = false) String level,
+            @RequestParam(required = false) Boolean assigned,
+            @RequestParam(required = false) UUID schoolId,
+            @RequestParam(required = false) UUID after,
+            @RequestParam(defaultValue = "" + ProvisionQuery.DEFAULT_LIMIT) int limit) {
+        log.info("Fetching provisions with status: {}, level: {}, assigned: {}, schoolId: {}, after: {}",
+                status, level, assigned, schoolId, after);
+
+        ProvisionQuery query = new ProvisionQuery(status, level, assigned, schoolId, after, limit);
+        return streamPage(query, trackingService::streamProvisions, DbProvision::getProvisionId);
+    }
 
-            return ResponseEntity.ok(provisions);
-        } catch (Exception e) {
-            throw new ProvisioningException(
-                    "PROVISION",
-                    "Failed to fetch provisions",
-                    "Unexpected error while fetching provisions: " + e.getMessage(),
-                    e
-            );
-        }
+    /**
+     * Server-Sent Events stream of provisioning progress: the runs in flight first, then
+     * a "progress" event for every step and outcome, optionally for one provision only.
+     */
+    @GetMapping(value = "/provisions/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamProvisioningProgress(@RequestParam(required = false) UUID provisionId) {
+        log.info("Streaming provisioning progress for: {}", provisionId != null ? provisionId : "all provisions");
+
+        SseEmitter emitter = new SseEmitter(PROGRESS_STREAM_TIMEOUT.toMillis());
+        Consumer<ProvisioningProgressTracker.ProgressSnapshot> send = snapshot -> {
+            if (provisionId != null && !provisionId.equals(snapshot.provisionId())) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name("progress").data(snapshot));
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+                throw new UncheckedIOException(e);
+            }
+        };
+        Runnable unsubscribe = progressTracker.subscribe(send);
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        return emitter;
     }
 
+    @GetMapping("/provisions/{provisionId}/progress")
+    public ResponseEntity<ProvisioningProgressTracker.ProgressSnapshot> getProvisioningProgress(
+            @PathVariable UUID provisionId) {
+        log.info("Fetching provisioning progress: {}", provisionId);
+
+        return progressTracker.getProgress(provisionId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.noContent().build());
+    }
 
     @GetMapping("/provisions/{provisionId}")
     public ResponseEntity<DbProvision> getProvisionById(@PathVariable UUID provisionId) {
@@ -228,10 +343,10 @@ public class ProvisioningController {
     }
 
     @GetMapping("/schemas/orphaned")
-    public ResponseEntity<List<String>> getOrphanedSchemas() {
+    public ResponseEntity<List<ProvisionReconciler.OrphanedSchema>> getOrphanedSchemas() {
         log.info("Fetching orphaned schemas");
 
-        List<String> orphanedSchemas = orchestrationService.findOrphanedSchemas();
+        List<ProvisionReconciler.OrphanedSchema> orphanedSchemas = orchestrationService.findOrphanedSchemas();
         return ResponseEntity.ok(orphanedSchemas);
     }
 
@@ -261,6 +376,42 @@ public class ProvisioningController {
                 ));
     }
 
+    @GetMapping("/maintenance/reconciliation")
+    public ResponseEntity<ProvisionReconciler.ReconciliationReport> reconcileProvisions() {
+        log.info("Reconciling provisions with database schemas and roles");
+
+        return ResponseEntity.ok(provisionReconciler.reconcile());
+    }
+
+    @PostMapping("/maintenance/reconciliation/repairs")
+    public ResponseEntity<ProvisionRepairRunner.RepairJobStatus> startRepair() {
+        log.info("Starting provision repair job");
+
+        return ResponseEntity.accepted().body(provisionRepairRunner.start());
+    }
+
+    @GetMapping("/maintenance/reconciliation/repairs")
+    public ResponseEntity<List<ProvisionRepairRunner.RepairJobStatus>> getRepairJobs() {
+        log.info("Fetching provision repair jobs");
+
+        return ResponseEntity.ok(provisionRepairRunner.getJobs());
+    }
+
+    @GetMapping("/maintenance/reconciliation/repairs/{jobId}")
+    public ResponseEntity<ProvisionRepairRunner.RepairJobStatus> getRepairJob(@PathVariable UUID jobId) {
+        log.info("Fetching provision repair job: {}", jobId);
+
+        return provisionRepairRunner.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElseThrow(() -> new ProvisioningException(
+                        "PROVISION",
+                        "Repair job not found with ID: " + jobId,
+                        "No repair job with ID " + jobId + " is known to this node",
+                        HttpStatus.NOT_FOUND,
+                        null
+                ));
+    }
+
     @GetMapping("/schemas/{schemaName}/consistency")
     public ResponseEntity<ApiResponse> checkSchemaConsistency(@PathVariable String schemaName) {
         log.info("Checking consistency for schema: {}", schemaName);
@@ -346,11 +497,49 @@ public class ProvisioningController {
 
     // Schema Operations
     @GetMapping("/schemas")
-    public ResponseEntity<List<SchemaDto>> getAllSchemas() {
-        log.info("Fetching all tenant schemas");
+    public ResponseEntity<StreamingResponseBody> getAllSchemas(
+            @RequestParam(required = false) String level,
+            @RequestParam(required = false) Boolean assigned,
+            @RequestParam(required = false) UUID after,
+            @RequestParam(defaultValue = "" + ProvisionQuery.DEFAULT_LIMIT) int limit) {
+        log.info("Fetching tenant schemas with level: {}, assigned: {}, after: {}", level, assigned, after);
+
+        ProvisionQuery query = new ProvisionQuery(null, level, assigned, null, after, limit);
+        return streamPage(query, orchestrationService::streamTenantSchemas, SchemaDto::schemaId);
+    }
 
-        List<SchemaDto> schemas = orchestrationService.getAllTenantSchemas();
-        return ResponseEntity.ok(schemas);
+    /**
+     * Streams one keyset page as {"items": [...], "nextCursor": ...}, writing each row as
+     * it is read. The cursor is the id to pass as "after" for the next page, and is null
+     * once a page comes back short.
+     */
+    private <T> ResponseEntity<StreamingResponseBody> streamPage(ProvisionQuery query,
+                                                                 BiConsumer<ProvisionQuery, Consumer<T>> source,
+                                                                 Function<T, UUID> idOf) {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                int[] written = {0};
+                UUID[] last = {null};
+                json.writeStartObject();
+                json.writeArrayFieldStart("items");
+                source.accept(query, item -> {
+                    try {
+                        objectMapper.writeValue(json, item);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    written[0]++;
+                    last[0] = idOf.apply(item);
+                });
+                json.writeEndArray();
+                json.writeStringField("nextCursor",
+                        written[0] == query.limit() && last[0] != null ? last[0].toString() : null);
+                json.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
     }
 
 
@@ -380,10 +569,115 @@ public class ProvisioningController {
                 stats.provisioned(),
                 stats.pending(),
                 stats.failed(),
-                stats.getSuccessRate()
+                stats.getSuccessRate(),
+                stats.accessible(),
+                stats.byEducationLevel(),
+                stats.breakdown()
         ));
     }
 
+    @GetMapping("/maintenance/schema-switches")
+    public ResponseEntity<SchemaSwitchTracker.SchemaSwitchStats> getSchemaSwitchStats() {
+        log.info("Fetching search_path switch statistics");
+
+        return ResponseEntity.ok(schemaManagerService.getSchemaSwitchStats());
+    }
+
+    @GetMapping("/maintenance/tenant-connections")
+    public ResponseEntity<List<TenantAdmissionController.TenantAdmissionStats>> getTenantConnectionStats() {
+        log.info("Fetching per-tenant connection admission statistics");
+
+        return ResponseEntity.ok(schemaManagerService.getTenantAdmissionStats());
+    }
+
+    @GetMapping("/maintenance/replica-routing")
+    public ResponseEntity<ReplicaRouter.ReplicaRoutingStats> getReplicaRoutingStats() {
+        log.info("Fetching read-replica routing statistics");
+
+        ReplicaRouter.ReplicaRoutingStats stats = schemaManagerService.getReplicaRoutingStats();
+        return stats != null ? ResponseEntity.ok(stats) : ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/maintenance/statement-cache")
+    public ResponseEntity<TenantStatementCache.StatementCacheStats> getStatementCacheStats() {
+        log.info("Fetching prepared statement cache statistics");
+
+        TenantStatementCache.StatementCacheStats stats = schemaManagerService.getStatementCacheStats();
+        return stats != null ? ResponseEntity.ok(stats) : ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/maintenance/schema-operations")
+    public ResponseEntity<List<SchemaOperationTimings.OperationStats>> getSchemaOperationStats() {
+        log.info("Fetching schema operation timings");
+
+        return ResponseEntity.ok(schemaManagerService.getSchemaOperationStats());
+    }
+
+    @PostMapping("/maintenance/cache-warmup")
+    public ResponseEntity<TenantCacheWarmer.WarmUpProgress> triggerCacheWarmUp() {
+        log.info("Triggering tenant cache warm-up");
+
+        tenantCacheWarmer.warmUpInBackground();
+        return ResponseEntity.accepted().body(tenantCacheWarmer.getProgress());
+    }
+
+    @GetMapping("/maintenance/cache-warmup")
+    public ResponseEntity<TenantCacheWarmer.WarmUpProgress> getCacheWarmUpProgress() {
+        log.info("Fetching tenant cache warm-up progress");
+
+        return ResponseEntity.ok(tenantCacheWarmer.getProgress());
+    }
+
+    @GetMapping("/maintenance/tenant-routing")
+    public ResponseEntity<DistributedTenantCache.RoutingFallbackStats> getTenantRoutingStats() {
+        log.info("Fetching tenant routing fallback status");
+
+        return ResponseEntity.ok(tenantCache.getFallbackStats());
+    }
+
+    @GetMapping("/maintenance/shards")
+    public ResponseEntity<ShardStatusResponse> getShardStatus() {
+        log.info("Fetching shard placement and pool statistics");
+
+        return ResponseEntity.ok(new ShardStatusResponse(tenantShardService.getShardLoads(),
+                tenantShardService.getShardPoolStats()));
+    }
+
+    @GetMapping("/maintenance/hibernation")
+    public ResponseEntity<TenantHibernationService.HibernationStats> getHibernationStats() {
+        log.info("Fetching tenant hibernation stats");
+
+        return ResponseEntity.ok(hibernationService.getStats());
+    }
+
+    @GetMapping("/maintenance/migration-windows")
+    public ResponseEntity<TenantMaintenanceService.MaintenanceStats> getMaintenanceStats() {
+        log.info("Fetching tenant maintenance windows");
+
+        return ResponseEntity.ok(orchestrationService.getMaintenanceStats());
+    }
+
+    @GetMapping("/maintenance/provisioning-queue")
+    public ResponseEntity<ProvisioningQueueWorker.QueueStats> getProvisioningQueueStats() {
+        log.info("Fetching provisioning queue stats");
+
+        return ResponseEntity.ok(provisioningQueueWorker.getStats());
+    }
+
+    @GetMapping("/maintenance/spare-pool")
+    public ResponseEntity<SpareSchemaPool.SparePoolStats> getSparePoolStats() {
+        log.info("Fetching spare schema pool statistics");
+
+        return ResponseEntity.ok(spareSchemaPool.getStats());
+    }
+
+    @GetMapping("/maintenance/rate-limits")
+    public ResponseEntity<TenantRateLimiter.RateLimitStats> getRateLimitStats() {
+        log.info("Fetching per-tenant rate limit statistics");
+
+        return ResponseEntity.ok(tenantRateLimiter.getStats());
+    }
+
     // Request/Response DTOs
     public static class CreateProvisionRequest {
         private String prefix;
@@ -416,6 +710,11 @@ public class ProvisioningController {
     public record  ProvisionResponse(UUID provisioningId, String schemaName, String message) {}
     public record ApiResponse (String status, String message) { }
 
-    public record ProvisioningStatsResponse(long total, long provisioned, long pending, long failed, double successRate) { }
+    public record ShardStatusResponse(List<TenantShardPlacement.ShardLoad> shards,
+                                      List<TenantShardRouter.ShardPoolStats> pools) { }
+
+    public record ProvisioningStatsResponse(long total, long provisioned, long pending, long failed, double successRate,
+                                            long accessible, Map<String, Long> byEducationLevel,
+                                            List<DbProvisioningRepository.ProvisionCount> breakdown) { }
 
 }
\ No newline at end of file
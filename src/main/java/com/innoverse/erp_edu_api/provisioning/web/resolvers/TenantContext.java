@@ -2,10 +2,52 @@ package com.innoverse.erp_edu_api.provisioning.web.resolvers;
 
 import org.springframework.web.context.annotation.RequestScope;
 
+import java.util.concurrent.Callable;
+
+/**
+ * Tenant bound to the current thread. Prefer the scoped forms ({@link #open},
+ * {@link #runWith}, {@link #callWith}), which restore the enclosing tenant on exit
+ * so nested and handed-off work never leaks identity onto a reused carrier or pool thread.
+ */
 @RequestScope
 public class TenantContext {
     private static final ThreadLocal<String> CTX = new ThreadLocal<>();
     public static void set(String t)  {CTX.set(t);}
     public static String get()       {return CTX.get();}
     public static void clear()       {CTX.remove();}
+
+    public static Scope open(String tenant) {
+        String previous = CTX.get();
+        CTX.set(tenant);
+        return new Scope(previous);
+    }
+
+    public static void runWith(String tenant, Runnable task) {
+        try (Scope ignored = open(tenant)) {
+            task.run();
+        }
+    }
+
+    public static <T> T callWith(String tenant, Callable<T> task) throws Exception {
+        try (Scope ignored = open(tenant)) {
+            return task.call();
+        }
+    }
+
+    public static final class Scope implements AutoCloseable {
+        private final String previous;
+
+        private Scope(String previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CTX.remove();
+            } else {
+                CTX.set(previous);
+            }
+        }
+    }
 }
@@ -0,0 +1,16 @@
+package com.innoverse.erp_edu_api.provisioning.web.resolvers;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Carries the submitting thread's tenant into async work and restores the worker's
+ * own context afterwards.
+ */
+public class TenantContextTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        String tenant = TenantContext.get();
+        return () -> TenantContext.runWith(tenant, runnable);
+    }
+}
@@ -1,29 +1,137 @@
 package com.innoverse.erp_edu_api.provisioning.web.resolvers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.innoverse.erp_edu_api.common.errors.ApiError;
+import com.innoverse.erp_edu_api.provisioning.exceptions.TenantHibernatedException;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantMaintenanceGate;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.ratelimit.TenantRateLimiter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 
 
+@Slf4j
 public class TenantFilter extends OncePerRequestFilter {
     private final TenantResolver resolver;
+    private final TenantRateLimiter rateLimiter;
+    private final TenantMaintenanceGate maintenanceGate;
+    private final ObjectMapper objectMapper;
 
     public TenantFilter(TenantResolver resolver) {
+        this(resolver, null, null, null);
+    }
+
+    public TenantFilter(TenantResolver resolver, TenantRateLimiter rateLimiter, ObjectMapper objectMapper) {
+        this(resolver, rateLimiter, null, objectMapper);
+    }
+
+    public TenantFilter(TenantResolver resolver, TenantRateLimiter rateLimiter, TenantMaintenanceGate maintenanceGate,
+                        ObjectMapper objectMapper) {
         this.resolver = resolver;
+        this.rateLimiter = rateLimiter;
+        this.maintenanceGate = maintenanceGate;
+        this.objectMapper = objectMapper;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
             throws ServletException, IOException {
+        String tenant;
         try {
-            TenantContext.set(resolver.resolve(req));
+            tenant = resolver.resolve(req);
+        } catch (TenantHibernatedException e) {
+            rejectWhileRestoring(req, res, e);
+            return;
+        }
+
+        if (maintenanceGate == null) {
+            admit(req, res, chain, tenant);
+            return;
+        }
+        // Held at the gate before the rate limiter, so waiting out a migration takes no concurrency slot
+        if (!maintenanceGate.enter(tenant)) {
+            rejectDuringMaintenance(req, res, tenant);
+            return;
+        }
+        try {
+            admit(req, res, chain, tenant);
+        } finally {
+            maintenanceGate.exit(tenant);
+        }
+    }
+
+    private void admit(HttpServletRequest req, HttpServletResponse res, FilterChain chain, String tenant)
+            throws ServletException, IOException {
+        if (rateLimiter == null) {
+            try (TenantContext.Scope ignored = TenantContext.open(tenant)) {
+                chain.doFilter(req, res);
+            }
+            return;
+        }
+
+        TenantRateLimiter.Decision decision =
+                rateLimiter.tryAcquire(tenant, rateLimiter.isPlatformRequest(req.getRequestURI()));
+        if (!decision.admitted()) {
+            rejectOverLimit(req, res, tenant, decision.retryAfterSeconds());
+            return;
+        }
+
+        try (TenantContext.Scope ignored = TenantContext.open(tenant)) {
             chain.doFilter(req, res);
         } finally {
-            TenantContext.clear();
+            rateLimiter.release();
+        }
+    }
+
+    // Rejected before any connection is requested so overload never queues on the pool
+    private void rejectOverLimit(HttpServletRequest req, HttpServletResponse res, String tenant,
+                                 long retryAfterSeconds) throws IOException {
+        log.debug("Rate limit exceeded for tenant {} on {}", tenant, req.getRequestURI());
+
+        ApiError apiError = ApiError.of(HttpStatus.TOO_MANY_REQUESTS,
+                "Too many requests, retry after " + retryAfterSeconds + " seconds", req.getRequestURI());
+        apiError.setCode("RATE_LIMIT_001");
+        writeRejection(res, HttpStatus.TOO_MANY_REQUESTS, retryAfterSeconds, apiError);
+    }
+
+    // The restore carries on in the background; the client comes back once it is done
+    private void rejectWhileRestoring(HttpServletRequest req, HttpServletResponse res, TenantHibernatedException e)
+            throws IOException {
+        log.debug("Tenant still being restored on {}: {}", req.getRequestURI(), e.getMessage());
+
+        ApiError apiError = ApiError.of(HttpStatus.SERVICE_UNAVAILABLE, e.getClientMessage(), req.getRequestURI());
+        apiError.setCode(e.getCode());
+        writeRejection(res, HttpStatus.SERVICE_UNAVAILABLE, e.getRetryAfterSeconds(), apiError);
+    }
+
+    // The tenant's schema is being migrated; the gate reopens once the migration is done
+    private void rejectDuringMaintenance(HttpServletRequest req, HttpServletResponse res, String tenant)
+            throws IOException {
+        log.debug("Tenant {} under maintenance on {}", tenant, req.getRequestURI());
+
+        long retryAfterSeconds = maintenanceGate.getRetryAfterSeconds();
+        ApiError apiError = ApiError.of(HttpStatus.SERVICE_UNAVAILABLE,
+                "School data is being upgraded, retry after " + retryAfterSeconds + " seconds", req.getRequestURI());
+        apiError.setCode("MAINTENANCE_001");
+        writeRejection(res, HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds, apiError);
+    }
+
+    private void writeRejection(HttpServletResponse res, HttpStatus status, long retryAfterSeconds,
+                                ApiError apiError) throws IOException {
+        res.setStatus(status.value());
+        res.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        if (objectMapper == null) {
+            return;
         }
+        res.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(res.getOutputStream(), apiError);
     }
 }
@@ -2,6 +2,7 @@ package com.innoverse.erp_edu_api.provisioning.web.resolvers;
 
 import com.innoverse.erp_edu_api.provisioning.services.DistributedTenantCache;
 import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantProperties;
+import com.innoverse.erp_edu_api.provisioning.services.TenantHibernationService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 
@@ -11,11 +12,19 @@ import java.util.UUID;
 public class TenantHeaderResolver implements TenantResolver {
     private final TenantProperties tenantProperties;
     private final DistributedTenantCache tenantCache;
+    private final TenantHibernationService hibernationService;
 
-    public TenantHeaderResolver(TenantProperties tenantProperties, DistributedTenantCache tenantCache) {
+    public TenantHeaderResolver(TenantProperties tenantProperties, DistributedTenantCache tenantCache,
+                                TenantHibernationService hibernationService) {
         this.tenantProperties = tenantProperties;
         this.tenantCache = tenantCache;
+        this.hibernationService = hibernationService;
     }
+
+    /**
+     * Throws TenantHibernatedException when the school's schema is hibernated and its
+     * restore takes longer than the request may be held.
+     */
     @Override
     public String resolve(HttpServletRequest req) {
         String schoolIdHeader = req.getHeader(tenantProperties.getHeaderName());
@@ -29,6 +38,8 @@ public class TenantHeaderResolver implements TenantResolver {
             String schemaName = tenantCache.getSchemaForSchool(schoolId);
 
             if (schemaName != null) {
+                hibernationService.recordAccess(schemaName);
+                hibernationService.ensureAwake(schemaName);
                 return schemaName;
             } else {
                 log.warn("No schema found for school ID: {}", schoolId);
@@ -4,10 +4,14 @@ import com.innoverse.erp_edu_api.schools.domain.School;
 import com.innoverse.erp_edu_api.schools.services.SchoolRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -16,6 +20,7 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class SchoolPersistenceAdapter implements SchoolRepository {
     private final SchoolJdbcRepository jpaRepository;
+    private final JdbcTemplate jdbcTemplate;
 
     @Override
     public School save(School school) {
@@ -123,6 +128,22 @@ public class SchoolPersistenceAdapter implements SchoolRepository {
         return (List<School>) jpaRepository.findAll();
     }
 
+    @Override
+    public Map<UUID, String> findStatusesByIds(Collection<UUID> schoolIds) {
+        Map<UUID, String> statuses = new HashMap<>();
+        if (schoolIds.isEmpty()) {
+            return statuses;
+        }
+
+        jdbcTemplate.query(
+                "SELECT school_id, status FROM schools WHERE school_id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", schoolIds.toArray())),
+                rs -> {
+                    statuses.put(rs.getObject("school_id", UUID.class), rs.getString("status"));
+                });
+        return statuses;
+    }
+
     @Override
     public void deleteById(UUID schoolId) {
         jpaRepository.deleteById(schoolId);
@@ -0,0 +1,113 @@
+package com.innoverse.erp_edu_api.schools.services;
+
+import com.innoverse.erp_edu_api.provisioning.SchoolAccessOracle;
+import com.innoverse.erp_edu_api.schools.domain.School;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resolves school access from the status column only. Concurrent lookups are
+ * coalesced: whichever caller finds the queue idle drains every pending school ID
+ * into batched {@code WHERE school_id = ANY(?)} queries on its own thread, while
+ * the others wait on their futures.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SchoolAccessOracleService implements SchoolAccessOracle {
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final long LOOKUP_TIMEOUT_SECONDS = 5;
+
+    private final SchoolRepository repository;
+
+    private final Map<UUID, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+    private final Queue<UUID> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    @Override
+    public boolean hasAccess(UUID schoolId) {
+        return hasAccess(List.of(schoolId)).get(schoolId);
+    }
+
+    @Override
+    public Map<UUID, Boolean> hasAccess(Collection<UUID> schoolIds) {
+        Map<UUID, CompletableFuture<Boolean>> futures = new HashMap<>();
+        for (UUID schoolId : schoolIds) {
+            futures.put(schoolId, inFlight.computeIfAbsent(schoolId, id -> {
+                pending.add(id);
+                return new CompletableFuture<>();
+            }));
+        }
+
+        drainPending();
+
+        Map<UUID, Boolean> result = new HashMap<>();
+        try {
+            for (Map.Entry<UUID, CompletableFuture<Boolean>> entry : futures.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().get(LOOKUP_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while checking school access", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("School access lookup failed", e);
+        }
+        return result;
+    }
+
+    // Re-checks the queue after releasing the flag so IDs added mid-drain are never stranded
+    private void drainPending() {
+        while (!pending.isEmpty() && draining.compareAndSet(false, true)) {
+            try {
+                List<UUID> batch = new ArrayList<>();
+                UUID schoolId;
+                while (batch.size() < MAX_BATCH_SIZE && (schoolId = pending.poll()) != null) {
+                    batch.add(schoolId);
+                }
+                if (!batch.isEmpty()) {
+                    resolveBatch(batch);
+                }
+            } finally {
+                draining.set(false);
+            }
+        }
+    }
+
+    private void resolveBatch(List<UUID> batch) {
+        try {
+            Map<UUID, String> statuses = repository.findStatusesByIds(batch);
+            log.debug("Resolved access for {} schools in one query", batch.size());
+            for (UUID schoolId : batch) {
+                boolean isSchoolActive = School.Status.ACTIVE.name().equalsIgnoreCase(statuses.get(schoolId));
+                CompletableFuture<Boolean> future = inFlight.remove(schoolId);
+                if (future != null) {
+                    future.complete(isSchoolActive);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error processing access check for {} schools", batch.size(), e);
+            for (UUID schoolId : batch) {
+                CompletableFuture<Boolean> future = inFlight.remove(schoolId);
+                if (future != null) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+}
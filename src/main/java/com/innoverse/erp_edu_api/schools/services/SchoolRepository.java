@@ -3,7 +3,9 @@ package com.innoverse.erp_edu_api.schools.services;
 
 import com.innoverse.erp_edu_api.schools.domain.School;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -22,5 +24,6 @@ public interface SchoolRepository {
     boolean existsById(UUID id);
     boolean existsByMopseNo(String mopseNo);
     List<School> findAll();
+    Map<UUID, String> findStatusesByIds(Collection<UUID> schoolIds);
     void deleteById(UUID schoolId);
 }
\ No newline at end of file
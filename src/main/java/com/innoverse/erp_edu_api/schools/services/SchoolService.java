@@ -176,22 +176,27 @@ public class SchoolService implements SchoolServicePort, SchoolModule {
             throw new IllegalArgumentException("School is not eligible for provisioning");
         }
 
-        // Generate schema name from school name
-        String schemaName = generateSchemaName(school.getSchoolName(), school.getEducationLevel(), schoolId);
+        AcademicLevel level = AcademicLevel.valueOf(school.getEducationLevel().toUpperCase());
 
         try {
-            // Create provisioning context
-            var ctx = this.provisioningService.buildContext(
-                    schemaName,
-                    AcademicLevel.valueOf(school.getEducationLevel().toUpperCase()),
-                    "system"
-            );
-
-            // Orchestrate provisioning
-            var provision = provisioningService.orchestrateProvisioning(ctx);
-
-            // Assign provision to school with automatic access grant
-            this.provisioningService.assignToSchoolWithAccess(provision.getProvisionId(), schoolId, "system");
+            // A ready spare schema turns registration into a single claim
+            String schemaName = provisioningService.claimSpareProvision(schoolId, level, "system")
+                    .map(provision -> provision.getDbSchemaName())
+                    .orElse(null);
+
+            if (schemaName == null) {
+                // Generate schema name from school name
+                schemaName = generateSchemaName(school.getSchoolName(), school.getEducationLevel(), schoolId);
+
+                // Create provisioning context
+                var ctx = this.provisioningService.buildContext(schemaName, level, "system");
+
+                // Orchestrate provisioning
+                var provision = provisioningService.orchestrateProvisioning(ctx);
+
+                // Assign provision to school with automatic access grant
+                this.provisioningService.assignToSchoolWithAccess(provision.getProvisionId(), schoolId, "system");
+            }
             tenantSchemaCache.updateSchemaCache(schoolId, schemaName);
             tenantSchemaCache.updateAccessCache(schoolId, true);
             log.info("Provision assigned successfully to school: {}", schoolId);
@@ -0,0 +1,2 @@
+-- Step timings of the last provisioning run, written together with its final status
+ALTER TABLE db_provisions ADD COLUMN step_log TEXT;
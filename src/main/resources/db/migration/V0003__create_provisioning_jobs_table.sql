@@ -0,0 +1,17 @@
+-- Durable provisioning queue. Workers on every node claim due jobs with FOR UPDATE SKIP LOCKED
+-- and hold them under a lease they keep renewing; attempts are counted on db_provisions.
+CREATE TABLE provisioning_jobs (
+                                   provision_id UUID PRIMARY KEY REFERENCES db_provisions(provision_id) ON DELETE CASCADE,
+                                   education_level VARCHAR(100) NOT NULL,
+                                   assigned_by VARCHAR(255),
+                                   job_state VARCHAR(20) NOT NULL DEFAULT 'queued', -- queued, running, done, failed
+                                   next_attempt_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                                   lease_owner VARCHAR(255),
+                                   lease_expires_at TIMESTAMP,
+                                   last_error TEXT,
+                                   created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                                   updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_provisioning_jobs_due ON provisioning_jobs(job_state, next_attempt_at);
+CREATE INDEX idx_provisioning_jobs_lease ON provisioning_jobs(job_state, lease_expires_at);
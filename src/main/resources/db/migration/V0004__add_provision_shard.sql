@@ -0,0 +1,4 @@
+-- Shard map: the Postgres cluster each tenant schema lives on. 'primary' is the registry's own cluster.
+ALTER TABLE db_provisions ADD COLUMN shard_id VARCHAR(64) NOT NULL DEFAULT 'primary';
+
+CREATE INDEX idx_db_provisions_shard_id ON db_provisions(shard_id);
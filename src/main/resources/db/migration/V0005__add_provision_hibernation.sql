@@ -0,0 +1,7 @@
+-- Hibernation: idle tenant schemas are archived to a file and dropped until their school is next seen.
+ALTER TABLE db_provisions
+    ADD COLUMN last_accessed_at TIMESTAMP,
+    ADD COLUMN hibernated_at TIMESTAMP,
+    ADD COLUMN archive_path VARCHAR(1024);
+
+CREATE INDEX idx_db_provisions_last_accessed ON db_provisions(provision_status, last_accessed_at);
@@ -0,0 +1,3 @@
+-- The node and attempt holding a schema's restore; only that holder may finish or release it.
+ALTER TABLE db_provisions
+    ADD COLUMN restore_claim VARCHAR(255);
@@ -0,0 +1,126 @@
+-- Copies a fully migrated template schema into a new tenant schema in one call:
+-- sequences, tables (columns, defaults, constraints, indexes, identity), foreign keys,
+-- views, and the rows of every table, which carries over flyway_tenant_history and any
+-- reference data the migrations seeded. Functions and triggers are not copied; the
+-- tenant migrations create neither, and Flyway re-applies anything the clone lacks.
+CREATE OR REPLACE FUNCTION public.clone_schema(source_schema text, dest_schema text)
+RETURNS void
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    src_prefix text := quote_ident(source_schema) || '.';
+    dest_prefix text := quote_ident(dest_schema) || '.';
+    obj record;
+    column_list text;
+BEGIN
+    -- Fully qualified names from the catalog functions, so references can be rewritten
+    PERFORM set_config('search_path', '', true);
+
+    EXECUTE format('CREATE SCHEMA %I', dest_schema);
+
+    -- Standalone and serial sequences; identity sequences come with their tables
+    FOR obj IN
+        SELECT s.sequencename, s.data_type, s.start_value, s.min_value, s.max_value,
+               s.increment_by, s.cycle, s.cache_size
+        FROM pg_sequences s
+        WHERE s.schemaname = source_schema
+          AND NOT EXISTS (
+              SELECT 1 FROM pg_depend d
+              WHERE d.objid = format('%I.%I', s.schemaname, s.sequencename)::regclass
+                AND d.deptype = 'i')
+    LOOP
+        EXECUTE format('CREATE SEQUENCE %I.%I AS %s INCREMENT BY %s MINVALUE %s MAXVALUE %s START WITH %s CACHE %s %s',
+                       dest_schema, obj.sequencename, obj.data_type, obj.increment_by, obj.min_value,
+                       obj.max_value, obj.start_value, obj.cache_size,
+                       CASE WHEN obj.cycle THEN 'CYCLE' ELSE 'NO CYCLE' END);
+    END LOOP;
+
+    FOR obj IN
+        SELECT c.relname FROM pg_class c
+        JOIN pg_namespace n ON n.oid = c.relnamespace
+        WHERE n.nspname = source_schema AND c.relkind IN ('r', 'p')
+        ORDER BY c.oid
+    LOOP
+        EXECUTE format('CREATE TABLE %I.%I (LIKE %I.%I INCLUDING ALL)',
+                       dest_schema, obj.relname, source_schema, obj.relname);
+    END LOOP;
+
+    -- LIKE keeps defaults pointing at the template's sequences
+    FOR obj IN
+        SELECT a.attrelid::regclass AS table_name, a.attname, pg_get_expr(ad.adbin, ad.adrelid) AS default_expr
+        FROM pg_attrdef ad
+        JOIN pg_attribute a ON a.attrelid = ad.adrelid AND a.attnum = ad.adnum
+        JOIN pg_class c ON c.oid = ad.adrelid
+        JOIN pg_namespace n ON n.oid = c.relnamespace
+        WHERE n.nspname = dest_schema
+          AND pg_get_expr(ad.adbin, ad.adrelid) LIKE '%' || src_prefix || '%'
+    LOOP
+        EXECUTE format('ALTER TABLE %s ALTER COLUMN %I SET DEFAULT %s',
+                       obj.table_name, obj.attname, replace(obj.default_expr, src_prefix, dest_prefix));
+    END LOOP;
+
+    -- Serial sequences stay owned by their column
+    FOR obj IN
+        SELECT seq.relname AS sequence_name, tbl.relname AS table_name, a.attname
+        FROM pg_depend d
+        JOIN pg_class seq ON seq.oid = d.objid AND seq.relkind = 'S'
+        JOIN pg_class tbl ON tbl.oid = d.refobjid
+        JOIN pg_attribute a ON a.attrelid = d.refobjid AND a.attnum = d.refobjsubid
+        JOIN pg_namespace n ON n.oid = seq.relnamespace
+        WHERE n.nspname = source_schema AND d.deptype = 'a'
+    LOOP
+        EXECUTE format('ALTER SEQUENCE %I.%I OWNED BY %I.%I.%I',
+                       dest_schema, obj.sequence_name, dest_schema, obj.table_name, obj.attname);
+    END LOOP;
+
+    FOR obj IN
+        SELECT c.relname, a.column_names
+        FROM pg_class c
+        JOIN pg_namespace n ON n.oid = c.relnamespace
+        CROSS JOIN LATERAL (
+            SELECT string_agg(quote_ident(attname), ', ' ORDER BY attnum) AS column_names
+            FROM pg_attribute
+            WHERE attrelid = c.oid AND attnum > 0 AND NOT attisdropped AND attgenerated = ''
+        ) a
+        WHERE n.nspname = source_schema AND c.relkind IN ('r', 'p')
+    LOOP
+        column_list := obj.column_names;
+        EXECUTE format('INSERT INTO %I.%I (%s) OVERRIDING SYSTEM VALUE SELECT %s FROM %I.%I',
+                       dest_schema, obj.relname, column_list, column_list, source_schema, obj.relname);
+    END LOOP;
+
+    -- Foreign keys after the data, so load order between tables does not matter
+    FOR obj IN
+        SELECT tbl.relname, con.conname, pg_get_constraintdef(con.oid) AS definition
+        FROM pg_constraint con
+        JOIN pg_class tbl ON tbl.oid = con.conrelid
+        JOIN pg_namespace n ON n.oid = tbl.relnamespace
+        WHERE n.nspname = source_schema AND con.contype = 'f'
+    LOOP
+        EXECUTE format('ALTER TABLE %I.%I ADD CONSTRAINT %I %s',
+                       dest_schema, obj.relname, obj.conname, replace(obj.definition, src_prefix, dest_prefix));
+    END LOOP;
+
+    FOR obj IN
+        SELECT c.relname, pg_get_viewdef(c.oid) AS definition
+        FROM pg_class c
+        JOIN pg_namespace n ON n.oid = c.relnamespace
+        WHERE n.nspname = source_schema AND c.relkind = 'v'
+        ORDER BY c.oid
+    LOOP
+        EXECUTE format('CREATE VIEW %I.%I AS %s',
+                       dest_schema, obj.relname, replace(obj.definition, src_prefix, dest_prefix));
+    END LOOP;
+
+    -- Sequence positions, so ids handed out for seeded rows are not reused
+    FOR obj IN
+        SELECT s.sequencename, s.last_value
+        FROM pg_sequences s
+        WHERE s.schemaname = source_schema AND s.last_value IS NOT NULL
+    LOOP
+        IF to_regclass(format('%I.%I', dest_schema, obj.sequencename)) IS NOT NULL THEN
+            PERFORM setval(format('%I.%I', dest_schema, obj.sequencename), obj.last_value, true);
+        END IF;
+    END LOOP;
+END;
+$$;
@@ -0,0 +1,97 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.cache;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantCacheProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TenantRoutingSnapshotTest {
+    @TempDir
+    Path dir;
+
+    private TenantRoutingSnapshot snapshot;
+
+    @AfterEach
+    void tearDown() {
+        snapshot.close();
+    }
+
+    @Test
+    void removedSchoolsFreeTheirSlotForTheNextSchool() throws Exception {
+        snapshot = open(Duration.ofHours(6));
+        UUID removed = UUID.randomUUID();
+        snapshot.recordSchema(removed, "tenant_removed");
+        snapshot.recordSchema(UUID.randomUUID(), "tenant_kept");
+        long size = Files.size(dir.resolve("routing.snapshot"));
+
+        snapshot.remove(removed);
+        assertThat(snapshot.getStats().freeSlots()).isEqualTo(1);
+        UUID created = UUID.randomUUID();
+        snapshot.recordSchema(created, "tenant_created");
+
+        assertThat(snapshot.getStats()).isEqualTo(new TenantRoutingSnapshot.SnapshotStats(true, 2, 2, 0));
+        assertThat(snapshot.getSchema(removed)).isNull();
+        assertThat(snapshot.getSchema(created)).isEqualTo("tenant_created");
+        assertThat(Files.size(dir.resolve("routing.snapshot"))).isEqualTo(size);
+    }
+
+    @Test
+    void freedSlotsSurviveAReopen() {
+        snapshot = open(Duration.ofHours(6));
+        UUID removed = UUID.randomUUID();
+        UUID kept = UUID.randomUUID();
+        snapshot.recordSchema(removed, "tenant_removed");
+        snapshot.recordSchema(kept, "tenant_kept");
+        snapshot.recordAccess(kept, true);
+        snapshot.remove(removed);
+        snapshot.close();
+
+        snapshot = open(Duration.ofHours(6));
+
+        assertThat(snapshot.getStats()).isEqualTo(new TenantRoutingSnapshot.SnapshotStats(true, 1, 2, 1));
+        assertThat(snapshot.getSchema(removed)).isNull();
+        assertThat(snapshot.getSchema(kept)).isEqualTo("tenant_kept");
+        assertThat(snapshot.getAccess(kept)).isTrue();
+    }
+
+    @Test
+    void newRouteLeavesAccessUnknown() {
+        snapshot = open(Duration.ofHours(6));
+        UUID school = UUID.randomUUID();
+
+        snapshot.recordSchema(school, "tenant_new");
+
+        assertThat(snapshot.getSchema(school)).isEqualTo("tenant_new");
+        assertThat(snapshot.getAccess(school)).isNull();
+    }
+
+    @Test
+    void reconfirmingTheSchemaDoesNotRefreshAccess() throws Exception {
+        snapshot = open(Duration.ofMillis(200));
+        UUID school = UUID.randomUUID();
+        snapshot.recordSchema(school, "tenant_stale");
+        snapshot.recordAccess(school, true);
+
+        Thread.sleep(300);
+        snapshot.recordSchema(school, "tenant_stale");
+
+        assertThat(snapshot.getSchema(school)).isEqualTo("tenant_stale");
+        assertThat(snapshot.getAccess(school)).isNull();
+    }
+
+    private TenantRoutingSnapshot open(Duration maxStaleness) {
+        TenantCacheProperties properties = new TenantCacheProperties();
+        properties.setSnapshotPath(dir.resolve("routing.snapshot").toString());
+        properties.setSnapshotMaxStaleness(maxStaleness);
+        TenantRoutingSnapshot opened = new TenantRoutingSnapshot(properties);
+        opened.open();
+        return opened;
+    }
+}
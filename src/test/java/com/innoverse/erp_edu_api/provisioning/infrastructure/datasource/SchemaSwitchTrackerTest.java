@@ -0,0 +1,154 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SchemaSwitchTrackerTest {
+    private Connection physical;
+    private Statement statement;
+    private SchemaSwitchTracker tracker;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        physical = mock(Connection.class);
+        statement = mock(Statement.class);
+        tracker = new SchemaSwitchTracker();
+    }
+
+    @Test
+    void skipsSetWhenPhysicalConnectionIsAlreadyOnSchema() throws SQLException {
+        tracker.bind(checkout(true), "tenant_a", null, () -> { }).close();
+        tracker.bind(checkout(true), "tenant_a", null, () -> { }).close();
+
+        verify(statement).execute("SET search_path TO \"tenant_a\", public");
+        assertThat(tracker.getStats().switchesPerformed()).isEqualTo(1);
+        assertThat(tracker.getStats().switchesSaved()).isEqualTo(1);
+        assertThat(tracker.getStats().getSavedRatio()).isEqualTo(50.0);
+    }
+
+    @Test
+    void switchesWhenPhysicalConnectionIsOnAnotherSchema() throws SQLException {
+        tracker.bind(checkout(true), "tenant_a", null, () -> { }).close();
+        tracker.bind(checkout(true), "tenant_b", null, () -> { }).close();
+
+        verify(statement).execute("SET search_path TO \"tenant_b\", public");
+        assertThat(tracker.getStats().switchesPerformed()).isEqualTo(2);
+        assertThat(tracker.getStats().switchesSaved()).isZero();
+    }
+
+    @Test
+    void doesNotTrustSetIssuedInsideTransaction() throws SQLException {
+        tracker.bind(checkout(false), "tenant_a", null, () -> { }).close();
+        tracker.bind(checkout(true), "tenant_a", null, () -> { }).close();
+
+        verify(statement, times(2)).execute("SET search_path TO \"tenant_a\", public");
+        assertThat(tracker.getStats().switchesSaved()).isZero();
+    }
+
+    @Test
+    void forgetsConnectionWhenSetFails() throws SQLException {
+        tracker.bind(checkout(true), "tenant_a", null, () -> { }).close();
+        doThrow(new SQLException("boom")).when(statement).execute("SET search_path TO \"tenant_b\", public");
+
+        assertThatThrownBy(() -> tracker.bind(checkout(true), "tenant_b", null, () -> { }))
+                .isInstanceOf(SQLException.class);
+        tracker.bind(checkout(true), "tenant_a", null, () -> { }).close();
+
+        verify(statement, times(2)).execute("SET search_path TO \"tenant_a\", public");
+        assertThat(tracker.getStats().trackedConnections()).isEqualTo(1);
+    }
+
+    @Test
+    void forgetsConnectionAfterSqlExceptionOrSchemaChange() throws SQLException {
+        Connection pooled = checkout(true);
+        doThrow(new SQLException("broken")).when(pooled).commit();
+
+        Connection bound = tracker.bind(pooled, "tenant_a", null, () -> { });
+        assertThatThrownBy(bound::commit).isInstanceOf(SQLException.class);
+        bound.close();
+        tracker.bind(checkout(true), "tenant_a", null, () -> { }).setSchema("other");
+
+        verify(statement, times(2)).execute("SET search_path TO \"tenant_a\", public");
+        assertThat(tracker.getStats().trackedConnections()).isZero();
+    }
+
+    @Test
+    void rebindsAfterRawSearchPathChangeOnTrackedConnection() throws SQLException {
+        Connection bound = tracker.bind(checkout(true), "tenant_a", null, () -> { });
+        try (Statement raw = bound.createStatement()) {
+            raw.execute("SET search_path TO tenant_b");
+        }
+        bound.close();
+        tracker.bind(checkout(true), "tenant_a", null, () -> { }).close();
+
+        verify(statement, times(2)).execute("SET search_path TO \"tenant_a\", public");
+        assertThat(tracker.getStats().switchesSaved()).isZero();
+    }
+
+    @Test
+    void forgetsConnectionWhenPreparedSqlMayResetTheSession() throws SQLException {
+        Connection bound = tracker.bind(checkout(true), "tenant_a", null, () -> { });
+        bound.prepareStatement("DISCARD ALL");
+        bound.close();
+        tracker.bind(checkout(true), "tenant_a", null, () -> { }).close();
+
+        verify(statement, times(2)).execute("SET search_path TO \"tenant_a\", public");
+    }
+
+    @Test
+    void recognisesStatementsThatMayMoveTheSearchPath() {
+        assertThat(SchemaSwitchTracker.mayChangeSearchPath("set search_path = x")).isTrue();
+        assertThat(SchemaSwitchTracker.mayChangeSearchPath("SELECT set_config('search_path', 'x', false)")).isTrue();
+        assertThat(SchemaSwitchTracker.mayChangeSearchPath("RESET ALL")).isTrue();
+        assertThat(SchemaSwitchTracker.mayChangeSearchPath("discard  all")).isTrue();
+        assertThat(SchemaSwitchTracker.mayChangeSearchPath("SELECT name FROM students")).isFalse();
+    }
+
+    @Test
+    void tracksProxyWhenConnectionCannotBeUnwrapped() throws SQLException {
+        Connection unwrappable = mock(Connection.class);
+        when(unwrappable.getAutoCommit()).thenReturn(true);
+        when(unwrappable.createStatement()).thenReturn(statement);
+
+        tracker.bind(unwrappable, "tenant_a", null, () -> { }).close();
+        tracker.bind(unwrappable, "tenant_a", null, () -> { }).close();
+
+        verify(statement).execute(anyString());
+        assertThat(tracker.getStats().switchesSaved()).isEqualTo(1);
+    }
+
+    @Test
+    void runsReleaseCallbackOnce() throws SQLException {
+        AtomicInteger releases = new AtomicInteger();
+        Connection bound = tracker.bind(checkout(true), "tenant_a", null, releases::incrementAndGet);
+
+        bound.close();
+        bound.close();
+
+        assertThat(releases).hasValue(1);
+    }
+
+    // A fresh pool proxy over the same physical connection, as Hikari hands out on each checkout
+    private Connection checkout(boolean autoCommit) throws SQLException {
+        Connection pooled = mock(Connection.class);
+        when(pooled.isWrapperFor(Connection.class)).thenReturn(true);
+        when(pooled.unwrap(Connection.class)).thenReturn(physical);
+        when(pooled.getAutoCommit()).thenReturn(autoCommit);
+        when(pooled.createStatement()).thenReturn(statement);
+        return pooled;
+    }
+}
@@ -0,0 +1,276 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantPoolProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantProperties;
+import com.innoverse.erp_edu_api.provisioning.web.resolvers.TenantContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TenantAdmissionControllerTest {
+    private static final String DEFAULT_TENANT = "public";
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void capsConnectionsPerTenantWithoutHoldingBackOthers() throws Exception {
+        TenantAdmissionController controller = controller(2, Duration.ofMillis(50), 4);
+        controller.acquire("tenant_a");
+        controller.acquire("tenant_a");
+
+        assertThatThrownBy(() -> controller.acquire("tenant_a"))
+                .isInstanceOf(SQLTransientConnectionException.class);
+        controller.acquire("tenant_b").run();
+
+        assertThat(stats(controller, "tenant_a").inUse()).isEqualTo(2);
+        assertThat(stats(controller, "tenant_a").timeouts()).isEqualTo(1);
+        assertThat(stats(controller, "tenant_b").acquisitions()).isEqualTo(1);
+    }
+
+    @Test
+    void exemptTenantIsNotCapped() throws Exception {
+        TenantAdmissionController controller = controller(1, Duration.ofMillis(50), 3);
+
+        controller.acquire(DEFAULT_TENANT);
+        controller.acquire(DEFAULT_TENANT);
+        controller.acquire(DEFAULT_TENANT);
+
+        assertThat(stats(controller, DEFAULT_TENANT).inUse()).isEqualTo(3);
+    }
+
+    @Test
+    void servesQueuedTenantsInFairOrder() throws Exception {
+        TenantAdmissionController controller = controller(10, Duration.ofSeconds(5), 1);
+        Runnable held = controller.acquire("tenant_a");
+        List<String> grants = new CopyOnWriteArrayList<>();
+
+        // tenant_a queues three requests before tenant_b's first one arrives
+        List<Future<?>> waiters = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            waiters.add(queue(controller, "tenant_a", "a" + i, grants));
+            awaitWaiting(controller, "tenant_a", i);
+        }
+        waiters.add(queue(controller, "tenant_b", "b1", grants));
+        awaitWaiting(controller, "tenant_b", 1);
+
+        held.run();
+        for (Future<?> waiter : waiters) {
+            waiter.get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(grants).containsExactly("a1", "b1", "a2", "a3");
+    }
+
+    @Test
+    void heavierTenantIsServedProportionallyMoreOften() throws Exception {
+        TenantPoolProperties properties = properties(10, Duration.ofSeconds(5));
+        properties.setWeights(Map.of("tenant_b", 2));
+        TenantAdmissionController controller = new TenantAdmissionController(properties, DEFAULT_TENANT, 1);
+        Runnable held = controller.acquire("tenant_c");
+        List<String> grants = new CopyOnWriteArrayList<>();
+
+        List<Future<?>> waiters = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            waiters.add(queue(controller, "tenant_a", "a" + i, grants));
+            awaitWaiting(controller, "tenant_a", i);
+        }
+        for (int i = 1; i <= 4; i++) {
+            waiters.add(queue(controller, "tenant_b", "b" + i, grants));
+            awaitWaiting(controller, "tenant_b", i);
+        }
+
+        held.run();
+        for (Future<?> waiter : waiters) {
+            waiter.get(5, TimeUnit.SECONDS);
+        }
+
+        // Finish tags: a at 1 and 2, b at 0.5, 1, 1.5 and 2; ties go to the earlier arrival
+        assertThat(grants).containsExactly("b1", "a1", "b2", "b3", "a2", "b4");
+    }
+
+    @Test
+    void timedOutWaiterDoesNotKeepAPermit() throws Exception {
+        TenantAdmissionController controller = controller(10, Duration.ofMillis(50), 1);
+        Runnable held = controller.acquire("tenant_a");
+
+        assertThatThrownBy(() -> controller.acquire("tenant_b"))
+                .isInstanceOf(SQLTransientConnectionException.class);
+        held.run();
+
+        controller.acquire("tenant_b");
+        assertThat(stats(controller, "tenant_b").waiting()).isZero();
+        assertThat(stats(controller, "tenant_b").timeouts()).isEqualTo(1);
+        assertThat(stats(controller, "tenant_a").inUse()).isZero();
+    }
+
+    @Test
+    void interruptedWaiterLeavesTheQueue() throws Exception {
+        TenantAdmissionController controller = controller(10, Duration.ofSeconds(5), 1);
+        Runnable held = controller.acquire("tenant_a");
+
+        Future<?> waiter = executor.submit(() -> controller.acquire("tenant_b"));
+        awaitWaiting(controller, "tenant_b", 1);
+        waiter.cancel(true);
+        awaitWaiting(controller, "tenant_b", 0);
+        held.run();
+
+        controller.acquire("tenant_c");
+        assertThat(stats(controller, "tenant_b").inUse()).isZero();
+        assertThat(stats(controller, "tenant_c").inUse()).isEqualTo(1);
+    }
+
+    @Test
+    void dataSourceReleasesPermitWhenPoolFails() throws Exception {
+        TenantAdmissionController controller = controller(1, Duration.ofMillis(50), 1);
+        DataSource pool = mock(DataSource.class);
+        when(pool.getConnection()).thenThrow(new SQLException("pool exhausted"));
+        TenantAwareDataSource dataSource =
+                new TenantAwareDataSource(pool, new TenantProperties(), controller, Map.of());
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> TenantContext.callWith("tenant_a", dataSource::getConnection))
+                    .hasMessage("pool exhausted");
+        }
+
+        assertThat(stats(controller, "tenant_a").inUse()).isZero();
+        assertThat(stats(controller, "tenant_a").timeouts()).isZero();
+    }
+
+    @Test
+    void dataSourceReleasesPermitWhenSchemaSwitchFails() throws Exception {
+        TenantAdmissionController controller = controller(1, Duration.ofMillis(50), 1);
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.execute("SET search_path TO \"tenant_a\", public")).thenThrow(new SQLException("no schema"));
+        DataSource pool = mock(DataSource.class);
+        when(pool.getConnection()).thenReturn(connection);
+        TenantAwareDataSource dataSource =
+                new TenantAwareDataSource(pool, new TenantProperties(), controller, Map.of());
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> TenantContext.callWith("tenant_a", dataSource::getConnection))
+                    .hasMessage("no schema");
+        }
+
+        assertThat(stats(controller, "tenant_a").inUse()).isZero();
+    }
+
+    @Test
+    void admitsManyTenantsWithinPoolAndPerTenantLimits() throws Exception {
+        int permits = 8;
+        int perTenant = 2;
+        TenantAdmissionController controller = controller(perTenant, Duration.ofSeconds(10), permits);
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+        Map<String, AtomicInteger> perTenantInUse = new ConcurrentHashMap<>();
+        AtomicInteger perTenantExceeded = new AtomicInteger();
+
+        List<Future<?>> clients = new ArrayList<>();
+        for (int client = 0; client < 64; client++) {
+            int offset = client;
+            clients.add(executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    String tenant = "tenant_" + (offset * 50 + i) % 200;
+                    Runnable release = controller.acquire(tenant);
+                    AtomicInteger tenantInUse = perTenantInUse.computeIfAbsent(tenant, t -> new AtomicInteger());
+                    if (tenantInUse.incrementAndGet() > perTenant) {
+                        perTenantExceeded.incrementAndGet();
+                    }
+                    maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                    Thread.onSpinWait();
+                    inUse.decrementAndGet();
+                    tenantInUse.decrementAndGet();
+                    release.run();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> client : clients) {
+            client.get(30, TimeUnit.SECONDS);
+        }
+
+        assertThat(maxInUse.get()).isLessThanOrEqualTo(permits);
+        assertThat(perTenantExceeded).hasValue(0);
+        List<TenantAdmissionController.TenantAdmissionStats> stats = controller.getStats();
+        assertThat(stats).hasSize(200);
+        assertThat(stats).allSatisfy(s -> {
+            assertThat(s.inUse()).isZero();
+            assertThat(s.waiting()).isZero();
+            assertThat(s.timeouts()).isZero();
+        });
+        assertThat(stats.stream().mapToLong(TenantAdmissionController.TenantAdmissionStats::acquisitions).sum())
+                .isEqualTo(64 * 50);
+
+        // Every permit came back: the whole pool can be taken at once again
+        for (int i = 0; i < permits; i++) {
+            controller.acquire("after_" + i);
+        }
+    }
+
+    private Future<?> queue(TenantAdmissionController controller, String tenant, String label, List<String> grants) {
+        return executor.submit(() -> {
+            Runnable release = controller.acquire(tenant);
+            grants.add(label);
+            release.run();
+            return null;
+        });
+    }
+
+    private static void awaitWaiting(TenantAdmissionController controller, String tenant, int waiting)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        // The tenant only shows up in the stats once its first acquire has started
+        while (controller.getStats().stream().noneMatch(s -> s.tenant().equals(tenant) && s.waiting() == waiting)) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError(tenant + " never reached " + waiting + " waiters");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static TenantAdmissionController.TenantAdmissionStats stats(TenantAdmissionController controller,
+                                                                        String tenant) {
+        return controller.getStats().stream()
+                .filter(s -> s.tenant().equals(tenant))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No stats for " + tenant));
+    }
+
+    private static TenantAdmissionController controller(int maxPerTenant, Duration acquireTimeout, int permits) {
+        return new TenantAdmissionController(properties(maxPerTenant, acquireTimeout), DEFAULT_TENANT, permits);
+    }
+
+    private static TenantPoolProperties properties(int maxPerTenant, Duration acquireTimeout) {
+        TenantPoolProperties properties = new TenantPoolProperties();
+        properties.setMaxConnectionsPerTenant(maxPerTenant);
+        properties.setAcquireTimeout(acquireTimeout);
+        return properties;
+    }
+}
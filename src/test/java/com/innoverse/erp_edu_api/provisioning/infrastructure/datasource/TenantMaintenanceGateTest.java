@@ -0,0 +1,168 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantMaintenanceProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TenantMaintenanceGateTest {
+    private static final String TENANT = "tenant_a";
+
+    private TenantMaintenanceProperties properties;
+    private TenantMaintenanceGate gate;
+    private ExecutorService requests;
+
+    @BeforeEach
+    void setUp() {
+        properties = new TenantMaintenanceProperties();
+        properties.setHoldTimeout(Duration.ofSeconds(5));
+        gate = new TenantMaintenanceGate(properties);
+        requests = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        requests.shutdownNow();
+    }
+
+    @Test
+    void openGateLetsRequestsStraightIn() {
+        assertThat(gate.enter(TENANT)).isTrue();
+        gate.exit(TENANT);
+
+        assertThat(gate.getClosedTenants()).isEmpty();
+        assertThat(gate.open(TENANT)).isNull();
+    }
+
+    @Test
+    void closedGateHoldsRequestsUntilReopened() throws Exception {
+        gate.close(TENANT);
+
+        Future<Boolean> held = requests.submit(() -> gate.enter(TENANT));
+        Thread.sleep(200);
+        assertThat(held).isNotDone();
+
+        TenantMaintenanceGate.GateWindow window = gate.open(TENANT);
+
+        assertThat(held.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(window.requestsRejected()).isZero();
+        assertThat(gate.getClosedTenants()).isEmpty();
+        gate.exit(TENANT);
+    }
+
+    @Test
+    void requestsStillHeldAfterTheHoldTimeoutAreRejected() throws Exception {
+        properties.setHoldTimeout(Duration.ofMillis(50));
+        gate.close(TENANT);
+
+        assertThat(gate.enter(TENANT)).isFalse();
+        assertThat(gate.getClosedTenants())
+                .singleElement()
+                .satisfies(closed -> assertThat(closed.requestsRejected()).isEqualTo(1));
+        assertThat(gate.open(TENANT).requestsRejected()).isEqualTo(1);
+    }
+
+    @Test
+    void otherTenantsAreNotHeld() {
+        gate.close(TENANT);
+
+        assertThat(gate.enter("tenant_b")).isTrue();
+        gate.exit("tenant_b");
+        gate.open(TENANT);
+    }
+
+    @Test
+    void closeReportsRequestsInFlightAndDrainWaitsForThem() throws Exception {
+        assertThat(gate.enter(TENANT)).isTrue();
+        assertThat(gate.enter(TENANT)).isTrue();
+
+        assertThat(gate.close(TENANT)).isEqualTo(2);
+
+        Future<Boolean> drained = requests.submit(() -> gate.drain(TENANT, 5_000));
+        gate.exit(TENANT);
+        Thread.sleep(100);
+        assertThat(drained).isNotDone();
+        gate.exit(TENANT);
+
+        assertThat(drained.get(5, TimeUnit.SECONDS)).isTrue();
+        gate.open(TENANT);
+    }
+
+    @Test
+    void drainGivesUpAfterTheTimeout() {
+        assertThat(gate.enter(TENANT)).isTrue();
+        gate.close(TENANT);
+
+        assertThat(gate.drain(TENANT, 50)).isFalse();
+
+        gate.open(TENANT);
+        gate.exit(TENANT);
+    }
+
+    @Test
+    void gateClosedForAPeerReopensOnceItsClosureIsGone() {
+        properties.setClosureCheckInterval(Duration.ofMillis(50));
+        AtomicBoolean peerClosed = new AtomicBoolean(true);
+        gate.setPeerClosureCheck(tenant -> peerClosed.get());
+        gate.closeForPeer(TENANT);
+        peerClosed.set(false);
+
+        assertThat(gate.enter(TENANT)).isTrue();
+        assertThat(gate.getClosedTenants()).isEmpty();
+        gate.exit(TENANT);
+    }
+
+    @Test
+    void gateClosedForAPeerStaysClosedWhileTheClosureHolds() {
+        properties.setHoldTimeout(Duration.ofMillis(200));
+        properties.setClosureCheckInterval(Duration.ofMillis(20));
+        AtomicInteger checks = new AtomicInteger();
+        gate.setPeerClosureCheck(tenant -> checks.incrementAndGet() > 0);
+        gate.closeForPeer(TENANT);
+
+        assertThat(gate.enter(TENANT)).isFalse();
+        assertThat(checks).hasValueGreaterThan(1);
+        assertThat(gate.getClosedTenants()).hasSize(1);
+        gate.open(TENANT);
+    }
+
+    @Test
+    void gateClosedHereIgnoresThePeerClosure() {
+        properties.setHoldTimeout(Duration.ofMillis(100));
+        properties.setClosureCheckInterval(Duration.ofMillis(10));
+        gate.setPeerClosureCheck(tenant -> false);
+        gate.close(TENANT);
+        gate.closeForPeer(TENANT);
+
+        assertThat(gate.enter(TENANT)).isFalse();
+        assertThat(gate.getClosedTenants()).hasSize(1);
+        gate.open(TENANT);
+    }
+
+    @Test
+    void reopenedGateCanBeClosedAgain() throws Exception {
+        gate.close(TENANT);
+        gate.open(TENANT);
+        gate.close(TENANT);
+
+        Future<Boolean> held = requests.submit(() -> gate.enter(TENANT));
+        Thread.sleep(100);
+        assertThat(held).isNotDone();
+
+        TenantMaintenanceGate.GateWindow window = gate.open(TENANT);
+
+        assertThat(held.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(window.pauseMillis()).isGreaterThanOrEqualTo(100);
+        gate.exit(TENANT);
+    }
+}
@@ -0,0 +1,162 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantProperties;
+import com.innoverse.erp_edu_api.provisioning.web.resolvers.TenantContext;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Replays one recorded-style trace of mixed-tenant traffic through the tenant data
+ * source with and without the statement cache, and logs throughput and hit ratio.
+ * Skewed like production: a few hot tenants take most requests, the rest trickle in.
+ * Run with {@code -Dbenchmark=true}; the only assertions are that both runs return the
+ * same rows and that the cache was used.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TenantStatementCacheBenchmarkTest {
+    private static final Logger log = LoggerFactory.getLogger(TenantStatementCacheBenchmarkTest.class);
+
+    private static final int TENANTS = 40;
+    private static final int HOT_TENANTS = 8;
+    private static final int REQUESTS = 20_000;
+    private static final int CLIENTS = 8;
+    private static final int POOL_SIZE = 8;
+    private static final List<String> QUERIES = List.of(
+            "SELECT name FROM students WHERE id = ?",
+            "SELECT count(*) FROM students WHERE grade = ?",
+            "SELECT id, name FROM students WHERE grade = ? ORDER BY name LIMIT 10");
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @BeforeAll
+    static void createTenants() throws Exception {
+        try (Connection conn = postgres.createConnection("");
+             Statement stmt = conn.createStatement()) {
+            for (int i = 0; i < TENANTS; i++) {
+                String schema = tenant(i);
+                stmt.execute("CREATE SCHEMA " + schema);
+                stmt.execute("CREATE TABLE " + schema + ".students (id int PRIMARY KEY, name text, grade int)");
+                stmt.execute("CREATE INDEX ON " + schema + ".students (grade)");
+                stmt.execute("INSERT INTO " + schema + ".students SELECT g, 'student ' || g, g % 12 "
+                        + "FROM generate_series(1, 500) g");
+            }
+        }
+    }
+
+    @Test
+    void replaysMixedTenantTrafficWithAndWithoutCache() throws Exception {
+        List<Request> trace = trace(new Random(42));
+
+        Run uncached = replay(trace, 0);
+        Run cached = replay(trace, 64);
+
+        log.info("Uncached: {} requests/s", uncached.requestsPerSecond());
+        log.info("Cached: {} requests/s, {}", cached.requestsPerSecond(), cached.cacheStats());
+        assertThat(cached.checksum()).isEqualTo(uncached.checksum());
+        assertThat(cached.cacheStats().hits()).isPositive();
+    }
+
+    // Hot tenants take four requests in five; every request picks one of the queries
+    private static List<Request> trace(Random random) {
+        List<Request> trace = new ArrayList<>(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            int tenant = random.nextInt(5) < 4 ? random.nextInt(HOT_TENANTS) : random.nextInt(TENANTS);
+            trace.add(new Request(tenant(tenant), QUERIES.get(random.nextInt(QUERIES.size())),
+                    1 + random.nextInt(500)));
+        }
+        return trace;
+    }
+
+    // One untimed pass warms the pool and the server, then the same trace is timed
+    private static Run replay(List<Request> trace, int cacheSize) throws Exception {
+        try (HikariDataSource pool = new HikariDataSource()) {
+            pool.setJdbcUrl(postgres.getJdbcUrl());
+            pool.setUsername(postgres.getUsername());
+            pool.setPassword(postgres.getPassword());
+            pool.setMaximumPoolSize(POOL_SIZE);
+
+            TenantAwareDataSource dataSource = new TenantAwareDataSource(pool, new TenantProperties());
+            if (cacheSize > 0) {
+                dataSource.setStatementCache(new TenantStatementCache(cacheSize));
+            }
+
+            replayOnce(dataSource, trace);
+            long start = System.nanoTime();
+            long checksum = replayOnce(dataSource, trace);
+            long elapsed = System.nanoTime() - start;
+            return new Run(trace.size() * TimeUnit.SECONDS.toNanos(1) / elapsed, checksum,
+                    dataSource.getStatementCacheStats());
+        }
+    }
+
+    private static long replayOnce(TenantAwareDataSource dataSource, List<Request> trace) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int client = 0; client < CLIENTS; client++) {
+                int first = client;
+                results.add(clients.submit(() -> {
+                    long checksum = 0;
+                    for (int i = first; i < trace.size(); i += CLIENTS) {
+                        checksum += execute(dataSource, trace.get(i));
+                    }
+                    return checksum;
+                }));
+            }
+            long checksum = 0;
+            for (Future<Long> result : results) {
+                checksum += result.get();
+            }
+            return checksum;
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static long execute(TenantAwareDataSource dataSource, Request request) throws Exception {
+        return TenantContext.callWith(request.tenant(), () -> {
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(request.sql())) {
+                stmt.setInt(1, request.sql().contains("grade") ? request.argument() % 12 : request.argument());
+                long rows = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                    }
+                }
+                return rows;
+            }
+        });
+    }
+
+    private static String tenant(int index) {
+        return "bench_tenant_" + index;
+    }
+
+    private record Request(String tenant, String sql, int argument) { }
+
+    private record Run(long requestsPerSecond, long checksum, TenantStatementCache.StatementCacheStats cacheStats) { }
+}
@@ -0,0 +1,137 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TenantStatementCacheTest {
+    private static final String SQL = "SELECT * FROM students WHERE id = ?";
+
+    private final List<PreparedStatement> prepared = new ArrayList<>();
+    private Connection physical;
+    private Connection owner;
+    private TenantStatementCache cache;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        physical = mock(Connection.class);
+        owner = mock(Connection.class);
+        when(physical.prepareStatement(anyString())).thenAnswer(invocation -> {
+            PreparedStatement statement = mock(PreparedStatement.class);
+            prepared.add(statement);
+            return statement;
+        });
+        cache = new TenantStatementCache(2);
+    }
+
+    @Test
+    void reusesStatementForSameSchemaAndSql() throws SQLException {
+        prepare("tenant_a", SQL).close();
+        PreparedStatement reused = prepare("tenant_a", SQL);
+
+        assertThat(reused.getConnection()).isSameAs(owner);
+        reused.close();
+        assertThat(prepared).hasSize(1);
+        verify(prepared.get(0), never()).close();
+        verify(prepared.get(0), times(2)).clearParameters();
+        assertThat(cache.getStats().hits()).isEqualTo(1);
+        assertThat(cache.getStats().misses()).isEqualTo(1);
+    }
+
+    @Test
+    void keysStatementsBySchema() throws SQLException {
+        prepare("tenant_a", SQL).close();
+        prepare("tenant_b", SQL).close();
+        prepare("tenant_a", SQL).close();
+
+        assertThat(prepared).hasSize(2);
+        assertThat(cache.getStats().cachedStatements()).isEqualTo(2);
+        assertThat(cache.getStats().hits()).isEqualTo(1);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedStatement() throws SQLException {
+        prepare("tenant_a", SQL).close();
+        prepare("tenant_b", SQL).close();
+        // Touch tenant_a so tenant_b is the eldest when tenant_c comes in
+        prepare("tenant_a", SQL).close();
+        prepare("tenant_c", SQL).close();
+
+        verify(prepared.get(1)).close();
+        verify(prepared.get(0), never()).close();
+        assertThat(cache.getStats().evictions()).isEqualTo(1);
+        assertThat(cache.getStats().cachedStatements()).isEqualTo(2);
+
+        prepare("tenant_a", SQL).close();
+        assertThat(prepared).hasSize(3);
+    }
+
+    @Test
+    void defersCloseOfEvictedStatementUntilReleased() throws SQLException {
+        PreparedStatement inUse = prepare("tenant_a", SQL);
+        prepare("tenant_b", SQL).close();
+        prepare("tenant_c", SQL).close();
+
+        verify(prepared.get(0), never()).close();
+        inUse.close();
+        verify(prepared.get(0)).close();
+    }
+
+    @Test
+    void servesStatementAlreadyInUseUncached() throws SQLException {
+        PreparedStatement first = prepare("tenant_a", SQL);
+        PreparedStatement second = prepare("tenant_a", SQL);
+
+        assertThat(second).isSameAs(prepared.get(1));
+        second.close();
+        first.close();
+        assertThat(cache.getStats().cachedStatements()).isEqualTo(1);
+        verify(prepared.get(0), never()).close();
+    }
+
+    @Test
+    void prunesStatementsOfDroppedSchemaOnNextCheckout() throws SQLException {
+        prepare("tenant_a", SQL).close();
+        prepare("tenant_b", SQL).close();
+
+        cache.evictSchema("tenant_a");
+        prepare("tenant_b", SQL).close();
+
+        verify(prepared.get(0)).close();
+        verify(prepared.get(1), never()).close();
+        assertThat(cache.getStats().cachedStatements()).isEqualTo(1);
+
+        // A schema created again under the same name gets a fresh statement
+        prepare("tenant_a", SQL).close();
+        assertThat(prepared).hasSize(3);
+    }
+
+    @Test
+    void dropsSetOfClosedConnection() throws SQLException {
+        prepare("tenant_a", SQL).close();
+        when(physical.isClosed()).thenReturn(true);
+
+        TenantStatementCache.StatementCacheStats stats = cache.getStats();
+
+        assertThat(stats.connections()).isZero();
+        assertThat(stats.cachedStatements()).isZero();
+        assertThat(stats.connectionsDropped()).isEqualTo(1);
+    }
+
+    private PreparedStatement prepare(String schema, String sql) throws SQLException {
+        return cache.prepare(physical, owner, schema, sql, TenantStatementCache.StatementVariant.plain());
+    }
+}
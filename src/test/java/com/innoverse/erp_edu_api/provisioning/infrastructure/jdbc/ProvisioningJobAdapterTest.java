@@ -0,0 +1,231 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.jdbc;
+
+import com.innoverse.erp_edu_api.provisioning.services.ProvisioningJobRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers(disabledWithoutDocker = true)
+class ProvisioningJobAdapterTest {
+    private static final Duration LEASE = Duration.ofMinutes(1);
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static JdbcTemplate jdbc;
+
+    private ProvisioningJobAdapter adapter;
+
+    // The registry scripts only; the tenant scripts live in subdirectories
+    @BeforeAll
+    static void createRegistry() throws IOException {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(postgres.getJdbcUrl(),
+                postgres.getUsername(), postgres.getPassword());
+        Resource[] scripts = new PathMatchingResourcePatternResolver().getResources("classpath:db/migration/V*.sql");
+        Arrays.sort(scripts, Comparator.comparing(Resource::getFilename));
+        new ResourceDatabasePopulator(scripts).execute(dataSource);
+        jdbc = new JdbcTemplate(dataSource);
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbc.update("DELETE FROM db_provisions");
+        adapter = new ProvisioningJobAdapter(jdbc);
+    }
+
+    @Test
+    void claimLeasesDueJobsToTheOwner() {
+        UUID provisionId = enqueue("tenant_a");
+
+        List<ProvisioningJobRepository.ProvisioningJob> claimed = adapter.claim("node-1", 10, LEASE);
+
+        assertThat(claimed).singleElement().satisfies(job -> {
+            assertThat(job.provisionId()).isEqualTo(provisionId);
+            assertThat(job.schemaName()).isEqualTo("tenant_a");
+            assertThat(job.educationLevel()).isEqualTo("PRIMARY");
+            assertThat(job.attempts()).isZero();
+        });
+        assertThat(jobState(provisionId)).isEqualTo("running");
+        assertThat(leaseOwner(provisionId)).isEqualTo("node-1");
+        assertThat(adapter.claim("node-2", 10, LEASE)).isEmpty();
+    }
+
+    @Test
+    void claimTakesAtMostTheLimitAndLeavesTheRest() {
+        enqueue("tenant_a");
+        enqueue("tenant_b");
+        enqueue("tenant_c");
+
+        List<ProvisioningJobRepository.ProvisioningJob> first = adapter.claim("node-1", 2, LEASE);
+        List<ProvisioningJobRepository.ProvisioningJob> second = adapter.claim("node-2", 2, LEASE);
+
+        assertThat(first).hasSize(2);
+        assertThat(second).singleElement()
+                .extracting(ProvisioningJobRepository.ProvisioningJob::provisionId)
+                .isNotIn(first.stream().map(ProvisioningJobRepository.ProvisioningJob::provisionId).toList());
+    }
+
+    @Test
+    void claimSkipsJobsNotYetDue() {
+        UUID provisionId = enqueue("tenant_a");
+        jdbc.update("UPDATE provisioning_jobs SET next_attempt_at = now() + INTERVAL '1 hour' WHERE provision_id = ?",
+                provisionId);
+
+        assertThat(adapter.claim("node-1", 10, LEASE)).isEmpty();
+    }
+
+    @Test
+    void onlyTheOwnerRenewsTheLease() {
+        UUID provisionId = enqueue("tenant_a");
+        adapter.claim("node-1", 10, Duration.ofSeconds(5));
+
+        assertThat(adapter.renewLease(provisionId, "node-2", LEASE)).isFalse();
+        assertThat(adapter.renewLease(provisionId, "node-1", LEASE)).isTrue();
+        assertThat(jdbc.queryForObject("SELECT lease_expires_at > now() + INTERVAL '30 seconds' "
+                + "FROM provisioning_jobs WHERE provision_id = ?", Boolean.class, provisionId)).isTrue();
+    }
+
+    @Test
+    void lostLeaseCannotSettleTheJob() {
+        UUID provisionId = enqueue("tenant_a");
+        adapter.claim("node-1", 10, LEASE);
+
+        assertThat(adapter.complete(provisionId, "node-2")).isFalse();
+        assertThat(adapter.fail(provisionId, "node-2", "boom")).isFalse();
+        assertThat(adapter.retryLater(provisionId, "node-2", "boom", LEASE)).isFalse();
+        assertThat(jobState(provisionId)).isEqualTo("running");
+
+        assertThat(adapter.complete(provisionId, "node-1")).isTrue();
+        assertThat(jobState(provisionId)).isEqualTo("done");
+        assertThat(leaseOwner(provisionId)).isNull();
+        assertThat(adapter.renewLease(provisionId, "node-1", LEASE)).isFalse();
+    }
+
+    @Test
+    void retryLaterQueuesTheJobAfterTheBackoff() {
+        UUID provisionId = enqueue("tenant_a");
+        adapter.claim("node-1", 10, LEASE);
+
+        assertThat(adapter.retryLater(provisionId, "node-1", "schema busy", Duration.ofHours(1))).isTrue();
+
+        assertThat(jobState(provisionId)).isEqualTo("queued");
+        assertThat(adapter.claim("node-1", 10, LEASE)).isEmpty();
+    }
+
+    @Test
+    void expiredLeaseIsRequeuedAndCountedAsAnAttempt() {
+        UUID provisionId = enqueue("tenant_a");
+        adapter.claim("node-1", 10, LEASE);
+        expireLease(provisionId);
+
+        List<ProvisioningJobRepository.ExpiredJob> expired =
+                adapter.requeueExpired(3, Duration.ofSeconds(10), Duration.ofMinutes(5));
+
+        assertThat(expired).containsExactly(
+                new ProvisioningJobRepository.ExpiredJob(provisionId, "node-1", "queued", 1));
+        assertThat(leaseOwner(provisionId)).isNull();
+        assertThat(attempts(provisionId)).isEqualTo(1);
+        assertThat(adapter.renewLease(provisionId, "node-1", LEASE)).isFalse();
+        // Not due again until the backoff has passed
+        assertThat(adapter.claim("node-2", 10, LEASE)).isEmpty();
+    }
+
+    @Test
+    void liveLeaseIsNotRequeued() {
+        enqueue("tenant_a");
+        adapter.claim("node-1", 10, LEASE);
+
+        assertThat(adapter.requeueExpired(3, Duration.ofSeconds(10), Duration.ofMinutes(5))).isEmpty();
+    }
+
+    @Test
+    void jobOutOfAttemptsFailsWithItsProvision() {
+        UUID provisionId = enqueue("tenant_a");
+        jdbc.update("UPDATE db_provisions SET attempts = 2 WHERE provision_id = ?", provisionId);
+        adapter.claim("node-1", 10, LEASE);
+        expireLease(provisionId);
+
+        List<ProvisioningJobRepository.ExpiredJob> expired =
+                adapter.requeueExpired(3, Duration.ofSeconds(10), Duration.ofMinutes(5));
+
+        assertThat(expired).singleElement().satisfies(job -> {
+            assertThat(job.state()).isEqualTo("failed");
+            assertThat(job.attempts()).isEqualTo(3);
+        });
+        assertThat(jobState(provisionId)).isEqualTo("failed");
+        assertThat(jdbc.queryForObject("SELECT provision_status FROM db_provisions WHERE provision_id = ?",
+                String.class, provisionId)).isEqualTo("failed");
+    }
+
+    @Test
+    void enqueueRequeuesOnlyFinishedJobs() {
+        UUID provisionId = enqueue("tenant_a");
+        adapter.claim("node-1", 10, LEASE);
+
+        adapter.enqueue(provisionId, "PRIMARY", "admin");
+        assertThat(jobState(provisionId)).isEqualTo("running");
+
+        adapter.fail(provisionId, "node-1", "boom");
+        adapter.enqueue(provisionId, "PRIMARY", "admin");
+        assertThat(jobState(provisionId)).isEqualTo("queued");
+        assertThat(adapter.countByState()).containsEntry("queued", 1L);
+    }
+
+    @Test
+    void onlyQueuedAndRunningJobsAreActive() {
+        UUID provisionId = enqueue("tenant_a");
+        assertThat(adapter.hasActiveJob(provisionId)).isTrue();
+
+        adapter.claim("node-1", 10, LEASE);
+        assertThat(adapter.hasActiveJob(provisionId)).isTrue();
+
+        adapter.complete(provisionId, "node-1");
+        assertThat(adapter.hasActiveJob(provisionId)).isFalse();
+        assertThat(adapter.hasActiveJob(UUID.randomUUID())).isFalse();
+    }
+
+    private UUID enqueue(String schemaName) {
+        UUID provisionId = UUID.randomUUID();
+        jdbc.update("INSERT INTO db_provisions (provision_id, db_schema_name, provision_status) VALUES (?, ?, ?)",
+                provisionId, schemaName, "pending");
+        adapter.enqueue(provisionId, "PRIMARY", "admin");
+        return provisionId;
+    }
+
+    private void expireLease(UUID provisionId) {
+        jdbc.update("UPDATE provisioning_jobs SET lease_expires_at = now() - INTERVAL '1 second' "
+                + "WHERE provision_id = ?", provisionId);
+    }
+
+    private String jobState(UUID provisionId) {
+        return jdbc.queryForObject("SELECT job_state FROM provisioning_jobs WHERE provision_id = ?", String.class,
+                provisionId);
+    }
+
+    private String leaseOwner(UUID provisionId) {
+        return jdbc.queryForObject("SELECT lease_owner FROM provisioning_jobs WHERE provision_id = ?", String.class,
+                provisionId);
+    }
+
+    private int attempts(UUID provisionId) {
+        return jdbc.queryForObject("SELECT attempts FROM db_provisions WHERE provision_id = ?", Integer.class,
+                provisionId);
+    }
+}
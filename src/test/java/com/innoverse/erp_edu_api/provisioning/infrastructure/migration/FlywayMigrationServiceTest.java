@@ -0,0 +1,109 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.migration;
+
+import org.flywaydb.core.api.MigrationVersion;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FlywayMigrationServiceTest {
+
+    @Test
+    void everyResolvedVersionIsPendingOnAnEmptyHistory() {
+        assertThat(pending(resolved("1", "2", "3"), List.of())).containsExactly("1", "2", "3");
+    }
+
+    @Test
+    void appliedVersionsAreNotPending() {
+        List<FlywayMigrationService.AppliedVersion> applied = List.of(applied("1"), applied("2"));
+
+        assertThat(pending(resolved("1", "2", "3"), applied)).containsExactly("3");
+    }
+
+    @Test
+    void skippedVersionBelowTheLatestStaysPending() {
+        List<FlywayMigrationService.AppliedVersion> applied = List.of(applied("1"), applied("3"));
+
+        assertThat(pending(resolved("1", "2", "3"), applied)).containsExactly("2");
+    }
+
+    @Test
+    void versionsUpToTheBaselineAreNotPending() {
+        List<FlywayMigrationService.AppliedVersion> applied =
+                List.of(FlywayMigrationService.AppliedVersion.of("2", "BASELINE"));
+
+        assertThat(pending(resolved("1", "2", "3", "4"), applied)).containsExactly("3", "4");
+    }
+
+    @Test
+    void latestBaselineWins() {
+        List<FlywayMigrationService.AppliedVersion> applied = List.of(
+                FlywayMigrationService.AppliedVersion.of("1", "BASELINE"),
+                FlywayMigrationService.AppliedVersion.of("3", "BASELINE"));
+
+        assertThat(pending(resolved("1", "2", "3", "4"), applied)).containsExactly("4");
+    }
+
+    @Test
+    void versionsAreComparedNumerically() {
+        List<FlywayMigrationService.AppliedVersion> applied = List.of(applied("1.9"));
+
+        assertThat(pending(resolved("1.9", "1.10", "2"), applied)).containsExactly("1.10", "2");
+    }
+
+    @Test
+    void repeatableScriptNeverRunIsPending() {
+        assertThat(FlywayMigrationService.pendingRepeatables(Map.of("views", 1), Map.of())).containsExactly("views");
+    }
+
+    @Test
+    void changedRepeatableScriptIsPending() {
+        Map<String, Integer> resolved = Map.of("views", 2, "functions", 3);
+
+        assertThat(FlywayMigrationService.pendingRepeatables(resolved, Map.of("views", 1, "functions", 3)))
+                .containsExactly("views");
+    }
+
+    @Test
+    void repeatableScriptWithoutRecordedChecksumIsPending() {
+        Map<String, Integer> applied = new HashMap<>();
+        applied.put("views", null);
+
+        assertThat(FlywayMigrationService.pendingRepeatables(Map.of("views", 1), applied)).containsExactly("views");
+    }
+
+    @Test
+    void repeatableScriptsAreNamedByDescription() {
+        assertThat(ResolvedMigrations.repeatableDescriptionOf("R__refresh_report_views.sql"))
+                .isEqualTo("refresh report views");
+        assertThat(ResolvedMigrations.repeatableDescriptionOf("V1__init.sql")).isNull();
+    }
+
+    @Test
+    void checksumIgnoresLineBreakStyleAndByteOrderMark() {
+        int checksum = ResolvedMigrations.checksum("CREATE VIEW a AS SELECT 1;\nCREATE VIEW b AS SELECT 2;");
+
+        assertThat(ResolvedMigrations.checksum("\uFEFFCREATE VIEW a AS SELECT 1;\r\nCREATE VIEW b AS SELECT 2;\r\n"))
+                .isEqualTo(checksum);
+        assertThat(ResolvedMigrations.checksum("CREATE VIEW a AS SELECT 1;")).isNotEqualTo(checksum);
+    }
+
+    private static List<String> pending(SortedSet<MigrationVersion> resolved,
+                                        List<FlywayMigrationService.AppliedVersion> applied) {
+        return FlywayMigrationService.pending(resolved, applied).stream().map(MigrationVersion::getVersion).toList();
+    }
+
+    private static SortedSet<MigrationVersion> resolved(String... versions) {
+        return new TreeSet<>(Arrays.stream(versions).map(MigrationVersion::fromVersion).toList());
+    }
+
+    private static FlywayMigrationService.AppliedVersion applied(String version) {
+        return FlywayMigrationService.AppliedVersion.of(version, "SQL");
+    }
+}
@@ -0,0 +1,110 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.migration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers(disabledWithoutDocker = true)
+class MigrationPlannerTest {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static final List<String> SCHEMAS = List.of("tenant_a", "tenant_b", "Mixed Case", "quo\"ted", "tenant_e");
+
+    private Connection conn;
+
+    @BeforeEach
+    void createSchemas() throws SQLException {
+        conn = postgres.createConnection("");
+        for (int i = 0; i < SCHEMAS.size(); i++) {
+            String table = SchemaCatalog.ident(SCHEMAS.get(i)) + "." + FlywayMigrationService.HISTORY_TABLE;
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE SCHEMA " + SchemaCatalog.ident(SCHEMAS.get(i)));
+                stmt.execute("CREATE TABLE " + table + " (installed_rank serial, version text, description text, "
+                        + "type text, checksum int, success boolean)");
+                // Every schema has V1 plus one version of its own, a failed V9 and a repeatable script run twice
+                stmt.execute("INSERT INTO " + table + " (version, description, type, checksum, success) VALUES "
+                        + "('1', 'init', 'SQL', 1, true), ('" + (i + 2) + "', 'own', 'SQL', 2, true), "
+                        + "('9', 'broken', 'SQL', 9, false), (NULL, 'views', 'SQL', 100, true), "
+                        + "(NULL, 'views', 'SQL', " + (200 + i) + ", true)");
+            }
+        }
+    }
+
+    @AfterEach
+    void dropSchemas() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String schema : SCHEMAS) {
+                stmt.execute("DROP SCHEMA " + SchemaCatalog.ident(schema) + " CASCADE");
+            }
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    void readsEverySchemaAcrossChunks() throws SQLException {
+        Map<String, FlywayMigrationService.SchemaHistory> histories = MigrationPlanner.readHistories(conn, SCHEMAS, 2);
+
+        assertThat(histories).containsOnlyKeys(SCHEMAS);
+        for (int i = 0; i < SCHEMAS.size(); i++) {
+            assertThat(histories.get(SCHEMAS.get(i)).versions())
+                    .extracting(version -> version.version().getVersion())
+                    .containsExactlyInAnyOrder("1", String.valueOf(i + 2));
+        }
+    }
+
+    @Test
+    void keepsTheLatestChecksumOfEachRepeatableScript() throws SQLException {
+        Map<String, FlywayMigrationService.SchemaHistory> histories = MigrationPlanner.readHistories(conn, SCHEMAS, 2);
+
+        for (int i = 0; i < SCHEMAS.size(); i++) {
+            assertThat(histories.get(SCHEMAS.get(i)).repeatables()).containsOnly(Map.entry("views", 200 + i));
+        }
+    }
+
+    @Test
+    void chunkSizeDoesNotChangeTheResult() throws SQLException {
+        Map<String, FlywayMigrationService.SchemaHistory> oneStatement =
+                MigrationPlanner.readHistories(conn, SCHEMAS, SCHEMAS.size());
+        Map<String, FlywayMigrationService.SchemaHistory> perSchema = MigrationPlanner.readHistories(conn, SCHEMAS, 1);
+
+        assertThat(oneStatement).hasSameSizeAs(perSchema);
+        oneStatement.forEach((schema, history) -> {
+            assertThat(perSchema.get(schema).versions()).containsExactlyInAnyOrderElementsOf(history.versions());
+            assertThat(perSchema.get(schema).repeatables()).isEqualTo(history.repeatables());
+        });
+    }
+
+    @Test
+    void noSchemasReadsNothing() throws SQLException {
+        assertThat(MigrationPlanner.readHistories(conn, List.of(), 2)).isEmpty();
+    }
+
+    @Test
+    void baselineRowsAreMarked() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO tenant_a." + FlywayMigrationService.HISTORY_TABLE
+                    + " (version, description, type, success) VALUES ('0', '<< Baseline >>', 'BASELINE', true)");
+        }
+
+        List<FlywayMigrationService.AppliedVersion> applied =
+                MigrationPlanner.readHistories(conn, List.of("tenant_a"), 2).get("tenant_a").versions();
+
+        assertThat(applied).filteredOn(FlywayMigrationService.AppliedVersion::baseline)
+                .extracting(version -> version.version().getVersion())
+                .containsExactly("0");
+    }
+}
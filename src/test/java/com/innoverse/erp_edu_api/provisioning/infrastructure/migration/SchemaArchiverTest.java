@@ -0,0 +1,180 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.migration;
+
+import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantHibernationProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Testcontainers(disabledWithoutDocker = true)
+class SchemaArchiverTest {
+    private static final String SHARD = "primary";
+    private static final String SCHEMA = "tenant_archive";
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @TempDir
+    Path archiveDirectory;
+
+    private JdbcTemplate jdbc;
+    private FlywayMigrationService flywayMigrationService;
+    private SchemaArchiver archiver;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(postgres.getJdbcUrl(),
+                postgres.getUsername(), postgres.getPassword());
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+
+        SchemaManagerService schemaManagerService = mock(SchemaManagerService.class);
+        when(schemaManagerService.getShardDataSource(SHARD)).thenReturn(dataSource);
+        doAnswer(invocation -> {
+            jdbc.execute("CREATE SCHEMA " + SCHEMA);
+            return null;
+        }).when(schemaManagerService).createSchemaOnShard(eq(SHARD), eq(SCHEMA), anyString());
+        doAnswer(invocation -> {
+            jdbc.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            return null;
+        }).when(schemaManagerService).dropSchemaOnShard(SHARD, SCHEMA);
+
+        flywayMigrationService = mock(FlywayMigrationService.class);
+        when(flywayMigrationService.tryMigrationLock(SCHEMA))
+                .thenReturn(mock(FlywayMigrationService.MigrationLock.class));
+        // Stands in for migrating a fresh schema to the archived version
+        doAnswer(invocation -> {
+            createTables();
+            return null;
+        }).when(flywayMigrationService).migrateOnShard(SHARD, SCHEMA, AcademicLevel.PRIMARY, "2");
+
+        archiver = new SchemaArchiver(schemaManagerService, flywayMigrationService,
+                new TenantHibernationProperties());
+    }
+
+    @Test
+    void restoresWhatWasArchived() throws Exception {
+        jdbc.execute("CREATE SCHEMA " + SCHEMA);
+        createTables();
+        jdbc.execute("ALTER TABLE " + SCHEMA + ".enrolments DISABLE TRIGGER stamp_note");
+        jdbc.update("INSERT INTO " + SCHEMA + ".students (name) VALUES ('Ada'), ('Grace')");
+        jdbc.update("INSERT INTO " + SCHEMA + ".enrolments (student_id, details, photo, note) VALUES "
+                + "(1, '{\"course\": \"maths\"}', '\\x00ff'::bytea, NULL), (2, '[]', NULL, 'O''Brien')");
+        jdbc.update("INSERT INTO " + SCHEMA + ".enrolments (student_id, details, note) VALUES (2, '{}', ?)",
+                "x".repeat(70_000));
+        jdbc.execute("ALTER TABLE " + SCHEMA + ".enrolments ENABLE TRIGGER stamp_note");
+        List<Map<String, Object>> students = rows("students");
+        List<Map<String, Object>> enrolments = rows("enrolments");
+        Path file = archiveDirectory.resolve(SCHEMA + ".gz");
+
+        SchemaArchiver.ArchiveResult archived = archiver.archive(SCHEMA, SHARD, file, () -> { });
+
+        assertThat(archived.version()).isEqualTo("2");
+        assertThat(archived.tables()).isEqualTo(2);
+        assertThat(archived.rows()).isEqualTo(5);
+        assertThat(Files.exists(file)).isTrue();
+        assertThat(schemaExists()).isFalse();
+
+        SchemaArchiver.RestoreResult restored = archiver.restore(SCHEMA, SHARD, AcademicLevel.PRIMARY, "secret", file);
+
+        assertThat(restored.rows()).isEqualTo(5);
+        assertThat(rows("students")).isEqualTo(students);
+        // The trigger that stamps new notes stays off while the archived rows go back in
+        assertThat(rows("enrolments")).isEqualTo(enrolments);
+        assertThat(jdbc.queryForObject("INSERT INTO " + SCHEMA + ".students (name) VALUES ('Alan') RETURNING id",
+                Long.class)).isEqualTo(3);
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM pg_constraint c JOIN pg_namespace n "
+                + "ON n.oid = c.connamespace WHERE n.nspname = ? AND c.contype = 'f'", Integer.class, SCHEMA))
+                .isEqualTo(1);
+        verify(flywayMigrationService).migrateOnShard(SHARD, SCHEMA, AcademicLevel.PRIMARY);
+    }
+
+    @Test
+    void failedCutoverKeepsTheSchemaAndDropsTheArchive() throws Exception {
+        jdbc.execute("CREATE SCHEMA " + SCHEMA);
+        createTables();
+        jdbc.update("INSERT INTO " + SCHEMA + ".students (name) VALUES ('Ada')");
+        Path file = archiveDirectory.resolve(SCHEMA + ".gz");
+
+        assertThatThrownBy(() -> archiver.archive(SCHEMA, SHARD, file, () -> {
+            throw new IllegalStateException("registry unavailable");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(schemaExists()).isTrue();
+        assertThat(rows("students")).hasSize(1);
+        assertThat(Files.exists(file)).isFalse();
+    }
+
+    @Test
+    void archiveFailsWhileTheSchemaIsBeingMigrated() throws Exception {
+        when(flywayMigrationService.tryMigrationLock(SCHEMA)).thenReturn(null);
+
+        Path file = archiveDirectory.resolve(SCHEMA + ".gz");
+
+        assertThatThrownBy(() -> archiver.archive(SCHEMA, SHARD, file, () -> { }))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("being migrated");
+        assertThat(Files.exists(file)).isFalse();
+    }
+
+    @Test
+    void restoreRejectsAnArchiveOfAnotherSchema() throws Exception {
+        jdbc.execute("CREATE SCHEMA " + SCHEMA);
+        createTables();
+        Path file = archiveDirectory.resolve(SCHEMA + ".gz");
+        archiver.archive(SCHEMA, SHARD, file, () -> { });
+
+        assertThatThrownBy(() -> archiver.restore("tenant_other", SHARD, AcademicLevel.PRIMARY, "secret", file))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining(SCHEMA);
+    }
+
+    // Enrolments sort before students, so restoring them only works with the foreign key off
+    private void createTables() {
+        jdbc.execute("CREATE TABLE " + SCHEMA + "." + FlywayMigrationService.HISTORY_TABLE
+                + " (version text, type text, success boolean)");
+        jdbc.execute("INSERT INTO " + SCHEMA + "." + FlywayMigrationService.HISTORY_TABLE
+                + " VALUES ('1', 'SQL', true), ('2', 'SQL', true)");
+        jdbc.execute("CREATE TABLE " + SCHEMA + ".students (id serial PRIMARY KEY, name text NOT NULL)");
+        jdbc.execute("CREATE TABLE " + SCHEMA + ".enrolments (id bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY, "
+                + "student_id int NOT NULL REFERENCES " + SCHEMA + ".students (id), details jsonb, photo bytea, "
+                + "note text)");
+        jdbc.execute("CREATE FUNCTION " + SCHEMA + ".stamp_note() RETURNS trigger LANGUAGE plpgsql AS "
+                + "$$ BEGIN NEW.note := 'stamped'; RETURN NEW; END $$");
+        jdbc.execute("CREATE TRIGGER stamp_note BEFORE INSERT ON " + SCHEMA + ".enrolments "
+                + "FOR EACH ROW EXECUTE FUNCTION " + SCHEMA + ".stamp_note()");
+    }
+
+    // Columns as text, so rows compare by value
+    private List<Map<String, Object>> rows(String table) {
+        String columns = table.equals("enrolments")
+                ? "id, student_id, details::text AS details, encode(photo, 'hex') AS photo, note"
+                : "id, name";
+        return jdbc.queryForList("SELECT " + columns + " FROM " + SCHEMA + "." + table + " ORDER BY id");
+    }
+
+    private boolean schemaExists() {
+        return Boolean.TRUE.equals(jdbc.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_namespace WHERE nspname = ?)", Boolean.class, SCHEMA));
+    }
+}
@@ -0,0 +1,145 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.migration;
+
+import com.innoverse.erp_edu_api.common.domain.AcademicLevel;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantShardProperties;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Testcontainers(disabledWithoutDocker = true)
+class SchemaShardMoverTest {
+    private static final String SOURCE = "primary";
+    private static final String TARGET = "shard-b";
+    private static final String TARGET_DATABASE = "shard_b";
+    private static final String SCHEMA = "tenant_move";
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private JdbcTemplate source;
+    private JdbcTemplate target;
+    private List<String> events;
+    private SchemaShardMover mover;
+
+    @BeforeAll
+    static void createTargetDatabase() {
+        new JdbcTemplate(dataSource(postgres.getDatabaseName())).execute("CREATE DATABASE " + TARGET_DATABASE);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DriverManagerDataSource sourceDataSource = dataSource(postgres.getDatabaseName());
+        DriverManagerDataSource targetDataSource = dataSource(TARGET_DATABASE);
+        source = new JdbcTemplate(sourceDataSource);
+        target = new JdbcTemplate(targetDataSource);
+        source.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        target.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        source.execute("CREATE SCHEMA " + SCHEMA);
+        createTables(source);
+        source.update("INSERT INTO " + SCHEMA + ".students (name) VALUES ('Ada'), ('Grace')");
+
+        SchemaManagerService schemaManagerService = mock(SchemaManagerService.class);
+        when(schemaManagerService.getShardDataSource(SOURCE)).thenReturn(sourceDataSource);
+        when(schemaManagerService.getShardDataSource(TARGET)).thenReturn(targetDataSource);
+        doAnswer(invocation -> {
+            target.execute("CREATE SCHEMA " + SCHEMA);
+            return null;
+        }).when(schemaManagerService).createSchemaOnShard(eq(TARGET), eq(SCHEMA), anyString());
+        doAnswer(invocation -> {
+            target.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            return null;
+        }).when(schemaManagerService).dropSchemaOnShard(TARGET, SCHEMA);
+
+        FlywayMigrationService flywayMigrationService = mock(FlywayMigrationService.class);
+        when(flywayMigrationService.tryMigrationLock(SCHEMA))
+                .thenReturn(mock(FlywayMigrationService.MigrationLock.class));
+        // Stands in for migrating the fresh target schema
+        doAnswer(invocation -> {
+            createTables(target);
+            return null;
+        }).when(flywayMigrationService).migrateOnShard(TARGET, SCHEMA, AcademicLevel.PRIMARY);
+
+        events = new ArrayList<>();
+        mover = new SchemaShardMover(schemaManagerService, flywayMigrationService, new TenantShardProperties());
+    }
+
+    @Test
+    void movesTheRowsAndRetiresTheSource() throws Exception {
+        SchemaShardMover.MoveResult result = mover.move(SCHEMA, SOURCE, TARGET, AcademicLevel.PRIMARY, "secret",
+                () -> events.add("cutover"), () -> events.add("revert"));
+
+        assertThat(result.rows()).isEqualTo(2);
+        assertThat(events).containsExactly("cutover");
+        assertThat(target.queryForList("SELECT name FROM " + SCHEMA + ".students ORDER BY id", String.class))
+                .containsExactly("Ada", "Grace");
+        assertThat(target.queryForObject("INSERT INTO " + SCHEMA + ".students (name) VALUES ('Alan') RETURNING id",
+                Long.class)).isEqualTo(3);
+        assertThatThrownBy(() -> source.update("INSERT INTO " + SCHEMA + ".students (name) VALUES ('Alan')"))
+                .hasMessageContaining("has moved to shard");
+        assertThat(mover.listRetired(SOURCE)).singleElement()
+                .extracting(SchemaShardMover.RetiredSchema::movedTo).isEqualTo(TARGET);
+    }
+
+    @Test
+    void failedRetireAfterTheCutoverSwitchesBack() {
+        // Kills the source connection, so retiring the source fails on commit
+        Runnable cutover = () -> {
+            events.add("cutover");
+            source.queryForList("SELECT pg_terminate_backend(pid) FROM pg_stat_activity "
+                    + "WHERE datname = current_database() AND pid <> pg_backend_pid() "
+                    + "AND state = 'idle in transaction'");
+        };
+
+        assertThatThrownBy(() -> mover.move(SCHEMA, SOURCE, TARGET, AcademicLevel.PRIMARY, "secret",
+                cutover, () -> events.add("revert")));
+
+        assertThat(events).containsExactly("cutover", "revert");
+        source.update("INSERT INTO " + SCHEMA + ".students (name) VALUES ('Alan')");
+        assertThat(source.queryForList("SELECT name FROM " + SCHEMA + ".students ORDER BY id", String.class))
+                .containsExactly("Ada", "Grace", "Alan");
+        assertThat(source.queryForObject("SELECT obj_description(oid, 'pg_namespace') FROM pg_namespace "
+                + "WHERE nspname = ?", String.class, SCHEMA)).isNull();
+        assertThat(target.queryForObject("SELECT EXISTS (SELECT 1 FROM pg_namespace WHERE nspname = ?)",
+                Boolean.class, SCHEMA)).isFalse();
+    }
+
+    @Test
+    void failedCutoverLeavesTheSourceWritable() {
+        assertThatThrownBy(() -> mover.move(SCHEMA, SOURCE, TARGET, AcademicLevel.PRIMARY, "secret",
+                () -> {
+                    throw new IllegalStateException("registry unavailable");
+                }, () -> events.add("revert")))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(events).isEmpty();
+        source.update("INSERT INTO " + SCHEMA + ".students (name) VALUES ('Alan')");
+        assertThat(target.queryForObject("SELECT EXISTS (SELECT 1 FROM pg_namespace WHERE nspname = ?)",
+                Boolean.class, SCHEMA)).isFalse();
+    }
+
+    private static DriverManagerDataSource dataSource(String database) {
+        return new DriverManagerDataSource("jdbc:postgresql://" + postgres.getHost() + ":"
+                + postgres.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT) + "/" + database,
+                postgres.getUsername(), postgres.getPassword());
+    }
+
+    private static void createTables(JdbcTemplate jdbc) {
+        jdbc.execute("CREATE TABLE " + SCHEMA + ".students (id serial PRIMARY KEY, name text NOT NULL)");
+    }
+}
@@ -0,0 +1,209 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.ratelimit;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantRateLimitProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Rates are one request a second so no token can refill while a test runs
+class TenantRateLimiterTest {
+    private static final String DEFAULT_TENANT = "public";
+
+    @Test
+    void rejectsOnceTheBurstIsSpentWithRetryAfter() {
+        TenantRateLimiter limiter = limiter(properties(1, 3));
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(admitAndRelease(limiter, "tenant_a")).isTrue();
+        }
+        TenantRateLimiter.Decision rejected = limiter.tryAcquire("tenant_a", false);
+
+        assertThat(rejected.admitted()).isFalse();
+        assertThat(rejected.retryAfterSeconds()).isEqualTo(1);
+        assertThat(tenantStats(limiter, "tenant_a").admitted()).isEqualTo(3);
+        assertThat(tenantStats(limiter, "tenant_a").rejected()).isEqualTo(1);
+        assertThat(limiter.getStats().inFlight()).isZero();
+    }
+
+    @Test
+    void clampsZeroTenantLimitToOneRequestPerSecond() {
+        TenantRateLimitProperties properties = properties(1, 1);
+        properties.setLimits(Map.of("slow_tenant", 0));
+        TenantRateLimiter limiter = limiter(properties);
+
+        assertThat(admitAndRelease(limiter, "slow_tenant")).isTrue();
+        assertThat(limiter.tryAcquire("slow_tenant", false).retryAfterSeconds()).isEqualTo(1);
+    }
+
+    @Test
+    void scalesBurstWithPerTenantLimit() {
+        TenantRateLimitProperties properties = properties(1, 3);
+        properties.setLimits(Map.of("large_school", 2));
+        TenantRateLimiter limiter = limiter(properties);
+
+        for (int i = 0; i < 6; i++) {
+            assertThat(admitAndRelease(limiter, "large_school")).isTrue();
+        }
+        assertThat(limiter.tryAcquire("large_school", false).admitted()).isFalse();
+        assertThat(tenantStats(limiter, "large_school").requestsPerSecond()).isEqualTo(2);
+    }
+
+    @Test
+    void keepsBucketsPerTenant() {
+        TenantRateLimiter limiter = limiter(properties(1, 1));
+
+        assertThat(admitAndRelease(limiter, "tenant_a")).isTrue();
+        assertThat(limiter.tryAcquire("tenant_a", false).admitted()).isFalse();
+        assertThat(admitAndRelease(limiter, "tenant_b")).isTrue();
+    }
+
+    @Test
+    void unresolvedRequestsShareTheirOwnBucket() {
+        TenantRateLimitProperties properties = properties(1, 1);
+        properties.setUnresolvedRequestsPerSecond(1);
+        TenantRateLimiter limiter = limiter(properties);
+
+        assertThat(admitAndRelease(limiter, DEFAULT_TENANT)).isTrue();
+        assertThat(limiter.tryAcquire(DEFAULT_TENANT, false).admitted()).isFalse();
+        assertThat(admitAndRelease(limiter, "tenant_a")).isTrue();
+        assertThat(tenantStats(limiter, DEFAULT_TENANT).rejected()).isEqualTo(1);
+        assertThat(limiter.getStats().inFlight()).isZero();
+    }
+
+    @Test
+    void concurrencyRejectionDoesNotSpendAToken() {
+        TenantRateLimitProperties properties = properties(1, 1);
+        properties.setMaxConcurrentRequests(1);
+        properties.setPlatformReserved(0);
+        TenantRateLimiter limiter = limiter(properties);
+
+        assertThat(limiter.tryAcquire("tenant_b", false).admitted()).isTrue();
+        assertThat(limiter.tryAcquire("tenant_a", false).admitted()).isFalse();
+        limiter.release();
+
+        assertThat(admitAndRelease(limiter, "tenant_a")).isTrue();
+        assertThat(limiter.getStats().concurrencyRejections()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsConcurrencyReserveForPlatformRequests() {
+        TenantRateLimitProperties properties = properties(100, 100);
+        properties.setMaxConcurrentRequests(3);
+        properties.setPlatformReserved(1);
+        TenantRateLimiter limiter = limiter(properties);
+
+        assertThat(limiter.tryAcquire("tenant_a", false).admitted()).isTrue();
+        assertThat(limiter.tryAcquire("tenant_b", false).admitted()).isTrue();
+        TenantRateLimiter.Decision rejected = limiter.tryAcquire("tenant_c", false);
+        assertThat(limiter.tryAcquire(DEFAULT_TENANT, true).admitted()).isTrue();
+        assertThat(limiter.tryAcquire(DEFAULT_TENANT, true).admitted()).isFalse();
+
+        assertThat(rejected.admitted()).isFalse();
+        assertThat(rejected.retryAfterSeconds()).isEqualTo(1);
+        assertThat(limiter.getStats().inFlight()).isEqualTo(3);
+        assertThat(limiter.getStats().concurrencyRejections()).isEqualTo(2);
+        assertThat(tenantStats(limiter, "tenant_c").rejected()).isEqualTo(1);
+
+        // Two releases bring tenant requests back under the reserve
+        limiter.release();
+        limiter.release();
+        assertThat(limiter.tryAcquire("tenant_c", false).admitted()).isTrue();
+    }
+
+    @Test
+    void rejectsOverSharedBudget() {
+        TenantRateLimitProperties properties = properties(100, 100);
+        properties.setSharedRequestsPerSecond(2);
+        ValueOperations<String, String> values = mockValues();
+        when(values.increment(anyString())).thenReturn(1L, 2L, 3L);
+        TenantRateLimiter limiter = new TenantRateLimiter(properties, DEFAULT_TENANT, redisTemplate(values));
+
+        assertThat(admitAndRelease(limiter, "tenant_a")).isTrue();
+        assertThat(admitAndRelease(limiter, "tenant_a")).isTrue();
+        TenantRateLimiter.Decision rejected = limiter.tryAcquire("tenant_a", false);
+
+        assertThat(rejected.admitted()).isFalse();
+        assertThat(rejected.retryAfterSeconds()).isEqualTo(1);
+    }
+
+    @Test
+    void sharedBudgetRejectionHandsBackTheTokenAndSlot() {
+        TenantRateLimitProperties properties = properties(1, 1);
+        properties.setSharedRequestsPerSecond(1);
+        ValueOperations<String, String> values = mockValues();
+        when(values.increment(anyString())).thenReturn(2L, 1L);
+        TenantRateLimiter limiter = new TenantRateLimiter(properties, DEFAULT_TENANT, redisTemplate(values));
+
+        assertThat(limiter.tryAcquire("tenant_a", false).admitted()).isFalse();
+        assertThat(limiter.getStats().inFlight()).isZero();
+        assertThat(admitAndRelease(limiter, "tenant_a")).isTrue();
+    }
+
+    @Test
+    void admitsWhenSharedBudgetIsUnreachable() {
+        TenantRateLimitProperties properties = properties(100, 100);
+        properties.setSharedRequestsPerSecond(1);
+        ValueOperations<String, String> values = mockValues();
+        when(values.increment(anyString())).thenThrow(new RedisConnectionFailureException("down"));
+        TenantRateLimiter limiter = new TenantRateLimiter(properties, DEFAULT_TENANT, redisTemplate(values));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(admitAndRelease(limiter, "tenant_a")).isTrue();
+        }
+    }
+
+    @Test
+    void recognisesPlatformPaths() {
+        TenantRateLimiter limiter = limiter(properties(1, 1));
+
+        assertThat(limiter.isPlatformRequest("/api/platform/tenants")).isTrue();
+        assertThat(limiter.isPlatformRequest("/api/students")).isFalse();
+        assertThat(limiter.isPlatformRequest(null)).isFalse();
+    }
+
+    private static boolean admitAndRelease(TenantRateLimiter limiter, String tenant) {
+        TenantRateLimiter.Decision decision = limiter.tryAcquire(tenant, false);
+        if (decision.admitted()) {
+            limiter.release();
+        }
+        return decision.admitted();
+    }
+
+    private static TenantRateLimiter.TenantRateLimitStats tenantStats(TenantRateLimiter limiter, String tenant) {
+        return limiter.getStats().tenants().stream()
+                .filter(s -> s.tenant().equals(tenant))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No stats for " + tenant));
+    }
+
+    private static TenantRateLimiter limiter(TenantRateLimitProperties properties) {
+        return new TenantRateLimiter(properties, DEFAULT_TENANT, null);
+    }
+
+    private static TenantRateLimitProperties properties(int requestsPerSecond, int burst) {
+        TenantRateLimitProperties properties = new TenantRateLimitProperties();
+        properties.setRequestsPerSecond(requestsPerSecond);
+        properties.setBurst(burst);
+        return properties;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ValueOperations<String, String> mockValues() {
+        return mock(ValueOperations.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisTemplate<String, String> redisTemplate(ValueOperations<String, String> values) {
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        return redisTemplate;
+    }
+}
@@ -0,0 +1,110 @@
+package com.innoverse.erp_edu_api.provisioning.infrastructure.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(42 * SECOND);
+
+    @Test
+    void admitsExactlyTheBurstAtOnce() {
+        TokenBucket bucket = new TokenBucket(10, 5, clock::get);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(bucket.tryConsume()).isZero();
+        }
+
+        // One emission interval until the oldest token frees up
+        assertThat(bucket.tryConsume()).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void refillsOneTokenPerEmissionIntervalToTheNanosecond() {
+        TokenBucket bucket = new TokenBucket(10, 1, clock::get);
+        assertThat(bucket.tryConsume()).isZero();
+
+        clock.addAndGet(SECOND / 10 - 1);
+        assertThat(bucket.tryConsume()).isEqualTo(1);
+
+        clock.addAndGet(1);
+        assertThat(bucket.tryConsume()).isZero();
+        assertThat(bucket.tryConsume()).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void rejectedRequestsDoNotConsumeTokens() {
+        TokenBucket bucket = new TokenBucket(10, 1, clock::get);
+        bucket.tryConsume();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(bucket.tryConsume()).isPositive();
+        }
+
+        clock.addAndGet(SECOND / 10);
+        assertThat(bucket.tryConsume()).isZero();
+    }
+
+    @Test
+    void refundedTokenCanBeTakenAgain() {
+        TokenBucket bucket = new TokenBucket(10, 1, clock::get);
+        assertThat(bucket.tryConsume()).isZero();
+
+        bucket.refund();
+
+        assertThat(bucket.tryConsume()).isZero();
+        assertThat(bucket.tryConsume()).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void idleTimeRefillsOnlyUpToTheBurst() {
+        TokenBucket bucket = new TokenBucket(10, 3, clock::get);
+        clock.addAndGet(60 * SECOND);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryConsume()).isZero();
+        }
+        assertThat(bucket.tryConsume()).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void sustainsTheConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(50, 1, clock::get);
+
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(bucket.tryConsume()).isZero();
+            clock.addAndGet(SECOND / 50);
+        }
+    }
+
+    @Test
+    void partlyDrainedBucketWaitsOnlyForTheMissingToken() {
+        TokenBucket bucket = new TokenBucket(4, 2, clock::get);
+        bucket.tryConsume();
+        bucket.tryConsume();
+
+        clock.addAndGet(SECOND / 10);
+        assertThat(bucket.tryConsume()).isEqualTo(SECOND / 4 - SECOND / 10);
+    }
+
+    @Test
+    void clampsNonPositiveRateAndBurstToOne() {
+        TokenBucket bucket = new TokenBucket(0, 0, clock::get);
+
+        assertThat(bucket.tryConsume()).isZero();
+        assertThat(bucket.tryConsume()).isEqualTo(SECOND);
+    }
+
+    @Test
+    void roundsTheEmissionIntervalDownForUnevenRates() {
+        TokenBucket bucket = new TokenBucket(3, 1, clock::get);
+        bucket.tryConsume();
+
+        clock.addAndGet(333_333_333L);
+        assertThat(bucket.tryConsume()).isZero();
+    }
+}
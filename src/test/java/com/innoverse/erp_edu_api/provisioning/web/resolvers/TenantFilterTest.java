@@ -0,0 +1,92 @@
+package com.innoverse.erp_edu_api.provisioning.web.resolvers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantRateLimitProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.ratelimit.TenantRateLimiter;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class TenantFilterTest {
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void rejectsOverLimitRequestWith429BeforeTheChain() throws Exception {
+        TenantRateLimiter rateLimiter = rateLimiter(1, 1);
+        TenantFilter filter = new TenantFilter(req -> "tenant_a", rateLimiter, objectMapper);
+
+        MockHttpServletResponse admitted = filter(filter, mock(FilterChain.class));
+        FilterChain rejectedChain = mock(FilterChain.class);
+        MockHttpServletResponse rejected = filter(filter, rejectedChain);
+
+        assertThat(admitted.getStatus()).isEqualTo(200);
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        assertThat(rejected.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        JsonNode body = objectMapper.readTree(rejected.getContentAsByteArray());
+        assertThat(body.path("code").asText()).isEqualTo("RATE_LIMIT_001");
+        assertThat(body.path("status").asInt()).isEqualTo(429);
+        assertThat(body.path("path").asText()).isEqualTo("/api/students");
+        verify(rejectedChain, never()).doFilter(any(), any());
+    }
+
+    @Test
+    void releasesConcurrencySlotAndBindsTenantForAdmittedRequest() throws Exception {
+        TenantRateLimiter rateLimiter = rateLimiter(100, 100);
+        TenantFilter filter = new TenantFilter(req -> "tenant_a", rateLimiter, objectMapper);
+        AtomicReference<String> tenantInChain = new AtomicReference<>();
+        AtomicReference<Integer> inFlightInChain = new AtomicReference<>();
+        FilterChain chain = mock(FilterChain.class);
+        doAnswer(invocation -> {
+            tenantInChain.set(TenantContext.get());
+            inFlightInChain.set(rateLimiter.getStats().inFlight());
+            return null;
+        }).when(chain).doFilter(any(), any());
+
+        filter(filter, chain);
+
+        assertThat(tenantInChain).hasValue("tenant_a");
+        assertThat(inFlightInChain).hasValue(1);
+        assertThat(rateLimiter.getStats().inFlight()).isZero();
+        assertThat(TenantContext.get()).isNull();
+    }
+
+    @Test
+    void releasesConcurrencySlotWhenChainThrows() throws Exception {
+        TenantRateLimiter rateLimiter = rateLimiter(100, 100);
+        TenantFilter filter = new TenantFilter(req -> "tenant_a", rateLimiter, objectMapper);
+        FilterChain chain = mock(FilterChain.class);
+        doAnswer(invocation -> {
+            throw new IllegalStateException("boom");
+        }).when(chain).doFilter(any(), any());
+
+        assertThatThrownBy(() -> filter(filter, chain)).hasMessage("boom");
+        assertThat(rateLimiter.getStats().inFlight()).isZero();
+    }
+
+    private static MockHttpServletResponse filter(TenantFilter filter, FilterChain chain) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/students");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static TenantRateLimiter rateLimiter(int requestsPerSecond, int burst) {
+        TenantRateLimitProperties properties = new TenantRateLimitProperties();
+        properties.setRequestsPerSecond(requestsPerSecond);
+        properties.setBurst(burst);
+        return new TenantRateLimiter(properties, "public", null);
+    }
+}
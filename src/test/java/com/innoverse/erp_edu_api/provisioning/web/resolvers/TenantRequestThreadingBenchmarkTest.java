@@ -0,0 +1,191 @@
+package com.innoverse.erp_edu_api.provisioning.web.resolvers;
+
+import com.innoverse.erp_edu_api.provisioning.infrastructure.config.TenantProperties;
+import com.innoverse.erp_edu_api.provisioning.infrastructure.datasource.TenantAwareDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.thread.Threading;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives tenant requests through {@link TenantFilter} and the tenant data source with
+ * {@code spring.threads.virtual.enabled} off and on, and logs throughput and p99 latency.
+ * Off, requests run on a fixed pool sized like Tomcat's default; on, each gets a virtual
+ * thread. Each request waits on a downstream call, then queries its tenant's schema, and
+ * {@link #IN_FLIGHT} requests are kept outstanding, so the platform pool is the limit in
+ * one run and the connection pool in the other. Run with {@code -Dbenchmark=true}; the
+ * only assertion is that both runs return the same rows.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TenantRequestThreadingBenchmarkTest {
+    private static final Logger log = LoggerFactory.getLogger(TenantRequestThreadingBenchmarkTest.class);
+
+    private static final int TENANTS = 20;
+    private static final int REQUESTS = 20_000;
+    private static final int IN_FLIGHT = 1_000;
+    private static final int PLATFORM_THREADS = 200;
+    private static final int POOL_SIZE = 50;
+    private static final long DOWNSTREAM_MILLIS = 10;
+    private static final String TENANT_HEADER = "X-Tenant";
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @BeforeAll
+    static void createTenants() throws Exception {
+        try (Connection conn = postgres.createConnection("");
+             Statement stmt = conn.createStatement()) {
+            for (int i = 0; i < TENANTS; i++) {
+                String schema = tenant(i);
+                stmt.execute("CREATE SCHEMA " + schema);
+                stmt.execute("CREATE TABLE " + schema + ".students (id int PRIMARY KEY, name text, grade int)");
+                stmt.execute("INSERT INTO " + schema + ".students SELECT g, 'student ' || g, g % 12 "
+                        + "FROM generate_series(1, 500) g");
+            }
+        }
+    }
+
+    @Test
+    void comparesPlatformAndVirtualRequestThreads() throws Exception {
+        Request[] trace = trace(new Random(42));
+
+        Run platform = replay(trace, false);
+        Run virtual = replay(trace, true);
+
+        log.info("Platform threads ({}): {} requests/s, p99 {}ms", PLATFORM_THREADS, platform.requestsPerSecond(),
+                platform.p99Millis());
+        log.info("Virtual threads: {} requests/s, p99 {}ms", virtual.requestsPerSecond(), virtual.p99Millis());
+        assertThat(virtual.checksum()).isEqualTo(platform.checksum());
+    }
+
+    private static Request[] trace(Random random) {
+        Request[] trace = new Request[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            trace[i] = new Request(tenant(random.nextInt(TENANTS)), 1 + random.nextInt(500));
+        }
+        return trace;
+    }
+
+    // One untimed pass warms the pool and the server, then the same trace is timed
+    private static Run replay(Request[] trace, boolean virtualThreads) throws Exception {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("spring.threads.virtual.enabled", String.valueOf(virtualThreads));
+        try (HikariDataSource pool = new HikariDataSource()) {
+            pool.setJdbcUrl(postgres.getJdbcUrl());
+            pool.setUsername(postgres.getUsername());
+            pool.setPassword(postgres.getPassword());
+            pool.setMaximumPoolSize(POOL_SIZE);
+
+            TenantAwareDataSource dataSource = new TenantAwareDataSource(pool, new TenantProperties());
+            TenantFilter filter = new TenantFilter(req -> req.getHeader(TENANT_HEADER));
+
+            replayOnce(environment, filter, dataSource, trace);
+            long start = System.nanoTime();
+            Replay replay = replayOnce(environment, filter, dataSource, trace);
+            long elapsed = System.nanoTime() - start;
+
+            long[] latencies = replay.latencies();
+            Arrays.sort(latencies);
+            long p99 = latencies[(int) Math.ceil(latencies.length * 0.99) - 1];
+            return new Run(trace.length * TimeUnit.SECONDS.toNanos(1) / elapsed,
+                    TimeUnit.NANOSECONDS.toMillis(p99), replay.checksum());
+        }
+    }
+
+    // Keeps IN_FLIGHT requests outstanding; latency runs from submission, so time queued for a thread counts
+    private static Replay replayOnce(MockEnvironment environment, TenantFilter filter,
+                                     TenantAwareDataSource dataSource, Request[] trace) throws Exception {
+        long[] latencies = new long[trace.length];
+        AtomicLong checksum = new AtomicLong();
+        Semaphore inFlight = new Semaphore(IN_FLIGHT);
+        ExecutorService requests = Threading.VIRTUAL.isActive(environment)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(PLATFORM_THREADS);
+        try {
+            for (int i = 0; i < trace.length; i++) {
+                int index = i;
+                inFlight.acquire();
+                long submitted = System.nanoTime();
+                requests.execute(() -> {
+                    try {
+                        checksum.addAndGet(execute(filter, dataSource, trace[index]));
+                    } finally {
+                        latencies[index] = System.nanoTime() - submitted;
+                        inFlight.release();
+                    }
+                });
+            }
+            inFlight.acquire(IN_FLIGHT);
+        } finally {
+            requests.shutdownNow();
+        }
+        return new Replay(latencies, checksum.get());
+    }
+
+    private static long execute(TenantFilter filter, TenantAwareDataSource dataSource, Request request) {
+        MockHttpServletRequest req = new MockHttpServletRequest("GET", "/api/students/" + request.studentId());
+        req.addHeader(TENANT_HEADER, request.tenant());
+        long[] rows = new long[1];
+        FilterChain chain = (servletRequest, servletResponse) -> {
+            try {
+                Thread.sleep(DOWNSTREAM_MILLIS);
+                rows[0] = query(dataSource, request.studentId());
+            } catch (InterruptedException | SQLException e) {
+                throw new ServletException(e);
+            }
+        };
+        try {
+            filter.doFilter(req, new MockHttpServletResponse(), chain);
+        } catch (Exception e) {
+            throw new IllegalStateException("Request for " + request.tenant() + " failed", e);
+        }
+        return rows[0];
+    }
+
+    private static long query(TenantAwareDataSource dataSource, int studentId) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT grade FROM students WHERE id = ?")) {
+            stmt.setInt(1, studentId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) + 1 : 0;
+            }
+        }
+    }
+
+    private static String tenant(int index) {
+        return "bench_tenant_" + index;
+    }
+
+    private record Request(String tenant, int studentId) { }
+
+    private record Replay(long[] latencies, long checksum) { }
+
+    private record Run(long requestsPerSecond, long p99Millis, long checksum) { }
+}